@@ -8,7 +8,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
-@ControllerAdvice(assignableTypes = ProductsManagerController.class)
+@ControllerAdvice(assignableTypes = {ProductsManagerController.class, TagsController.class, ReactiveProductsController.class})
 public class ControllerExceptionHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(ControllerExceptionHandler.class);
@@ -25,12 +25,30 @@ public class ControllerExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
     }
 
+    @ExceptionHandler(InvalidQueryParameterException.class)
+    public ResponseEntity<String> handleInvalidQueryParameterException(InvalidQueryParameterException e) {
+        logger.error("Invalid query parameter", e);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
     @ExceptionHandler(BarcodeAlreadyExistsException.class)
     public ResponseEntity<String> handleBarcodeAlreadyExistsException(BarcodeAlreadyExistsException e) {
         logger.error("Barcode already exists", e);
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
     }
 
+    @ExceptionHandler(IngestionQueueFullException.class)
+    public ResponseEntity<String> handleIngestionQueueFullException(IngestionQueueFullException e) {
+        logger.error("Ingestion queue full", e);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+    }
+
+    @ExceptionHandler(ImportFailedException.class)
+    public ResponseEntity<String> handleImportFailedException(ImportFailedException e) {
+        logger.error("Import failed", e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+    }
+
     @ExceptionHandler(DatabaseAccessException.class)
     public ResponseEntity<String> handleDatabaseAccessException(DatabaseAccessException e) {
         logger.error("Database access error", e);
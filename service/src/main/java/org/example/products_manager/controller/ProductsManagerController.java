@@ -2,18 +2,39 @@ package org.example.products_manager.controller;
 
 import org.example.products_manager.exception.InvalidBarcodeException;
 import org.example.products_manager.exception.InvalidProductRequestException;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.BulkUpdateRequest;
+import org.example.products_manager.model.BulkUpdateResponse;
+import org.example.products_manager.model.ChangeLogStats;
+import org.example.products_manager.model.ImportReport;
+import org.example.products_manager.model.PriceHistoryResponse;
+import org.example.products_manager.model.ProductFields;
+import org.example.products_manager.model.ProductQuery;
 import org.example.products_manager.model.ProductRequest;
 import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.model.SimilarProductResponse;
+import org.example.products_manager.model.TagStatsResponse;
+import org.example.products_manager.model.WriteBehindStats;
+import org.example.products_manager.service.BulkUpdateRequestValidator;
+import org.example.products_manager.service.ChangeLogTailer;
+import org.example.products_manager.service.ListResponseCache;
+import org.example.products_manager.service.ProductImportService;
+import org.example.products_manager.service.ProductRequestValidator;
 import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.WriteBehindUpdateQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller for managing products in the database
@@ -25,17 +46,57 @@ public class ProductsManagerController {
 
     private static final Logger logger = LoggerFactory.getLogger(ProductsManagerController.class);
 
+    private static final int MAX_SIMILAR_LIMIT = 100;
+
     @Autowired
     private ProductsManagerService productsManagerService;
 
+    @Autowired
+    private WriteBehindUpdateQueue writeBehindUpdateQueue;
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ChangeLogTailer changeLogTailer;
+
+    @Autowired
+    private ListResponseCache listResponseCache;
+
     @PostMapping
     public ResponseEntity<ProductResponse> createProduct(@RequestBody ProductRequest productRequest) {
-        validateProductRequest(productRequest);
+        ProductRequestValidator.validate(productRequest);
         ProductResponse productResponse = productsManagerService.createProduct(productRequest);
         logger.info("Product created successfully: {}", productResponse);
         return ResponseEntity.ok(productResponse);
     }
 
+    /**
+     * Imports products in bulk from a CSV or NDJSON file located in the import directory of the service.
+     * An import that failed can be resumed after its last committed chunk with resume=true.
+     */
+    @PostMapping("/import")
+    public ResponseEntity<ImportReport> importProducts(
+            @RequestParam String file,
+            @RequestParam(required = false, defaultValue = "false") boolean resume) {
+        ImportReport report = productImportService.importFile(file, resume);
+        logger.info("Imported {} products from {}, {} records were rejected",
+                report.getImportedProducts(), file, report.getRejectedRecords());
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * Updates the price or the rating of the products selected by a tag, a list of barcodes or a range,
+     * with a single statement.
+     */
+    @PostMapping("/bulk-update")
+    public ResponseEntity<BulkUpdateResponse> bulkUpdate(@RequestBody BulkUpdateRequest bulkUpdateRequest) {
+        BulkUpdateRequestValidator.validate(bulkUpdateRequest);
+        int affectedProducts = productsManagerService.bulkUpdate(bulkUpdateRequest);
+        logger.info("Bulk update of the {} of {} products completed successfully", bulkUpdateRequest.getField(), affectedProducts);
+        return ResponseEntity.ok(new BulkUpdateResponse(affectedProducts));
+    }
+
     @GetMapping("/{barcode}")
     public ResponseEntity<ProductResponse> getProduct(@PathVariable String barcode) {
         validateBarcode(barcode);
@@ -44,9 +105,51 @@ public class ProductsManagerController {
         return ResponseEntity.ok(productResponse);
     }
 
+    /**
+     * Lists the products. The full list in one of the cached orders is served from its serialized bytes,
+     * gzip-compressed if the client accepts it, or as not modified if the client already has it.
+     * Other lists are built by {@link #getAllProducts(ProductQuery)}.
+     */
     @GetMapping()
-    public ResponseEntity<List<ProductResponse>> getAllProducts(
-            @RequestParam(required = false) String sortBy) {
+    public ResponseEntity<?> getAllProducts(
+            ProductQuery query,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String sortBy = query.getSortBy();
+        if (sortBy == null || sortBy.isEmpty()) {
+            sortBy = "id";
+        }
+        ListResponseCache.SerializedList list = query.isRangeQuery() ? null : listResponseCache.get(sortBy);
+        if (list == null) {
+            return getAllProducts(query);
+        }
+        boolean gzip = acceptsGzip(acceptEncoding);
+        String eTag = gzip ? list.getGzipETag() : list.getETag();
+        if (list.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(eTag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        logger.info("All products retrieved successfully");
+        return response.body(gzip ? list.getGzippedJson() : list.getJson());
+    }
+
+    public ResponseEntity<List<ProductResponse>> getAllProducts(ProductQuery query) {
+        if (query.isRangeQuery()) {
+            validateRangeQuery(query);
+            List<ProductResponse> productResponses = productsManagerService.findProducts(query);
+            logger.info("{} products in range retrieved successfully", productResponses.size());
+            return ResponseEntity.ok(productResponses);
+        }
+        String sortBy = query.getSortBy();
         if (sortBy == null || sortBy.isEmpty()) {
             sortBy = "id";
         }
@@ -55,17 +158,137 @@ public class ProductsManagerController {
         return ResponseEntity.ok(productResponses);
     }
 
+    /**
+     * Retrieves the products whose tags are the most similar to the tags of the given product.
+     */
+    @GetMapping("/{barcode}/similar")
+    public ResponseEntity<List<SimilarProductResponse>> getSimilarProducts(
+            @PathVariable String barcode,
+            @RequestParam(required = false, defaultValue = "10") int limit) {
+        validateBarcode(barcode);
+        if (limit <= 0 || limit > MAX_SIMILAR_LIMIT) {
+            throw new InvalidQueryParameterException("Limit must be between 1 and " + MAX_SIMILAR_LIMIT);
+        }
+        List<SimilarProductResponse> similarProducts = productsManagerService.findSimilarProducts(barcode, limit);
+        logger.info("{} products similar to product with barcode {} retrieved successfully", similarProducts.size(), barcode);
+        return ResponseEntity.ok(similarProducts);
+    }
+
+    /**
+     * Retrieves the price and rating of a product after each of their changes, oldest first.
+     * The time range is given as ISO-8601 instants, e.g. from=2024-01-01T00:00:00Z, and defaults to the whole history.
+     */
+    @GetMapping("/{barcode}/history")
+    public ResponseEntity<List<PriceHistoryResponse>> getPriceHistory(
+            @PathVariable String barcode,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to) {
+        validateBarcode(barcode);
+        Instant fromInstant = from == null ? Instant.EPOCH : parseInstant("from", from);
+        Instant toInstant = to == null ? Instant.now() : parseInstant("to", to);
+        if (fromInstant.isAfter(toInstant)) {
+            throw new InvalidQueryParameterException("From cannot be after to");
+        }
+        List<PriceHistoryResponse> history = productsManagerService.getPriceHistory(barcode, fromInstant, toInstant);
+        logger.info("{} price history entries of product with barcode {} retrieved successfully", history.size(), barcode);
+        return ResponseEntity.ok(history);
+    }
+
+    /**
+     * Retrieves only the requested fields of a product, e.g. fields=name,price.
+     * The tags are not read unless requested.
+     */
+    @GetMapping(value = "/{barcode}", params = "fields")
+    public ResponseEntity<Map<String, Object>> getProductFields(
+            @PathVariable String barcode,
+            @RequestParam String fields) {
+        validateBarcode(barcode);
+        Map<String, Object> product = productsManagerService.getProduct(barcode, ProductFields.parse(fields));
+        logger.info("Product retrieved successfully: {}", product);
+        return ResponseEntity.ok(product);
+    }
+
+    /**
+     * Retrieves only the requested fields of the products, e.g. fields=barcode,name,price.
+     * Accepts the same sort order and range parameters as the full listing. The tags are not read unless requested.
+     */
+    @GetMapping(params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getAllProductFields(
+            ProductQuery query,
+            @RequestParam String fields) {
+        ProductFields productFields = ProductFields.parse(fields);
+        if (query.isRangeQuery()) {
+            validateRangeQuery(query);
+            List<Map<String, Object>> products = productsManagerService.findProducts(query, productFields);
+            logger.info("{} products in range retrieved successfully", products.size());
+            return ResponseEntity.ok(products);
+        }
+        String sortBy = query.getSortBy();
+        if (sortBy == null || sortBy.isEmpty()) {
+            sortBy = "id";
+        }
+        List<Map<String, Object>> products = productsManagerService.getAllProducts(sortBy, productFields);
+        logger.info("All products retrieved successfully");
+        return ResponseEntity.ok(products);
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<List<TagStatsResponse>> getProductStats(
+            @RequestParam(required = false, defaultValue = "tag") String groupBy) {
+        if (!groupBy.equals("tag")) {
+            throw new InvalidQueryParameterException("Products can only be grouped by tag");
+        }
+        List<TagStatsResponse> stats = productsManagerService.getStatsByTag();
+        logger.info("Product statistics retrieved successfully");
+        return ResponseEntity.ok(stats);
+    }
+
     @PatchMapping("/{barcode}")
     public ResponseEntity<ProductResponse> updateProduct(
             @PathVariable String barcode,
             @RequestBody ProductRequest productRequest) {
         validateBarcode(barcode);
-        validateProductRequest(productRequest);
+        ProductRequestValidator.validate(productRequest);
         ProductResponse productResponse = productsManagerService.updateProduct(barcode, productRequest);
         logger.info("Product updated successfully: {}", productResponse);
         return ResponseEntity.ok(productResponse);
     }
 
+    /**
+     * Accepts an update to be written to the database later, in write-behind mode.
+     * Successive updates of the same product are merged before they are written.
+     * Changing the barcode is not supported in this mode.
+     */
+    @PatchMapping(value = "/{barcode}", params = "async=true")
+    public ResponseEntity<String> updateProductAsync(
+            @PathVariable String barcode,
+            @RequestBody ProductRequest productRequest) {
+        if (!writeBehindUpdateQueue.isEnabled()) {
+            throw new InvalidQueryParameterException("Asynchronous updates are not enabled");
+        }
+        validateBarcode(barcode);
+        ProductRequestValidator.validate(productRequest);
+        if (!barcode.equals(productRequest.getBarcode())) {
+            throw new InvalidProductRequestException("Barcode cannot be changed by an asynchronous update");
+        }
+        writeBehindUpdateQueue.submit(barcode, productRequest);
+        logger.info("Update of product with barcode {} was accepted", barcode);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body("Update of product with barcode " + barcode + " was accepted");
+    }
+
+    @GetMapping("/write-behind/stats")
+    public ResponseEntity<WriteBehindStats> getWriteBehindStats() {
+        return ResponseEntity.ok(writeBehindUpdateQueue.getStats());
+    }
+
+    /**
+     * Reports how far this instance is behind the changes made by the other instances of the service.
+     */
+    @GetMapping("/change-log/stats")
+    public ResponseEntity<ChangeLogStats> getChangeLogStats() {
+        return ResponseEntity.ok(changeLogTailer.getStats());
+    }
+
     @DeleteMapping("/{barcode}")
     public ResponseEntity<String> deleteProduct(@PathVariable String barcode) {
         validateBarcode(barcode);
@@ -75,32 +298,53 @@ public class ProductsManagerController {
     }
 
     /**
-     * Ensures the requested product has valid values in its fields.
+     * Ensures a range query has a supported sort order and consistent bounds.
+     * Range queries are sorted by price unless requested otherwise.
      *
-     * @param productRequest the product request
+     * @param query the product query
      */
-    private static void validateProductRequest(ProductRequest productRequest) {
-        if (productRequest.getBarcode() == null || productRequest.getBarcode().trim().isEmpty()) {
-            throw new InvalidProductRequestException("Barcode is mandatory");
+    private static void validateRangeQuery(ProductQuery query) {
+        if (query.getSortBy() == null || query.getSortBy().isEmpty()) {
+            query.setSortBy("price");
         }
-        if (!productRequest.getBarcode().matches("[0-9]+")) {
-            throw new InvalidProductRequestException("Barcode can only contain digits");
+        if (!query.getSortBy().equals("price") && !query.getSortBy().equals("rating")) {
+            throw new InvalidQueryParameterException("Range queries can only be sorted by price or rating");
         }
-        if (productRequest.getName() == null || productRequest.getName().trim().isEmpty()) {
-            throw new InvalidProductRequestException("Name is mandatory");
+        if (query.getTop() != null && query.getTop() <= 0) {
+            throw new InvalidQueryParameterException("Top must be a positive number");
         }
-        if (productRequest.getImage() != null && !productRequest.getImage().trim().isEmpty()) {
-            try {
-                new URL(productRequest.getImage());
-            } catch (MalformedURLException e) {
-                throw new InvalidProductRequestException("Image must be a valid URL or empty");
-            }
+        if (query.getMinPrice() != null && query.getMaxPrice() != null && query.getMinPrice() > query.getMaxPrice()) {
+            throw new InvalidQueryParameterException("Minimum price cannot be greater than maximum price");
+        }
+    }
+
+    private static Instant parseInstant(String name, String value) {
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new InvalidQueryParameterException("Invalid " + name + " time, expected an ISO-8601 instant such as 2024-01-01T00:00:00Z");
+        }
+    }
+
+    /**
+     * @return whether the Accept-Encoding header accepts gzip with a non-zero quality, by name or else by wildcard
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
         }
-        for (String tag : productRequest.getTags()) {
-            if (tag == null || tag.trim().isEmpty()) {
-                throw new InvalidProductRequestException("Tag cannot be blank");
+        boolean wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.replace(" ", "").split(";");
+            boolean accepted = parts.length == 1 || !parts[1].matches("q=0(\\.0*)?");
+            if (parts[0].equalsIgnoreCase("gzip")) {
+                return accepted;
+            }
+            if (parts[0].equals("*")) {
+                wildcard = accepted;
             }
         }
+        return wildcard;
     }
 
     /**
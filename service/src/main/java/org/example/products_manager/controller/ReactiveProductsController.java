@@ -0,0 +1,68 @@
+package org.example.products_manager.controller;
+
+import org.example.products_manager.exception.InvalidBarcodeException;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.service.ReactiveProductsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Reactive variant of the read endpoints of {@link ProductsManagerController}, registered when
+ * {@code products.reactive.r2dbc-url} is set.
+ * The endpoints are served by Spring MVC as async requests: the request thread is released while the products are
+ * read over R2DBC, but each product is written to the response with blocking servlet IO, so a slow client holds
+ * the thread that writes to it. The list is streamed as newline-delimited JSON, which Spring MVC streams without
+ * the async request timeout; the stream fails instead if no product is emitted for {@code stream-idle-timeout-ms},
+ * unless it is 0.
+ */
+@ConditionalOnProperty("products.reactive.r2dbc-url")
+@RestController
+@CrossOrigin(origins = "http://localhost:4200")
+@RequestMapping("/api/reactive/products")
+public class ReactiveProductsController {
+
+    @Autowired
+    private ReactiveProductsService reactiveProductsService;
+
+    @Value("${products.reactive.stream-idle-timeout-ms:60000}")
+    private long streamIdleTimeoutMs;
+
+    @GetMapping("/{barcode}")
+    public Mono<ProductResponse> getProduct(@PathVariable String barcode) {
+        validateBarcode(barcode);
+        return reactiveProductsService.getProduct(barcode);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ProductResponse> getAllProducts(@RequestParam(required = false) String sortBy) {
+        if (sortBy == null || sortBy.isEmpty()) {
+            sortBy = "id";
+        }
+        Flux<ProductResponse> products = reactiveProductsService.getAllProducts(sortBy);
+        if (streamIdleTimeoutMs <= 0) {
+            return products;
+        }
+        return products.timeout(Duration.ofMillis(streamIdleTimeoutMs));
+    }
+
+    /**
+     * Ensures the barcode is valid.
+     *
+     * @param barcode the barcode
+     */
+    private static void validateBarcode(String barcode) {
+        if (barcode == null || barcode.trim().isEmpty()) {
+            throw new InvalidBarcodeException("Barcode is mandatory");
+        }
+        if (!barcode.matches("[0-9]+")) {
+            throw new InvalidBarcodeException("Barcode can only contain digits");
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.products_manager.controller;
+
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.TagSuggestion;
+import org.example.products_manager.service.TagSuggestionIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controller for looking up the tags that are associated with products
+ */
+@RestController
+@CrossOrigin(origins = "http://localhost:4200")
+@RequestMapping("/api/tags")
+public class TagsController {
+
+    private static final Logger logger = LoggerFactory.getLogger(TagsController.class);
+
+    private static final int MAX_LIMIT = 100;
+
+    @Autowired
+    private TagSuggestionIndex tagSuggestionIndex;
+
+    @GetMapping("/suggest")
+    public ResponseEntity<List<TagSuggestion>> suggestTags(
+            @RequestParam(required = false, defaultValue = "") String prefix,
+            @RequestParam(required = false, defaultValue = "10") int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new InvalidQueryParameterException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        List<TagSuggestion> suggestions = tagSuggestionIndex.suggest(prefix.trim(), limit);
+        logger.debug("{} tags suggested for prefix '{}'", suggestions.size(), prefix);
+        return ResponseEntity.ok(suggestions);
+    }
+}
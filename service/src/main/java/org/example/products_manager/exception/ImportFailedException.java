@@ -0,0 +1,11 @@
+package org.example.products_manager.exception;
+
+public class ImportFailedException extends RuntimeException {
+    public ImportFailedException(String message) {
+        super(message);
+    }
+
+    public ImportFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.products_manager.exception;
+
+public class IngestionQueueFullException extends RuntimeException {
+    public IngestionQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.products_manager.exception;
+
+public class InvalidQueryParameterException extends RuntimeException {
+    public InvalidQueryParameterException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Request class for updating the price or the rating of many products at once.
+ * The products are selected either by a tag, by a list of barcodes, or by a price and rating range.
+ * The operation sets the field to the value, adds the value to it, or multiplies it by the value as a percentage
+ * (e.g. 90 for a 10% discount).
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkUpdateRequest {
+    private String tag;
+    private List<String> barcodes;
+    private Float minPrice;
+    private Float maxPrice;
+    private Float minRating;
+    private Float maxRating;
+    private String field;
+    private String operation;
+    private Float value;
+
+    /**
+     * @return whether the products are selected by a price and rating range
+     */
+    public boolean isRangeSelector() {
+        return minPrice != null || maxPrice != null || minRating != null || maxRating != null;
+    }
+}
@@ -0,0 +1,26 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Denormalized view of a single product, together with the names of its tags.
+ * This class is used to feed the in-memory structures that are derived from the catalog.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogEntry {
+    private Long id;
+    private String barcode;
+    private String name;
+    private String image;
+    private Float rating;
+    private Float price;
+    private List<String> tags;
+}
@@ -0,0 +1,26 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Response class for the state of the change log tailer of this instance.
+ * The lag of a change is the time from when it was recorded by another instance to when it was applied by this one.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeLogStats {
+    private boolean enabled;
+    private String nodeId;
+    private long lastChangeId;
+    private int pendingGaps;
+    private long appliedChanges;
+    private long lastLagMs;
+    private long maxLagMs;
+    private long msSinceLastPoll;
+    private long failedPolls;
+}
@@ -0,0 +1,26 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Response class for a completed bulk import.
+ * Skipped records are the ones that had already been committed by a previous, interrupted run of the same import.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportReport {
+    private String file;
+    private long readRecords;
+    private long importedProducts;
+    private long rejectedRecords;
+    private long skippedRecords;
+    private int chunks;
+    private long durationMs;
+    private long productsPerSecond;
+    private String rejectedRecordsFile;
+}
@@ -0,0 +1,25 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Map;
+
+/**
+ * Response class for the statistics of a single numeric field (price or rating) of a group of products.
+ * The histogram maps the lower bound of each bucket to the number of values that fall in it.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MetricStatsResponse {
+    private long count;
+    private Float min;
+    private Float max;
+    private Double avg;
+    private float histogramBucketWidth;
+    private Map<Double, Long> histogram;
+}
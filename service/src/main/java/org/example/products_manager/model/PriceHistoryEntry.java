@@ -0,0 +1,42 @@
+package org.example.products_manager.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+
+/**
+ * Entity class for an entry of the price history.
+ * Each instance of this class records the price and the rating of a product after one of them changed.
+ * Entries are only ever inserted, and are kept after the product is deleted.
+ * The time of the change is stored as a plain timestamp, so that the entries written with JDBC by the
+ * PriceHistoryWriter are read back the same way.
+ * Its scheme is defined by the corresponding table in the database.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "product_price_history",
+        indexes = @Index(name = "idx_product_price_history_product_changed_at", columnList = "product_id, changed_at"))
+public class PriceHistoryEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    @Column(name = "changed_at", nullable = false)
+    @JdbcTypeCode(SqlTypes.TIMESTAMP)
+    private Instant changedAt;
+    @Column(name = "price")
+    private Float price;
+    @Column(name = "rating")
+    private Float rating;
+}
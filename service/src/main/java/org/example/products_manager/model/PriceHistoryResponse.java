@@ -0,0 +1,21 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Response class for an entry of the price history of a product: its price and rating as of a change.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceHistoryResponse {
+    private Instant changedAt;
+    private Float price;
+    private Float rating;
+}
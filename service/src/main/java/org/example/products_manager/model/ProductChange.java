@@ -0,0 +1,34 @@
+package org.example.products_manager.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Entity class for an entry of the change log.
+ * Each instance of this class records that a product was created, updated or deleted, in the same transaction as the change,
+ * and which instance of the service made the change.
+ * Its scheme is defined by the corresponding table in the database.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "product_changes", indexes = @Index(name = "idx_product_changes_changed_at", columnList = "changed_at"))
+public class ProductChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+    @Column(name = "origin", length = 64)
+    private String origin;
+}
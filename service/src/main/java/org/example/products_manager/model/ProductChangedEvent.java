@@ -0,0 +1,19 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Event published whenever a product is created, updated or deleted.
+ * Holds the state of the product after the change, or no entry if the product was deleted.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductChangedEvent {
+    private final Long productId;
+    private final CatalogEntry entry;
+
+    public boolean isDeletion() {
+        return entry == null;
+    }
+}
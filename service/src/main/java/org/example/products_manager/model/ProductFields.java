@@ -0,0 +1,112 @@
+package org.example.products_manager.model;
+
+import org.example.products_manager.exception.InvalidQueryParameterException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fields of a product requested with the {@code fields} query parameter (a sparse fieldset).
+ * Only the requested fields are read and returned, always in the order of {@link ProductResponse}.
+ */
+public final class ProductFields {
+
+    public static final List<String> NAMES = List.of("barcode", "name", "image", "rating", "price", "tags");
+
+    private static final ProductFields ALL = new ProductFields(NAMES);
+
+    private final List<String> names;
+
+    private ProductFields(List<String> names) {
+        this.names = Collections.unmodifiableList(names);
+    }
+
+    public static ProductFields all() {
+        return ALL;
+    }
+
+    /**
+     * Parses a comma-separated list of field names, e.g. "barcode,name,price".
+     *
+     * @param fields the field names
+     * @return the requested fields
+     * @throws InvalidQueryParameterException if no field or an unknown field is requested
+     */
+    public static ProductFields parse(String fields) {
+        List<String> requested = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            field = field.trim();
+            if (field.isEmpty()) {
+                continue;
+            }
+            if (!NAMES.contains(field)) {
+                throw new InvalidQueryParameterException("Unknown product field: " + field);
+            }
+            requested.add(field);
+        }
+        if (requested.isEmpty()) {
+            throw new InvalidQueryParameterException("At least one product field must be requested");
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : NAMES) {
+            if (requested.contains(name)) {
+                names.add(name);
+            }
+        }
+        return new ProductFields(names);
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public boolean includes(String field) {
+        return names.contains(field);
+    }
+
+    public boolean includesTags() {
+        return includes("tags");
+    }
+
+    /**
+     * @return the requested fields that are columns of the products table, i.e. all of them but the tags
+     */
+    public List<String> getColumns() {
+        return names.stream().filter(name -> !name.equals("tags")).toList();
+    }
+
+    /**
+     * Copies the requested fields of a product.
+     *
+     * @param productResponse the product
+     * @return the values of the requested fields, by field name
+     */
+    public Map<String, Object> select(ProductResponse productResponse) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String name : names) {
+            switch (name) {
+                case "barcode":
+                    values.put(name, productResponse.getBarcode());
+                    break;
+                case "name":
+                    values.put(name, productResponse.getName());
+                    break;
+                case "image":
+                    values.put(name, productResponse.getImage());
+                    break;
+                case "rating":
+                    values.put(name, productResponse.getRating());
+                    break;
+                case "price":
+                    values.put(name, productResponse.getPrice());
+                    break;
+                default:
+                    values.put(name, productResponse.getTags());
+            }
+        }
+        return values;
+    }
+}
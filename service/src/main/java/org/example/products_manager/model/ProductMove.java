@@ -0,0 +1,35 @@
+package org.example.products_manager.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Entity class for a move of a product between two shards, in progress.
+ * Each instance of this class records the id of the product in its current shard and the id of its copy in the shard
+ * of its new barcode, before either shard commits, and is deleted once the move completed or was undone.
+ * A record left behind by a failure is reconciled on startup by the ShardedProductsService.
+ * Its scheme is defined by the corresponding table in the database.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "product_moves")
+public class ProductMove {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    @Column(name = "copy_id", nullable = false)
+    private Long copyId;
+    @Column(name = "started_at", nullable = false)
+    private Instant startedAt;
+}
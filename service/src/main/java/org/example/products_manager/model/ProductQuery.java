@@ -0,0 +1,29 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Query parameters for listing products.
+ * Besides the sort order, a query may restrict the products to a price and rating range and limit their number.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductQuery {
+    private String sortBy;
+    private Float minPrice;
+    private Float maxPrice;
+    private Float minRating;
+    private Integer top;
+
+    /**
+     * @return whether the query restricts the products by range or by number, rather than only sorting them
+     */
+    public boolean isRangeQuery() {
+        return minPrice != null || maxPrice != null || minRating != null || top != null;
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Event published when many products are changed at once by a set-based update, whose new state is not known
+ * without reading them back from the database.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductsChangedEvent {
+    private final List<Long> productIds;
+}
@@ -0,0 +1,19 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Response class for a product similar to another one, together with the Jaccard similarity of their tags:
+ * the number of tags they share over the number of tags of either product.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimilarProductResponse {
+    private ProductResponse product;
+    private double similarity;
+}
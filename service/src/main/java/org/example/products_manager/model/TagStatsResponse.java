@@ -0,0 +1,20 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Response class for the price and rating statistics of the products associated with a tag.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TagStatsResponse {
+    private String tag;
+    private long productCount;
+    private MetricStatsResponse price;
+    private MetricStatsResponse rating;
+}
@@ -0,0 +1,28 @@
+package org.example.products_manager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Response class for the state of the write-behind update queue.
+ * The lag is the age of the oldest update that was accepted but not yet written to the database.
+ * Dropped updates were acknowledged but then rejected by the database, and were never written.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class WriteBehindStats {
+    private boolean enabled;
+    private int pendingProducts;
+    private long lagMs;
+    private long acceptedUpdates;
+    private long coalescedUpdates;
+    private long rejectedUpdates;
+    private long flushedProducts;
+    private long droppedUpdates;
+    private long failedFlushes;
+    private long lastFlushDurationMs;
+}
@@ -0,0 +1,138 @@
+package org.example.products_manager.repository;
+
+import org.example.products_manager.model.BulkUpdateRequest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SQL of a validated bulk update request: the condition selecting the products, on the products table
+ * aliased as {@code p}, and the assignment of the updated column, with their named parameters.
+ *
+ * Products selected by tag are found with a semi-join on product_tags rather than an UPDATE ... JOIN,
+ * which not every database supports; MySQL runs both the same way. Column names come from a fixed list,
+ * and values are always parameters.
+ */
+public class BulkUpdateStatement {
+
+    private static final List<String> COLUMNS = List.of("price", "rating");
+
+    private final String condition;
+    private final String column;
+    private final String value;
+    private final Map<String, Object> conditionParameters;
+    private final Map<String, Object> parameters;
+
+    private BulkUpdateStatement(String condition, String column, String value,
+                                Map<String, Object> conditionParameters, Map<String, Object> parameters) {
+        this.condition = condition;
+        this.column = column;
+        this.value = value;
+        this.conditionParameters = conditionParameters;
+        this.parameters = parameters;
+    }
+
+    /**
+     * @param request a validated bulk update request
+     * @return the SQL of the request
+     */
+    public static BulkUpdateStatement of(BulkUpdateRequest request) {
+        Map<String, Object> parameters = new HashMap<>();
+        StringBuilder condition = new StringBuilder();
+        if (request.getTag() != null) {
+            condition.append("p.id IN (SELECT pt.product_id FROM product_tags pt JOIN tags t ON t.id = pt.tag_id WHERE t.tag_name = :tag)");
+            parameters.put("tag", request.getTag());
+        } else if (request.getBarcodes() != null) {
+            condition.append("p.barcode IN (:barcodes)");
+            parameters.put("barcodes", request.getBarcodes());
+        } else {
+            condition.append("1 = 1");
+            appendBound(condition, parameters, "p.price >= :minPrice", "minPrice", request.getMinPrice());
+            appendBound(condition, parameters, "p.price <= :maxPrice", "maxPrice", request.getMaxPrice());
+            appendBound(condition, parameters, "p.rating >= :minRating", "minRating", request.getMinRating());
+            appendBound(condition, parameters, "p.rating <= :maxRating", "maxRating", request.getMaxRating());
+        }
+
+        Map<String, Object> conditionParameters = new HashMap<>(parameters);
+
+        String column = request.getField();
+        if (!COLUMNS.contains(column)) {
+            throw new IllegalArgumentException("Unknown bulk update column: " + column);
+        }
+        String value;
+        switch (request.getOperation()) {
+            case "set":
+                value = ":value";
+                parameters.put("value", request.getValue());
+                break;
+            case "add":
+                // Never below zero; a missing value stays missing
+                value = "CASE WHEN " + column + " + :value < 0 THEN 0 ELSE " + column + " + :value END";
+                parameters.put("value", request.getValue());
+                break;
+            case "multiply":
+                value = "ROUND(" + column + " * :factor, 2)";
+                parameters.put("factor", request.getValue() / 100.0);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown bulk update operation: " + request.getOperation());
+        }
+        return new BulkUpdateStatement(condition.toString(), column, value, conditionParameters, parameters);
+    }
+
+    private static void appendBound(StringBuilder condition, Map<String, Object> parameters,
+                                    String bound, String name, Float value) {
+        if (value != null) {
+            condition.append(" AND ").append(bound);
+            parameters.put(name, value);
+        }
+    }
+
+    /**
+     * @return the query of the ids of the selected products, locking them until the end of the transaction
+     */
+    public String selectIdsForUpdate() {
+        return "SELECT p.id FROM products p WHERE " + condition + " FOR UPDATE";
+    }
+
+    /**
+     * @return the statement recording a change of every selected product in the change log,
+     * with the additional parameters changedAt and origin
+     */
+    public String recordChanges() {
+        return "INSERT INTO product_changes (product_id, changed_at, origin) SELECT p.id, :changedAt, :origin FROM products p WHERE " + condition;
+    }
+
+    /**
+     * @return the statement recording the new price and rating of every selected product in the price history,
+     * computed from the current values, with the additional parameter changedAt
+     */
+    public String recordPriceHistory() {
+        String price = column.equals("price") ? value : "p.price";
+        String rating = column.equals("rating") ? value : "p.rating";
+        return "INSERT INTO product_price_history (product_id, changed_at, price, rating) SELECT p.id, :changedAt, "
+                + price + ", " + rating + " FROM products p WHERE " + condition;
+    }
+
+    /**
+     * @return the statement updating the selected products
+     */
+    public String update() {
+        return "UPDATE products p SET " + column + " = " + value + " WHERE " + condition;
+    }
+
+    /**
+     * @return the parameters of the condition only, for the statements that do not compute the new values
+     */
+    public Map<String, Object> getConditionParameters() {
+        return conditionParameters;
+    }
+
+    /**
+     * @return the parameters of both the condition and the assignment
+     */
+    public Map<String, Object> getParameters() {
+        return parameters;
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.products_manager.repository;
+
+import org.example.products_manager.model.PriceHistoryEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * This interface provides methods for reading the PriceHistoryEntry entity.
+ * Entries are written in batches by the PriceHistoryWriter.
+ */
+public interface PriceHistoryRepository extends JpaRepository<PriceHistoryEntry, Long> {
+
+    // Finds the entries of a product recorded in the given time range (inclusive), served by the index on (product_id, changed_at)
+    List<PriceHistoryEntry> findByProductIdAndChangedAtBetweenOrderByChangedAtAscIdAsc(Long productId, Instant from, Instant to);
+}
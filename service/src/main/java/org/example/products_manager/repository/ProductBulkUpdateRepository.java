@@ -0,0 +1,47 @@
+package org.example.products_manager.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Runs the statements of a bulk update, each over all the selected products at once.
+ * Implemented by {@link ProductBulkUpdateRepositoryImpl} and exposed through {@link ProductRepository}.
+ * Must be called within a transaction.
+ */
+public interface ProductBulkUpdateRepository {
+
+    /**
+     * Finds the selected products and locks them until the end of the transaction, so that the same products
+     * are recorded and updated.
+     *
+     * @param statement the bulk update
+     * @return the ids of the selected products
+     */
+    List<Long> findIdsForBulkUpdate(BulkUpdateStatement statement);
+
+    /**
+     * Records a change of every selected product in the change log.
+     *
+     * @param statement the bulk update
+     * @param changedAt the time of the change
+     * @param origin the id of the instance making the change
+     */
+    void recordBulkUpdate(BulkUpdateStatement statement, Instant changedAt, String origin);
+
+    /**
+     * Records the new price and rating of every selected product in the price history.
+     * Must be called before the update.
+     *
+     * @param statement the bulk update
+     * @param changedAt the time of the change
+     */
+    void recordPriceHistory(BulkUpdateStatement statement, Instant changedAt);
+
+    /**
+     * Updates the selected products.
+     *
+     * @param statement the bulk update
+     * @return the number of updated products
+     */
+    int bulkUpdate(BulkUpdateStatement statement);
+}
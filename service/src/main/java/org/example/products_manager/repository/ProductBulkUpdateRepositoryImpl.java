@@ -0,0 +1,54 @@
+package org.example.products_manager.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the native SQL of a {@link BulkUpdateStatement} through the entity manager, within the current transaction.
+ */
+public class ProductBulkUpdateRepositoryImpl implements ProductBulkUpdateRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Long> findIdsForBulkUpdate(BulkUpdateStatement statement) {
+        List<?> ids = query(statement.selectIdsForUpdate(), statement.getConditionParameters()).getResultList();
+        return ids.stream().map(id -> ((Number) id).longValue()).toList();
+    }
+
+    @Override
+    public void recordBulkUpdate(BulkUpdateStatement statement, Instant changedAt, String origin) {
+        query(statement.recordChanges(), statement.getConditionParameters())
+                .setParameter("changedAt", changedAt)
+                .setParameter("origin", origin)
+                .executeUpdate();
+    }
+
+    @Override
+    public void recordPriceHistory(BulkUpdateStatement statement, Instant changedAt) {
+        // Bound as a timestamp, as the column of PriceHistoryEntry is mapped
+        query(statement.recordPriceHistory(), statement.getParameters())
+                .setParameter("changedAt", Timestamp.from(changedAt))
+                .executeUpdate();
+    }
+
+    @Override
+    public int bulkUpdate(BulkUpdateStatement statement) {
+        return query(statement.update(), statement.getParameters()).executeUpdate();
+    }
+
+    private Query query(String sql, Map<String, Object> parameters) {
+        Query query = entityManager.createNativeQuery(sql);
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            query.setParameter(parameter.getKey(), parameter.getValue());
+        }
+        return query;
+    }
+}
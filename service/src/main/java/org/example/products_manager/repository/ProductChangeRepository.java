@@ -0,0 +1,48 @@
+package org.example.products_manager.repository;
+
+import org.example.products_manager.model.ProductChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This interface provides methods for performing CRUD operations on the ProductChange entity.
+ */
+public interface ProductChangeRepository extends JpaRepository<ProductChange, Long> {
+
+    // JPQL query to find the id of the latest change, or null if no change was recorded
+    @Query("SELECT MAX(c.id) FROM ProductChange c")
+    Long findMaxId();
+
+    // JPQL query to find the products changed after the given change, or recorded at or after the given time
+    @Query("SELECT DISTINCT c.productId FROM ProductChange c WHERE c.id > :changeId OR c.changedAt >= :since")
+    List<Long> findProductIdsChangedSince(@Param("changeId") long changeId, @Param("since") Instant since);
+
+    // JPQL query to find the ids of the changes recorded in the given range of ids (from exclusive, to inclusive)
+    @Query("SELECT c.id FROM ProductChange c WHERE c.id > :from AND c.id <= :to")
+    List<Long> findIdsBetween(@Param("from") long from, @Param("to") long to);
+
+    // Finds the changes recorded after the given change, in the order they were recorded
+    List<ProductChange> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    // Finds the changes with the given ids, if they were recorded
+    List<ProductChange> findByIdIn(Collection<Long> ids);
+
+    // Native SQL query to record a change of every product with one of the given barcodes
+    @Modifying
+    @Query(value = "INSERT INTO product_changes (product_id, changed_at, origin) SELECT id, :changedAt, :origin FROM products WHERE barcode IN :barcodes", nativeQuery = true)
+    void recordChanges(@Param("barcodes") Collection<String> barcodes, @Param("changedAt") Instant changedAt, @Param("origin") String origin);
+
+    // JPQL query to delete the changes recorded before the given time
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ProductChange c WHERE c.changedAt < :before")
+    int deleteByChangedAtBefore(@Param("before") Instant before);
+}
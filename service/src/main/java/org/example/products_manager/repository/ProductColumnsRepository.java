@@ -0,0 +1,28 @@
+package org.example.products_manager.repository;
+
+import java.util.List;
+
+/**
+ * Reads only some columns of the products table, to serve sparse fieldsets without loading whole entities.
+ * Implemented by {@link ProductColumnsRepositoryImpl} and exposed through {@link ProductRepository}.
+ */
+public interface ProductColumnsRepository {
+
+    /**
+     * Reads the given columns of all the products, sorted in ascending order by the given field, then by id.
+     *
+     * @param columns the columns to read, among barcode, name, image, rating and price
+     * @param sortBy the field to sort by
+     * @return for each product, its id followed by the values of the columns
+     */
+    List<Object[]> findColumns(List<String> columns, String sortBy);
+
+    /**
+     * Reads the given columns of the product with the given barcode.
+     *
+     * @param columns the columns to read, among barcode, name, image, rating and price
+     * @param barcode the barcode
+     * @return the id of the product followed by the values of the columns, or an empty list if there is no such product
+     */
+    List<Object[]> findColumnsByBarcode(List<String> columns, String barcode);
+}
@@ -0,0 +1,53 @@
+package org.example.products_manager.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+
+import java.util.List;
+
+/**
+ * Builds the JPQL projection of the requested columns. Column and sort field names are checked against
+ * the fields of a product before they are put in the query.
+ */
+public class ProductColumnsRepositoryImpl implements ProductColumnsRepository {
+
+    private static final List<String> COLUMNS = List.of("barcode", "name", "image", "rating", "price");
+    private static final List<String> SORTABLE_FIELDS = List.of("id", "barcode", "name", "image", "rating", "price");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Object[]> findColumns(List<String> columns, String sortBy) {
+        if (!SORTABLE_FIELDS.contains(sortBy)) {
+            throw new InvalidQueryParameterException("Products cannot be sorted by " + sortBy);
+        }
+        String jpql = select(columns) + " ORDER BY p." + sortBy + (sortBy.equals("id") ? "" : ", p.id");
+        return toArrays(entityManager.createQuery(jpql, Tuple.class));
+    }
+
+    @Override
+    public List<Object[]> findColumnsByBarcode(List<String> columns, String barcode) {
+        TypedQuery<Tuple> query = entityManager.createQuery(select(columns) + " WHERE p.barcode = :barcode", Tuple.class);
+        query.setParameter("barcode", barcode);
+        return toArrays(query);
+    }
+
+    private static String select(List<String> columns) {
+        StringBuilder jpql = new StringBuilder("SELECT p.id");
+        for (String column : columns) {
+            if (!COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("Unknown product column: " + column);
+            }
+            jpql.append(", p.").append(column);
+        }
+        return jpql.append(" FROM Product p").toString();
+    }
+
+    private static List<Object[]> toArrays(TypedQuery<Tuple> query) {
+        return query.getResultList().stream().map(Tuple::toArray).toList();
+    }
+}
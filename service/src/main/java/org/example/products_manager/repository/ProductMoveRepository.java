@@ -0,0 +1,22 @@
+package org.example.products_manager.repository;
+
+import org.example.products_manager.model.ProductMove;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * This interface provides methods for performing CRUD operations on the ProductMove entity.
+ * Moves are saved and deleted in their own transactions, so that they are committed before the shards
+ * whatever transaction the move runs in.
+ */
+public interface ProductMoveRepository extends JpaRepository<ProductMove, Long> {
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    <S extends ProductMove> S save(S move);
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    void delete(ProductMove move);
+}
@@ -9,6 +9,7 @@ import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,9 +17,17 @@ import java.util.Optional;
  * This interface provides methods for performing CRUD operations on the Product entity.
  */
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductColumnsRepository, ProductBulkUpdateRepository {
     Optional<Product> findByBarcode(String barcode);
 
+    // JPQL query to find which of the given barcodes are already used by products
+    @Query("SELECT p.barcode FROM Product p WHERE p.barcode IN :barcodes")
+    List<String> findExistingBarcodes(@Param("barcodes") Collection<String> barcodes);
+
+    // JPQL query to find the (ID, barcode) pairs of the products with the given barcodes
+    @Query("SELECT p.id, p.barcode FROM Product p WHERE p.barcode IN :barcodes")
+    List<Object[]> findIdsByBarcodes(@Param("barcodes") Collection<String> barcodes);
+
     // JPQL query to find tags in product_tags table by product ID
     @Query("SELECT t FROM Tag t JOIN ProductTag pt ON t.id = pt.tag.id WHERE pt.product.id = :productId")
     List<Tag> findTagsByProductId(@Param("productId") Long productId);
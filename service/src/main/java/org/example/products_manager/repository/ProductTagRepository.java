@@ -2,7 +2,10 @@ package org.example.products_manager.repository;
 
 import org.example.products_manager.model.ProductTag;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -10,4 +13,12 @@ import java.util.List;
  */
 public interface ProductTagRepository extends JpaRepository<ProductTag, Long> {
     List<ProductTag> findByProductId(Long productId);
-}
\ No newline at end of file
+
+    // JPQL query to find all (product ID, tag name) pairs, in the order the tags were associated
+    @Query("SELECT pt.product.id, t.tagName FROM ProductTag pt JOIN pt.tag t ORDER BY pt.id")
+    List<Object[]> findAllProductTagNames();
+
+    // JPQL query to find the (product ID, tag name) pairs of the given products, in the order the tags were associated
+    @Query("SELECT pt.product.id, t.tagName FROM ProductTag pt JOIN pt.tag t WHERE pt.product.id IN :productIds ORDER BY pt.id")
+    List<Object[]> findProductTagNamesByProductIds(@Param("productIds") Collection<Long> productIds);
+}
@@ -0,0 +1,145 @@
+package org.example.products_manager.repository;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Readable;
+import jakarta.annotation.PreDestroy;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.ProductResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Non-blocking access to the products over R2DBC, on the same schema as the JPA repositories.
+ *
+ * A product and its tags are read with a single query that joins the tags, ordered by product, and the rows of
+ * each product are grouped as they arrive. Rows are fetched as the subscriber requests them, so a slow consumer
+ * holds a connection rather than a thread, and the whole result is never held in memory.
+ * The connection pool belongs to this repository and is not exposed as a bean, so the JPA transaction manager
+ * remains the only one in the application context.
+ * Registered when {@code products.reactive.r2dbc-url} is set, so the application starts without a reactive database.
+ */
+@ConditionalOnProperty("products.reactive.r2dbc-url")
+@Repository
+public class ReactiveProductRepository {
+
+    private static final List<String> SORTABLE_FIELDS = List.of("id", "barcode", "name", "image", "rating", "price");
+
+    private static final String SELECT_PRODUCTS_WITH_TAGS =
+            "SELECT p.id, p.barcode, p.name, p.image, p.rating, p.price, t.tag_name FROM products p "
+                    + "LEFT JOIN product_tags pt ON pt.product_id = p.id LEFT JOIN tags t ON t.id = pt.tag_id";
+
+    private final ConnectionPool connectionPool;
+    private final DatabaseClient databaseClient;
+
+    public ReactiveProductRepository(@Value("${products.reactive.r2dbc-url}") String url,
+                                     @Value("${spring.datasource.username:}") String username,
+                                     @Value("${spring.datasource.password:}") String password,
+                                     @Value("${products.reactive.pool-size:20}") int poolSize) {
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (!username.isBlank()) {
+            options.option(ConnectionFactoryOptions.USER, username).option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+        this.connectionPool = new ConnectionPool(ConnectionPoolConfiguration
+                .builder(ConnectionFactories.get(options.build()))
+                .initialSize(Math.min(poolSize, 10))
+                .maxSize(poolSize)
+                .build());
+        this.databaseClient = DatabaseClient.create(connectionPool);
+    }
+
+    @PreDestroy
+    public void close() {
+        connectionPool.dispose();
+    }
+
+    /**
+     * Streams all the products, sorted in ascending order by the given field, then by id.
+     *
+     * @param sortBy the field to sort by
+     * @return the products, emitted as they are read
+     * @throws InvalidQueryParameterException if the products cannot be sorted by the given field
+     */
+    public Flux<ProductResponse> findAll(String sortBy) {
+        if (!SORTABLE_FIELDS.contains(sortBy)) {
+            throw new InvalidQueryParameterException("Products cannot be sorted by " + sortBy);
+        }
+        String orderBy = sortBy.equals("id") ? "p.id" : "p." + sortBy + ", p.id";
+        return groupByProduct(databaseClient.sql(SELECT_PRODUCTS_WITH_TAGS + " ORDER BY " + orderBy + ", pt.id")
+                .map(ReactiveProductRepository::toProductTagRow)
+                .all());
+    }
+
+    /**
+     * Reads the product with the given barcode.
+     *
+     * @param barcode the barcode
+     * @return the product, or an empty Mono if there is no such product
+     */
+    public Mono<ProductResponse> findByBarcode(String barcode) {
+        return groupByProduct(databaseClient.sql(SELECT_PRODUCTS_WITH_TAGS + " WHERE p.barcode = :barcode ORDER BY pt.id")
+                .bind("barcode", barcode)
+                .map(ReactiveProductRepository::toProductTagRow)
+                .all())
+                .next();
+    }
+
+    private static Flux<ProductResponse> groupByProduct(Flux<ProductTagRow> rows) {
+        return rows.bufferUntilChanged(row -> row.productId).map(ReactiveProductRepository::toProductResponse);
+    }
+
+    private static ProductTagRow toProductTagRow(Readable row) {
+        return new ProductTagRow(
+                row.get("id", Long.class),
+                row.get("barcode", String.class),
+                row.get("name", String.class),
+                row.get("image", String.class),
+                row.get("rating", Float.class),
+                row.get("price", Float.class),
+                row.get("tag_name", String.class));
+    }
+
+    private static ProductResponse toProductResponse(List<ProductTagRow> rows) {
+        ProductTagRow first = rows.get(0);
+        List<String> tags = new ArrayList<>(rows.size());
+        for (ProductTagRow row : rows) {
+            if (row.tagName != null) {
+                tags.add(row.tagName);
+            }
+        }
+        return new ProductResponse(first.barcode, first.name, first.image, first.rating, first.price, tags);
+    }
+
+    /**
+     * A row of the join: a product and one of its tags, or no tag if the product has none.
+     */
+    private static final class ProductTagRow {
+        private final Long productId;
+        private final String barcode;
+        private final String name;
+        private final String image;
+        private final Float rating;
+        private final Float price;
+        private final String tagName;
+
+        private ProductTagRow(Long productId, String barcode, String name, String image,
+                              Float rating, Float price, String tagName) {
+            this.productId = productId;
+            this.barcode = barcode;
+            this.name = name;
+            this.image = image;
+            this.rating = rating;
+            this.price = price;
+            this.tagName = tagName;
+        }
+    }
+}
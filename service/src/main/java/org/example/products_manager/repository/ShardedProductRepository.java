@@ -0,0 +1,478 @@
+package org.example.products_manager.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.Product;
+import org.example.products_manager.model.ProductTag;
+import org.example.products_manager.model.Tag;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Products and their tags, partitioned across several databases by barcode.
+ *
+ * A product and its product_tags rows are stored in the shard selected by a hash of its barcode, while tags are
+ * replicated to every shard, so that linking a product to its tags never leaves the shard of the product.
+ * Each shard assigns its own product ids, which are made unique across shards by encoding the shard in them:
+ * the id of a product is {@code localId * MAX_SHARDS + shard}.
+ * The shards are only used when {@code products.sharding.enabled} is set. Their connection pools and transaction
+ * managers belong to this repository and are not exposed as beans, so the JPA transaction manager remains the only
+ * one in the application context. A transaction of one shard may be nested in the transaction of another one;
+ * they are committed separately, the inner one first.
+ */
+@Repository
+public class ShardedProductRepository {
+
+    public static final int MAX_SHARDS = 1024;
+
+    private static final List<String> SORTABLE_FIELDS = List.of("id", "barcode", "name", "image", "rating", "price");
+
+    private static final String SELECT_PRODUCTS = "SELECT id, barcode, name, image, rating, price FROM products";
+    private static final String SELECT_PRODUCT_TAG_NAMES =
+            "SELECT pt.product_id, t.tag_name FROM product_tags pt JOIN tags t ON t.id = pt.tag_id";
+    private static final int IN_LIST_SIZE = 1000;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final ExecutorService readers;
+
+    public ShardedProductRepository(@Value("${products.sharding.enabled:false}") boolean enabled,
+                                    @Value("${products.sharding.urls:}") String urls,
+                                    @Value("${spring.datasource.username:}") String username,
+                                    @Value("${spring.datasource.password:}") String password,
+                                    @Value("${products.sharding.update-schema:true}") boolean updateSchema) {
+        if (!enabled) {
+            this.readers = null;
+            return;
+        }
+        List<String> shardUrls = Arrays.stream(urls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toList();
+        if (shardUrls.isEmpty() || shardUrls.size() > MAX_SHARDS) {
+            throw new IllegalStateException("products.sharding.urls must list between 1 and " + MAX_SHARDS + " JDBC URLs");
+        }
+        for (int i = 0; i < shardUrls.size(); i++) {
+            DataSource dataSource = DataSourceBuilder.create()
+                    .url(shardUrls.get(i))
+                    .username(username)
+                    .password(password)
+                    .build();
+            if (updateSchema) {
+                updateSchema(dataSource);
+            }
+            shards.add(new Shard(dataSource));
+        }
+        this.readers = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (readers != null) {
+            readers.shutdownNow();
+        }
+        for (Shard shard : shards) {
+            if (shard.dataSource instanceof Closeable) {
+                ((Closeable) shard.dataSource).close();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return !shards.isEmpty();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @param barcode the barcode of a product
+     * @return the shard in which the product with the given barcode is stored
+     */
+    public int shardOf(String barcode) {
+        CRC32 crc = new CRC32();
+        crc.update(barcode.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % shards.size());
+    }
+
+    /**
+     * @param productId the id of a product
+     * @return the shard in which the product with the given id is stored
+     */
+    public static int shardOfId(long productId) {
+        return (int) (productId % MAX_SHARDS);
+    }
+
+    /**
+     * Runs the given callback within a transaction of a single shard.
+     * A transaction of another shard may be started within the callback; it is independent of this one,
+     * and is committed or rolled back before the callback returns.
+     *
+     * @param shard the shard
+     * @param callback the work to do within the transaction
+     * @return the result of the callback
+     */
+    public <T> T inTransaction(int shard, TransactionCallback<T> callback) {
+        return shards.get(shard).transactionTemplate.execute(callback);
+    }
+
+    /**
+     * Reads a product and its tag names from a shard.
+     *
+     * @param shard the shard
+     * @param barcode the barcode of the product
+     * @return the product, if it exists in the shard
+     */
+    public Optional<CatalogEntry> findByBarcode(int shard, String barcode) {
+        JdbcTemplate jdbcTemplate = shards.get(shard).jdbcTemplate.getJdbcTemplate();
+        List<CatalogEntry> entries = jdbcTemplate.query(SELECT_PRODUCTS + " WHERE barcode = ?",
+                (resultSet, row) -> toCatalogEntry(resultSet, shard), barcode);
+        if (entries.isEmpty()) {
+            return Optional.empty();
+        }
+        CatalogEntry entry = entries.get(0);
+        entry.setTags(jdbcTemplate.queryForList("SELECT t.tag_name FROM product_tags pt JOIN tags t ON t.id = pt.tag_id "
+                + "WHERE pt.product_id = ? ORDER BY pt.id", String.class, localId(entry.getId())));
+        return Optional.of(entry);
+    }
+
+    /**
+     * Reads all the products and their tag names from every shard, reading the shards in parallel.
+     * The products of each shard are sorted by the database of the shard in ascending order by the given field,
+     * missing values first, then by id. Names and images are sorted by their lower-case value, so that the shards
+     * are sorted alike whatever the collation of their databases.
+     *
+     * @param sortBy the field to sort by
+     * @return the products of each shard, by shard
+     * @throws InvalidQueryParameterException if the products cannot be sorted by the given field
+     */
+    public List<List<CatalogEntry>> findAllOnEachShard(String sortBy) {
+        if (!SORTABLE_FIELDS.contains(sortBy)) {
+            throw new InvalidQueryParameterException("Products cannot be sorted by " + sortBy);
+        }
+        String orderBy;
+        switch (sortBy) {
+            case "id":
+                orderBy = "id";
+                break;
+            case "name":
+            case "image":
+                orderBy = "CASE WHEN " + sortBy + " IS NULL THEN 0 ELSE 1 END, LOWER(" + sortBy + "), id";
+                break;
+            default:
+                orderBy = "CASE WHEN " + sortBy + " IS NULL THEN 0 ELSE 1 END, " + sortBy + ", id";
+        }
+        List<CompletableFuture<List<CatalogEntry>>> reads = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            reads.add(CompletableFuture.supplyAsync(() -> findAll(shard, orderBy), readers));
+        }
+        List<List<CatalogEntry>> entriesByShard = new ArrayList<>(shards.size());
+        try {
+            for (CompletableFuture<List<CatalogEntry>> read : reads) {
+                entriesByShard.add(read.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return entriesByShard;
+    }
+
+    private List<CatalogEntry> findAll(int shard, String orderBy) {
+        NamedParameterJdbcTemplate jdbcTemplate = shards.get(shard).jdbcTemplate;
+        Map<Long, List<String>> tagsByProductId = new HashMap<>();
+        jdbcTemplate.getJdbcTemplate().query(SELECT_PRODUCT_TAG_NAMES + " ORDER BY pt.id", resultSet -> {
+            tagsByProductId.computeIfAbsent(resultSet.getLong(1), id -> new ArrayList<>()).add(resultSet.getString(2));
+        });
+        List<CatalogEntry> entries = jdbcTemplate.getJdbcTemplate().query(SELECT_PRODUCTS + " ORDER BY " + orderBy,
+                (resultSet, row) -> toCatalogEntry(resultSet, shard));
+        for (CatalogEntry entry : entries) {
+            entry.setTags(tagsByProductId.getOrDefault(localId(entry.getId()), new ArrayList<>()));
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the given products and their tag names from their shards. Products that do not exist are skipped.
+     *
+     * @param productIds the ids of the products
+     * @return an entry for every existing product
+     */
+    public List<CatalogEntry> findAllById(Collection<Long> productIds) {
+        Map<Integer, List<Long>> localIdsByShard = new LinkedHashMap<>();
+        for (Long productId : productIds) {
+            localIdsByShard.computeIfAbsent(shardOfId(productId), shard -> new ArrayList<>()).add(localId(productId));
+        }
+        List<CatalogEntry> entries = new ArrayList<>(productIds.size());
+        for (Map.Entry<Integer, List<Long>> shardIds : localIdsByShard.entrySet()) {
+            int shard = shardIds.getKey();
+            if (shard >= shards.size()) {
+                continue;
+            }
+            List<Long> localIds = shardIds.getValue();
+            for (int from = 0; from < localIds.size(); from += IN_LIST_SIZE) {
+                entries.addAll(findAllById(shard, localIds.subList(from, Math.min(from + IN_LIST_SIZE, localIds.size()))));
+            }
+        }
+        return entries;
+    }
+
+    private List<CatalogEntry> findAllById(int shard, List<Long> localIds) {
+        NamedParameterJdbcTemplate jdbcTemplate = shards.get(shard).jdbcTemplate;
+        Map<String, Object> parameters = Map.of("ids", localIds);
+        Map<Long, List<String>> tagsByProductId = new HashMap<>();
+        jdbcTemplate.query(SELECT_PRODUCT_TAG_NAMES + " WHERE pt.product_id IN (:ids) ORDER BY pt.id", parameters, resultSet -> {
+            tagsByProductId.computeIfAbsent(resultSet.getLong(1), id -> new ArrayList<>()).add(resultSet.getString(2));
+        });
+        List<CatalogEntry> entries = jdbcTemplate.query(SELECT_PRODUCTS + " WHERE id IN (:ids)", parameters,
+                (resultSet, row) -> toCatalogEntry(resultSet, shard));
+        for (CatalogEntry entry : entries) {
+            entry.setTags(tagsByProductId.getOrDefault(localId(entry.getId()), new ArrayList<>()));
+        }
+        return entries;
+    }
+
+    /**
+     * Inserts a product into a shard and links it to its tags, creating the tags that do not exist yet in every shard.
+     * The id of the entry is ignored.
+     *
+     * @param shard the shard
+     * @param entry the product and its tag names
+     * @return the id of the inserted product
+     * @throws DuplicateKeyException if a product with the same barcode already exists in the shard
+     */
+    public long insert(int shard, CatalogEntry entry) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        shards.get(shard).jdbcTemplate.getJdbcTemplate().update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO products (barcode, name, image, rating, price) VALUES (?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+            setProductColumns(statement, entry);
+            return statement;
+        }, keyHolder);
+        long localId = keyHolder.getKey().longValue();
+        linkTags(shard, localId, entry.getTags());
+        return globalId(localId, shard);
+    }
+
+    /**
+     * Updates a product in its shard.
+     *
+     * @param entry the new state of the product
+     * @param replaceTags whether the tags of the product are replaced by the tags of the entry
+     * @throws DuplicateKeyException if the barcode is changed to the barcode of another product of the shard
+     */
+    public void update(CatalogEntry entry, boolean replaceTags) {
+        int shard = shardOfId(entry.getId());
+        long localId = localId(entry.getId());
+        JdbcTemplate jdbcTemplate = shards.get(shard).jdbcTemplate.getJdbcTemplate();
+        jdbcTemplate.update("UPDATE products SET barcode = ?, name = ?, image = ?, rating = ?, price = ? WHERE id = ?",
+                statement -> {
+                    setProductColumns(statement, entry);
+                    statement.setLong(6, localId);
+                });
+        if (replaceTags) {
+            jdbcTemplate.update("DELETE FROM product_tags WHERE product_id = ?", localId);
+            linkTags(shard, localId, entry.getTags());
+        }
+    }
+
+    /**
+     * Runs a bulk update on a shard: finds and locks the selected products of the shard, then updates them.
+     * Must be called within a transaction of the shard.
+     *
+     * @param shard the shard
+     * @param statement the bulk update
+     * @return the ids of the updated products
+     */
+    public List<Long> bulkUpdate(int shard, BulkUpdateStatement statement) {
+        NamedParameterJdbcTemplate jdbcTemplate = shards.get(shard).jdbcTemplate;
+        List<Long> productIds = jdbcTemplate.query(statement.selectIdsForUpdate(), statement.getConditionParameters(),
+                (resultSet, row) -> globalId(resultSet.getLong(1), shard));
+        jdbcTemplate.update(statement.update(), statement.getParameters());
+        return productIds;
+    }
+
+    /**
+     * Deletes a product and its links to its tags from its shard.
+     *
+     * @param productId the id of the product
+     */
+    public void delete(long productId) {
+        JdbcTemplate jdbcTemplate = shards.get(shardOfId(productId)).jdbcTemplate.getJdbcTemplate();
+        jdbcTemplate.update("DELETE FROM product_tags WHERE product_id = ?", localId(productId));
+        jdbcTemplate.update("DELETE FROM products WHERE id = ?", localId(productId));
+    }
+
+    private void linkTags(int shard, long localId, List<String> tagNames) {
+        // Tags are created in the other shards first, each in its own short transaction, even when a transaction
+        // of that shard is in progress, so that a transaction never waits for a tag being created by another one
+        // while holding a new tag of its own shard
+        for (int other = 0; other < shards.size(); other++) {
+            if (other != shard) {
+                int otherShard = other;
+                for (String tagName : tagNames) {
+                    shards.get(otherShard).newTransactionTemplate.execute(status -> findOrCreateTag(otherShard, tagName));
+                }
+            }
+        }
+        List<Long> tagIds = new ArrayList<>(tagNames.size());
+        for (String tagName : tagNames) {
+            tagIds.add(findOrCreateTag(shard, tagName));
+        }
+        shards.get(shard).jdbcTemplate.getJdbcTemplate().batchUpdate(
+                "INSERT INTO product_tags (product_id, tag_id) VALUES (?, ?)", tagIds, tagIds.size(),
+                (statement, tagId) -> {
+                    statement.setLong(1, localId);
+                    statement.setLong(2, tagId);
+                });
+    }
+
+    /**
+     * Finds a tag by name in a shard, creating it if it does not exist.
+     * A tag created concurrently by another transaction is found again rather than reported as a duplicate.
+     */
+    private long findOrCreateTag(int shard, String tagName) {
+        JdbcTemplate jdbcTemplate = shards.get(shard).jdbcTemplate.getJdbcTemplate();
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM tags WHERE tag_name = ?", Long.class, tagName);
+        if (!ids.isEmpty()) {
+            return ids.get(0);
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement("INSERT INTO tags (tag_name) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+                statement.setString(1, tagName);
+                return statement;
+            }, keyHolder);
+        } catch (DuplicateKeyException e) {
+            return jdbcTemplate.queryForObject("SELECT id FROM tags WHERE tag_name = ?", Long.class, tagName);
+        }
+        return keyHolder.getKey().longValue();
+    }
+
+    private static void setProductColumns(PreparedStatement statement, CatalogEntry entry) throws SQLException {
+        statement.setString(1, entry.getBarcode());
+        statement.setString(2, entry.getName());
+        statement.setString(3, entry.getImage());
+        setFloat(statement, 4, entry.getRating());
+        setFloat(statement, 5, entry.getPrice());
+    }
+
+    private static void setFloat(PreparedStatement statement, int index, Float value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.REAL);
+        } else {
+            statement.setFloat(index, value);
+        }
+    }
+
+    private static CatalogEntry toCatalogEntry(ResultSet resultSet, int shard) throws SQLException {
+        return new CatalogEntry(
+                globalId(resultSet.getLong("id"), shard),
+                resultSet.getString("barcode"),
+                resultSet.getString("name"),
+                resultSet.getString("image"),
+                getFloat(resultSet, "rating"),
+                getFloat(resultSet, "price"),
+                null
+        );
+    }
+
+    private static Float getFloat(ResultSet resultSet, String column) throws SQLException {
+        float value = resultSet.getFloat(column);
+        return resultSet.wasNull() ? null : value;
+    }
+
+    private static long globalId(long localId, int shard) {
+        return localId * MAX_SHARDS + shard;
+    }
+
+    private static long localId(long productId) {
+        return productId / MAX_SHARDS;
+    }
+
+    /**
+     * Creates or updates the product tables of a shard, as Hibernate does for the main datasource
+     * with {@code spring.jpa.hibernate.ddl-auto=update}.
+     */
+    private static void updateSchema(DataSource dataSource) {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.JAKARTA_NON_JTA_DATASOURCE, dataSource)
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "update")
+                .build();
+        try {
+            Metadata metadata = new MetadataSources(registry)
+                    .addAnnotatedClass(Product.class)
+                    .addAnnotatedClass(Tag.class)
+                    .addAnnotatedClass(ProductTag.class)
+                    .buildMetadata();
+            Map<String, Object> settings = registry.requireService(ConfigurationService.class).getSettings();
+            SchemaManagementToolCoordinator.process(metadata, registry, settings, null);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Failed to update the schema of a shard", e);
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    private static final class Shard {
+        private final DataSource dataSource;
+        private final NamedParameterJdbcTemplate jdbcTemplate;
+        private final TransactionTemplate transactionTemplate;
+        private final TransactionTemplate newTransactionTemplate;
+
+        private Shard(DataSource dataSource) {
+            this.dataSource = dataSource;
+            this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+            DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+            this.transactionTemplate = new TransactionTemplate(transactionManager);
+            this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+            this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.example.products_manager.model.Tag;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -12,4 +13,6 @@ import java.util.List;
 @Repository
 public interface TagRepository extends CrudRepository<Tag, Long> {
     Tag findByTagName(String tagName);
+
+    List<Tag> findByTagNameIn(Collection<String> tagNames);
 }
@@ -0,0 +1,93 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.exception.DatabaseAccessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped in-process locks used to reserve barcodes for the duration of a transaction.
+ *
+ * Checking that a barcode is free and then inserting it is only safe if no other transaction can do the same
+ * in between, and the insert only becomes visible to others once the transaction commits. So a reservation
+ * is held until the current transaction completes, not until the method that took it returns.
+ * Barcodes are mapped to a fixed number of lock stripes. Stripes are always acquired in ascending order,
+ * so reserving several barcodes at once cannot deadlock.
+ */
+@Component
+public class BarcodeLocks {
+
+    private final ReentrantLock[] stripes;
+    private final long timeoutMs;
+
+    public BarcodeLocks(@Value("${products.barcode-locks.stripes:256}") int stripeCount,
+                        @Value("${products.barcode-locks.timeout-ms:5000}") long timeoutMs) {
+        this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Reserves the given barcodes until the current transaction commits or rolls back.
+     *
+     * @param barcodes the barcodes to reserve; null barcodes are ignored
+     * @throws IllegalStateException if there is no active transaction
+     * @throws DatabaseAccessException if a barcode could not be reserved within the timeout
+     */
+    public void lockUntilCompletion(String... barcodes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Barcodes can only be reserved within a transaction");
+        }
+        TreeSet<Integer> stripeIndexes = new TreeSet<>();
+        for (String barcode : barcodes) {
+            if (barcode != null) {
+                stripeIndexes.add(stripeOf(barcode));
+            }
+        }
+
+        List<ReentrantLock> acquired = new ArrayList<>(stripeIndexes.size());
+        try {
+            for (int index : stripeIndexes) {
+                ReentrantLock stripe = stripes[index];
+                if (!stripe.tryLock(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new DatabaseAccessException("Timed out waiting for a concurrent write of the same barcode");
+                }
+                acquired.add(stripe);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unlock(acquired);
+            throw new DatabaseAccessException("Interrupted while waiting for a concurrent write of the same barcode");
+        } catch (RuntimeException e) {
+            unlock(acquired);
+            throw e;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock(acquired);
+            }
+        });
+    }
+
+    private int stripeOf(String barcode) {
+        int hash = barcode.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private static void unlock(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.exception.InvalidProductRequestException;
+import org.example.products_manager.model.BulkUpdateRequest;
+
+import java.util.List;
+
+/**
+ * Validation rules of bulk update requests.
+ */
+public final class BulkUpdateRequestValidator {
+
+    public static final int MAX_BARCODES = 10_000;
+
+    private static final List<String> FIELDS = List.of("price", "rating");
+    private static final List<String> OPERATIONS = List.of("set", "add", "multiply");
+
+    private BulkUpdateRequestValidator() {
+    }
+
+    /**
+     * Ensures the request has exactly one selector, and a valid operation.
+     *
+     * @param request the bulk update request
+     * @throws InvalidProductRequestException if the selector or the operation is invalid
+     */
+    public static void validate(BulkUpdateRequest request) {
+        int selectors = (request.getTag() != null ? 1 : 0) + (request.getBarcodes() != null ? 1 : 0)
+                + (request.isRangeSelector() ? 1 : 0);
+        if (selectors != 1) {
+            throw new InvalidProductRequestException("Products must be selected by either a tag, barcodes or a range");
+        }
+        if (request.getTag() != null && request.getTag().trim().isEmpty()) {
+            throw new InvalidProductRequestException("Tag cannot be blank");
+        }
+        if (request.getBarcodes() != null) {
+            if (request.getBarcodes().isEmpty() || request.getBarcodes().size() > MAX_BARCODES) {
+                throw new InvalidProductRequestException("Between 1 and " + MAX_BARCODES + " barcodes can be selected");
+            }
+            for (String barcode : request.getBarcodes()) {
+                if (barcode == null || !barcode.matches("[0-9]+")) {
+                    throw new InvalidProductRequestException("Barcode can only contain digits");
+                }
+            }
+        }
+        if (request.getMinPrice() != null && request.getMaxPrice() != null && request.getMinPrice() > request.getMaxPrice()) {
+            throw new InvalidProductRequestException("Minimum price cannot be greater than maximum price");
+        }
+        if (request.getMinRating() != null && request.getMaxRating() != null && request.getMinRating() > request.getMaxRating()) {
+            throw new InvalidProductRequestException("Minimum rating cannot be greater than maximum rating");
+        }
+
+        if (!FIELDS.contains(request.getField())) {
+            throw new InvalidProductRequestException("Only the price or the rating can be updated in bulk");
+        }
+        if (!OPERATIONS.contains(request.getOperation())) {
+            throw new InvalidProductRequestException("Operation must be one of set, add or multiply");
+        }
+        if (request.getValue() == null || request.getValue().isNaN() || request.getValue().isInfinite()) {
+            throw new InvalidProductRequestException("Value is mandatory");
+        }
+        if (!request.getOperation().equals("add") && request.getValue() < 0) {
+            throw new InvalidProductRequestException("Value cannot be negative");
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChangedEvent;
+
+import java.util.List;
+
+/**
+ * Implemented by in-memory structures that are derived from the product catalog.
+ * The {@link CatalogSynchronizer} rebuilds every listener from the database on startup
+ * and forwards each committed product change to it afterwards.
+ */
+public interface CatalogListener {
+
+    /**
+     * Replaces the whole state of the listener with the given catalog.
+     *
+     * @param entries all the products in the catalog
+     */
+    void rebuild(List<CatalogEntry> entries);
+
+    /**
+     * Applies a single committed change. Must be idempotent, since a change may be delivered more than once.
+     *
+     * @param event the change
+     */
+    void onProductChanged(ProductChangedEvent event);
+}
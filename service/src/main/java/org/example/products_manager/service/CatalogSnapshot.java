@@ -0,0 +1,595 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductFields;
+import org.example.products_manager.model.ProductResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, columnar copy of the whole catalog.
+ *
+ * Each field is stored in its own array, indexed by row, and the rows are ordered by product id.
+ * Prices and ratings are primitive floats (NaN when missing). Names, images and tag names are stored once
+ * in a shared string pool and referenced by index (-1 when missing), and the tags of row {@code i} are
+ * {@code tagRefs[tagOffsets[i] .. tagOffsets[i + 1])}.
+ * The row order for each sortable field is computed on first use and cached, so repeated list reads only copy values out.
+ *
+ * A snapshot derived by {@link #withChanges} shares the strings of the previous one: unchanged rows keep their
+ * references into the pool, new strings are appended to it without being interned, and the cached row orders are
+ * patched rather than recomputed. Strings that are no longer referenced stay in the pool until enough of them were
+ * appended, and the pool is then rebuilt from scratch.
+ */
+public final class CatalogSnapshot {
+
+    private static final List<String> SORTABLE_FIELDS = List.of("id", "barcode", "name", "image", "rating", "price");
+
+    private static final int MIN_APPENDED_STRINGS_TO_COMPACT = 1024;
+
+    private final long version;
+    private final long[] ids;
+    private final String[] barcodes;
+    private final int[] nameRefs;
+    private final int[] imageRefs;
+    private final float[] ratings;
+    private final float[] prices;
+    private final int[] tagOffsets;
+    private final int[] tagRefs;
+    private final String[] pool;
+    private final int appendedStrings;
+    private final Map<String, int[]> ordersByField = new ConcurrentHashMap<>();
+
+    private CatalogSnapshot(long version, long[] ids, String[] barcodes, int[] nameRefs, int[] imageRefs,
+                            float[] ratings, float[] prices, int[] tagOffsets, int[] tagRefs, String[] pool,
+                            int appendedStrings) {
+        this.version = version;
+        this.ids = ids;
+        this.barcodes = barcodes;
+        this.nameRefs = nameRefs;
+        this.imageRefs = imageRefs;
+        this.ratings = ratings;
+        this.prices = prices;
+        this.tagOffsets = tagOffsets;
+        this.tagRefs = tagRefs;
+        this.pool = pool;
+        this.appendedStrings = appendedStrings;
+    }
+
+    /**
+     * Builds a snapshot of the given entries.
+     *
+     * @param entries the products of the catalog, in any order
+     * @param version the version of the snapshot
+     * @return the snapshot
+     */
+    public static CatalogSnapshot of(List<CatalogEntry> entries, long version) {
+        List<CatalogEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(CatalogEntry::getId));
+        Builder builder = new Builder(sorted.size());
+        for (CatalogEntry entry : sorted) {
+            builder.add(entry);
+        }
+        return builder.build(version);
+    }
+
+    /**
+     * Builds a new snapshot by applying changes to this one. This snapshot is not modified.
+     * Unchanged rows are copied as is, and the row orders cached by this snapshot are carried over to the new one,
+     * with the changed rows merged into them.
+     *
+     * @param changes the new state of each changed product by id, or null for deleted products
+     * @param version the version of the new snapshot
+     * @return the new snapshot
+     */
+    public CatalogSnapshot withChanges(NavigableMap<Long, CatalogEntry> changes, long version) {
+        Builder builder = new Builder(this, ids.length + changes.size());
+        // The row of each row of this snapshot in the new one, or -1 if it was changed or deleted
+        int[] newRows = new int[ids.length];
+        int[] changedRows = new int[changes.size()];
+        int changedCount = 0;
+        Iterator<Map.Entry<Long, CatalogEntry>> changeIterator = changes.entrySet().iterator();
+        Map.Entry<Long, CatalogEntry> change = changeIterator.hasNext() ? changeIterator.next() : null;
+        for (int row = 0; row < ids.length; row++) {
+            while (change != null && change.getKey() < ids[row]) {
+                if (change.getValue() != null) {
+                    changedRows[changedCount++] = builder.add(change.getValue());
+                }
+                change = changeIterator.hasNext() ? changeIterator.next() : null;
+            }
+            if (change != null && change.getKey() == ids[row]) {
+                newRows[row] = -1;
+                if (change.getValue() != null) {
+                    changedRows[changedCount++] = builder.addChanged(change.getValue(), this, row);
+                }
+                change = changeIterator.hasNext() ? changeIterator.next() : null;
+            } else {
+                newRows[row] = builder.copyRow(this, row);
+            }
+        }
+        while (change != null) {
+            if (change.getValue() != null) {
+                changedRows[changedCount++] = builder.add(change.getValue());
+            }
+            change = changeIterator.hasNext() ? changeIterator.next() : null;
+        }
+        CatalogSnapshot changed = builder.build(version);
+        if (changed.appendedStrings > Math.max(MIN_APPENDED_STRINGS_TO_COMPACT, changed.pool.length / 2)) {
+            return changed.compact();
+        }
+        changed.mergeOrders(this, newRows, Arrays.copyOf(changedRows, changedCount));
+        return changed;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Lists all the products sorted in ascending order by the given field.
+     * As in the database, missing values come first, and names and images are compared ignoring case.
+     *
+     * @param sortBy the field to sort by
+     * @return a list of ProductResponse objects, each representing a product in the catalog
+     * @throws InvalidQueryParameterException if the products cannot be sorted by the given field
+     */
+    public List<ProductResponse> list(String sortBy) {
+        int[] order = orderBy(sortBy);
+        List<ProductResponse> productResponses = new ArrayList<>(order.length);
+        for (int row : order) {
+            productResponses.add(toProductResponse(row));
+        }
+        return productResponses;
+    }
+
+    /**
+     * Lists the requested fields of all the products, sorted in ascending order by the given field.
+     * Only the requested columns are read; the tags are not decoded unless requested.
+     *
+     * @param sortBy the field to sort by
+     * @param fields the fields to return
+     * @return the values of the requested fields of each product in the catalog
+     * @throws InvalidQueryParameterException if the products cannot be sorted by the given field
+     */
+    public List<Map<String, Object>> list(String sortBy, ProductFields fields) {
+        int[] order = orderBy(sortBy);
+        List<Map<String, Object>> products = new ArrayList<>(order.length);
+        for (int row : order) {
+            products.add(toFieldValues(row, fields));
+        }
+        return products;
+    }
+
+    /**
+     * Finds the requested fields of the products with the given ids, keeping the order of the ids.
+     * Unknown ids are skipped.
+     *
+     * @param productIds the ids
+     * @param fields the fields to return
+     * @return the values of the requested fields of each found product
+     */
+    public List<Map<String, Object>> findByIds(long[] productIds, ProductFields fields) {
+        List<Map<String, Object>> products = new ArrayList<>(productIds.length);
+        for (long id : productIds) {
+            int row = Arrays.binarySearch(ids, id);
+            if (row >= 0) {
+                products.add(toFieldValues(row, fields));
+            }
+        }
+        return products;
+    }
+
+    /**
+     * Finds the products with the given ids, keeping the order of the ids. Unknown ids are skipped.
+     *
+     * @param productIds the ids
+     * @return a list of ProductResponse objects, each representing a found product
+     */
+    public List<ProductResponse> findByIds(long[] productIds) {
+        List<ProductResponse> productResponses = new ArrayList<>(productIds.length);
+        for (long id : productIds) {
+            int row = Arrays.binarySearch(ids, id);
+            if (row >= 0) {
+                productResponses.add(toProductResponse(row));
+            }
+        }
+        return productResponses;
+    }
+
+    /**
+     * Returns the order of the rows when sorted by the given field, with ties broken by id.
+     *
+     * @param sortBy the field to sort by
+     * @return the row indexes, in order
+     * @throws InvalidQueryParameterException if the products cannot be sorted by the given field
+     */
+    int[] orderBy(String sortBy) {
+        if (!SORTABLE_FIELDS.contains(sortBy)) {
+            throw new InvalidQueryParameterException("Products cannot be sorted by " + sortBy);
+        }
+        return ordersByField.computeIfAbsent(sortBy, this::computeOrder);
+    }
+
+    public ProductResponse toProductResponse(int row) {
+        return new ProductResponse(
+                barcodes[row],
+                stringAt(nameRefs[row]),
+                stringAt(imageRefs[row]),
+                floatAt(ratings[row]),
+                floatAt(prices[row]),
+                tagsAt(row)
+        );
+    }
+
+    public Map<String, Object> toFieldValues(int row, ProductFields fields) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String name : fields.getNames()) {
+            switch (name) {
+                case "barcode":
+                    values.put(name, barcodes[row]);
+                    break;
+                case "name":
+                    values.put(name, stringAt(nameRefs[row]));
+                    break;
+                case "image":
+                    values.put(name, stringAt(imageRefs[row]));
+                    break;
+                case "rating":
+                    values.put(name, floatAt(ratings[row]));
+                    break;
+                case "price":
+                    values.put(name, floatAt(prices[row]));
+                    break;
+                default:
+                    values.put(name, tagsAt(row));
+            }
+        }
+        return values;
+    }
+
+    public CatalogEntry toCatalogEntry(int row) {
+        return new CatalogEntry(
+                ids[row],
+                barcodes[row],
+                stringAt(nameRefs[row]),
+                stringAt(imageRefs[row]),
+                floatAt(ratings[row]),
+                floatAt(prices[row]),
+                tagsAt(row)
+        );
+    }
+
+    /**
+     * Estimates the heap used by this snapshot, assuming compressed object pointers and compact (Latin-1) strings.
+     *
+     * @return the estimated number of bytes
+     */
+    public long estimateMemoryBytes() {
+        long bytes = 16L * 9;
+        bytes += 8L * ids.length + 4L * (nameRefs.length + imageRefs.length + ratings.length + prices.length);
+        bytes += 4L * (tagOffsets.length + tagRefs.length);
+        bytes += 4L * (barcodes.length + pool.length);
+        for (String barcode : barcodes) {
+            bytes += estimateStringBytes(barcode);
+        }
+        for (String value : pool) {
+            bytes += estimateStringBytes(value);
+        }
+        for (int[] order : ordersByField.values()) {
+            bytes += 16 + 4L * order.length;
+        }
+        return bytes;
+    }
+
+    static long estimateStringBytes(String value) {
+        return value == null ? 0 : 24 + 16 + ((value.length() + 7) & ~7);
+    }
+
+    private int[] computeOrder(String sortBy) {
+        int[] order = new int[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        if (!"id".equals(sortBy)) {
+            sortRows(order, rowComparator(sortBy));
+        }
+        return order;
+    }
+
+    /**
+     * Carries the row orders cached by the previous snapshot over to this one. The rows that were copied keep
+     * their relative order, so each order is rebuilt by a single merge of them with the sorted changed rows.
+     *
+     * @param previous the snapshot this one was derived from
+     * @param newRows the row in this snapshot of each row of the previous one, or -1 if it was changed or deleted
+     * @param changedRows the rows of this snapshot that were changed or added
+     */
+    private void mergeOrders(CatalogSnapshot previous, int[] newRows, int[] changedRows) {
+        for (Map.Entry<String, int[]> previousOrder : previous.ordersByField.entrySet()) {
+            RowComparator comparator = rowComparator(previousOrder.getKey());
+            int[] added = changedRows.clone();
+            sortRows(added, comparator);
+            int[] order = new int[ids.length];
+            int size = 0;
+            int next = 0;
+            for (int previousRow : previousOrder.getValue()) {
+                int row = newRows[previousRow];
+                if (row < 0) {
+                    continue;
+                }
+                while (next < added.length && comparator.compare(added[next], row) < 0) {
+                    order[size++] = added[next++];
+                }
+                order[size++] = row;
+            }
+            while (next < added.length) {
+                order[size++] = added[next++];
+            }
+            ordersByField.put(previousOrder.getKey(), order);
+        }
+    }
+
+    /**
+     * Rebuilds this snapshot with a pool of only the strings that are still referenced, each stored once.
+     */
+    private CatalogSnapshot compact() {
+        List<CatalogEntry> entries = new ArrayList<>(ids.length);
+        for (int row = 0; row < ids.length; row++) {
+            entries.add(toCatalogEntry(row));
+        }
+        return of(entries, version);
+    }
+
+    /**
+     * Compares two rows by the given field. Ties are broken by row, which is the order of the ids.
+     */
+    private RowComparator rowComparator(String sortBy) {
+        switch (sortBy) {
+            case "barcode":
+                return (a, b) -> orElseByRow(barcodes[a].compareTo(barcodes[b]), a, b);
+            case "name":
+                return (a, b) -> orElseByRow(compareStrings(stringAt(nameRefs[a]), stringAt(nameRefs[b])), a, b);
+            case "image":
+                return (a, b) -> orElseByRow(compareStrings(stringAt(imageRefs[a]), stringAt(imageRefs[b])), a, b);
+            case "rating":
+                return (a, b) -> orElseByRow(compareFloats(ratings[a], ratings[b]), a, b);
+            case "price":
+                return (a, b) -> orElseByRow(compareFloats(prices[a], prices[b]), a, b);
+            default:
+                return Integer::compare;
+        }
+    }
+
+    private static int orElseByRow(int comparison, int a, int b) {
+        return comparison != 0 ? comparison : Integer.compare(a, b);
+    }
+
+    /**
+     * Sorts row indexes with a merge sort on the primitive array, so that rows are never boxed.
+     */
+    private static void sortRows(int[] rows, RowComparator comparator) {
+        mergeSort(rows.clone(), rows, 0, rows.length, comparator);
+    }
+
+    /**
+     * Sorts {@code source[from, to)} into {@code target[from, to)}. Both ranges must hold the same rows on entry.
+     */
+    private static void mergeSort(int[] source, int[] target, int from, int to, RowComparator comparator) {
+        if (to - from <= 8) {
+            for (int i = from + 1; i < to; i++) {
+                int row = target[i];
+                int j = i;
+                while (j > from && comparator.compare(target[j - 1], row) > 0) {
+                    target[j] = target[j - 1];
+                    j--;
+                }
+                target[j] = row;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(target, source, from, middle, comparator);
+        mergeSort(target, source, middle, to, comparator);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && comparator.compare(source[left], source[right]) <= 0)) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+
+    private static int compareStrings(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return String.CASE_INSENSITIVE_ORDER.compare(a, b);
+    }
+
+    private static int compareFloats(float a, float b) {
+        if (Float.isNaN(a) || Float.isNaN(b)) {
+            return Float.isNaN(a) ? (Float.isNaN(b) ? 0 : -1) : 1;
+        }
+        return Float.compare(a, b);
+    }
+
+    private String stringAt(int ref) {
+        return ref < 0 ? null : pool[ref];
+    }
+
+    private static Float floatAt(float value) {
+        return Float.isNaN(value) ? null : value;
+    }
+
+    private List<String> tagsAt(int row) {
+        List<String> tags = new ArrayList<>(tagOffsets[row + 1] - tagOffsets[row]);
+        for (int i = tagOffsets[row]; i < tagOffsets[row + 1]; i++) {
+            tags.add(pool[tagRefs[i]]);
+        }
+        return tags;
+    }
+
+    @FunctionalInterface
+    private interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Accumulates rows in id order and encodes them into the columnar layout.
+     * A builder of a new snapshot interns every string; a builder extending a snapshot appends new strings
+     * to its pool instead, and counts them.
+     */
+    private static final class Builder {
+        private final Map<String, Integer> refsByString;
+        private final List<String> pool;
+        private int appendedStrings;
+        private long[] ids;
+        private String[] barcodes;
+        private int[] nameRefs;
+        private int[] imageRefs;
+        private float[] ratings;
+        private float[] prices;
+        private int[] tagOffsets;
+        private int[] tagRefs;
+        private int size;
+        private int tagCount;
+
+        private Builder(int capacity) {
+            refsByString = new HashMap<>();
+            pool = new ArrayList<>();
+            allocate(capacity);
+        }
+
+        private Builder(CatalogSnapshot base, int capacity) {
+            refsByString = null;
+            pool = new ArrayList<>(Arrays.asList(base.pool));
+            appendedStrings = base.appendedStrings;
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            ids = new long[capacity];
+            barcodes = new String[capacity];
+            nameRefs = new int[capacity];
+            imageRefs = new int[capacity];
+            ratings = new float[capacity];
+            prices = new float[capacity];
+            tagOffsets = new int[capacity + 1];
+            tagRefs = new int[capacity * 2];
+        }
+
+        /**
+         * @return the row of the entry
+         */
+        private int add(CatalogEntry entry) {
+            return addChanged(entry, null, -1);
+        }
+
+        /**
+         * Adds the new state of a row of the snapshot being extended, keeping the references of its strings
+         * that did not change.
+         *
+         * @return the row of the entry
+         */
+        private int addChanged(CatalogEntry entry, CatalogSnapshot previous, int previousRow) {
+            ids[size] = entry.getId();
+            barcodes[size] = entry.getBarcode();
+            nameRefs[size] = refOf(entry.getName(), previous, previous == null ? -1 : previous.nameRefs[previousRow]);
+            imageRefs[size] = refOf(entry.getImage(), previous, previous == null ? -1 : previous.imageRefs[previousRow]);
+            ratings[size] = entry.getRating() == null ? Float.NaN : entry.getRating();
+            prices[size] = entry.getPrice() == null ? Float.NaN : entry.getPrice();
+            List<String> tags = entry.getTags() == null ? List.of() : entry.getTags();
+            for (String tag : tags) {
+                addTagRef(previous == null ? refOf(tag) : tagRefOf(tag, previous, previousRow));
+            }
+            tagOffsets[++size] = tagCount;
+            return size - 1;
+        }
+
+        /**
+         * @return the row of the copy
+         */
+        private int copyRow(CatalogSnapshot snapshot, int row) {
+            ids[size] = snapshot.ids[row];
+            barcodes[size] = snapshot.barcodes[row];
+            nameRefs[size] = snapshot.nameRefs[row];
+            imageRefs[size] = snapshot.imageRefs[row];
+            ratings[size] = snapshot.ratings[row];
+            prices[size] = snapshot.prices[row];
+            for (int i = snapshot.tagOffsets[row]; i < snapshot.tagOffsets[row + 1]; i++) {
+                addTagRef(snapshot.tagRefs[i]);
+            }
+            tagOffsets[++size] = tagCount;
+            return size - 1;
+        }
+
+        private int refOf(String value, CatalogSnapshot previous, int previousRef) {
+            if (previousRef >= 0 && previous.pool[previousRef].equals(value)) {
+                return previousRef;
+            }
+            return refOf(value);
+        }
+
+        private int tagRefOf(String tag, CatalogSnapshot previous, int previousRow) {
+            for (int i = previous.tagOffsets[previousRow]; i < previous.tagOffsets[previousRow + 1]; i++) {
+                if (previous.pool[previous.tagRefs[i]].equals(tag)) {
+                    return previous.tagRefs[i];
+                }
+            }
+            return refOf(tag);
+        }
+
+        private int refOf(String value) {
+            if (value == null) {
+                return -1;
+            }
+            if (refsByString == null) {
+                pool.add(value);
+                appendedStrings++;
+                return pool.size() - 1;
+            }
+            return refsByString.computeIfAbsent(value, v -> {
+                pool.add(v);
+                return pool.size() - 1;
+            });
+        }
+
+        private void addTagRef(int ref) {
+            if (tagCount == tagRefs.length) {
+                tagRefs = Arrays.copyOf(tagRefs, Math.max(16, tagRefs.length * 2));
+            }
+            tagRefs[tagCount++] = ref;
+        }
+
+        private CatalogSnapshot build(long version) {
+            return new CatalogSnapshot(
+                    version,
+                    Arrays.copyOf(ids, size),
+                    Arrays.copyOf(barcodes, size),
+                    Arrays.copyOf(nameRefs, size),
+                    Arrays.copyOf(imageRefs, size),
+                    Arrays.copyOf(ratings, size),
+                    Arrays.copyOf(prices, size),
+                    Arrays.copyOf(tagOffsets, size + 1),
+                    Arrays.copyOf(tagRefs, tagCount),
+                    pool.toArray(new String[0]),
+                    appendedStrings
+            );
+        }
+    }
+}
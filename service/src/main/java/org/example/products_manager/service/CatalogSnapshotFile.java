@@ -0,0 +1,299 @@
+package org.example.products_manager.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persists the catalog to a compact binary file on local disk, so that a restart can warm up from it
+ * instead of reading the whole catalog from the database.
+ *
+ * The file is written from the current {@link CatalogSnapshot} every {@code products.catalog-file.write-interval-ms}
+ * and on shutdown. It is written to a temporary file that then replaces the previous one, so a crash never leaves
+ * a partial file behind. It is stamped with the id of the latest change in the change log and with the time it was
+ * written. On startup it is memory-mapped and read, and the products changed since then are reloaded from the
+ * database by the {@link CatalogSynchronizer}.
+ * Transactions do not necessarily commit in the order of their change ids, so the changes recorded shortly before
+ * the file was written ({@code products.catalog-file.catch-up-margin-ms}) are reloaded as well.
+ * The change log is pruned after {@code products.change-log.retention-hours} by the {@link ChangeLogPruner};
+ * an older file is not used.
+ *
+ * Layout (big-endian): magic, format version, change id, write time in ms, the tag names, then for every product
+ * its id, barcode, name, image, which of rating and price are set, rating, price and the indexes of its tag names.
+ * Strings are stored as their UTF-8 length (-1 for null) followed by their bytes. The file ends with the CRC32
+ * of everything before it.
+ */
+@Component
+public class CatalogSnapshotFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSnapshotFile.class);
+
+    private static final int MAGIC = 0x50434154;
+    private static final int FORMAT_VERSION = 1;
+    private static final byte HAS_RATING = 1;
+    private static final byte HAS_PRICE = 2;
+
+    private final Path path;
+    private final long catchUpMarginMs;
+    private final long changeRetentionMs;
+    private final CatalogSnapshotHolder catalogSnapshotHolder;
+    private final ProductChangeRepository productChangeRepository;
+
+    private long lastWrittenChangeId = -1;
+    private long lastWrittenSnapshotVersion = -1;
+
+    public CatalogSnapshotFile(@Value("${products.catalog-file.path:}") String path,
+                               @Value("${products.catalog-file.catch-up-margin-ms:60000}") long catchUpMarginMs,
+                               @Value("${products.change-log.retention-hours:24}") long changeRetentionHours,
+                               CatalogSnapshotHolder catalogSnapshotHolder,
+                               ProductChangeRepository productChangeRepository) {
+        this.path = path.isBlank() ? null : Paths.get(path).toAbsolutePath();
+        this.catchUpMarginMs = catchUpMarginMs;
+        this.changeRetentionMs = changeRetentionHours * 3_600_000;
+        this.catalogSnapshotHolder = catalogSnapshotHolder;
+        this.productChangeRepository = productChangeRepository;
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    public long getCatchUpMarginMs() {
+        return catchUpMarginMs;
+    }
+
+    @Scheduled(fixedDelayString = "${products.catalog-file.write-interval-ms:60000}",
+            initialDelayString = "${products.catalog-file.write-interval-ms:60000}")
+    public void writePeriodically() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            write();
+        } catch (IOException | DataAccessException e) {
+            logger.error("Failed to write the catalog file {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() {
+        writePeriodically();
+    }
+
+    /**
+     * Writes the current catalog to the file, unless nothing changed since it was last written.
+     *
+     * @return whether the file was written
+     */
+    public synchronized boolean write() throws IOException {
+        Instant writtenAt = Instant.now();
+        // Read before the snapshot, so that every change missing from the snapshot is either newer
+        // or was recorded within the catch-up margin
+        Long maxChangeId = productChangeRepository.findMaxId();
+        long changeId = maxChangeId == null ? 0 : maxChangeId;
+        // Apply the changes that committed but are still batched, which may be older than the margin
+        catalogSnapshotHolder.refresh();
+        CatalogSnapshot snapshot = catalogSnapshotHolder.getSnapshot();
+        if (snapshot == null
+                || (changeId == lastWrittenChangeId && snapshot.getVersion() == lastWrittenSnapshotVersion)) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        Path temporaryFile = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        writeFile(temporaryFile, snapshot, changeId, writtenAt);
+        Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastWrittenChangeId = changeId;
+        lastWrittenSnapshotVersion = snapshot.getVersion();
+        logger.info("Wrote {} products to the catalog file {} ({} KB) in {} ms", snapshot.size(), path,
+                Files.size(path) / 1024, (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Reads the catalog file.
+     *
+     * @return the stored catalog, or null if there is no usable file
+     */
+    public StoredCatalog read() {
+        if (!isEnabled() || !Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8 || size > Integer.MAX_VALUE) {
+                logger.warn("Ignoring the catalog file {}, its size is invalid", path);
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int contentSize = (int) size - 8;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(contentSize));
+            if (crc.getValue() != buffer.getLong(contentSize)) {
+                logger.warn("Ignoring the catalog file {}, its checksum does not match", path);
+                return null;
+            }
+            buffer.limit(contentSize);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                logger.warn("Ignoring the catalog file {}, its format is not supported", path);
+                return null;
+            }
+
+            long changeId = buffer.getLong();
+            Instant writtenAt = Instant.ofEpochMilli(buffer.getLong());
+            if (writtenAt.isBefore(Instant.now().minusMillis(changeRetentionMs - catchUpMarginMs))) {
+                logger.warn("Ignoring the catalog file {}, it is older than the change log", path);
+                return null;
+            }
+            String[] tagNames = new String[buffer.getInt()];
+            for (int i = 0; i < tagNames.length; i++) {
+                tagNames[i] = readString(buffer);
+            }
+            int productCount = buffer.getInt();
+            List<CatalogEntry> entries = new ArrayList<>(productCount);
+            for (int i = 0; i < productCount; i++) {
+                long id = buffer.getLong();
+                String barcode = readString(buffer);
+                String name = readString(buffer);
+                String image = readString(buffer);
+                byte flags = buffer.get();
+                float rating = buffer.getFloat();
+                float price = buffer.getFloat();
+                int tagCount = buffer.getInt();
+                List<String> tags = new ArrayList<>(tagCount);
+                for (int tag = 0; tag < tagCount; tag++) {
+                    tags.add(tagNames[buffer.getInt()]);
+                }
+                entries.add(new CatalogEntry(id, barcode, name, image,
+                        (flags & HAS_RATING) != 0 ? rating : null,
+                        (flags & HAS_PRICE) != 0 ? price : null,
+                        tags));
+            }
+            return new StoredCatalog(changeId, writtenAt, entries);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring the catalog file {}, it could not be read", path, e);
+            return null;
+        }
+    }
+
+    private static void writeFile(Path file, CatalogSnapshot snapshot, long changeId, Instant writtenAt) throws IOException {
+        List<CatalogEntry> entries = new ArrayList<>(snapshot.size());
+        Map<String, Integer> tagIndexes = new LinkedHashMap<>();
+        for (int row = 0; row < snapshot.size(); row++) {
+            CatalogEntry entry = snapshot.toCatalogEntry(row);
+            entries.add(entry);
+            for (String tag : entry.getTags()) {
+                tagIndexes.putIfAbsent(tag, tagIndexes.size());
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        try (OutputStream fileStream = Files.newOutputStream(file)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new CheckedOutputStream(fileStream, crc), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(changeId);
+            out.writeLong(writtenAt.toEpochMilli());
+            out.writeInt(tagIndexes.size());
+            for (String tag : tagIndexes.keySet()) {
+                writeString(out, tag);
+            }
+            out.writeInt(entries.size());
+            for (CatalogEntry entry : entries) {
+                out.writeLong(entry.getId());
+                writeString(out, entry.getBarcode());
+                writeString(out, entry.getName());
+                writeString(out, entry.getImage());
+                out.writeByte((entry.getRating() != null ? HAS_RATING : 0) | (entry.getPrice() != null ? HAS_PRICE : 0));
+                out.writeFloat(entry.getRating() != null ? entry.getRating() : 0);
+                out.writeFloat(entry.getPrice() != null ? entry.getPrice() : 0);
+                out.writeInt(entry.getTags().size());
+                for (String tag : entry.getTags()) {
+                    out.writeInt(tagIndexes.get(tag));
+                }
+            }
+            out.flush();
+            new DataOutputStream(fileStream).writeLong(crc.getValue());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The content of a catalog file.
+     */
+    public static final class StoredCatalog {
+        private final long changeId;
+        private final Instant writtenAt;
+        private final List<CatalogEntry> entries;
+
+        private StoredCatalog(long changeId, Instant writtenAt, List<CatalogEntry> entries) {
+            this.changeId = changeId;
+            this.writtenAt = writtenAt;
+            this.entries = Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * @return the id of the latest change recorded when the file was written
+         */
+        public long getChangeId() {
+            return changeId;
+        }
+
+        public Instant getWrittenAt() {
+            return writtenAt;
+        }
+
+        public List<CatalogEntry> getEntries() {
+            return entries;
+        }
+    }
+}
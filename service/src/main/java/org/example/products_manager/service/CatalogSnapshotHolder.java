@@ -0,0 +1,97 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Holds the current {@link CatalogSnapshot} and replaces it as the catalog changes.
+ *
+ * Readers get the current snapshot with a single volatile read and never block.
+ * By default, a new snapshot is swapped in after every committed change, by the committing thread, so a client
+ * reads its own writes as soon as they return.
+ * With {@code products.snapshot.batch-writes=true}, committed changes are accumulated and applied together every
+ * {@code products.snapshot.refresh-interval-ms}, off the committing thread, which trades a short staleness window
+ * for fewer copies under a high write rate.
+ */
+@Component
+public class CatalogSnapshotHolder implements CatalogListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSnapshotHolder.class);
+
+    private final boolean batchWrites;
+
+    private volatile CatalogSnapshot snapshot;
+    private TreeMap<Long, CatalogEntry> pendingChanges = new TreeMap<>();
+    private final Object pendingChangesLock = new Object();
+    private long version;
+
+    public CatalogSnapshotHolder(@Value("${products.snapshot.batch-writes:false}") boolean batchWrites) {
+        this.batchWrites = batchWrites;
+    }
+
+    /**
+     * @return the current snapshot, or null if the catalog has not been loaded yet
+     */
+    public CatalogSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public synchronized void rebuild(List<CatalogEntry> entries) {
+        synchronized (pendingChangesLock) {
+            pendingChanges.clear();
+        }
+        snapshot = CatalogSnapshot.of(entries, ++version);
+        logMemoryUsage();
+    }
+
+    /**
+     * Records a committed change. With batched writes, only the pending changes are locked, so the committing
+     * thread does not wait for a snapshot being built.
+     */
+    @Override
+    public void onProductChanged(ProductChangedEvent event) {
+        synchronized (pendingChangesLock) {
+            pendingChanges.put(event.getProductId(), event.getEntry());
+        }
+        if (!batchWrites) {
+            refresh();
+        }
+    }
+
+    /**
+     * Applies the pending changes, if any, to the current snapshot and swaps in the result.
+     */
+    @Scheduled(fixedDelayString = "${products.snapshot.refresh-interval-ms:100}")
+    public synchronized void refresh() {
+        if (snapshot == null) {
+            return;
+        }
+        TreeMap<Long, CatalogEntry> changes;
+        synchronized (pendingChangesLock) {
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+            changes = pendingChanges;
+            pendingChanges = new TreeMap<>();
+        }
+        snapshot = snapshot.withChanges(changes, ++version);
+    }
+
+    private void logMemoryUsage() {
+        CatalogSnapshot current = snapshot;
+        if (current.size() > 0) {
+            long bytes = current.estimateMemoryBytes();
+            logger.info("Catalog snapshot of {} products uses about {} KB ({} bytes per product)",
+                    current.size(), bytes / 1024, bytes / current.size());
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.Product;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.model.ProductsChangedEvent;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps every {@link CatalogListener} in sync with the database.
+ * On startup all the listeners are rebuilt, from the {@link CatalogSnapshotFile} and the products changed since it
+ * was written when it is available, or from a full scan of the catalog otherwise. Afterwards, each product change
+ * is forwarded to the listeners once the transaction that made it has been committed.
+ * Changes that are committed while a rebuild is in progress are buffered and replayed once it completes,
+ * so that they are not overwritten by the (possibly older) state read for the rebuild.
+ * Changes made by the other instances of the service are applied through {@link #applyChanges}, by the {@link ChangeLogTailer}.
+ * Bulk updates are applied the same way once committed, or by a full rebuild when they change many products.
+ * When sharding is enabled the catalog is read from every shard.
+ */
+@Component
+public class CatalogSynchronizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSynchronizer.class);
+
+    private static final int CATCH_UP_BATCH_SIZE = 1000;
+
+    // Beyond this number of changed products, reloading the whole catalog is cheaper than applying each change
+    private static final int MAX_APPLIED_CHANGES = 1000;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @Autowired
+    private CatalogSnapshotFile catalogSnapshotFile;
+
+    @Autowired
+    private ShardedProductsService shardedProductsService;
+
+    @Autowired(required = false)
+    private List<CatalogListener> listeners = new ArrayList<>();
+
+    private List<ProductChangedEvent> pendingEvents;
+
+    // The ids of the products being read by applyChanges, from which the ids of the products forwarded meanwhile are removed
+    private final List<Set<Long>> pendingReads = new ArrayList<>();
+
+    private volatile long rebuildChangeId = -1;
+    private volatile int rebuildCount;
+
+    /**
+     * Builds the listeners once the application has started, before it is reported as ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild(true);
+    }
+
+    /**
+     * Reloads the whole catalog from the database and rebuilds all the listeners from it.
+     */
+    public void rebuild() {
+        rebuild(false);
+    }
+
+    private void rebuild(boolean fromCatalogFile) {
+        synchronized (this) {
+            if (pendingEvents == null) {
+                pendingEvents = new ArrayList<>();
+            }
+        }
+        long start = System.nanoTime();
+        // Read before the catalog, so that every change missing from the rebuilt listeners is recorded after it
+        Long maxChangeId = productChangeRepository.findMaxId();
+        List<CatalogEntry> entries = fromCatalogFile ? loadEntriesFromCatalogFile() : null;
+        String source = "the catalog file";
+        if (entries == null) {
+            entries = loadEntries();
+            source = "the database";
+        }
+        synchronized (this) {
+            for (CatalogListener listener : listeners) {
+                listener.rebuild(entries);
+            }
+            for (ProductChangedEvent event : pendingEvents) {
+                dispatch(event);
+            }
+            pendingEvents = null;
+            rebuildChangeId = maxChangeId == null ? 0 : maxChangeId;
+            rebuildCount++;
+        }
+        logger.info("Rebuilt {} catalog listeners from {} products read from {} in {} ms",
+                listeners.size(), entries.size(), source, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Reads the catalog from the catalog file, and reloads from the database the products changed since
+     * the file was written.
+     *
+     * @return an entry for every product in the catalog, ordered by id, or null if the catalog file cannot be used
+     */
+    private List<CatalogEntry> loadEntriesFromCatalogFile() {
+        CatalogSnapshotFile.StoredCatalog stored = catalogSnapshotFile.read();
+        if (stored == null) {
+            return null;
+        }
+        List<Long> changedIds = productChangeRepository.findProductIdsChangedSince(stored.getChangeId(),
+                stored.getWrittenAt().minusMillis(catalogSnapshotFile.getCatchUpMarginMs()));
+        if (changedIds.size() > stored.getEntries().size() / 2 + CATCH_UP_BATCH_SIZE) {
+            logger.info("{} products changed since the catalog file was written, reading the whole catalog instead",
+                    changedIds.size());
+            return null;
+        }
+
+        TreeMap<Long, CatalogEntry> entriesById = new TreeMap<>();
+        for (CatalogEntry entry : stored.getEntries()) {
+            entriesById.put(entry.getId(), entry);
+        }
+        for (int from = 0; from < changedIds.size(); from += CATCH_UP_BATCH_SIZE) {
+            List<Long> batch = changedIds.subList(from, Math.min(from + CATCH_UP_BATCH_SIZE, changedIds.size()));
+            for (Long id : batch) {
+                entriesById.remove(id);
+            }
+            for (CatalogEntry entry : loadEntries(batch)) {
+                entriesById.put(entry.getId(), entry);
+            }
+        }
+        logger.info("Read {} products from the catalog file, {} products changed since it was written",
+                stored.getEntries().size(), changedIds.size());
+        return new ArrayList<>(entriesById.values());
+    }
+
+    /**
+     * Reads all the products and their tag names from the database.
+     *
+     * @return an entry for every product in the catalog, ordered by id
+     */
+    public List<CatalogEntry> loadEntries() {
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.loadEntries();
+        }
+        Map<Long, List<String>> tagsByProductId = new HashMap<>();
+        for (Object[] row : productTagRepository.findAllProductTagNames()) {
+            tagsByProductId.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+        }
+        List<CatalogEntry> entries = new ArrayList<>();
+        for (Product product : productRepository.findAll()) {
+            entries.add(toCatalogEntry(product, tagsByProductId.getOrDefault(product.getId(), new ArrayList<>())));
+        }
+        entries.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        return entries;
+    }
+
+    /**
+     * Reads the given products and their tag names from the database. Products that do not exist are skipped.
+     *
+     * @param productIds the ids of the products
+     * @return an entry for every existing product
+     */
+    public List<CatalogEntry> loadEntries(Collection<Long> productIds) {
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.loadEntries(productIds);
+        }
+        Map<Long, List<String>> tagsByProductId = new HashMap<>();
+        for (Object[] row : productTagRepository.findProductTagNamesByProductIds(productIds)) {
+            tagsByProductId.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+        }
+        List<CatalogEntry> entries = new ArrayList<>();
+        for (Product product : productRepository.findAllById(productIds)) {
+            entries.add(toCatalogEntry(product, tagsByProductId.getOrDefault(product.getId(), new ArrayList<>())));
+        }
+        return entries;
+    }
+
+    /**
+     * @return the id of the latest change recorded before the catalog was read for the last rebuild,
+     * or -1 if the listeners were not built yet
+     */
+    public long getRebuildChangeId() {
+        return rebuildChangeId;
+    }
+
+    /**
+     * @return the number of times the listeners were rebuilt
+     */
+    public int getRebuildCount() {
+        return rebuildCount;
+    }
+
+    /**
+     * Reloads the given products from the database and forwards their current state to the listeners,
+     * as a change of each product. Products that no longer exist are forwarded as deleted.
+     * The products are read without holding the lock of the listeners, so changes committed meanwhile are forwarded
+     * without waiting for the read. A product that was forwarded while it was read is read again,
+     * so that the state read here never overwrites a newer one.
+     *
+     * @param productIds the ids of the changed products
+     */
+    public void applyChanges(Collection<Long> productIds) {
+        Set<Long> unread = new LinkedHashSet<>(productIds);
+        while (!unread.isEmpty()) {
+            Set<Long> reading = new HashSet<>(unread);
+            synchronized (this) {
+                pendingReads.add(reading);
+            }
+            Map<Long, CatalogEntry> entriesById = new HashMap<>();
+            try {
+                for (CatalogEntry entry : loadEntries(unread)) {
+                    entriesById.put(entry.getId(), entry);
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    pendingReads.removeIf(read -> read == reading);
+                }
+                throw e;
+            }
+            synchronized (this) {
+                pendingReads.removeIf(read -> read == reading);
+                for (Long productId : unread) {
+                    if (reading.contains(productId)) {
+                        forward(new ProductChangedEvent(productId, entriesById.get(productId)));
+                    }
+                }
+            }
+            unread.removeAll(reading);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        if (event.getProductIds().size() > MAX_APPLIED_CHANGES) {
+            rebuild();
+        } else {
+            applyChanges(event.getProductIds());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        forward(event);
+    }
+
+    private void forward(ProductChangedEvent event) {
+        for (Set<Long> read : pendingReads) {
+            read.remove(event.getProductId());
+        }
+        if (pendingEvents != null) {
+            pendingEvents.add(event);
+            return;
+        }
+        dispatch(event);
+    }
+
+    private void dispatch(ProductChangedEvent event) {
+        for (CatalogListener listener : listeners) {
+            try {
+                listener.onProductChanged(event);
+            } catch (RuntimeException e) {
+                logger.error("Catalog listener {} failed to apply change of product {}",
+                        listener.getClass().getSimpleName(), event.getProductId(), e);
+            }
+        }
+    }
+
+    public static CatalogEntry toCatalogEntry(Product product, List<String> tagNames) {
+        return new CatalogEntry(
+                product.getId(),
+                product.getBarcode(),
+                product.getName(),
+                product.getImage(),
+                product.getRating(),
+                product.getPrice(),
+                tagNames
+        );
+    }
+}
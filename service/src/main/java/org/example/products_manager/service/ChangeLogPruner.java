@@ -0,0 +1,56 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Deletes the entries of the change log recorded more than {@code products.change-log.retention-hours} ago,
+ * every {@code products.change-log.prune-interval-ms}.
+ *
+ * Pruning runs on its own schedule, whether or not the catalog file or the cluster tailing are enabled,
+ * since every write records a change.
+ */
+@Component
+public class ChangeLogPruner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeLogPruner.class);
+
+    private final long changeRetentionMs;
+    private final ProductChangeRepository productChangeRepository;
+
+    public ChangeLogPruner(@Value("${products.change-log.retention-hours:24}") long changeRetentionHours,
+                           ProductChangeRepository productChangeRepository) {
+        this.changeRetentionMs = changeRetentionHours * 3_600_000;
+        this.productChangeRepository = productChangeRepository;
+    }
+
+    @Scheduled(fixedDelayString = "${products.change-log.prune-interval-ms:600000}",
+            initialDelayString = "${products.change-log.prune-interval-ms:600000}")
+    public void prunePeriodically() {
+        try {
+            prune();
+        } catch (DataAccessException e) {
+            logger.error("Failed to prune the change log", e);
+        }
+    }
+
+    /**
+     * Deletes the changes recorded before the retention period.
+     *
+     * @return the number of deleted changes
+     */
+    public int prune() {
+        int pruned = productChangeRepository.deleteByChangedAtBefore(Instant.now().minusMillis(changeRetentionMs));
+        if (pruned > 0) {
+            logger.info("Pruned {} entries of the change log", pruned);
+        }
+        return pruned;
+    }
+}
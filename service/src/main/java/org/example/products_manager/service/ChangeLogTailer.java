@@ -0,0 +1,189 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.model.ChangeLogStats;
+import org.example.products_manager.model.ProductChange;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps the in-memory catalog of this instance coherent with the changes made by the other instances of the service.
+ *
+ * Every change is recorded in the change log in the same transaction as the change itself, together with the id of
+ * the instance that made it. Every {@code products.cluster.poll-interval-ms}, the changes recorded since the last poll
+ * are read, and the products changed by other instances are reloaded and applied through the {@link CatalogSynchronizer}.
+ * Changes made by this instance are skipped, they were applied when they were committed.
+ *
+ * Change ids are assigned when a change is recorded, but transactions do not necessarily commit in that order,
+ * so a change can become visible after changes with higher ids. The ids skipped by a poll are kept as gaps and
+ * looked up again until they show up or {@code products.cluster.gap-timeout-ms} has passed (ids are also skipped by
+ * rolled back transactions). A gap is looked up by the next poll, and then whenever its age has doubled since it was
+ * last looked up, so that the gaps of rolled back transactions are only looked up a few times. At most
+ * {@code products.cluster.max-gaps} gaps are tracked; larger jumps of the ids, e.g. after a restart of the database,
+ * are not tracked.
+ * A change is therefore applied at most one poll interval after it is committed, which is exposed as the lag
+ * in {@link ChangeLogStats}; the lag is measured with the clock of the instance that recorded the change.
+ * After a rebuild of the catalog, the log is tailed again from the latest change recorded before the rebuild,
+ * and the ids missing among the {@code products.cluster.batch-size} ids before it are kept as gaps, as the changes
+ * that were not committed yet when the catalog was read.
+ */
+@Component
+public class ChangeLogTailer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeLogTailer.class);
+
+    private final ProductChangeRepository productChangeRepository;
+    private final CatalogSynchronizer catalogSynchronizer;
+    private final NodeIdentity nodeIdentity;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long gapTimeoutMs;
+    private final int maxGaps;
+
+    private int rebuildCount = -1;
+    private long lastChangeId = -1;
+    private final TreeMap<Long, Gap> gaps = new TreeMap<>();
+
+    private long appliedChanges;
+    private long lastLagMs;
+    private long maxLagMs;
+    private long lastPollAtMs = System.currentTimeMillis();
+    private volatile long failedPolls;
+
+    public ChangeLogTailer(ProductChangeRepository productChangeRepository,
+                           CatalogSynchronizer catalogSynchronizer,
+                           NodeIdentity nodeIdentity,
+                           @Value("${products.cluster.enabled:false}") boolean enabled,
+                           @Value("${products.cluster.batch-size:1000}") int batchSize,
+                           @Value("${products.cluster.gap-timeout-ms:60000}") long gapTimeoutMs,
+                           @Value("${products.cluster.max-gaps:1000}") int maxGaps) {
+        this.productChangeRepository = productChangeRepository;
+        this.catalogSynchronizer = catalogSynchronizer;
+        this.nodeIdentity = nodeIdentity;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.gapTimeoutMs = gapTimeoutMs;
+        this.maxGaps = maxGaps;
+    }
+
+    @Scheduled(fixedDelayString = "${products.cluster.poll-interval-ms:200}")
+    public void pollPeriodically() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            poll();
+        } catch (DataAccessException e) {
+            failedPolls++;
+            logger.error("Failed to read the change log", e);
+        }
+    }
+
+    /**
+     * Reads the changes recorded since the last poll, and applies the ones made by other instances.
+     * Does nothing until the catalog has been loaded.
+     *
+     * @return the number of changes made by other instances that were applied
+     */
+    public synchronized int poll() {
+        int currentRebuildCount = catalogSynchronizer.getRebuildCount();
+        long rebuildChangeId = catalogSynchronizer.getRebuildChangeId();
+        if (rebuildChangeId < 0) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        if (currentRebuildCount != rebuildCount) {
+            rebuildCount = currentRebuildCount;
+            lastChangeId = rebuildChangeId;
+            gaps.clear();
+            long from = Math.max(0, rebuildChangeId - Math.min(batchSize, maxGaps));
+            Set<Long> recordedIds = Set.copyOf(productChangeRepository.findIdsBetween(from, rebuildChangeId));
+            for (long id = from + 1; id <= rebuildChangeId; id++) {
+                if (!recordedIds.contains(id)) {
+                    gaps.put(id, new Gap(now));
+                }
+            }
+        }
+
+        List<ProductChange> changes = new ArrayList<>();
+        List<Long> dueGapIds = new ArrayList<>();
+        Iterator<Map.Entry<Long, Gap>> iterator = gaps.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Gap> entry = iterator.next();
+            Gap gap = entry.getValue();
+            if (now - gap.firstSeenAtMs > gapTimeoutMs) {
+                iterator.remove();
+            } else if (now >= gap.nextLookupAtMs) {
+                dueGapIds.add(entry.getKey());
+                gap.nextLookupAtMs = now + Math.max(1, now - gap.firstSeenAtMs);
+            }
+        }
+        if (!dueGapIds.isEmpty()) {
+            for (ProductChange change : productChangeRepository.findByIdIn(dueGapIds)) {
+                gaps.remove(change.getId());
+                changes.add(change);
+            }
+        }
+        for (ProductChange change : productChangeRepository.findByIdGreaterThanOrderByIdAsc(lastChangeId, PageRequest.of(0, batchSize))) {
+            if (change.getId() - lastChangeId - 1 <= maxGaps - gaps.size()) {
+                for (long id = lastChangeId + 1; id < change.getId(); id++) {
+                    gaps.put(id, new Gap(now));
+                }
+            }
+            lastChangeId = change.getId();
+            changes.add(change);
+        }
+        lastPollAtMs = now;
+
+        Set<Long> productIds = new LinkedHashSet<>();
+        long maxLag = 0;
+        for (ProductChange change : changes) {
+            if (!nodeIdentity.getId().equals(change.getOrigin())) {
+                productIds.add(change.getProductId());
+                maxLag = Math.max(maxLag, now - change.getChangedAt().toEpochMilli());
+            }
+        }
+        if (productIds.isEmpty()) {
+            return 0;
+        }
+        catalogSynchronizer.applyChanges(productIds);
+        long lag = Math.max(0, maxLag + System.currentTimeMillis() - now);
+        appliedChanges += productIds.size();
+        lastLagMs = lag;
+        maxLagMs = Math.max(maxLagMs, lag);
+        logger.debug("Applied {} changes made by other instances, lag {} ms", productIds.size(), lag);
+        return productIds.size();
+    }
+
+    public synchronized ChangeLogStats getStats() {
+        return new ChangeLogStats(enabled, nodeIdentity.getId(), lastChangeId, gaps.size(), appliedChanges,
+                lastLagMs, maxLagMs, System.currentTimeMillis() - lastPollAtMs, failedPolls);
+    }
+
+    /**
+     * An id skipped by a poll, with the time it was first skipped and the time it is next looked up.
+     */
+    private static class Gap {
+
+        private final long firstSeenAtMs;
+        private long nextLookupAtMs;
+
+        private Gap(long firstSeenAtMs) {
+            this.firstSeenAtMs = firstSeenAtMs;
+            this.nextLookupAtMs = firstSeenAtMs;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.example.products_manager.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the serialized JSON of the full product list, plain and gzip-compressed, for each order of the list,
+ * so that listing the products only copies bytes to the response.
+ *
+ * The bytes are built from the catalog snapshot and tagged with its version. Every committed write produces
+ * a new snapshot version before it returns, which invalidates the bytes of every order; they are rebuilt by the next
+ * request for that order. With batched snapshot writes, the version only moves once the batch is applied. A single thread rebuilds the bytes of an order, while the other requests for it wait
+ * for the result rather than serializing the list again.
+ * The ETag of the list is a hash of its content, so it is the same on every instance of the service.
+ */
+@Component
+public class ListResponseCache {
+
+    private final CatalogSnapshotHolder catalogSnapshotHolder;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Slot> slots;
+
+    public ListResponseCache(CatalogSnapshotHolder catalogSnapshotHolder, ObjectMapper objectMapper) {
+        this.catalogSnapshotHolder = catalogSnapshotHolder;
+        this.objectMapper = objectMapper;
+        this.slots = Map.of("id", new Slot(), "name", new Slot(), "price", new Slot(), "rating", new Slot());
+    }
+
+    /**
+     * Returns the serialized list of all the products in the given order, building it if the catalog changed
+     * since it was last built.
+     *
+     * @param sortBy the field by which the products are sorted
+     * @return the serialized list, or null if the order is not cached or the catalog snapshot is not loaded yet
+     */
+    public SerializedList get(String sortBy) {
+        Slot slot = slots.get(sortBy);
+        CatalogSnapshot snapshot = catalogSnapshotHolder.getSnapshot();
+        if (slot == null || snapshot == null) {
+            return null;
+        }
+        SerializedList current = slot.list;
+        if (current != null && current.version == snapshot.getVersion()) {
+            return current;
+        }
+        slot.lock.lock();
+        try {
+            // The list may have been rebuilt while waiting for the lock, from this snapshot or a later one
+            snapshot = catalogSnapshotHolder.getSnapshot();
+            current = slot.list;
+            if (current == null || current.version < snapshot.getVersion()) {
+                current = build(snapshot, sortBy);
+                slot.list = current;
+            }
+            return current;
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    private SerializedList build(CatalogSnapshot snapshot, String sortBy) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(snapshot.list(sortBy));
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024)) {
+                gzip.write(json);
+            }
+            return new SerializedList(snapshot.getVersion(), json, compressed.toByteArray(), hash(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the product list", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The serialized product list of an order, as of a version of the catalog snapshot.
+     * The gzip-compressed bytes are a different representation of the same list, so they have their own ETag.
+     */
+    public static final class SerializedList {
+        private final long version;
+        private final byte[] json;
+        private final byte[] gzippedJson;
+        private final String eTag;
+        private final String gzipETag;
+
+        private SerializedList(long version, byte[] json, byte[] gzippedJson, String hash) {
+            this.version = version;
+            this.json = json;
+            this.gzippedJson = gzippedJson;
+            this.eTag = "\"" + hash + "\"";
+            this.gzipETag = "\"" + hash + "-gzip\"";
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public byte[] getGzippedJson() {
+            return gzippedJson;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getGzipETag() {
+            return gzipETag;
+        }
+
+        /**
+         * @param ifNoneMatch the value of an If-None-Match header
+         * @return whether the header matches either representation of this list
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(eTag) || tag.equals(gzipETag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Slot {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile SerializedList list;
+    }
+}
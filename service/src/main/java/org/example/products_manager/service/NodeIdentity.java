@@ -0,0 +1,26 @@
+package org.example.products_manager.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Identifies this instance of the service among the instances sharing the database.
+ * The id is recorded with every change in the change log, so that an instance can tell its own changes,
+ * which it has already applied, from the changes made by the other instances.
+ * It is {@code products.cluster.node-id} if set, or a random id otherwise.
+ */
+@Component
+public class NodeIdentity {
+
+    private final String id;
+
+    public NodeIdentity(@Value("${products.cluster.node-id:}") String id) {
+        this.id = id.isBlank() ? UUID.randomUUID().toString() : id;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,358 @@
+package org.example.products_manager.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.products_manager.model.PriceHistoryEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes the price history, so that recording a change of price or rating does not add an insert to the
+ * transaction of the change.
+ *
+ * By default, entries are queued once the transaction of the change commits, and a background thread inserts them
+ * in batches, whenever {@code batch-size} entries are queued or every {@code flush-interval-ms}. Changes that are
+ * rolled back are never recorded, but queued entries are lost if the service stops abruptly.
+ * The queue is bounded: when it is full, the committing thread waits up to {@code offer-timeout-ms}, and the entry
+ * is then dropped rather than failing a change that was already committed.
+ * With {@code durable=true}, entries are inserted within the transaction of the change instead, so they are
+ * committed together with it.
+ */
+@Component
+public class PriceHistoryWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceHistoryWriter.class);
+
+    private static final String INSERT_SQL = "INSERT INTO product_price_history (product_id, changed_at, price, rating) VALUES (?, ?, ?, ?)";
+    private static final String MOVE_SQL = "UPDATE product_price_history SET product_id = ? WHERE product_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final boolean durable;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Held while a batch is taken from the queue and written, so that moving the history of a product
+    // cannot miss the entries of a batch being written
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushNeeded = lock.newCondition();
+    private final ArrayDeque<PriceHistoryEntry> pendingEntries = new ArrayDeque<>();
+    private boolean running;
+    private boolean lastFlushFailed;
+    private Thread flusher;
+
+    private long writtenEntries;
+    private long droppedEntries;
+
+    public PriceHistoryWriter(JdbcTemplate jdbcTemplate,
+                              @Value("${products.price-history.enabled:true}") boolean enabled,
+                              @Value("${products.price-history.durable:false}") boolean durable,
+                              @Value("${products.price-history.capacity:100000}") int capacity,
+                              @Value("${products.price-history.batch-size:1000}") int batchSize,
+                              @Value("${products.price-history.flush-interval-ms:500}") long flushIntervalMs,
+                              @Value("${products.price-history.offer-timeout-ms:50}") long offerTimeoutMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.durable = durable;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || durable) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::runFlusher, "price-history-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records the price and the rating of a product after one of them changed.
+     * Within a transaction, the entry is queued once the transaction commits, or inserted right away
+     * in durable mode.
+     *
+     * @param productId the id of the changed product
+     * @param price the new price of the product
+     * @param rating the new rating of the product
+     */
+    public void record(Long productId, Float price, Float rating) {
+        if (!enabled) {
+            return;
+        }
+        PriceHistoryEntry entry = new PriceHistoryEntry(null, productId, Instant.now(), price, rating);
+        if (durable) {
+            insert(List.of(entry));
+        } else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(entry);
+                }
+            });
+        } else {
+            enqueue(entry);
+        }
+    }
+
+    /**
+     * Moves the price history of a product to a new id, e.g. when a sharded product moves to another shard under
+     * a new id. The queued entries of the product are moved as well, and a batch being written is waited for,
+     * so that no entry is left under the old id.
+     *
+     * @param fromProductId the previous id of the product
+     * @param toProductId the new id of the product
+     * @throws org.springframework.dao.DataAccessException if the written entries cannot be moved
+     */
+    public void moveHistory(long fromProductId, long toProductId) {
+        if (!enabled) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            lock.lock();
+            try {
+                for (PriceHistoryEntry entry : pendingEntries) {
+                    if (entry.getProductId() == fromProductId) {
+                        entry.setProductId(toProductId);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            jdbcTemplate.update(MOVE_SQL, toProductId, fromProductId);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int getPendingEntries() {
+        lock.lock();
+        try {
+            return pendingEntries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getWrittenEntries() {
+        lock.lock();
+        try {
+            return writtenEntries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedEntries() {
+        lock.lock();
+        try {
+            return droppedEntries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts one batch of the oldest queued entries.
+     *
+     * @return the number of entries in the batch
+     */
+    public int flushBatch() {
+        flushLock.lock();
+        try {
+            return writeBatch();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int writeBatch() {
+        List<PriceHistoryEntry> batch = new ArrayList<>();
+        lock.lock();
+        try {
+            while (!pendingEntries.isEmpty() && batch.size() < batchSize) {
+                batch.add(pendingEntries.poll());
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            insert(batch);
+        } catch (DataAccessException e) {
+            logger.error("Failed to write a batch of {} price history entries, they will be retried", batch.size(), e);
+            requeue(batch);
+            return 0;
+        }
+
+        lock.lock();
+        try {
+            lastFlushFailed = false;
+            writtenEntries += batch.size();
+        } finally {
+            lock.unlock();
+        }
+        return batch.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            notFull.signalAll();
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int remaining = getPendingEntries();
+        if (remaining > 0) {
+            logger.error("{} price history entries could not be written before shutdown", remaining);
+        }
+    }
+
+    private void enqueue(PriceHistoryEntry entry) {
+        lock.lock();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+            while (running && pendingEntries.size() >= capacity && remainingNanos > 0) {
+                remainingNanos = notFull.awaitNanos(remainingNanos);
+            }
+            if (!running || pendingEntries.size() >= capacity) {
+                drop(entry);
+                return;
+            }
+            pendingEntries.add(entry);
+            if (pendingEntries.size() >= batchSize) {
+                flushNeeded.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drop(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts an entry that could not be queued. Only the first drop of every thousand is logged,
+     * since entries are dropped in bursts while the database is unavailable.
+     */
+    private void drop(PriceHistoryEntry entry) {
+        if (droppedEntries++ % 1000 == 0) {
+            logger.warn("Dropped the price history entry of product {}, the queue is full ({} entries dropped so far)",
+                    entry.getProductId(), droppedEntries);
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            lock.lock();
+            try {
+                if (!running) {
+                    break;
+                }
+                if (pendingEntries.size() < batchSize || lastFlushFailed) {
+                    flushNeeded.await(flushIntervalMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                lock.unlock();
+            }
+            drain(false);
+        }
+        drain(true);
+    }
+
+    /**
+     * Flushes batches until the queue is empty or a flush fails.
+     * Outside of shutdown, a partial batch is only flushed once per call, so it waits for the next interval.
+     */
+    private void drain(boolean shuttingDown) {
+        int flushed;
+        do {
+            flushed = flushBatch();
+        } while (flushed > 0 && (shuttingDown || flushed == batchSize));
+    }
+
+    /**
+     * Puts back a batch that failed to be written, ahead of the entries queued in the meantime.
+     * The queue may exceed its capacity until the batch is written.
+     */
+    private void requeue(List<PriceHistoryEntry> batch) {
+        lock.lock();
+        try {
+            lastFlushFailed = true;
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                pendingEntries.addFirst(batch.get(i));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts entries with a single batched statement.
+     */
+    private void insert(List<PriceHistoryEntry> entries) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, entries, entries.size(), (statement, entry) -> {
+            statement.setLong(1, entry.getProductId());
+            statement.setTimestamp(2, Timestamp.from(entry.getChangedAt()));
+            setFloat(statement, 3, entry.getPrice());
+            setFloat(statement, 4, entry.getRating());
+        });
+    }
+
+    private static void setFloat(PreparedStatement statement, int index, Float value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.REAL);
+        } else {
+            statement.setFloat(index, value);
+        }
+    }
+}
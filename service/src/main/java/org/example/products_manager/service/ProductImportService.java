@@ -0,0 +1,634 @@
+package org.example.products_manager.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.products_manager.exception.ImportFailedException;
+import org.example.products_manager.exception.InvalidProductRequestException;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.ImportReport;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.model.Tag;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports products in bulk from CSV or NDJSON files located in the import directory.
+ *
+ * The file is read line by line, so its size is not limited by the available memory. Records are processed in chunks:
+ * the records of a chunk are parsed and validated in parallel, with the same rules as the REST API, and then written
+ * in a single transaction using JDBC batches, with the tags of the whole chunk resolved by a single query.
+ * Invalid records, duplicates within the file and records whose barcode already exists are not imported.
+ * When the database rejects a chunk for the data of one of its records, e.g. a value too long for its column,
+ * the records of the chunk are written again one by one, and the records rejected by the database are not imported.
+ * They are all reported in {@code <file>.rejected}, one JSON object per line.
+ * After each committed chunk, the number of its last line is written to {@code <file>.checkpoint}, so an import that
+ * failed can be resumed after the last committed chunk. The checkpoint is deleted once the whole file is imported.
+ * The in-memory catalog is rebuilt once the import ends, including when it failed after some chunks were committed.
+ * Imports write to the main datasource only, so they are rejected when the products are sharded.
+ *
+ * A CSV file must start with a header naming its columns (barcode, name, image, rating, price, tags), in any order.
+ * Tags are separated by '|'. Values may be quoted, and quoted values may contain commas but not line breaks.
+ */
+@Service
+public class ProductImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductImportService.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final ProductRepository productRepository;
+    private final TagRepository tagRepository;
+    private final ProductChangeRepository productChangeRepository;
+    private final BarcodeLocks barcodeLocks;
+    private final CatalogSynchronizer catalogSynchronizer;
+    private final NodeIdentity nodeIdentity;
+    private final ShardedProductsService shardedProductsService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Path importDirectory;
+    private final int chunkSize;
+    private final int parallelism;
+
+    public ProductImportService(ProductRepository productRepository,
+                                TagRepository tagRepository,
+                                ProductChangeRepository productChangeRepository,
+                                BarcodeLocks barcodeLocks,
+                                CatalogSynchronizer catalogSynchronizer,
+                                NodeIdentity nodeIdentity,
+                                ShardedProductsService shardedProductsService,
+                                JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${products.import.directory:imports}") String importDirectory,
+                                @Value("${products.import.chunk-size:5000}") int chunkSize,
+                                @Value("${products.import.parallelism:0}") int parallelism) {
+        this.productRepository = productRepository;
+        this.tagRepository = tagRepository;
+        this.productChangeRepository = productChangeRepository;
+        this.barcodeLocks = barcodeLocks;
+        this.catalogSynchronizer = catalogSynchronizer;
+        this.nodeIdentity = nodeIdentity;
+        this.shardedProductsService = shardedProductsService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.importDirectory = Paths.get(importDirectory).toAbsolutePath().normalize();
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Imports the products of a file in the import directory.
+     * Imports run one at a time.
+     *
+     * @param fileName the name of the file, relative to the import directory; must end with .csv, .ndjson or .jsonl
+     * @param resume whether to continue after the last chunk committed by a previous import of the same file
+     * @return the report of the import
+     * @throws InvalidQueryParameterException if the file does not exist, is outside the import directory, or has an unsupported format,
+     * or if the products are sharded
+     * @throws ImportFailedException if the import stopped before the end of the file; it can then be resumed
+     */
+    public synchronized ImportReport importFile(String fileName, boolean resume) {
+        if (shardedProductsService.isEnabled()) {
+            throw new InvalidQueryParameterException("Imports are not supported when the products are sharded");
+        }
+        Path file = resolveImportFile(fileName);
+        boolean csv = isCsv(file);
+        Path checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+        Path rejectedRecordsFile = file.resolveSibling(file.getFileName() + ".rejected");
+
+        ImportProgress progress = new ImportProgress();
+        progress.lastCommittedLine = resume ? readCheckpoint(checkpointFile) : 0;
+        long start = System.nanoTime();
+        ExecutorService validators = Executors.newFixedThreadPool(parallelism);
+        boolean completed = false;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectedRecordsFile, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     progress.lastCommittedLine > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            long lineNumber = 0;
+            Map<String, Integer> columns = null;
+            if (csv) {
+                columns = parseCsvHeader(reader.readLine());
+                lineNumber++;
+            }
+
+            Set<String> seenBarcodes = new HashSet<>();
+            List<RawRecord> chunk = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (lineNumber <= progress.lastCommittedLine) {
+                    progress.skippedRecords++;
+                    continue;
+                }
+                chunk.add(new RawRecord(lineNumber, line));
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, columns, seenBarcodes, validators, rejects, checkpointFile, progress);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, columns, seenBarcodes, validators, rejects, checkpointFile, progress);
+            }
+            completed = true;
+        } catch (IOException e) {
+            throw new ImportFailedException("Import of " + fileName + " failed, it can be resumed after line "
+                    + progress.lastCommittedLine, e);
+        } finally {
+            validators.shutdownNow();
+            if (!completed && progress.importedProducts > 0) {
+                rebuildCatalogAfterFailure(fileName);
+            }
+        }
+
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            logger.warn("Failed to delete the checkpoint of the import of {}", fileName, e);
+        }
+        if (progress.importedProducts > 0) {
+            catalogSynchronizer.rebuild();
+        }
+
+        long durationMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        return new ImportReport(
+                fileName,
+                progress.readRecords,
+                progress.importedProducts,
+                progress.rejectedRecords,
+                progress.skippedRecords,
+                progress.chunks,
+                durationMs,
+                progress.importedProducts * 1000 / durationMs,
+                importDirectory.relativize(rejectedRecordsFile).toString()
+        );
+    }
+
+    /**
+     * Validates and writes one chunk of records, then records its rejected records and advances the checkpoint.
+     */
+    private void importChunk(List<RawRecord> chunk, Map<String, Integer> columns, Set<String> seenBarcodes,
+                             ExecutorService validators, BufferedWriter rejects, Path checkpointFile,
+                             ImportProgress progress) throws IOException {
+        List<ParsedRecord> accepted = new ArrayList<>(chunk.size());
+        List<ParsedRecord> rejected = new ArrayList<>();
+        for (ParsedRecord record : parseAndValidate(chunk, columns, validators)) {
+            if (record.error == null && !seenBarcodes.add(record.request.getBarcode())) {
+                record.error = "Duplicate barcode " + record.request.getBarcode() + " in the import file";
+            }
+            (record.error == null ? accepted : rejected).add(record);
+        }
+
+        long lastLine = chunk.get(chunk.size() - 1).lineNumber;
+        int imported = insertChunk(accepted, rejected, seenBarcodes, lastLine, progress);
+        // Counted as soon as committed, so that the catalog is rebuilt if the import fails afterwards
+        progress.importedProducts += imported;
+
+        rejected.sort(Comparator.comparingLong(record -> record.lineNumber));
+        for (ParsedRecord record : rejected) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("line", record.lineNumber);
+            report.put("reason", record.error);
+            report.put("record", record.text);
+            rejects.write(objectMapper.writeValueAsString(report));
+            rejects.newLine();
+        }
+        rejects.flush();
+        writeCheckpoint(checkpointFile, lastLine);
+
+        progress.readRecords += chunk.size();
+        progress.rejectedRecords += rejected.size();
+        progress.chunks++;
+        progress.lastCommittedLine = lastLine;
+        logger.debug("Imported chunk {} up to line {}: {} products, {} rejected records",
+                progress.chunks, lastLine, imported, rejected.size());
+    }
+
+    /**
+     * Writes the accepted records of a chunk in a single transaction. If the database rejects the data of the chunk,
+     * its records are written again one at a time, each in its own transaction, and the records that the database
+     * rejects are added to the rejected records.
+     *
+     * @return the number of imported products
+     * @throws ImportFailedException if the chunk cannot be written for another reason than its data
+     */
+    private int insertChunk(List<ParsedRecord> accepted, List<ParsedRecord> rejected, Set<String> seenBarcodes,
+                            long lastLine, ImportProgress progress) {
+        try {
+            List<ParsedRecord> existing = new ArrayList<>();
+            int imported = transactionTemplate.execute(status -> insertProducts(accepted, existing));
+            rejected.addAll(existing);
+            return imported;
+        } catch (DataIntegrityViolationException e) {
+            logger.warn("The database rejected the chunk ending at line {}, writing its records one by one: {}",
+                    lastLine, e.getMostSpecificCause().getMessage());
+        } catch (RuntimeException e) {
+            throw new ImportFailedException("Import failed in the chunk ending at line " + lastLine
+                    + ", it can be resumed after line " + progress.lastCommittedLine, e);
+        }
+
+        int imported = 0;
+        for (ParsedRecord record : accepted) {
+            try {
+                imported += transactionTemplate.execute(status -> insertProducts(List.of(record), rejected));
+            } catch (DataIntegrityViolationException e) {
+                record.error = "Rejected by the database: " + e.getMostSpecificCause().getMessage();
+                rejected.add(record);
+                seenBarcodes.remove(record.request.getBarcode());
+            } catch (RuntimeException e) {
+                // The records written so far are committed, and are reported as existing if the import is resumed
+                progress.importedProducts += imported;
+                throw new ImportFailedException("Import failed at line " + record.lineNumber
+                        + ", it can be resumed after line " + progress.lastCommittedLine, e);
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Rebuilds the in-memory catalog after an import failed, so that it includes the chunks committed before the failure.
+     * A failure to rebuild it is logged, so that it does not hide the failure of the import.
+     */
+    private void rebuildCatalogAfterFailure(String fileName) {
+        try {
+            catalogSynchronizer.rebuild();
+        } catch (RuntimeException e) {
+            logger.error("Failed to rebuild the catalog after the failed import of {}", fileName, e);
+        }
+    }
+
+    /**
+     * Parses and validates the records of a chunk in parallel.
+     *
+     * @return the parsed records, in the order of the chunk
+     */
+    private List<ParsedRecord> parseAndValidate(List<RawRecord> chunk, Map<String, Integer> columns,
+                                                ExecutorService validators) {
+        int sliceSize = (chunk.size() + parallelism - 1) / parallelism;
+        List<Future<List<ParsedRecord>>> slices = new ArrayList<>();
+        for (int from = 0; from < chunk.size(); from += sliceSize) {
+            List<RawRecord> slice = chunk.subList(from, Math.min(from + sliceSize, chunk.size()));
+            slices.add(validators.submit(() -> {
+                List<ParsedRecord> parsed = new ArrayList<>(slice.size());
+                for (RawRecord record : slice) {
+                    parsed.add(parseAndValidate(record, columns));
+                }
+                return parsed;
+            }));
+        }
+
+        List<ParsedRecord> parsed = new ArrayList<>(chunk.size());
+        try {
+            for (Future<List<ParsedRecord>> slice : slices) {
+                parsed.addAll(slice.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImportFailedException("Import was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new ImportFailedException("Failed to validate the imported records", e.getCause());
+        }
+        return parsed;
+    }
+
+    private static ParsedRecord parseAndValidate(RawRecord record, Map<String, Integer> columns) {
+        ParsedRecord parsed = new ParsedRecord(record.lineNumber, record.text);
+        try {
+            ProductRequest request = columns == null ? parseJson(record.text) : parseCsv(record.text, columns);
+            ProductRequestValidator.validate(request);
+            if (request.getTags() == null) {
+                request.setTags(new ArrayList<>());
+            }
+            parsed.request = request;
+        } catch (InvalidProductRequestException e) {
+            parsed.error = e.getMessage();
+        }
+        return parsed;
+    }
+
+    /**
+     * Writes the accepted records of a chunk. Must be called within a transaction.
+     * The barcodes are reserved first, so that products created concurrently through the API are either
+     * seen as existing or wait for the chunk to be committed.
+     *
+     * @param accepted the valid records of the chunk
+     * @param rejected the rejected records of the chunk; records whose barcode already exists are added to it
+     * @return the number of imported products
+     */
+    private int insertProducts(List<ParsedRecord> accepted, List<ParsedRecord> rejected) {
+        if (accepted.isEmpty()) {
+            return 0;
+        }
+        List<String> barcodes = new ArrayList<>(accepted.size());
+        for (ParsedRecord record : accepted) {
+            barcodes.add(record.request.getBarcode());
+        }
+        barcodeLocks.lockUntilCompletion(barcodes.toArray(new String[0]));
+
+        Set<String> existingBarcodes = new HashSet<>(productRepository.findExistingBarcodes(barcodes));
+        List<ProductRequest> products = new ArrayList<>(accepted.size());
+        for (ParsedRecord record : accepted) {
+            if (existingBarcodes.contains(record.request.getBarcode())) {
+                record.error = "Product with barcode " + record.request.getBarcode() + " already exists";
+                rejected.add(record);
+            } else {
+                products.add(record.request);
+            }
+        }
+        if (products.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, Long> tagIds = resolveTags(products);
+        jdbcTemplate.batchUpdate("INSERT INTO products (barcode, name, image, rating, price) VALUES (?, ?, ?, ?, ?)",
+                products, products.size(), (statement, product) -> {
+                    statement.setString(1, product.getBarcode());
+                    statement.setString(2, product.getName());
+                    statement.setString(3, product.getImage());
+                    setFloat(statement, 4, product.getRating());
+                    setFloat(statement, 5, product.getPrice());
+                });
+
+        Map<String, Long> productIds = new HashMap<>();
+        List<String> insertedBarcodes = new ArrayList<>(products.size());
+        for (ProductRequest product : products) {
+            insertedBarcodes.add(product.getBarcode());
+        }
+        for (Object[] row : productRepository.findIdsByBarcodes(insertedBarcodes)) {
+            productIds.put((String) row[1], (Long) row[0]);
+        }
+        List<long[]> productTags = new ArrayList<>();
+        for (ProductRequest product : products) {
+            long productId = productIds.get(product.getBarcode());
+            for (String tagName : product.getTags()) {
+                productTags.add(new long[]{productId, tagIds.get(tagName)});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO product_tags (product_id, tag_id) VALUES (?, ?)",
+                productTags, productTags.size(), (statement, productTag) -> {
+                    statement.setLong(1, productTag[0]);
+                    statement.setLong(2, productTag[1]);
+                });
+        productChangeRepository.recordChanges(insertedBarcodes, Instant.now(), nodeIdentity.getId());
+        return products.size();
+    }
+
+    /**
+     * Finds the ids of all the tags used by the given products, creating the tags that do not exist yet.
+     * Tag names are matched case-insensitively, like the default collation of the database does.
+     */
+    private Map<String, Long> resolveTags(List<ProductRequest> products) {
+        Set<String> tagNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (ProductRequest product : products) {
+            tagNames.addAll(product.getTags());
+        }
+        Map<String, Long> tagIds = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (tagNames.isEmpty()) {
+            return tagIds;
+        }
+        for (Tag tag : tagRepository.findByTagNameIn(tagNames)) {
+            tagIds.put(tag.getTagName(), tag.getId());
+        }
+
+        List<String> missingTagNames = new ArrayList<>();
+        for (String tagName : tagNames) {
+            if (!tagIds.containsKey(tagName)) {
+                missingTagNames.add(tagName);
+            }
+        }
+        if (!missingTagNames.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO tags (tag_name) VALUES (?)",
+                    missingTagNames, missingTagNames.size(), (statement, tagName) -> statement.setString(1, tagName));
+            for (Tag tag : tagRepository.findByTagNameIn(missingTagNames)) {
+                tagIds.put(tag.getTagName(), tag.getId());
+            }
+        }
+        return tagIds;
+    }
+
+    private Path resolveImportFile(String fileName) {
+        if (fileName == null || fileName.isBlank()) {
+            throw new InvalidQueryParameterException("Import file is mandatory");
+        }
+        Path file = importDirectory.resolve(fileName).normalize();
+        if (!file.startsWith(importDirectory)) {
+            throw new InvalidQueryParameterException("Import file must be located in the import directory");
+        }
+        if (!Files.isRegularFile(file)) {
+            throw new InvalidQueryParameterException("Import file not found: " + fileName);
+        }
+        return file;
+    }
+
+    private static boolean isCsv(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return true;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return false;
+        }
+        throw new InvalidQueryParameterException("Import file must be a .csv, .ndjson or .jsonl file");
+    }
+
+    private static long readCheckpoint(Path checkpointFile) {
+        if (!Files.exists(checkpointFile)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(checkpointFile).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new ImportFailedException("Failed to read the import checkpoint " + checkpointFile.getFileName(), e);
+        }
+    }
+
+    /**
+     * Replaces the checkpoint atomically, so that a crash never leaves a partially written checkpoint.
+     */
+    private static void writeCheckpoint(Path checkpointFile, long lastLine) throws IOException {
+        Path temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.writeString(temporaryFile, Long.toString(lastLine));
+        Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ProductRequest parseJson(String line) {
+        ProductRequest request;
+        try {
+            request = objectMapper.readValue(line, ProductRequest.class);
+        } catch (JsonProcessingException e) {
+            throw new InvalidProductRequestException("Malformed JSON: " + e.getOriginalMessage());
+        }
+        if (request == null) {
+            throw new InvalidProductRequestException("Record must be a JSON object");
+        }
+        return request;
+    }
+
+    private static Map<String, Integer> parseCsvHeader(String header) {
+        if (header == null) {
+            throw new InvalidQueryParameterException("Import file is empty");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names;
+        try {
+            names = splitCsvLine(header);
+        } catch (InvalidProductRequestException e) {
+            throw new InvalidQueryParameterException("Invalid CSV header: " + e.getMessage());
+        }
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("barcode") || !columns.containsKey("name")) {
+            throw new InvalidQueryParameterException("The CSV header must contain the barcode and name columns");
+        }
+        return columns;
+    }
+
+    private static ProductRequest parseCsv(String line, Map<String, Integer> columns) {
+        List<String> values = splitCsvLine(line);
+        ProductRequest request = new ProductRequest();
+        request.setBarcode(csvValue(values, columns, "barcode"));
+        request.setName(csvValue(values, columns, "name"));
+        request.setImage(csvValue(values, columns, "image"));
+        request.setRating(parseFloat(csvValue(values, columns, "rating"), "Rating"));
+        request.setPrice(parseFloat(csvValue(values, columns, "price"), "Price"));
+        String tags = csvValue(values, columns, "tags");
+        request.setTags(tags == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(tags.split("\\|", -1))));
+        return request;
+    }
+
+    private static String csvValue(List<String> values, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= values.size() || values.get(index).isEmpty()) {
+            return null;
+        }
+        return values.get(index);
+    }
+
+    private static Float parseFloat(String value, String field) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidProductRequestException(field + " must be a number");
+        }
+    }
+
+    /**
+     * Splits a CSV line into its values. A quoted value may contain commas, and "" stands for a quote inside it.
+     */
+    private static List<String> splitCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new InvalidProductRequestException("Unterminated quoted value");
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static void setFloat(PreparedStatement statement, int index, Float value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.REAL);
+        } else {
+            statement.setFloat(index, value);
+        }
+    }
+
+    private static class RawRecord {
+        private final long lineNumber;
+        private final String text;
+
+        private RawRecord(long lineNumber, String text) {
+            this.lineNumber = lineNumber;
+            this.text = text;
+        }
+    }
+
+    private static class ParsedRecord {
+        private final long lineNumber;
+        private final String text;
+        private ProductRequest request;
+        private String error;
+
+        private ParsedRecord(long lineNumber, String text) {
+            this.lineNumber = lineNumber;
+            this.text = text;
+        }
+    }
+
+    private static class ImportProgress {
+        private long readRecords;
+        private long importedProducts;
+        private long rejectedRecords;
+        private long skippedRecords;
+        private int chunks;
+        private long lastCommittedLine;
+    }
+}
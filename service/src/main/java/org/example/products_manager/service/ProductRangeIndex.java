@@ -0,0 +1,354 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the products sorted by price and by rating, used to answer range queries.
+ *
+ * Each ordering is stored as parallel primitive arrays (sort key, the other field and the product id),
+ * so a lookup is a binary search followed by a sequential scan, without boxing any value.
+ * Missing prices and ratings are stored as NaN and sorted before all the other values, as in the database and in the
+ * catalog snapshot. Ties are broken by product id.
+ * The arrays are never modified in place: writers build new arrays and publish them with a single volatile write,
+ * so readers always see a consistent ordering without locking.
+ * By default, every committed change is merged right away, by the committing thread, so a range query that follows
+ * a write sees it. With {@code products.range-index.batch-writes=true}, committed changes are accumulated and merged
+ * into the arrays together every {@code products.range-index.refresh-interval-ms}, so that the arrays are copied
+ * once per batch rather than once per change.
+ */
+@Component
+public class ProductRangeIndex implements CatalogListener {
+
+    private final boolean batchWrites;
+
+    private volatile SortedColumns byPrice = SortedColumns.EMPTY;
+    private volatile SortedColumns byRating = SortedColumns.EMPTY;
+    private volatile boolean ready;
+    private Map<Long, CatalogEntry> pendingChanges = new HashMap<>();
+    private final Object pendingChangesLock = new Object();
+
+    public ProductRangeIndex(@Value("${products.range-index.batch-writes:false}") boolean batchWrites) {
+        this.batchWrites = batchWrites;
+    }
+
+    @Override
+    public synchronized void rebuild(List<CatalogEntry> entries) {
+        synchronized (pendingChangesLock) {
+            pendingChanges.clear();
+        }
+        List<CatalogEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(CatalogEntry::getId));
+        int size = sorted.size();
+        float[] prices = new float[size];
+        float[] ratings = new float[size];
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            CatalogEntry entry = sorted.get(i);
+            prices[i] = toKey(entry.getPrice());
+            ratings[i] = toKey(entry.getRating());
+            ids[i] = entry.getId();
+        }
+        byPrice = SortedColumns.sort(prices, ratings, ids);
+        byRating = SortedColumns.sort(ratings, prices, ids);
+        ready = true;
+    }
+
+    @Override
+    public void onProductChanged(ProductChangedEvent event) {
+        synchronized (pendingChangesLock) {
+            pendingChanges.put(event.getProductId(), event.getEntry());
+        }
+        if (!batchWrites) {
+            refresh();
+        }
+    }
+
+    /**
+     * Merges the pending changes, if any, into both orderings: the changed and deleted products are dropped
+     * and the new state of the changed products is merged in, in a single pass over each ordering.
+     */
+    @Scheduled(fixedDelayString = "${products.range-index.refresh-interval-ms:100}")
+    public synchronized void refresh() {
+        Map<Long, CatalogEntry> changes;
+        synchronized (pendingChangesLock) {
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+            changes = pendingChanges;
+            pendingChanges = new HashMap<>();
+        }
+        long[] changedIds = new long[changes.size()];
+        int changedCount = 0;
+        for (Long id : changes.keySet()) {
+            changedIds[changedCount++] = id;
+        }
+        Arrays.sort(changedIds);
+        float[] prices = new float[changedIds.length];
+        float[] ratings = new float[changedIds.length];
+        long[] ids = new long[changedIds.length];
+        int size = 0;
+        for (long id : changedIds) {
+            CatalogEntry entry = changes.get(id);
+            if (entry != null) {
+                prices[size] = toKey(entry.getPrice());
+                ratings[size] = toKey(entry.getRating());
+                ids[size++] = id;
+            }
+        }
+        prices = Arrays.copyOf(prices, size);
+        ratings = Arrays.copyOf(ratings, size);
+        ids = Arrays.copyOf(ids, size);
+        byPrice = byPrice.withChanges(changedIds, SortedColumns.sort(prices, ratings, ids));
+        byRating = byRating.withChanges(changedIds, SortedColumns.sort(ratings, prices, ids));
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return byPrice.ids.length;
+    }
+
+    /**
+     * Finds the ids of the products within the given bounds, ordered by price or by rating in ascending order.
+     * Bounds are inclusive, and a null bound is not applied. Products without a value for a bounded field never match.
+     *
+     * @param minPrice the minimum price, or null
+     * @param maxPrice the maximum price, or null
+     * @param minRating the minimum rating, or null
+     * @param sortByRating whether to order the results by rating rather than by price
+     * @param limit the maximum number of ids to return
+     * @return the ids of the matching products, in order
+     */
+    public long[] findIds(Float minPrice, Float maxPrice, Float minRating, boolean sortByRating, int limit) {
+        float minPriceKey = minPrice == null ? Float.NEGATIVE_INFINITY : minPrice;
+        float maxPriceKey = maxPrice == null ? Float.POSITIVE_INFINITY : maxPrice;
+        float minRatingKey = minRating == null ? Float.NEGATIVE_INFINITY : minRating;
+        boolean pricesBounded = minPrice != null || maxPrice != null;
+        boolean ratingBounded = minRating != null;
+
+        SortedColumns columns = sortByRating ? byRating : byPrice;
+        long[] result = new long[Math.min(limit, columns.ids.length)];
+        int count = 0;
+        if (sortByRating) {
+            int from = ratingBounded ? columns.lowerBound(minRatingKey) : 0;
+            int to = columns.ids.length;
+            for (int i = from; i < to && count < result.length; i++) {
+                float price = columns.others[i];
+                if (!pricesBounded || (price >= minPriceKey && price <= maxPriceKey)) {
+                    result[count++] = columns.ids[i];
+                }
+            }
+        } else {
+            int from = pricesBounded ? columns.lowerBound(minPriceKey) : 0;
+            int to = pricesBounded ? columns.upperBound(maxPriceKey) : columns.ids.length;
+            for (int i = from; i < to && count < result.length; i++) {
+                if (!ratingBounded || columns.others[i] >= minRatingKey) {
+                    result[count++] = columns.ids[i];
+                }
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private static float toKey(Float value) {
+        return value == null ? Float.NaN : value;
+    }
+
+    /**
+     * Immutable parallel arrays sorted by {@code keys} in ascending order, with NaN keys first, and then by id.
+     */
+    private static final class SortedColumns {
+        private static final SortedColumns EMPTY = new SortedColumns(new float[0], new float[0], new long[0]);
+
+        private final float[] keys;
+        private final float[] others;
+        private final long[] ids;
+        private final int firstValue;
+
+        private SortedColumns(float[] keys, float[] others, long[] ids) {
+            this.keys = keys;
+            this.others = others;
+            this.ids = ids;
+            this.firstValue = countMissing(keys);
+        }
+
+        /**
+         * Sorts the given columns by key. The rows must be in id order, so that ties keep it.
+         */
+        private static SortedColumns sort(float[] keys, float[] others, long[] ids) {
+            int size = keys.length;
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) sortableBits(keys[i]) << 32) | i;
+            }
+            Arrays.sort(packed);
+            float[] sortedKeys = new float[size];
+            float[] sortedOthers = new float[size];
+            long[] sortedIds = new long[size];
+            for (int i = 0; i < size; i++) {
+                int position = (int) packed[i];
+                sortedKeys[i] = keys[position];
+                sortedOthers[i] = others[position];
+                sortedIds[i] = ids[position];
+            }
+            return new SortedColumns(sortedKeys, sortedOthers, sortedIds);
+        }
+
+        /**
+         * Maps a float to an int whose signed order matches the order of the floats, with NaN less than all.
+         */
+        private static int sortableBits(float value) {
+            if (Float.isNaN(value)) {
+                return Integer.MIN_VALUE;
+            }
+            int bits = Float.floatToIntBits(value);
+            return bits >= 0 ? bits : bits ^ Integer.MAX_VALUE;
+        }
+
+        /**
+         * @return the number of NaN keys, which all come first
+         */
+        private static int countMissing(float[] keys) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (Float.isNaN(keys[mid])) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the first key that is greater than or equal to the given value (NaN keys count as less)
+         */
+        private int lowerBound(float value) {
+            int low = firstValue;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the first key that is greater than the given value
+         */
+        private int upperBound(float value) {
+            int low = firstValue;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Drops the rows of the changed ids and merges in the sorted rows of their new state.
+         * The rows in between are copied in runs, and each new row is placed by a binary search.
+         *
+         * @param changedIds the ids of the changed and deleted products, sorted
+         * @param added the new state of the changed products that were not deleted
+         * @return the new columns
+         */
+        private SortedColumns withChanges(long[] changedIds, SortedColumns added) {
+            if (changedIds.length == 0) {
+                return this;
+            }
+            int[] dropped = new int[changedIds.length];
+            int droppedCount = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (isChanged(ids[i], changedIds)) {
+                    dropped[droppedCount++] = i;
+                }
+            }
+            int[] insertAt = new int[added.ids.length];
+            for (int j = 0; j < insertAt.length; j++) {
+                insertAt[j] = insertionPoint(added, j);
+            }
+
+            int size = ids.length - droppedCount + added.ids.length;
+            float[] newKeys = new float[size];
+            float[] newOthers = new float[size];
+            long[] newIds = new long[size];
+            int source = 0;
+            int target = 0;
+            int nextDropped = 0;
+            int nextAdded = 0;
+            while (source < ids.length || nextAdded < insertAt.length) {
+                int until = Math.min(nextDropped < droppedCount ? dropped[nextDropped] : ids.length,
+                        nextAdded < insertAt.length ? insertAt[nextAdded] : ids.length);
+                System.arraycopy(keys, source, newKeys, target, until - source);
+                System.arraycopy(others, source, newOthers, target, until - source);
+                System.arraycopy(ids, source, newIds, target, until - source);
+                target += until - source;
+                source = until;
+                if (nextAdded < insertAt.length && insertAt[nextAdded] == source) {
+                    newKeys[target] = added.keys[nextAdded];
+                    newOthers[target] = added.others[nextAdded];
+                    newIds[target++] = added.ids[nextAdded++];
+                } else if (nextDropped < droppedCount && dropped[nextDropped] == source) {
+                    source++;
+                    nextDropped++;
+                }
+            }
+            return new SortedColumns(newKeys, newOthers, newIds);
+        }
+
+        /**
+         * @return the index of the first row that is ordered after the given row of the other columns
+         */
+        private int insertionPoint(SortedColumns other, int otherRow) {
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compareRows(this, mid, other, otherRow) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Checks the range of the changed ids first, so that a small batch costs two comparisons for most rows.
+         */
+        private static boolean isChanged(long id, long[] changedIds) {
+            return id >= changedIds[0] && id <= changedIds[changedIds.length - 1]
+                    && Arrays.binarySearch(changedIds, id) >= 0;
+        }
+
+        private static int compareRows(SortedColumns a, int rowA, SortedColumns b, int rowB) {
+            int comparison = Integer.compare(sortableBits(a.keys[rowA]), sortableBits(b.keys[rowB]));
+            return comparison != 0 ? comparison : Long.compare(a.ids[rowA], b.ids[rowB]);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.exception.InvalidProductRequestException;
+import org.example.products_manager.model.ProductRequest;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Validation rules of product requests, shared by the REST API and the bulk import.
+ */
+public final class ProductRequestValidator {
+
+    private ProductRequestValidator() {
+    }
+
+    /**
+     * Ensures the requested product has valid values in its fields.
+     *
+     * @param productRequest the product request
+     * @throws InvalidProductRequestException if a field has an invalid value
+     */
+    public static void validate(ProductRequest productRequest) {
+        if (productRequest.getBarcode() == null || productRequest.getBarcode().trim().isEmpty()) {
+            throw new InvalidProductRequestException("Barcode is mandatory");
+        }
+        if (!productRequest.getBarcode().matches("[0-9]+")) {
+            throw new InvalidProductRequestException("Barcode can only contain digits");
+        }
+        if (productRequest.getName() == null || productRequest.getName().trim().isEmpty()) {
+            throw new InvalidProductRequestException("Name is mandatory");
+        }
+        if (productRequest.getImage() != null && !productRequest.getImage().trim().isEmpty()) {
+            try {
+                new URL(productRequest.getImage());
+            } catch (MalformedURLException e) {
+                throw new InvalidProductRequestException("Image must be a valid URL or empty");
+            }
+        }
+        if (productRequest.getTags() != null) {
+            for (String tag : productRequest.getTags()) {
+                if (tag == null || tag.trim().isEmpty()) {
+                    throw new InvalidProductRequestException("Tag cannot be blank");
+                }
+            }
+        }
+    }
+}
@@ -2,28 +2,56 @@ package org.example.products_manager.service;
 
 import org.example.products_manager.exception.BarcodeAlreadyExistsException;
 import org.example.products_manager.exception.DatabaseAccessException;
+import org.example.products_manager.exception.InvalidProductRequestException;
+import org.example.products_manager.exception.InvalidQueryParameterException;
 import org.example.products_manager.exception.ProductNotFoundException;
 import org.example.products_manager.model.*;
+import org.example.products_manager.repository.BulkUpdateStatement;
+import org.example.products_manager.repository.PriceHistoryRepository;
+import org.example.products_manager.repository.ProductChangeRepository;
 import org.example.products_manager.repository.ProductRepository;
 import org.example.products_manager.repository.ProductTagRepository;
 import org.example.products_manager.repository.TagRepository;
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Service class for managing products.
  * This class provides methods for creating, retrieving, updating, and deleting products.
  * It also handles the association of tags with products.
+ * When sharding is enabled, products are stored by the {@link ShardedProductsService} rather than by the JPA repositories.
+ * Changes of price or rating are recorded in the price history by the {@link PriceHistoryWriter}, except in sharded mode.
  */
 @Service
 public class ProductsManagerService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ProductsManagerService.class);
+
     @Autowired
     private ProductRepository productRepository;
 
@@ -33,17 +61,62 @@ public class ProductsManagerService {
     @Autowired
     private TagRepository tagRepository;
 
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @Autowired
+    private TagStatsAggregator tagStatsAggregator;
+
+    @Autowired
+    private ProductRangeIndex productRangeIndex;
+
+    @Autowired
+    private CatalogSnapshotHolder catalogSnapshotHolder;
+
+    @Autowired
+    private SimilarProductsIndex similarProductsIndex;
+
+    @Autowired
+    private BarcodeLocks barcodeLocks;
+
+    @Autowired
+    private NodeIdentity nodeIdentity;
+
+    @Autowired
+    private ShardedProductsService shardedProductsService;
+
+    @Autowired
+    private ReadCoalescer readCoalescer;
+
+    @Autowired
+    private PriceHistoryWriter priceHistoryWriter;
+
+    @Autowired
+    private PriceHistoryRepository priceHistoryRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * Creates a new product based on the provided request.
      * Also handles the association of tags with the product.
+     * The barcode is reserved until the transaction completes, so concurrent creations of the same barcode
+     * are serialized. If the barcode is taken anyway (e.g. by another instance of the service), the resulting
+     * unique constraint violation is reported as an existing barcode, while other constraint violations are
+     * reported as database errors.
      *
      * @param productRequest the request containing the product details
      * @return the response containing the created product details
+     * @throws BarcodeAlreadyExistsException if a product with the same barcode already exists
      * @throws DatabaseAccessException if there is an error accessing the database
      */
     @Transactional
     public ProductResponse createProduct(ProductRequest productRequest) {
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.createProduct(productRequest);
+        }
         try {
+            barcodeLocks.lockUntilCompletion(productRequest.getBarcode());
             if (productRepository.findByBarcode(productRequest.getBarcode()).isPresent()) {
                 throw new BarcodeAlreadyExistsException("Product with barcode " + productRequest.getBarcode() + " already exists");
             }
@@ -53,11 +126,23 @@ public class ProductsManagerService {
             product.setImage(productRequest.getImage());
             product.setRating(productRequest.getRating());
             product.setPrice(productRequest.getPrice());
-            product = productRepository.save(product);
+            try {
+                product = productRepository.save(product);
+            } catch (DataIntegrityViolationException e) {
+                if (isDuplicateBarcode(e)) {
+                    throw new BarcodeAlreadyExistsException("Product with barcode " + productRequest.getBarcode() + " already exists");
+                }
+                throw e;
+            }
 
-            handleTags(product, productRequest.getTags(), false);
+            handleTags(product, Objects.requireNonNullElse(productRequest.getTags(), List.of()), false);
+            if (product.getPrice() != null || product.getRating() != null) {
+                priceHistoryWriter.record(product.getId(), product.getPrice(), product.getRating());
+            }
 
-            return convertToProductResponse(product);
+            ProductResponse productResponse = convertToProductResponse(product);
+            publishChange(product, productResponse);
+            return productResponse;
         } catch (DataAccessException e) {
             throw new DatabaseAccessException("Error accessing the database");
         }
@@ -66,6 +151,7 @@ public class ProductsManagerService {
 
     /**
      * Retrieves a product by its barcode.
+     * Concurrent retrievals of the same barcode share a single read of the database.
      *
      * @param barcode the barcode of the product
      * @return the response containing the product details
@@ -73,6 +159,13 @@ public class ProductsManagerService {
      * @throws DatabaseAccessException  if there is an error accessing the database
      */
     public ProductResponse getProduct(String barcode) {
+        return readCoalescer.execute("product:" + barcode, () -> readProduct(barcode));
+    }
+
+    private ProductResponse readProduct(String barcode) {
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.getProduct(barcode);
+        }
         Product product;
         try {
             product = productRepository.findByBarcode(barcode)
@@ -84,13 +177,52 @@ public class ProductsManagerService {
     }
 
     /**
-     * Retrieves all products from the database, sorted by the specified field.
+     * Retrieves the requested fields of a product by its barcode.
+     * Only the requested columns are read from the database, and the tags are not read unless requested.
+     *
+     * @param barcode the barcode of the product
+     * @param fields the fields to return
+     * @return the values of the requested fields, by field name
+     * @throws ProductNotFoundException if the product is not found
+     * @throws DatabaseAccessException  if there is an error accessing the database
+     */
+    public Map<String, Object> getProduct(String barcode, ProductFields fields) {
+        if (shardedProductsService.isEnabled()) {
+            return fields.select(getProduct(barcode));
+        }
+        try {
+            List<Object[]> rows = productRepository.findColumnsByBarcode(fields.getColumns(), barcode);
+            if (rows.isEmpty()) {
+                throw new ProductNotFoundException("Product not found with barcode: " + barcode);
+            }
+            return toFieldValues(rows, fields, false).get(0);
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
+    /**
+     * Retrieves all products, sorted by the specified field.
+     * Products are read from the in-memory catalog snapshot, or from the database until the snapshot is loaded.
+     * Concurrent reads of the database with the same order are shared, and so is the returned list.
      *
      * @param sortBy the field by which to sort the products. If null, products are sorted by their id.
      * @return a list of ProductResponse objects, each representing a product in the database.
      * @throws DatabaseAccessException if there is an error accessing the database.
      */
     public List<ProductResponse> getAllProducts(String sortBy) {
+        CatalogSnapshot snapshot = catalogSnapshotHolder.getSnapshot();
+        if (snapshot != null) {
+            return snapshot.list(Objects.requireNonNullElse(sortBy, "id"));
+        }
+        return readCoalescer.execute("products:" + Objects.requireNonNullElse(sortBy, "id"),
+                () -> Collections.unmodifiableList(readAllProducts(sortBy)));
+    }
+
+    private List<ProductResponse> readAllProducts(String sortBy) {
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.getAllProducts(sortBy);
+        }
         try {
             Sort sortMethod = Sort.by(Sort.Direction.ASC, Objects.requireNonNullElse(sortBy, "id"));
             List<Product> allProducts = productRepository.findAll(sortMethod);
@@ -100,6 +232,210 @@ public class ProductsManagerService {
         }
     }
 
+    /**
+     * Retrieves the requested fields of all products, sorted by the specified field.
+     * Products are read from the in-memory catalog snapshot, or from the database until the snapshot is loaded.
+     * Only the requested columns are read from the database, and the tags are not read unless requested.
+     *
+     * @param sortBy the field by which to sort the products. If null, products are sorted by their id.
+     * @param fields the fields to return
+     * @return the values of the requested fields of each product
+     * @throws DatabaseAccessException if there is an error accessing the database.
+     */
+    public List<Map<String, Object>> getAllProducts(String sortBy, ProductFields fields) {
+        CatalogSnapshot snapshot = catalogSnapshotHolder.getSnapshot();
+        if (snapshot != null) {
+            return snapshot.list(Objects.requireNonNullElse(sortBy, "id"), fields);
+        }
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.getAllProducts(sortBy).stream().map(fields::select).collect(Collectors.toList());
+        }
+        try {
+            List<Object[]> rows = productRepository.findColumns(fields.getColumns(), Objects.requireNonNullElse(sortBy, "id"));
+            return toFieldValues(rows, fields, true);
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
+    /**
+     * Retrieves the products within a price and rating range, sorted by price or by rating.
+     * The matching products are found in the in-memory range index and read from the catalog snapshot,
+     * or from the database until the snapshot is loaded.
+     * Until the index is built, the products are filtered from a full read of the catalog instead.
+     *
+     * @param query the range, the sort order ("price" or "rating") and the maximum number of products to return
+     * @return a list of ProductResponse objects, each representing a matching product
+     * @throws DatabaseAccessException if there is an error accessing the database.
+     */
+    public List<ProductResponse> findProducts(ProductQuery query) {
+        boolean sortByRating = "rating".equals(query.getSortBy());
+        int limit = query.getTop() == null ? Integer.MAX_VALUE : query.getTop();
+        try {
+            if (!productRangeIndex.isReady()) {
+                return getAllProducts(sortByRating ? "rating" : "price").stream()
+                        .filter(productResponse -> isInRange(productResponse, query))
+                        .limit(limit)
+                        .collect(Collectors.toList());
+            }
+
+            long[] ids = productRangeIndex.findIds(query.getMinPrice(), query.getMaxPrice(), query.getMinRating(), sortByRating, limit);
+            return findByIds(ids);
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
+    /**
+     * Retrieves the products whose tags are the most similar to the tags of the given product, by Jaccard similarity.
+     * The similar products are found in the in-memory similarity index, which is approximate, and read from the catalog
+     * snapshot, or from the database until the snapshot is loaded.
+     * Until the index is built, the similarity of every product is computed from a full read of the catalog instead.
+     *
+     * @param barcode the barcode of the product
+     * @param limit the maximum number of products to return
+     * @return the similar products, the most similar first; products sharing no tag with the product are not returned
+     * @throws ProductNotFoundException if the product is not found
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    public List<SimilarProductResponse> findSimilarProducts(String barcode, int limit) {
+        try {
+            if (!similarProductsIndex.isReady()) {
+                return findSimilarProductsByScan(barcode, limit);
+            }
+            List<SimilarProductsIndex.Match> matches = similarProductsIndex.findSimilar(barcode, limit);
+            if (matches == null) {
+                throw new ProductNotFoundException("Product not found with barcode: " + barcode);
+            }
+            List<SimilarProductResponse> similarProducts = new ArrayList<>(matches.size());
+            for (SimilarProductsIndex.Match match : matches) {
+                for (ProductResponse productResponse : findByIds(new long[]{match.getProductId()})) {
+                    similarProducts.add(new SimilarProductResponse(productResponse, match.getSimilarity()));
+                }
+            }
+            return similarProducts;
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
+    private List<SimilarProductResponse> findSimilarProductsByScan(String barcode, int limit) {
+        List<ProductResponse> allProducts = getAllProducts("id");
+        Set<String> tags = allProducts.stream()
+                .filter(productResponse -> productResponse.getBarcode().equals(barcode))
+                .findFirst()
+                .map(productResponse -> new HashSet<>(productResponse.getTags()))
+                .orElseThrow(() -> new ProductNotFoundException("Product not found with barcode: " + barcode));
+
+        List<SimilarProductResponse> similarProducts = new ArrayList<>();
+        for (ProductResponse productResponse : allProducts) {
+            if (productResponse.getBarcode().equals(barcode)) {
+                continue;
+            }
+            Set<String> otherTags = new HashSet<>(productResponse.getTags());
+            long shared = otherTags.stream().filter(tags::contains).count();
+            if (shared > 0) {
+                similarProducts.add(new SimilarProductResponse(productResponse,
+                        (double) shared / (tags.size() + otherTags.size() - shared)));
+            }
+        }
+        similarProducts.sort(Comparator.comparingDouble(SimilarProductResponse::getSimilarity).reversed());
+        return similarProducts.subList(0, Math.min(limit, similarProducts.size()));
+    }
+
+    /**
+     * Retrieves the given products, in the given order, from the catalog snapshot, or from the database
+     * until the snapshot is loaded. Products that do not exist are skipped.
+     *
+     * @param ids the ids of the products
+     * @return a list of ProductResponse objects, each representing an existing product
+     */
+    private List<ProductResponse> findByIds(long[] ids) {
+        CatalogSnapshot snapshot = catalogSnapshotHolder.getSnapshot();
+        if (snapshot != null) {
+            return snapshot.findByIds(ids);
+        }
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.findByIds(ids);
+        }
+        List<Long> idList = Arrays.stream(ids).boxed().collect(Collectors.toList());
+        Map<Long, Product> productsById = productRepository.findAllById(idList).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        List<ProductResponse> productResponses = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Product product = productsById.get(id);
+            if (product != null) {
+                productResponses.add(convertToProductResponse(product));
+            }
+        }
+        return productResponses;
+    }
+
+    /**
+     * Retrieves the requested fields of the products within a price and rating range, sorted by price or by rating.
+     * Once the range index and the catalog snapshot are loaded, only the requested fields are copied out of the snapshot.
+     *
+     * @param query the range, the sort order ("price" or "rating") and the maximum number of products to return
+     * @param fields the fields to return
+     * @return the values of the requested fields of each matching product
+     * @throws DatabaseAccessException if there is an error accessing the database.
+     */
+    public List<Map<String, Object>> findProducts(ProductQuery query, ProductFields fields) {
+        CatalogSnapshot snapshot = catalogSnapshotHolder.getSnapshot();
+        if (snapshot == null || !productRangeIndex.isReady()) {
+            return findProducts(query).stream().map(fields::select).collect(Collectors.toList());
+        }
+        int limit = query.getTop() == null ? Integer.MAX_VALUE : query.getTop();
+        long[] ids = productRangeIndex.findIds(query.getMinPrice(), query.getMaxPrice(), query.getMinRating(),
+                "rating".equals(query.getSortBy()), limit);
+        return snapshot.findByIds(ids, fields);
+    }
+
+    /**
+     * Retrieves the price and rating statistics of the products associated with each tag.
+     * The statistics are maintained in memory, so no database access is made.
+     *
+     * @return a list of TagStatsResponse objects, ordered by tag name
+     */
+    public List<TagStatsResponse> getStatsByTag() {
+        return tagStatsAggregator.getStatsByTag();
+    }
+
+    /**
+     * Retrieves the price and rating of a product after each of their changes in the given time range, oldest first.
+     * Changes recorded by the asynchronous writer are only found once it wrote them.
+     *
+     * @param barcode the barcode of the product
+     * @param from the start of the time range, inclusive
+     * @param to the end of the time range, inclusive
+     * @return a list of PriceHistoryResponse objects, ordered by the time of the change
+     * @throws ProductNotFoundException if the product is not found
+     * @throws InvalidQueryParameterException if the price history is not kept
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    public List<PriceHistoryResponse> getPriceHistory(String barcode, Instant from, Instant to) {
+        if (!priceHistoryWriter.isEnabled()) {
+            throw new InvalidQueryParameterException("Price history is not kept by this service");
+        }
+        try {
+            long productId;
+            if (shardedProductsService.isEnabled()) {
+                productId = shardedProductsService.getProductId(barcode);
+            } else {
+                productId = productRepository.findByBarcode(barcode)
+                        .orElseThrow(() -> new ProductNotFoundException("Product not found with barcode: " + barcode))
+                        .getId();
+            }
+            return priceHistoryRepository.findByProductIdAndChangedAtBetweenOrderByChangedAtAscIdAsc(productId, from, to)
+                    .stream()
+                    .map(entry -> new PriceHistoryResponse(entry.getChangedAt(), entry.getPrice(), entry.getRating()))
+                    .collect(Collectors.toList());
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
     /**
      * Updates a product based on the provided request.
      * Also handles the association of tags with the product.
@@ -108,46 +444,150 @@ public class ProductsManagerService {
      * @param productRequest the request containing the new product details
      * @return the response containing the updated product details
      * @throws ProductNotFoundException if the product is not found
+     * @throws BarcodeAlreadyExistsException if the barcode is changed to the barcode of another product
      * @throws DatabaseAccessException  if there is an error accessing the database
      */
     @Transactional
     public ProductResponse updateProduct(String barcode, ProductRequest productRequest) {
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.updateProduct(barcode, productRequest);
+        }
         Product product;
         try {
+            String newBarcode = productRequest.getBarcode();
+            boolean barcodeChanged = newBarcode != null && !newBarcode.equals(barcode);
+            if (barcodeChanged) {
+                barcodeLocks.lockUntilCompletion(barcode, newBarcode);
+                if (productRepository.findByBarcode(newBarcode).isPresent()) {
+                    throw new BarcodeAlreadyExistsException("Product with barcode " + newBarcode + " already exists");
+                }
+            }
             product = productRepository.findByBarcode(barcode)
                     .orElseThrow(() -> new ProductNotFoundException("Product not found with barcode: " + barcode));
 
-            if (productRequest.getBarcode() != null) {
-                product.setBarcode(productRequest.getBarcode());
-            }
+            return applyUpdate(product, productRequest);
 
-            if (productRequest.getName() != null) {
-                product.setName(productRequest.getName());
-            }
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
 
-            if (productRequest.getImage() != null) {
-                product.setImage(productRequest.getImage());
+    /**
+     * Applies a batch of updates in a single transaction.
+     * Used by the write-behind mode, in which updates were already acknowledged, so updates of products
+     * that no longer exist are skipped rather than failing the whole batch.
+     * The updates are flushed before returning, so that a value the database rejects is reported as such
+     * rather than as a failure to commit.
+     *
+     * @param productRequests the request containing the new product details, by the barcode of the product to update
+     * @return the number of products that were updated
+     * @throws BarcodeAlreadyExistsException if an update changes the barcode to the barcode of another product
+     * @throws InvalidProductRequestException if the database rejects an update, e.g. a value too long for its column
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    @Transactional
+    public int applyUpdates(Map<String, ProductRequest> productRequests) {
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.applyUpdates(productRequests);
+        }
+        int updated = 0;
+        try {
+            for (Map.Entry<String, ProductRequest> entry : productRequests.entrySet()) {
+                Optional<Product> product = productRepository.findByBarcode(entry.getKey());
+                if (product.isEmpty()) {
+                    logger.warn("Skipping queued update of product with barcode {}, it no longer exists", entry.getKey());
+                    continue;
+                }
+                applyUpdate(product.get(), entry.getValue());
+                updated++;
             }
+            productRepository.flush();
+            return updated;
+        } catch (DataIntegrityViolationException e) {
+            throw new InvalidProductRequestException("Update was rejected by the database: " + e.getMostSpecificCause().getMessage());
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
 
-            if (productRequest.getRating() != null) {
-                product.setRating(productRequest.getRating());
+    /**
+     * Updates the price or the rating of all the selected products at once, in a single transaction.
+     * The selected products are locked, a change of each one is recorded in the change log and in the price history,
+     * and they are updated by a single statement. Once committed, the in-memory structures reload the updated products.
+     *
+     * @param bulkUpdateRequest the validated selector and operation
+     * @return the number of updated products
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    @Transactional
+    public int bulkUpdate(BulkUpdateRequest bulkUpdateRequest) {
+        BulkUpdateStatement statement = BulkUpdateStatement.of(bulkUpdateRequest);
+        if (shardedProductsService.isEnabled()) {
+            return shardedProductsService.bulkUpdate(statement);
+        }
+        try {
+            List<Long> productIds = productRepository.findIdsForBulkUpdate(statement);
+            if (productIds.isEmpty()) {
+                return 0;
             }
-
-            if (productRequest.getPrice() != null) {
-                product.setPrice(productRequest.getPrice());
+            Instant changedAt = Instant.now();
+            productRepository.recordBulkUpdate(statement, changedAt, nodeIdentity.getId());
+            if (priceHistoryWriter.isEnabled()) {
+                // Written with the update rather than queued, as a single statement for all the products
+                productRepository.recordPriceHistory(statement, changedAt);
             }
+            int updated = productRepository.bulkUpdate(statement);
+            eventPublisher.publishEvent(new ProductsChangedEvent(productIds));
+            return updated;
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
 
-            if (productRequest.getTags() != null) {
-                handleTags(product, productRequest.getTags(), true);
+    private ProductResponse applyUpdate(Product product, ProductRequest productRequest) {
+        Float oldPrice = product.getPrice();
+        Float oldRating = product.getRating();
+        if (productRequest.getBarcode() != null && !productRequest.getBarcode().equals(product.getBarcode())) {
+            product.setBarcode(productRequest.getBarcode());
+            // Flush the new barcode right away, so that a conflict surfaces here rather than at commit
+            try {
+                productRepository.saveAndFlush(product);
+            } catch (DataIntegrityViolationException e) {
+                if (isDuplicateBarcode(e)) {
+                    throw new BarcodeAlreadyExistsException("Product with barcode " + productRequest.getBarcode() + " already exists");
+                }
+                throw e;
             }
+        }
 
-            product = productRepository.save(product);
+        if (productRequest.getName() != null) {
+            product.setName(productRequest.getName());
+        }
 
-            return convertToProductResponse(product);
+        if (productRequest.getImage() != null) {
+            product.setImage(productRequest.getImage());
+        }
 
-        } catch (DataAccessException e) {
-            throw new DatabaseAccessException("Error accessing the database");
+        if (productRequest.getRating() != null) {
+            product.setRating(productRequest.getRating());
         }
+
+        if (productRequest.getPrice() != null) {
+            product.setPrice(productRequest.getPrice());
+        }
+
+        if (productRequest.getTags() != null) {
+            handleTags(product, productRequest.getTags(), true);
+        }
+
+        product = productRepository.save(product);
+        if (!Objects.equals(oldPrice, product.getPrice()) || !Objects.equals(oldRating, product.getRating())) {
+            priceHistoryWriter.record(product.getId(), product.getPrice(), product.getRating());
+        }
+
+        ProductResponse productResponse = convertToProductResponse(product);
+        publishChange(product, productResponse);
+        return productResponse;
     }
 
     /**
@@ -160,6 +600,10 @@ public class ProductsManagerService {
      */
     @Transactional
     public void deleteProduct(String barcode) {
+        if (shardedProductsService.isEnabled()) {
+            shardedProductsService.deleteProduct(barcode);
+            return;
+        }
         Product product;
         try {
             product = productRepository.findByBarcode(barcode)
@@ -169,6 +613,7 @@ public class ProductsManagerService {
             productTagRepository.deleteAll(productTags);
 
             productRepository.delete(product);
+            publishChange(product.getId(), null);
 
         } catch (DataAccessException e) {
             throw new DatabaseAccessException("Error accessing the database");
@@ -205,6 +650,91 @@ public class ProductsManagerService {
         }
     }
 
+    /**
+     * Builds the values of the requested fields from rows read by {@link ProductRepository#findColumns}.
+     * If the tags are requested, they are read with a single query rather than one query per product.
+     *
+     * @param rows the id of each product followed by the values of the requested columns
+     * @param fields the requested fields
+     * @param wholeCatalog whether the rows are all the products, in which case the tags of all products are read
+     * @return the values of the requested fields of each product, in the order of the rows
+     */
+    private List<Map<String, Object>> toFieldValues(List<Object[]> rows, ProductFields fields, boolean wholeCatalog) {
+        Map<Long, List<String>> tagsByProductId = new HashMap<>();
+        if (fields.includesTags() && !rows.isEmpty()) {
+            List<Object[]> productTagNames = wholeCatalog
+                    ? productTagRepository.findAllProductTagNames()
+                    : productTagRepository.findProductTagNamesByProductIds(rows.stream().map(row -> (Long) row[0]).toList());
+            for (Object[] productTagName : productTagNames) {
+                tagsByProductId.computeIfAbsent((Long) productTagName[0], id -> new ArrayList<>()).add((String) productTagName[1]);
+            }
+        }
+
+        List<String> columns = fields.getColumns();
+        List<Map<String, Object>> products = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                values.put(columns.get(i), row[i + 1]);
+            }
+            if (fields.includesTags()) {
+                values.put("tags", tagsByProductId.getOrDefault((Long) row[0], new ArrayList<>()));
+            }
+            products.add(values);
+        }
+        return products;
+    }
+
+    /**
+     * Tells whether a constraint violation raised by writing a product is caused by its barcode.
+     * The barcode is the only unique constraint of the products table besides the generated id,
+     * so any unique constraint violation is a duplicate barcode.
+     *
+     * @param e the constraint violation
+     * @return true if another product already has the barcode
+     */
+    private static boolean isDuplicateBarcode(DataIntegrityViolationException e) {
+        if (e instanceof DuplicateKeyException) {
+            return true;
+        }
+        return e.getCause() instanceof ConstraintViolationException
+                && ((ConstraintViolationException) e.getCause()).getKind() == ConstraintViolationException.ConstraintKind.UNIQUE;
+    }
+
+    private static boolean isInRange(ProductResponse productResponse, ProductQuery query) {
+        Float price = productResponse.getPrice();
+        Float rating = productResponse.getRating();
+        if (query.getMinPrice() != null && (price == null || price < query.getMinPrice())) {
+            return false;
+        }
+        if (query.getMaxPrice() != null && (price == null || price > query.getMaxPrice())) {
+            return false;
+        }
+        return query.getMinRating() == null || (rating != null && rating >= query.getMinRating());
+    }
+
+    /**
+     * Publishes the new state of a product, so that the in-memory structures derived from the catalog
+     * are updated once the current transaction commits.
+     *
+     * @param product the saved product
+     * @param productResponse the response built for the saved product
+     */
+    private void publishChange(Product product, ProductResponse productResponse) {
+        publishChange(product.getId(), CatalogSynchronizer.toCatalogEntry(product, productResponse.getTags()));
+    }
+
+    /**
+     * Records the change of a product in the change log, within the current transaction, and publishes it.
+     *
+     * @param productId the id of the changed product
+     * @param entry the new state of the product, or null if it was deleted
+     */
+    private void publishChange(Long productId, CatalogEntry entry) {
+        productChangeRepository.save(new ProductChange(null, productId, Instant.now(), nodeIdentity.getId()));
+        eventPublisher.publishEvent(new ProductChangedEvent(productId, entry));
+    }
+
     private ProductResponse convertToProductResponse(Product product) {
         List<Tag> tags = productRepository.findTagsByProductId(product.getId());
         List<String> tagNames = tags.stream().map(Tag::getTagName).collect(Collectors.toList());
@@ -0,0 +1,78 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.exception.DatabaseAccessException;
+import org.example.products_manager.exception.ProductNotFoundException;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.repository.ReactiveProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Objects;
+
+/**
+ * Non-blocking variant of the read operations of {@link ProductsManagerService}.
+ * Nothing is read until a subscriber requests it, and products are emitted one at a time as they are requested.
+ * Registered when {@code products.reactive.r2dbc-url} is set.
+ * R2DBC only reaches the main database, so when the products are sharded, they are read from the shards over JDBC
+ * instead, on the bounded elastic scheduler so that the blocking reads do not hold a request thread.
+ */
+@ConditionalOnProperty("products.reactive.r2dbc-url")
+@Service
+public class ReactiveProductsService {
+
+    @Autowired
+    private ReactiveProductRepository reactiveProductRepository;
+
+    @Autowired
+    private CatalogSnapshotHolder catalogSnapshotHolder;
+
+    @Autowired
+    private ShardedProductsService shardedProductsService;
+
+    /**
+     * Retrieves a product by its barcode.
+     *
+     * @param barcode the barcode of the product
+     * @return the product, or a ProductNotFoundException error if the product is not found,
+     * or a DatabaseAccessException error if there is an error accessing the database
+     */
+    public Mono<ProductResponse> getProduct(String barcode) {
+        if (shardedProductsService.isEnabled()) {
+            return Mono.fromCallable(() -> shardedProductsService.getProduct(barcode))
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+        return reactiveProductRepository.findByBarcode(barcode)
+                .switchIfEmpty(Mono.error(() -> new ProductNotFoundException("Product not found with barcode: " + barcode)))
+                .onErrorMap(DataAccessException.class, e -> new DatabaseAccessException("Error accessing the database"));
+    }
+
+    /**
+     * Streams all products, sorted by the specified field.
+     * As with {@link ProductsManagerService#getAllProducts(String)}, products are read from the in-memory catalog
+     * snapshot, or from the database until the snapshot is loaded.
+     *
+     * @param sortBy the field by which to sort the products. If null, products are sorted by their id.
+     * @return the products, or a DatabaseAccessException error if there is an error accessing the database
+     * @throws org.example.products_manager.exception.InvalidQueryParameterException if the products cannot be sorted by the given field
+     */
+    public Flux<ProductResponse> getAllProducts(String sortBy) {
+        String sortField = Objects.requireNonNullElse(sortBy, "id");
+        CatalogSnapshot snapshot = catalogSnapshotHolder.getSnapshot();
+        if (snapshot != null) {
+            int[] order = snapshot.orderBy(sortField);
+            return Flux.range(0, order.length).map(i -> snapshot.toProductResponse(order[i]));
+        }
+        if (shardedProductsService.isEnabled()) {
+            return Mono.fromCallable(() -> shardedProductsService.getAllProducts(sortField))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMapIterable(products -> products);
+        }
+        return reactiveProductRepository.findAll(sortField)
+                .onErrorMap(DataAccessException.class, e -> new DatabaseAccessException("Error accessing the database"));
+    }
+}
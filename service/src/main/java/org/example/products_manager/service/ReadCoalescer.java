@@ -0,0 +1,117 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.exception.DatabaseAccessException;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.model.ProductsChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical reads, so that callers asking for the same key while a read of that key
+ * is in progress share its execution and its result, rather than each running the same queries.
+ *
+ * The first caller of a key runs the read on its own thread; the callers arriving before it completes wait for it,
+ * and get the same result, or the same exception. Nothing is kept once the read completes: the next caller
+ * starts a new read, so a failure is not remembered, and results are never older than the reads in progress.
+ * Waiting callers give up after a timeout, without affecting the read they were waiting for.
+ * Once a write commits, the reads in progress may have started before it, so they are no longer shared with
+ * new callers, which would otherwise not see their own writes.
+ * Reads within a transaction are never shared, as they may see its uncommitted writes.
+ * Results are shared between callers, so they must not be modified.
+ */
+@Component
+public class ReadCoalescer {
+
+    private final boolean enabled;
+    private final long timeoutMs;
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public ReadCoalescer(@Value("${products.read-coalescing.enabled:true}") boolean enabled,
+                         @Value("${products.read-coalescing.timeout-ms:5000}") long timeoutMs) {
+        this.enabled = enabled;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Runs the given read, or waits for the read of the same key already in progress.
+     *
+     * @param key identifies the read; reads with the same key must return the same result
+     * @param read the read to run if none is in progress for the key
+     * @return the result of the read
+     * @throws DatabaseAccessException if the read in progress did not complete within the timeout
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> read) {
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return read.get();
+        }
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, own);
+        if (existing == null) {
+            return (T) run(key, own, read);
+        }
+        try {
+            return (T) existing.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (TimeoutException e) {
+            throw new DatabaseAccessException("Timed out waiting for a concurrent read of the same data");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseAccessException("Interrupted while waiting for a concurrent read of the same data");
+        }
+    }
+
+    /**
+     * Stops sharing the reads in progress once a write commits.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        inFlight.clear();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        inFlight.clear();
+    }
+
+    /**
+     * @return the number of reads in progress that new callers would share
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private Object run(String key, CompletableFuture<Object> own, Supplier<?> read) {
+        try {
+            Object result = read.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new DatabaseAccessException("Error accessing the database");
+    }
+}
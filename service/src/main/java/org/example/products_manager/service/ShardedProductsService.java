@@ -0,0 +1,624 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.exception.BarcodeAlreadyExistsException;
+import org.example.products_manager.exception.DatabaseAccessException;
+import org.example.products_manager.exception.InvalidProductRequestException;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.exception.ProductNotFoundException;
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChange;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.model.ProductMove;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.model.ProductsChangedEvent;
+import org.example.products_manager.repository.BulkUpdateStatement;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductMoveRepository;
+import org.example.products_manager.repository.ShardedProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Variant of the write and database read operations of {@link ProductsManagerService} over the shards of
+ * {@link ShardedProductRepository}, used instead of the JPA repositories when sharding is enabled.
+ *
+ * Reading, updating or deleting a product only involves the shard of its barcode. Lists of all products are read
+ * from every shard in parallel, and the sorted products of the shards are merged.
+ * When the barcode of a product changes to a barcode of another shard, the product is copied to the other shard
+ * and deleted from its current one, see {@link #updateProduct}.
+ * Changes are published as {@link ProductChangedEvent}s, as by {@link ProductsManagerService}, so the in-memory
+ * structures derived from the catalog stay in sync. Once the shard committed, they are recorded in the change log
+ * and the price history of the main datasource, so that the other instances and the catalog file catch up on them;
+ * a change is only missing from the change log if the main datasource fails right after the shard committed.
+ */
+@Service
+public class ShardedProductsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedProductsService.class);
+
+    @Autowired
+    private ShardedProductRepository shardedProductRepository;
+
+    @Autowired
+    private BarcodeLocks barcodeLocks;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @Autowired
+    private ProductMoveRepository productMoveRepository;
+
+    @Autowired
+    private NodeIdentity nodeIdentity;
+
+    @Autowired
+    private PriceHistoryWriter priceHistoryWriter;
+
+    public boolean isEnabled() {
+        return shardedProductRepository.isEnabled();
+    }
+
+    /**
+     * Undoes the moves between shards left unfinished by a failure, before the catalog is loaded:
+     * a product whose copy was committed but that is still in its original shard is kept there, and its copy is deleted.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void reconcileMoves() {
+        if (!isEnabled()) {
+            return;
+        }
+        for (ProductMove move : productMoveRepository.findAll()) {
+            List<CatalogEntry> entries = shardedProductRepository.findAllById(List.of(move.getProductId(), move.getCopyId()));
+            if (entries.size() == 2) {
+                CatalogEntry copy = entries.get(0).getId().equals(move.getCopyId()) ? entries.get(0) : entries.get(1);
+                logger.warn("Deleting product {} with barcode {}, the copy of product {} left by a failed move",
+                        copy.getId(), copy.getBarcode(), move.getProductId());
+                if (!deleteCopy(copy.getId(), copy.getBarcode())) {
+                    continue;
+                }
+            }
+            productMoveRepository.delete(move);
+        }
+    }
+
+    /**
+     * Creates a new product in the shard of its barcode.
+     *
+     * @param productRequest the request containing the product details
+     * @return the response containing the created product details
+     * @throws BarcodeAlreadyExistsException if a product with the same barcode already exists
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    public ProductResponse createProduct(ProductRequest productRequest) {
+        String barcode = productRequest.getBarcode();
+        int shard = shardedProductRepository.shardOf(barcode);
+        CatalogEntry created;
+        try {
+            created = shardedProductRepository.inTransaction(shard, status -> {
+                barcodeLocks.lockUntilCompletion(barcode);
+                if (shardedProductRepository.findByBarcode(shard, barcode).isPresent()) {
+                    throw new BarcodeAlreadyExistsException("Product with barcode " + barcode + " already exists");
+                }
+                CatalogEntry entry = new CatalogEntry(null, barcode, productRequest.getName(), productRequest.getImage(),
+                        productRequest.getRating(), productRequest.getPrice(),
+                        new ArrayList<>(Objects.requireNonNullElse(productRequest.getTags(), List.of())));
+                insert(shard, entry);
+                return entry;
+            });
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+        recordChanges(List.of(created.getId()));
+        if (created.getPrice() != null || created.getRating() != null) {
+            priceHistoryWriter.record(created.getId(), created.getPrice(), created.getRating());
+        }
+        return toProductResponse(created);
+    }
+
+    /**
+     * Retrieves the id of a product by its barcode, from the shard of the barcode.
+     *
+     * @param barcode the barcode of the product
+     * @return the id of the product
+     * @throws ProductNotFoundException if the product is not found
+     * @throws DatabaseAccessException  if there is an error accessing the database
+     */
+    public long getProductId(String barcode) {
+        try {
+            return shardedProductRepository.findByBarcode(shardedProductRepository.shardOf(barcode), barcode)
+                    .map(CatalogEntry::getId)
+                    .orElseThrow(() -> new ProductNotFoundException("Product not found with barcode: " + barcode));
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
+    /**
+     * Retrieves a product by its barcode, from the shard of the barcode.
+     *
+     * @param barcode the barcode of the product
+     * @return the response containing the product details
+     * @throws ProductNotFoundException if the product is not found
+     * @throws DatabaseAccessException  if there is an error accessing the database
+     */
+    public ProductResponse getProduct(String barcode) {
+        try {
+            return shardedProductRepository.findByBarcode(shardedProductRepository.shardOf(barcode), barcode)
+                    .map(ShardedProductsService::toProductResponse)
+                    .orElseThrow(() -> new ProductNotFoundException("Product not found with barcode: " + barcode));
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
+    /**
+     * Retrieves all products, sorted by the specified field.
+     * Every shard is read in parallel, each sorted by the field by its database, and the shards are merged into
+     * a single sorted list. The order is the order of the catalog snapshot: missing values first, names and images
+     * compared ignoring case, then by id.
+     *
+     * @param sortBy the field by which to sort the products. If null, products are sorted by their id.
+     * @return a list of ProductResponse objects, each representing a product in the catalog
+     * @throws InvalidQueryParameterException if the products cannot be sorted by the given field
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    public List<ProductResponse> getAllProducts(String sortBy) {
+        String sortField = Objects.requireNonNullElse(sortBy, "id");
+        return readAll(sortField, comparator(sortField)).stream()
+                .map(ShardedProductsService::toProductResponse)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads all the products and their tag names from every shard.
+     *
+     * @return an entry for every product in the catalog, ordered by id
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    public List<CatalogEntry> loadEntries() {
+        return readAll("id", comparator("id"));
+    }
+
+    /**
+     * Reads the given products and their tag names from their shards. Products that do not exist are skipped.
+     *
+     * @param productIds the ids of the products
+     * @return an entry for every existing product
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    public List<CatalogEntry> loadEntries(Collection<Long> productIds) {
+        try {
+            return shardedProductRepository.findAllById(productIds);
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
+    /**
+     * Retrieves the given products, in the given order. Products that do not exist are skipped.
+     *
+     * @param productIds the ids of the products
+     * @return a list of ProductResponse objects, each representing an existing product
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    public List<ProductResponse> findByIds(long[] productIds) {
+        List<Long> ids = new ArrayList<>(productIds.length);
+        for (long productId : productIds) {
+            ids.add(productId);
+        }
+        Map<Long, CatalogEntry> entriesById = new HashMap<>();
+        for (CatalogEntry entry : loadEntries(ids)) {
+            entriesById.put(entry.getId(), entry);
+        }
+        List<ProductResponse> productResponses = new ArrayList<>(productIds.length);
+        for (long productId : productIds) {
+            CatalogEntry entry = entriesById.get(productId);
+            if (entry != null) {
+                productResponses.add(toProductResponse(entry));
+            }
+        }
+        return productResponses;
+    }
+
+    /**
+     * Updates a product based on the provided request.
+     *
+     * If the barcode is unchanged, or changed to a barcode of the same shard, the product is updated in a single
+     * transaction of its shard. Otherwise it is moved, within a transaction of its current shard and a nested
+     * transaction of the shard of its new barcode: the updated product is inserted in the new shard, the move is
+     * recorded in the main datasource, and the product is deleted from its current shard. Only then are the shards
+     * committed, the new one first, so that the product is never lost. If the current shard then fails to commit,
+     * the copy is deleted again, and the product is only found under both barcodes for the short time between the
+     * two commits; if the copy cannot be deleted either, the recorded move is undone on the next startup.
+     * A moved product gets a new id, and is published as the deletion of the old id and the creation of the new one.
+     *
+     * @param barcode        the barcode of the product to update
+     * @param productRequest the request containing the new product details
+     * @return the response containing the updated product details
+     * @throws ProductNotFoundException if the product is not found
+     * @throws BarcodeAlreadyExistsException if the barcode is changed to the barcode of another product
+     * @throws DatabaseAccessException  if there is an error accessing the database
+     */
+    public ProductResponse updateProduct(String barcode, ProductRequest productRequest) {
+        try {
+            return update(barcode, productRequest);
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
+    /**
+     * Updates a product as described in {@link #updateProduct}, letting errors accessing the database through as is.
+     */
+    private ProductResponse update(String barcode, ProductRequest productRequest) {
+        String newBarcode = productRequest.getBarcode();
+        boolean barcodeChanged = newBarcode != null && !newBarcode.equals(barcode);
+        int shard = shardedProductRepository.shardOf(barcode);
+        int newShard = barcodeChanged ? shardedProductRepository.shardOf(newBarcode) : shard;
+        if (newShard != shard) {
+            return moveProduct(barcode, shard, productRequest, newShard);
+        }
+        Float[] oldPriceAndRating = new Float[2];
+        CatalogEntry updated = shardedProductRepository.inTransaction(shard, status -> {
+            if (barcodeChanged) {
+                barcodeLocks.lockUntilCompletion(barcode, newBarcode);
+                if (shardedProductRepository.findByBarcode(shard, newBarcode).isPresent()) {
+                    throw new BarcodeAlreadyExistsException("Product with barcode " + newBarcode + " already exists");
+                }
+            }
+            CatalogEntry entry = shardedProductRepository.findByBarcode(shard, barcode)
+                    .orElseThrow(() -> new ProductNotFoundException("Product not found with barcode: " + barcode));
+            oldPriceAndRating[0] = entry.getPrice();
+            oldPriceAndRating[1] = entry.getRating();
+            applyRequest(entry, productRequest);
+            try {
+                shardedProductRepository.update(entry, productRequest.getTags() != null);
+            } catch (DuplicateKeyException e) {
+                throw new BarcodeAlreadyExistsException("Product with barcode " + newBarcode + " already exists");
+            }
+            eventPublisher.publishEvent(new ProductChangedEvent(entry.getId(), entry));
+            return entry;
+        });
+        recordChanges(List.of(updated.getId()));
+        if (!Objects.equals(oldPriceAndRating[0], updated.getPrice()) || !Objects.equals(oldPriceAndRating[1], updated.getRating())) {
+            priceHistoryWriter.record(updated.getId(), updated.getPrice(), updated.getRating());
+        }
+        return toProductResponse(updated);
+    }
+
+    private ProductResponse moveProduct(String barcode, int shard, ProductRequest productRequest, int newShard) {
+        String newBarcode = productRequest.getBarcode();
+        long[] oldId = new long[1];
+        ProductMove[] move = new ProductMove[1];
+        boolean[] copyCommitted = new boolean[1];
+        CatalogEntry moved;
+        try {
+            moved = shardedProductRepository.inTransaction(shard, status -> {
+                barcodeLocks.lockUntilCompletion(barcode, newBarcode);
+                if (shardedProductRepository.findByBarcode(newShard, newBarcode).isPresent()) {
+                    throw new BarcodeAlreadyExistsException("Product with barcode " + newBarcode + " already exists");
+                }
+                CatalogEntry entry = shardedProductRepository.findByBarcode(shard, barcode)
+                        .orElseThrow(() -> new ProductNotFoundException("Product not found with barcode: " + barcode));
+                oldId[0] = entry.getId();
+                applyRequest(entry, productRequest);
+
+                shardedProductRepository.inTransaction(newShard, newShardStatus -> {
+                    insert(newShard, entry);
+                    move[0] = productMoveRepository.save(new ProductMove(null, oldId[0], entry.getId(), Instant.now()));
+                    shardedProductRepository.delete(oldId[0]);
+                    return null;
+                });
+                copyCommitted[0] = true;
+                eventPublisher.publishEvent(new ProductChangedEvent(oldId[0], null));
+                return entry;
+            });
+        } catch (RuntimeException e) {
+            // Without the copy, or once it is deleted again, there is nothing left to undo
+            if (move[0] != null && (!copyCommitted[0] || deleteCopy(move[0].getCopyId(), newBarcode))) {
+                forgetMove(move[0]);
+            }
+            throw e;
+        }
+        forgetMove(move[0]);
+        recordChanges(List.of(oldId[0], moved.getId()));
+        try {
+            priceHistoryWriter.moveHistory(oldId[0], moved.getId());
+        } catch (DataAccessException e) {
+            logger.error("Failed to move the price history of product {} to its new id {}", oldId[0], moved.getId(), e);
+        }
+        priceHistoryWriter.record(moved.getId(), moved.getPrice(), moved.getRating());
+        return toProductResponse(moved);
+    }
+
+    /**
+     * Deletes the copy made by a move that failed to delete the product from its original shard.
+     *
+     * @return whether the copy was deleted
+     */
+    private boolean deleteCopy(long copyId, String barcode) {
+        try {
+            shardedProductRepository.inTransaction(ShardedProductRepository.shardOfId(copyId), status -> {
+                shardedProductRepository.delete(copyId);
+                eventPublisher.publishEvent(new ProductChangedEvent(copyId, null));
+                return null;
+            });
+        } catch (DataAccessException e) {
+            logger.error("Failed to delete product {} with barcode {} after failing to move it, the product exists twice "
+                    + "until the move is undone on the next startup", copyId, barcode, e);
+            return false;
+        }
+        recordChanges(List.of(copyId));
+        return true;
+    }
+
+    /**
+     * Deletes the record of a move that completed or was undone. A record that cannot be deleted is only
+     * checked again on the next startup.
+     */
+    private void forgetMove(ProductMove move) {
+        try {
+            productMoveRepository.delete(move);
+        } catch (DataAccessException e) {
+            logger.warn("Failed to delete the record of the move of product {}", move.getProductId(), e);
+        }
+    }
+
+    /**
+     * Applies a batch of updates, one product at a time.
+     * As in {@link ProductsManagerService#applyUpdates}, updates of products that no longer exist are skipped,
+     * but each update is committed on its own, since the products of the batch belong to different shards.
+     *
+     * @param productRequests the request containing the new product details, by the barcode of the product to update
+     * @return the number of products that were updated
+     * @throws BarcodeAlreadyExistsException if an update changes the barcode to the barcode of another product
+     * @throws InvalidProductRequestException if the database rejects an update, e.g. a value too long for its column
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    public int applyUpdates(Map<String, ProductRequest> productRequests) {
+        int updated = 0;
+        for (Map.Entry<String, ProductRequest> entry : productRequests.entrySet()) {
+            try {
+                update(entry.getKey(), entry.getValue());
+                updated++;
+            } catch (ProductNotFoundException e) {
+                logger.warn("Skipping queued update of product with barcode {}, it no longer exists", entry.getKey());
+            } catch (DataIntegrityViolationException e) {
+                throw new InvalidProductRequestException("Update was rejected by the database: " + e.getMostSpecificCause().getMessage());
+            } catch (DataAccessException e) {
+                throw new DatabaseAccessException("Error accessing the database");
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Runs a bulk update on every shard. The transaction of each shard is nested in the transaction of
+     * the previous one, so that a failure on any shard rolls back all of them; only a failure to commit
+     * one of the outer transactions, after the inner ones were committed, leaves the update partially applied.
+     *
+     * @param statement the bulk update
+     * @return the number of updated products
+     * @throws DatabaseAccessException if there is an error accessing the database
+     */
+    public int bulkUpdate(BulkUpdateStatement statement) {
+        List<Long> productIds = new ArrayList<>();
+        try {
+            bulkUpdate(statement, 0, productIds);
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+        if (!productIds.isEmpty()) {
+            eventPublisher.publishEvent(new ProductsChangedEvent(productIds));
+            recordChanges(productIds);
+            if (priceHistoryWriter.isEnabled()) {
+                for (CatalogEntry entry : loadEntries(productIds)) {
+                    priceHistoryWriter.record(entry.getId(), entry.getPrice(), entry.getRating());
+                }
+            }
+        }
+        return productIds.size();
+    }
+
+    private void bulkUpdate(BulkUpdateStatement statement, int shard, List<Long> productIds) {
+        if (shard == shardedProductRepository.getShardCount()) {
+            return;
+        }
+        shardedProductRepository.inTransaction(shard, status -> {
+            productIds.addAll(shardedProductRepository.bulkUpdate(shard, statement));
+            bulkUpdate(statement, shard + 1, productIds);
+            return null;
+        });
+    }
+
+    /**
+     * Deletes a product by its barcode, from the shard of the barcode.
+     *
+     * @param barcode the barcode of the product to delete
+     * @throws ProductNotFoundException if the product is not found
+     * @throws DatabaseAccessException  if there is an error accessing the database
+     */
+    public void deleteProduct(String barcode) {
+        int shard = shardedProductRepository.shardOf(barcode);
+        long productId;
+        try {
+            productId = shardedProductRepository.inTransaction(shard, status -> {
+                CatalogEntry entry = shardedProductRepository.findByBarcode(shard, barcode)
+                        .orElseThrow(() -> new ProductNotFoundException("Product not found with barcode: " + barcode));
+                shardedProductRepository.delete(entry.getId());
+                eventPublisher.publishEvent(new ProductChangedEvent(entry.getId(), null));
+                return entry.getId();
+            });
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+        recordChanges(List.of(productId));
+    }
+
+    /**
+     * Records changes committed to the shards in the change log of the main datasource.
+     * The shards already committed, so a failure is logged rather than reported to the caller; the other instances
+     * then only see the changes after a rebuild of their catalog.
+     */
+    private void recordChanges(List<Long> productIds) {
+        Instant changedAt = Instant.now();
+        List<ProductChange> changes = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            changes.add(new ProductChange(null, productId, changedAt, nodeIdentity.getId()));
+        }
+        try {
+            productChangeRepository.saveAll(changes);
+        } catch (DataAccessException e) {
+            logger.error("Failed to record the changes of {} products in the change log", productIds.size(), e);
+        }
+    }
+
+    private void insert(int shard, CatalogEntry entry) {
+        try {
+            entry.setId(shardedProductRepository.insert(shard, entry));
+        } catch (DuplicateKeyException e) {
+            throw new BarcodeAlreadyExistsException("Product with barcode " + entry.getBarcode() + " already exists");
+        }
+        eventPublisher.publishEvent(new ProductChangedEvent(entry.getId(), entry));
+    }
+
+    /**
+     * Reads every shard, sorted by the given field by its database, and merges their products into a single list
+     * with the matching comparator. Where the collation of the databases considers different names or images equal,
+     * e.g. when they only differ by accents, such products keep the order of their shard.
+     */
+    private List<CatalogEntry> readAll(String sortBy, Comparator<CatalogEntry> comparator) {
+        try {
+            return merge(shardedProductRepository.findAllOnEachShard(sortBy), comparator);
+        } catch (DataAccessException e) {
+            throw new DatabaseAccessException("Error accessing the database");
+        }
+    }
+
+    /**
+     * Merges sorted lists into a single sorted list, repeatedly taking the smallest head of the lists.
+     *
+     * @param sortedLists the lists, each sorted by the comparator
+     * @param comparator the comparator
+     * @return all the elements of the lists, sorted by the comparator
+     */
+    static <T> List<T> merge(List<List<T>> sortedLists, Comparator<T> comparator) {
+        PriorityQueue<Cursor<T>> cursors = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+                (a, b) -> comparator.compare(a.head(), b.head()));
+        int size = 0;
+        for (List<T> list : sortedLists) {
+            size += list.size();
+            if (!list.isEmpty()) {
+                cursors.add(new Cursor<>(list));
+            }
+        }
+        List<T> merged = new ArrayList<>(size);
+        while (!cursors.isEmpty()) {
+            Cursor<T> cursor = cursors.poll();
+            merged.add(cursor.head());
+            cursor.position++;
+            if (cursor.position < cursor.list.size()) {
+                cursors.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private static Comparator<CatalogEntry> comparator(String sortBy) {
+        Comparator<CatalogEntry> comparator;
+        switch (sortBy) {
+            case "id":
+                comparator = (a, b) -> 0;
+                break;
+            case "barcode":
+                comparator = Comparator.comparing(CatalogEntry::getBarcode);
+                break;
+            case "name":
+                comparator = Comparator.comparing(CatalogEntry::getName, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+                break;
+            case "image":
+                comparator = Comparator.comparing(CatalogEntry::getImage, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+                break;
+            case "rating":
+                comparator = Comparator.comparing(CatalogEntry::getRating, Comparator.nullsFirst(Comparator.naturalOrder()));
+                break;
+            case "price":
+                comparator = Comparator.comparing(CatalogEntry::getPrice, Comparator.nullsFirst(Comparator.naturalOrder()));
+                break;
+            default:
+                throw new InvalidQueryParameterException("Products cannot be sorted by " + sortBy);
+        }
+        return comparator.thenComparing(CatalogEntry::getId);
+    }
+
+    private static void applyRequest(CatalogEntry entry, ProductRequest productRequest) {
+        if (productRequest.getBarcode() != null) {
+            entry.setBarcode(productRequest.getBarcode());
+        }
+        if (productRequest.getName() != null) {
+            entry.setName(productRequest.getName());
+        }
+        if (productRequest.getImage() != null) {
+            entry.setImage(productRequest.getImage());
+        }
+        if (productRequest.getRating() != null) {
+            entry.setRating(productRequest.getRating());
+        }
+        if (productRequest.getPrice() != null) {
+            entry.setPrice(productRequest.getPrice());
+        }
+        if (productRequest.getTags() != null) {
+            entry.setTags(new ArrayList<>(productRequest.getTags()));
+        }
+    }
+
+    private static ProductResponse toProductResponse(CatalogEntry entry) {
+        return new ProductResponse(
+                entry.getBarcode(),
+                entry.getName(),
+                entry.getImage(),
+                entry.getRating(),
+                entry.getPrice(),
+                new ArrayList<>(entry.getTags())
+        );
+    }
+
+    private static final class Cursor<T> {
+        private final List<T> list;
+        private int position;
+
+        private Cursor(List<T> list) {
+            this.list = list;
+        }
+
+        private T head() {
+            return list.get(position);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the products by their tags, used to find the products whose tag sets are the most similar
+ * to the tag set of a given product, by Jaccard similarity (shared tags over the tags of either product).
+ *
+ * Each product gets a MinHash signature of its tags: for each of {@code bands * rows} hash functions, the minimum
+ * hash of its tags. Two products agree on a given position of their signatures with a probability equal to the
+ * Jaccard similarity of their tags. The signature is cut into bands of {@code rows} positions, and the products are
+ * put in a bucket per band, by the hash of their band. Products sharing at least one bucket with a product are its
+ * candidates, which is likely for similar products and unlikely for dissimilar ones, so a lookup only compares
+ * a product with a small part of the catalog. The candidates are then ranked by their exact similarity,
+ * which is cheap to compute on tag sets. Products that are similar but share no bucket are missed, so the result
+ * is approximate.
+ * The signatures are computed from the hashes of the tag names, so they do not depend on the order in which the
+ * products were indexed. The exact similarity compares the tags by an id given to each distinct name by the index,
+ * so that two tags whose names have the same hash are not counted as shared.
+ * Products without tags are in no bucket, and are similar to none.
+ * A product change only moves the product between buckets.
+ */
+@Component
+public class SimilarProductsIndex implements CatalogListener {
+
+    private final int bands;
+    private final int rows;
+    private final int maxCandidates;
+    private final long[] seeds;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Item> itemsById = new HashMap<>();
+    private final Map<String, Item> itemsByBarcode = new HashMap<>();
+    private final Map<Long, Bucket> buckets = new HashMap<>();
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private volatile boolean ready;
+
+    public SimilarProductsIndex(@Value("${products.similar.bands:20}") int bands,
+                                @Value("${products.similar.rows-per-band:3}") int rows,
+                                @Value("${products.similar.max-candidates:2000}") int maxCandidates) {
+        this.bands = bands;
+        this.rows = rows;
+        this.maxCandidates = maxCandidates;
+        // The hash functions must be the same on every instance and across restarts, so the seeds are fixed
+        SplittableRandom random = new SplittableRandom(0x5EED);
+        this.seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    @Override
+    public void rebuild(List<CatalogEntry> entries) {
+        lock.writeLock().lock();
+        try {
+            itemsById.clear();
+            itemsByBarcode.clear();
+            buckets.clear();
+            tagIds.clear();
+            for (CatalogEntry entry : entries) {
+                add(entry);
+            }
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            Item previous = itemsById.get(event.getProductId());
+            if (previous != null) {
+                remove(previous);
+            }
+            if (!event.isDeletion()) {
+                add(event.getEntry());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the products whose tags are the most similar to the tags of the given product.
+     *
+     * @param barcode the barcode of the product
+     * @param limit the maximum number of products to return
+     * @return the similar products, the most similar first, and by id among equally similar products;
+     * or null if the product is not in the catalog
+     */
+    public List<Match> findSimilar(String barcode, int limit) {
+        lock.readLock().lock();
+        try {
+            Item item = itemsByBarcode.get(barcode);
+            return item == null ? null : findSimilar(item, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Match> findSimilar(Item item, int limit) {
+        Comparator<Match> ranking = Comparator.comparingDouble(Match::getSimilarity).reversed()
+                .thenComparingLong(Match::getProductId);
+        // The worst of the best matches so far is at the head of the queue
+        PriorityQueue<Match> best = new PriorityQueue<>(Math.max(1, limit), ranking.reversed());
+        Set<Item> candidates = new HashSet<>();
+        candidates.add(item);
+        for (int band = 0; band < bands && item.tags.length > 0 && candidates.size() <= maxCandidates; band++) {
+            Bucket bucket = item.buckets[band];
+            for (int i = 0; i < bucket.size && candidates.size() <= maxCandidates; i++) {
+                Item candidate = bucket.items[i];
+                if (!candidates.add(candidate)) {
+                    continue;
+                }
+                double similarity = jaccard(item.tags, candidate.tags);
+                if (similarity == 0) {
+                    // The band hashes of dissimilar products may collide
+                    continue;
+                }
+                Match match = new Match(candidate.id, similarity);
+                if (best.size() < limit) {
+                    best.add(match);
+                } else if (limit > 0 && ranking.compare(match, best.peek()) < 0) {
+                    best.poll();
+                    best.add(match);
+                }
+            }
+        }
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(ranking);
+        return matches;
+    }
+
+    /**
+     * @return whether the index was built, and so can be used for lookups
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return itemsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(CatalogEntry entry) {
+        List<String> tagNames = entry.getTags().stream().distinct().toList();
+        int[] tags = tagNames.stream().mapToInt(this::tagId).sorted().toArray();
+        Item item = new Item(entry.getId(), entry.getBarcode(), tags, bands);
+        long[] signature = signature(tagNames.stream().mapToInt(String::hashCode).toArray());
+        for (int band = 0; band < bands && tags.length > 0; band++) {
+            long key = band;
+            for (int row = 0; row < rows; row++) {
+                key = mix(key * 31 + signature[band * rows + row]);
+            }
+            Bucket bucket = buckets.computeIfAbsent(key, Bucket::new);
+            item.buckets[band] = bucket;
+            item.positions[band] = bucket.add(item);
+        }
+        itemsById.put(item.id, item);
+        itemsByBarcode.put(item.barcode, item);
+    }
+
+    private void remove(Item item) {
+        for (int band = 0; band < bands && item.tags.length > 0; band++) {
+            Bucket bucket = item.buckets[band];
+            bucket.remove(item.positions[band], band);
+            if (bucket.size == 0) {
+                buckets.remove(bucket.key);
+            }
+        }
+        itemsById.remove(item.id);
+        itemsByBarcode.remove(item.barcode, item);
+    }
+
+    /**
+     * @return the id of the given tag name, given the next free id if the name was not indexed yet
+     */
+    private int tagId(String tagName) {
+        return tagIds.computeIfAbsent(tagName, name -> tagIds.size());
+    }
+
+    private long[] signature(int[] tagHashes) {
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (int tagHash : tagHashes) {
+            for (int i = 0; i < seeds.length; i++) {
+                long hash = mix(tagHash ^ seeds[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * The finalization step of MurmurHash3, which spreads every bit of the input over the whole output.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * @return the Jaccard similarity of two sorted sets
+     */
+    static double jaccard(int[] a, int[] b) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) shared / (a.length + b.length - shared);
+    }
+
+    /**
+     * A product found by {@link #findSimilar}, with the Jaccard similarity of its tags to the tags of the given product.
+     */
+    public static final class Match {
+        private final long productId;
+        private final double similarity;
+
+        public Match(long productId, double similarity) {
+            this.productId = productId;
+            this.similarity = similarity;
+        }
+
+        public long getProductId() {
+            return productId;
+        }
+
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+
+    private static final class Item {
+        private final long id;
+        private final String barcode;
+        private final int[] tags;
+        private final Bucket[] buckets;
+        private final int[] positions;
+
+        private Item(long id, String barcode, int[] tags, int bands) {
+            this.id = id;
+            this.barcode = barcode;
+            this.tags = tags;
+            this.buckets = new Bucket[bands];
+            this.positions = new int[bands];
+        }
+    }
+
+    /**
+     * The products sharing the hash of a band. Each product knows its position in the bucket of each band,
+     * so it is removed in constant time, by moving the last product of the bucket to its position.
+     */
+    private static final class Bucket {
+        private final long key;
+        private Item[] items = new Item[2];
+        private int size;
+
+        private Bucket(long key) {
+            this.key = key;
+        }
+
+        private int add(Item item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size] = item;
+            return size++;
+        }
+
+        private void remove(int position, int band) {
+            Item last = items[--size];
+            items[position] = last;
+            last.positions[band] = position;
+            items[size] = null;
+        }
+    }
+}
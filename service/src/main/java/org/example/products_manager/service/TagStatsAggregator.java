@@ -0,0 +1,167 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.MetricStatsResponse;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.model.TagStatsResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains the price and rating statistics of the products associated with each tag.
+ *
+ * The statistics are updated incrementally on every product change instead of being recomputed from the database.
+ * To be able to retract the contribution of a product when it changes, the last known state of every product is kept.
+ * Minimum and maximum are derived from a sorted multiset of the values, so they stay correct after removals.
+ * A product is counted once per tag, even if the tag appears more than once in its list.
+ */
+@Component
+public class TagStatsAggregator implements CatalogListener {
+
+    private final float priceBucketWidth;
+    private final float ratingBucketWidth;
+
+    private final Map<Long, CatalogEntry> entriesById = new HashMap<>();
+    private final Map<String, TagAccumulator> accumulatorsByTag = new TreeMap<>();
+
+    public TagStatsAggregator(@Value("${products.stats.price-bucket-width:10}") float priceBucketWidth,
+                              @Value("${products.stats.rating-bucket-width:1}") float ratingBucketWidth) {
+        this.priceBucketWidth = priceBucketWidth;
+        this.ratingBucketWidth = ratingBucketWidth;
+    }
+
+    @Override
+    public synchronized void rebuild(List<CatalogEntry> entries) {
+        entriesById.clear();
+        accumulatorsByTag.clear();
+        for (CatalogEntry entry : entries) {
+            add(entry);
+        }
+    }
+
+    @Override
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        CatalogEntry previous = entriesById.get(event.getProductId());
+        if (previous != null) {
+            remove(previous);
+        }
+        if (!event.isDeletion()) {
+            add(event.getEntry());
+        }
+    }
+
+    /**
+     * Returns the statistics of every tag that is associated with at least one product.
+     *
+     * @return the statistics, ordered by tag name
+     */
+    public synchronized List<TagStatsResponse> getStatsByTag() {
+        List<TagStatsResponse> stats = new ArrayList<>(accumulatorsByTag.size());
+        for (Map.Entry<String, TagAccumulator> entry : accumulatorsByTag.entrySet()) {
+            TagAccumulator accumulator = entry.getValue();
+            stats.add(new TagStatsResponse(
+                    entry.getKey(),
+                    accumulator.productCount,
+                    accumulator.price.toResponse(),
+                    accumulator.rating.toResponse()
+            ));
+        }
+        return stats;
+    }
+
+    private void add(CatalogEntry entry) {
+        entriesById.put(entry.getId(), entry);
+        for (String tag : distinct(entry.getTags())) {
+            TagAccumulator accumulator = accumulatorsByTag.computeIfAbsent(tag, t -> new TagAccumulator());
+            accumulator.productCount++;
+            accumulator.price.add(entry.getPrice());
+            accumulator.rating.add(entry.getRating());
+        }
+    }
+
+    private void remove(CatalogEntry entry) {
+        entriesById.remove(entry.getId());
+        for (String tag : distinct(entry.getTags())) {
+            TagAccumulator accumulator = accumulatorsByTag.get(tag);
+            if (accumulator == null) {
+                continue;
+            }
+            accumulator.productCount--;
+            accumulator.price.remove(entry.getPrice());
+            accumulator.rating.remove(entry.getRating());
+            if (accumulator.productCount == 0) {
+                accumulatorsByTag.remove(tag);
+            }
+        }
+    }
+
+    private static List<String> distinct(List<String> tags) {
+        return tags.stream().distinct().toList();
+    }
+
+    private class TagAccumulator {
+        private long productCount;
+        private final MetricAccumulator price = new MetricAccumulator(priceBucketWidth);
+        private final MetricAccumulator rating = new MetricAccumulator(ratingBucketWidth);
+    }
+
+    /**
+     * Running count, sum, multiset and histogram of the non-null values of a single field.
+     */
+    private static class MetricAccumulator {
+        private final float bucketWidth;
+        private long count;
+        private double sum;
+        private final TreeMap<Float, Integer> values = new TreeMap<>();
+        private final TreeMap<Double, Long> histogram = new TreeMap<>();
+
+        private MetricAccumulator(float bucketWidth) {
+            this.bucketWidth = bucketWidth;
+        }
+
+        private void add(Float value) {
+            if (value == null) {
+                return;
+            }
+            count++;
+            sum += value;
+            values.merge(value, 1, Integer::sum);
+            histogram.merge(bucketOf(value), 1L, Long::sum);
+        }
+
+        private void remove(Float value) {
+            if (value == null) {
+                return;
+            }
+            count--;
+            sum -= value;
+            values.computeIfPresent(value, (v, n) -> n == 1 ? null : n - 1);
+            histogram.computeIfPresent(bucketOf(value), (b, n) -> n == 1 ? null : n - 1);
+        }
+
+        private double bucketOf(float value) {
+            return Math.floor(value / bucketWidth) * bucketWidth;
+        }
+
+        private MetricStatsResponse toResponse() {
+            if (count == 0) {
+                return new MetricStatsResponse(0, null, null, null, bucketWidth, new LinkedHashMap<>());
+            }
+            return new MetricStatsResponse(
+                    count,
+                    values.firstKey(),
+                    values.lastKey(),
+                    sum / count,
+                    bucketWidth,
+                    new LinkedHashMap<>(histogram)
+            );
+        }
+    }
+}
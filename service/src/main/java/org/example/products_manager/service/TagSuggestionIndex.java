@@ -0,0 +1,224 @@
+package org.example.products_manager.service;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.model.TagSuggestion;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * In-memory index of the tag names, used to suggest existing tags while a tag is being typed.
+ *
+ * The tag names are kept in a sorted array of lower-case keys, so the tags starting with a prefix are found with
+ * a binary search, regardless of case. Each tag has a count of the products using it, by which the suggestions
+ * are ranked. Tags that are no longer used by any product are not suggested.
+ * A product change only updates counts in place, unless it introduces a new tag name. In that case the new names
+ * are merged into a copy of the sorted array, in a single pass without sorting it again, and the copy is published
+ * with a single volatile write, so readers never lock.
+ */
+@Component
+public class TagSuggestionIndex implements CatalogListener {
+
+    private final Map<Long, List<String>> tagsByProductId = new HashMap<>();
+    private volatile Dictionary dictionary = Dictionary.of(Collections.emptyMap());
+
+    @Override
+    public synchronized void rebuild(List<CatalogEntry> entries) {
+        tagsByProductId.clear();
+        Map<String, Integer> counts = new HashMap<>();
+        for (CatalogEntry entry : entries) {
+            List<String> tags = distinct(entry.getTags());
+            tagsByProductId.put(entry.getId(), tags);
+            for (String tag : tags) {
+                counts.merge(tag, 1, Integer::sum);
+            }
+        }
+        dictionary = Dictionary.of(counts);
+    }
+
+    @Override
+    public synchronized void onProductChanged(ProductChangedEvent event) {
+        List<String> previousTags = event.isDeletion()
+                ? tagsByProductId.remove(event.getProductId())
+                : tagsByProductId.put(event.getProductId(), distinct(event.getEntry().getTags()));
+        List<String> newTags = event.isDeletion() ? Collections.emptyList() : tagsByProductId.get(event.getProductId());
+
+        Dictionary current = dictionary;
+        List<String> unknownTags = new ArrayList<>();
+        for (String tag : newTags) {
+            if (!current.indexByName.containsKey(tag)) {
+                unknownTags.add(tag);
+            }
+        }
+        if (!unknownTags.isEmpty()) {
+            current = current.withTags(unknownTags);
+        }
+        if (previousTags != null) {
+            for (String tag : previousTags) {
+                current.counts.decrementAndGet(current.indexByName.get(tag));
+            }
+        }
+        for (String tag : newTags) {
+            current.counts.incrementAndGet(current.indexByName.get(tag));
+        }
+        dictionary = current;
+    }
+
+    /**
+     * Suggests the tags whose names start with the given prefix, ignoring case.
+     *
+     * @param prefix the beginning of the tag name; an empty prefix matches every tag
+     * @param limit the maximum number of suggestions
+     * @return the matching tags, the most used first, and in alphabetical order among equally used tags
+     */
+    public List<TagSuggestion> suggest(String prefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        Dictionary current = dictionary;
+        String key = prefix.toLowerCase(Locale.ROOT);
+        int from = lowerBound(current.keys, key);
+        int to = key.isEmpty() ? current.keys.length : lowerBound(current.keys, key + Character.MAX_VALUE);
+
+        // The best matches so far, ordered by count, then by position (alphabetical order)
+        int[] top = new int[limit];
+        int[] topCounts = new int[limit];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            int count = current.counts.get(i);
+            if (count <= 0 || (size == limit && count <= topCounts[size - 1])) {
+                continue;
+            }
+            int position = size == limit ? size - 1 : size++;
+            while (position > 0 && topCounts[position - 1] < count) {
+                top[position] = top[position - 1];
+                topCounts[position] = topCounts[position - 1];
+                position--;
+            }
+            top[position] = i;
+            topCounts[position] = count;
+        }
+
+        List<TagSuggestion> suggestions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            suggestions.add(new TagSuggestion(current.names[top[i]], topCounts[i]));
+        }
+        return suggestions;
+    }
+
+    public int size() {
+        return dictionary.names.length;
+    }
+
+    private static List<String> distinct(List<String> tags) {
+        return tags.stream().distinct().toList();
+    }
+
+    /**
+     * @return the index of the first key that is greater than or equal to the given key
+     */
+    private static int lowerBound(String[] keys, String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Tag names sorted by their lower-case key (then by name), with their product counts.
+     * The arrays are never modified once published, only the counts are.
+     */
+    private static final class Dictionary {
+        private final String[] keys;
+        private final String[] names;
+        private final AtomicIntegerArray counts;
+        private final Map<String, Integer> indexByName;
+
+        private Dictionary(String[] keys, String[] names, int[] counts) {
+            this.keys = keys;
+            this.names = names;
+            this.counts = new AtomicIntegerArray(counts);
+            this.indexByName = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                indexByName.put(names[i], i);
+            }
+        }
+
+        private static Dictionary of(Map<String, Integer> countsByName) {
+            String[] names = countsByName.keySet().toArray(new String[0]);
+            Arrays.sort(names, Dictionary::compareNames);
+            String[] keys = new String[names.length];
+            int[] counts = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                keys[i] = names[i].toLowerCase(Locale.ROOT);
+                counts[i] = countsByName.get(names[i]);
+            }
+            return new Dictionary(keys, names, counts);
+        }
+
+        /**
+         * Merges the given tag names, sorted on their own, with the sorted names of this dictionary,
+         * so adding a few names costs a linear copy rather than sorting all of them again.
+         *
+         * @return a copy of this dictionary, with the given tag names added with a count of 0
+         * and the tags that are no longer used dropped
+         */
+        private Dictionary withTags(List<String> newNames) {
+            String[] added = newNames.toArray(new String[0]);
+            Arrays.sort(added, Dictionary::compareNames);
+            String[] addedKeys = new String[added.length];
+            for (int i = 0; i < added.length; i++) {
+                addedKeys[i] = added[i].toLowerCase(Locale.ROOT);
+            }
+
+            String[] mergedKeys = new String[names.length + added.length];
+            String[] mergedNames = new String[mergedKeys.length];
+            int[] mergedCounts = new int[mergedKeys.length];
+            int size = 0;
+            int next = 0;
+            for (int i = 0; i < names.length; i++) {
+                int count = counts.get(i);
+                if (count <= 0) {
+                    continue;
+                }
+                while (next < added.length && compare(addedKeys[next], added[next], keys[i], names[i]) < 0) {
+                    mergedKeys[size] = addedKeys[next];
+                    mergedNames[size++] = added[next++];
+                }
+                mergedKeys[size] = keys[i];
+                mergedNames[size] = names[i];
+                mergedCounts[size++] = count;
+            }
+            int remaining = added.length - next;
+            System.arraycopy(addedKeys, next, mergedKeys, size, remaining);
+            System.arraycopy(added, next, mergedNames, size, remaining);
+            size += remaining;
+            return new Dictionary(Arrays.copyOf(mergedKeys, size), Arrays.copyOf(mergedNames, size),
+                    Arrays.copyOf(mergedCounts, size));
+        }
+
+        private static int compareNames(String a, String b) {
+            return compare(a.toLowerCase(Locale.ROOT), a, b.toLowerCase(Locale.ROOT), b);
+        }
+
+        private static int compare(String keyA, String nameA, String keyB, String nameB) {
+            int result = keyA.compareTo(keyB);
+            return result != 0 ? result : nameA.compareTo(nameB);
+        }
+    }
+}
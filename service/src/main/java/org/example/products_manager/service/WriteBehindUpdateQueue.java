@@ -0,0 +1,353 @@
+package org.example.products_manager.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.products_manager.exception.DatabaseAccessException;
+import org.example.products_manager.exception.IngestionQueueFullException;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.model.WriteBehindStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Opt-in write-behind mode for product updates, meant for feeds that update the same products at a high rate.
+ *
+ * Accepted updates are acknowledged immediately and kept in memory, one entry per barcode.
+ * A newer update of a product that is still queued is merged into the queued one, field by field (last writer wins),
+ * so a burst of updates to the same product is written to the database once.
+ * A background thread writes the queued updates in batches, in a single transaction per batch, whenever
+ * {@code batch-size} products are queued or every {@code flush-interval-ms}.
+ * When a batch fails, its updates are retried one by one, so that an update the database rejects does not hold back
+ * the rest: rejected updates are dropped and counted, while updates that fail because the database cannot be
+ * accessed are requeued and retried on the next flush.
+ * The queue is bounded: when it is full, submitters wait up to {@code offer-timeout-ms} and are then rejected.
+ * On shutdown, new updates are rejected and the queue is drained.
+ */
+@Component
+public class WriteBehindUpdateQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindUpdateQueue.class);
+
+    private final ProductsManagerService productsManagerService;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushNeeded = lock.newCondition();
+    private final LinkedHashMap<String, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+    private boolean running;
+    private boolean lastFlushFailed;
+    private Thread flusher;
+
+    private long acceptedUpdates;
+    private long coalescedUpdates;
+    private long rejectedUpdates;
+    private long flushedProducts;
+    private long droppedUpdates;
+    private long failedFlushes;
+    private long lastFlushDurationMs;
+
+    public WriteBehindUpdateQueue(ProductsManagerService productsManagerService,
+                                  @Value("${products.write-behind.enabled:false}") boolean enabled,
+                                  @Value("${products.write-behind.capacity:10000}") int capacity,
+                                  @Value("${products.write-behind.batch-size:500}") int batchSize,
+                                  @Value("${products.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                                  @Value("${products.write-behind.offer-timeout-ms:100}") long offerTimeoutMs) {
+        this.productsManagerService = productsManagerService;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::runFlusher, "write-behind-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues an update of a product, merging it into the update already queued for the same barcode, if any.
+     *
+     * @param barcode the barcode of the product to update
+     * @param productRequest the new product details; null fields are left unchanged
+     * @throws IngestionQueueFullException if the queue stayed full for the whole offer timeout, or is shutting down
+     */
+    public void submit(String barcode, ProductRequest productRequest) {
+        lock.lock();
+        try {
+            PendingUpdate pending = pendingUpdates.get(barcode);
+            if (pending == null) {
+                long remainingNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+                while (running && pendingUpdates.size() >= capacity && remainingNanos > 0) {
+                    remainingNanos = notFull.awaitNanos(remainingNanos);
+                }
+                if (!running || pendingUpdates.size() >= capacity) {
+                    rejectedUpdates++;
+                    throw new IngestionQueueFullException("Update of product with barcode " + barcode + " was rejected, the ingestion queue is full");
+                }
+                pending = pendingUpdates.get(barcode);
+            }
+            if (pending == null) {
+                pendingUpdates.put(barcode, new PendingUpdate(copyOf(productRequest), System.nanoTime()));
+                if (pendingUpdates.size() >= batchSize) {
+                    flushNeeded.signal();
+                }
+            } else {
+                mergeInto(pending.request, productRequest);
+                coalescedUpdates++;
+            }
+            acceptedUpdates++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedUpdates++;
+            throw new IngestionQueueFullException("Update of product with barcode " + barcode + " was interrupted");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public WriteBehindStats getStats() {
+        lock.lock();
+        try {
+            long lagMs = pendingUpdates.isEmpty() ? 0
+                    : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pendingUpdates.values().iterator().next().queuedAt);
+            return new WriteBehindStats(enabled, pendingUpdates.size(), lagMs, acceptedUpdates, coalescedUpdates,
+                    rejectedUpdates, flushedProducts, droppedUpdates, failedFlushes, lastFlushDurationMs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes one batch of the oldest queued updates to the database.
+     *
+     * @return the number of products of the batch that were written
+     */
+    public int flushBatch() {
+        Map<String, PendingUpdate> batch = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, PendingUpdate>> iterator = pendingUpdates.entrySet().iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                Map.Entry<String, PendingUpdate> entry = iterator.next();
+                batch.put(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        Map<String, ProductRequest> requests = new LinkedHashMap<>();
+        batch.forEach((barcode, pending) -> requests.put(barcode, pending.request));
+        int written = batch.size();
+        boolean requeued = false;
+        try {
+            productsManagerService.applyUpdates(requests);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to write a batch of {} queued product updates, retrying them one by one", batch.size(), e);
+            written = writeOneByOne(batch);
+            if (!batch.isEmpty()) {
+                requeue(batch);
+                requeued = true;
+            }
+        }
+
+        lock.lock();
+        try {
+            if (!requeued) {
+                lastFlushFailed = false;
+            }
+            flushedProducts += written;
+            lastFlushDurationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            lock.unlock();
+        }
+        return written;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            notFull.signalAll();
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int remaining = getStats().getPendingProducts();
+        if (remaining > 0) {
+            logger.error("{} queued product updates could not be written before shutdown", remaining);
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            lock.lock();
+            try {
+                if (!running) {
+                    break;
+                }
+                if (pendingUpdates.size() < batchSize || lastFlushFailed) {
+                    flushNeeded.await(flushIntervalMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                lock.unlock();
+            }
+            drain(false);
+        }
+        drain(true);
+    }
+
+    /**
+     * Flushes batches until the queue is empty or a flush fails.
+     * Outside of shutdown, a partial batch is only flushed once per call, so it waits for the next interval.
+     */
+    private void drain(boolean shuttingDown) {
+        int flushed;
+        do {
+            flushed = flushBatch();
+        } while (flushed > 0 && (shuttingDown || flushed == batchSize));
+    }
+
+    /**
+     * Writes the updates of a failed batch one at a time, removing them from the batch as they are written or dropped.
+     * An update that fails for any reason other than an error accessing the database was rejected, and retrying it
+     * would fail again, so it is dropped. On an error accessing the database, the remaining updates are left in the
+     * batch to be requeued, since the rest of them would most likely fail too.
+     *
+     * @return the number of updates that were written
+     */
+    private int writeOneByOne(Map<String, PendingUpdate> batch) {
+        int written = 0;
+        Iterator<Map.Entry<String, PendingUpdate>> iterator = batch.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, PendingUpdate> entry = iterator.next();
+            try {
+                productsManagerService.applyUpdates(Map.of(entry.getKey(), entry.getValue().request));
+                written++;
+            } catch (DatabaseAccessException e) {
+                logger.error("Failed to write the queued update of product with barcode {}, {} updates will be retried",
+                        entry.getKey(), batch.size(), e);
+                return written;
+            } catch (RuntimeException e) {
+                drop(entry.getKey(), e);
+            }
+            iterator.remove();
+        }
+        return written;
+    }
+
+    private void drop(String barcode, RuntimeException cause) {
+        lock.lock();
+        try {
+            droppedUpdates++;
+        } finally {
+            lock.unlock();
+        }
+        logger.error("Dropped the queued update of product with barcode {}, it was rejected: {}", barcode, cause.getMessage());
+    }
+
+    /**
+     * Puts back a batch that failed to be written. Updates that were queued for the same products in the meantime
+     * are newer, so they are merged on top of the failed ones.
+     */
+    private void requeue(Map<String, PendingUpdate> batch) {
+        lock.lock();
+        try {
+            failedFlushes++;
+            lastFlushFailed = true;
+            LinkedHashMap<String, PendingUpdate> newer = new LinkedHashMap<>(pendingUpdates);
+            pendingUpdates.clear();
+            pendingUpdates.putAll(batch);
+            newer.forEach((barcode, pending) -> {
+                PendingUpdate failed = pendingUpdates.get(barcode);
+                if (failed == null) {
+                    pendingUpdates.put(barcode, pending);
+                } else {
+                    mergeInto(failed.request, pending.request);
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ProductRequest copyOf(ProductRequest productRequest) {
+        ProductRequest copy = new ProductRequest();
+        mergeInto(copy, productRequest);
+        return copy;
+    }
+
+    private static void mergeInto(ProductRequest target, ProductRequest newer) {
+        if (newer.getBarcode() != null) {
+            target.setBarcode(newer.getBarcode());
+        }
+        if (newer.getName() != null) {
+            target.setName(newer.getName());
+        }
+        if (newer.getImage() != null) {
+            target.setImage(newer.getImage());
+        }
+        if (newer.getRating() != null) {
+            target.setRating(newer.getRating());
+        }
+        if (newer.getPrice() != null) {
+            target.setPrice(newer.getPrice());
+        }
+        if (newer.getTags() != null) {
+            target.setTags(new ArrayList<>(newer.getTags()));
+        }
+    }
+
+    private static class PendingUpdate {
+        private final ProductRequest request;
+        private final long queuedAt;
+
+        private PendingUpdate(ProductRequest request, long queuedAt) {
+            this.request = request;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.example.products_manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Creates products over HTTP from many threads, with heavily overlapping barcodes, against an embedded H2 database.
+ * Every barcode must be created exactly once, and every other attempt must be answered with 400 and the
+ * BarcodeAlreadyExistsException message, rather than with a database error (reported as 500).
+ * A constraint violation that is not caused by the barcode must still be reported as a database error.
+ * The benchmark reports the throughput of 64 threads contending for the same barcodes.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.datasource.url=jdbc:h2:mem:barcode-contention;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "products.catalog-file.path=",
+        "products.price-history.enabled=false"
+})
+@AutoConfigureMockMvc
+public class BarcodeContentionTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @AfterEach
+    public void cleanup() {
+        productTagRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        tagRepository.deleteAll();
+        productChangeRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testConcurrentCreatesWithOverlappingBarcodes() throws Exception {
+        createConcurrently(16, 25, 50);
+    }
+
+    /**
+     * Reports the throughput of creates from 64 threads over 500 barcodes, most of which are rejected as duplicates,
+     * through the whole HTTP stack but without the network.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkConcurrentCreatesWithOverlappingBarcodes() throws Exception {
+        int threads = 64;
+        int attemptsPerThread = 200;
+        long startTime = System.nanoTime();
+        int created = createConcurrently(threads, attemptsPerThread, 500);
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+
+        int attempts = threads * attemptsPerThread;
+        System.out.printf("%d creates from %d threads: %d created, %d rejected as duplicates, %.0f requests/sec%n",
+                attempts, threads, created, attempts - created, attempts / elapsedSeconds);
+    }
+
+    @Test
+    public void testOtherConstraintViolationIsNotReportedAsExistingBarcode() throws Exception {
+        mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                new ProductRequest("2000", "x".repeat(300), null, 4f, 10f, new ArrayList<>()))))
+                .andExpect(status().isInternalServerError())
+                .andExpect(content().string("Error accessing the database"));
+
+        assertEquals(0, productRepository.count());
+    }
+
+    /**
+     * Creates products from the given number of threads, each with random barcodes among the given number,
+     * and checks that every barcode was created once and every other attempt was rejected as an existing barcode.
+     *
+     * @return the number of created products
+     */
+    private int createConcurrently(int threads, int attemptsPerThread, int distinctBarcodes) throws Exception {
+        Map<String, AtomicInteger> createdByBarcode = new ConcurrentHashMap<>();
+        AtomicInteger alreadyExists = new AtomicInteger();
+        List<String> unexpectedResponses = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    String barcode = String.valueOf(1000 + ThreadLocalRandom.current().nextInt(distinctBarcodes));
+                    MvcResult result = create(new ProductRequest(barcode, "Product " + barcode, null, 4f, 10f, new ArrayList<>()));
+                    int status = result.getResponse().getStatus();
+                    String body = result.getResponse().getContentAsString();
+                    if (status == 200) {
+                        createdByBarcode.computeIfAbsent(barcode, b -> new AtomicInteger()).incrementAndGet();
+                    } else if (status == 400 && body.equals("Product with barcode " + barcode + " already exists")) {
+                        alreadyExists.incrementAndGet();
+                    } else {
+                        synchronized (unexpectedResponses) {
+                            unexpectedResponses.add(status + " " + body);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(List.of(), unexpectedResponses);
+        for (Map.Entry<String, AtomicInteger> entry : createdByBarcode.entrySet()) {
+            assertEquals(1, entry.getValue().get(), "creations of barcode " + entry.getKey());
+        }
+        Set<String> storedBarcodes = new HashSet<>(jdbcTemplate.queryForList("SELECT barcode FROM products", String.class));
+        assertEquals(createdByBarcode.keySet(), storedBarcodes);
+        assertEquals(threads * attemptsPerThread, createdByBarcode.size() + alreadyExists.get());
+        return createdByBarcode.size();
+    }
+
+    private MvcResult create(ProductRequest productRequest) throws Exception {
+        return mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(productRequest)))
+                .andReturn();
+    }
+}
@@ -0,0 +1,217 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.BulkUpdateRequest;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.ShardedProductRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.CatalogSnapshotFile;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ProductRangeIndex;
+import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.ReadCoalescer;
+import org.example.products_manager.service.ShardedProductsService;
+import org.example.products_manager.service.SimilarProductsIndex;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs bulk updates against an embedded database, and checks the updated products both in the database
+ * and in the catalog snapshot, which is rebuilt before each test so that reads are served from it.
+ * Test methods are not transactional, so that the service commits and the change events are delivered.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "products.catalog-file.path="
+})
+@Import({ProductsManagerService.class, CatalogSynchronizer.class, TagStatsAggregator.class, ProductRangeIndex.class,
+        CatalogSnapshotHolder.class, CatalogSnapshotFile.class, BarcodeLocks.class, NodeIdentity.class,
+        ShardedProductsService.class, ShardedProductRepository.class, SimilarProductsIndex.class,
+        ReadCoalescer.class, PriceHistoryWriter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class BulkUpdateTests {
+
+    @Autowired
+    private ProductsManagerService productsManagerService;
+
+    @Autowired
+    private CatalogSynchronizer catalogSynchronizer;
+
+    @Autowired
+    private CatalogSnapshotHolder catalogSnapshotHolder;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void cleanup() {
+        productTagRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        tagRepository.deleteAll();
+        productChangeRepository.deleteAllInBatch();
+    }
+
+    private void createProducts() {
+        productsManagerService.createProduct(new ProductRequest("101", "Apple", null, 4.5f, 2f, Arrays.asList("fruit", "fresh")));
+        productsManagerService.createProduct(new ProductRequest("102", "Banana", null, 3.5f, 3f, Arrays.asList("fruit")));
+        productsManagerService.createProduct(new ProductRequest("103", "Cheese", null, 4f, 12.5f, Arrays.asList("dairy", "fresh")));
+        productsManagerService.createProduct(new ProductRequest("104", "Water", null, null, null, new ArrayList<>()));
+        catalogSynchronizer.rebuild();
+        productChangeRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testMultiplyPriceByTag() {
+        createProducts();
+
+        int affected = productsManagerService.bulkUpdate(request("fresh", null, "price", "multiply", 90f));
+
+        assertEquals(2, affected);
+        assertEquals(1.8f, productsManagerService.getProduct("101").getPrice());
+        assertEquals(3f, productsManagerService.getProduct("102").getPrice());
+        assertEquals(11.25f, productsManagerService.getProduct("103").getPrice());
+        assertEquals(1.8f, priceInDatabase("101"));
+        assertEquals(11.25f, priceInDatabase("103"));
+        assertEquals(2, productChangeRepository.count());
+        // The catalog snapshot has the new prices
+        List<ProductResponse> byPrice = productsManagerService.getAllProducts("price");
+        assertEquals(Arrays.asList("104", "101", "102", "103"), byPrice.stream().map(ProductResponse::getBarcode).toList());
+        assertEquals(1.8f, byPrice.get(1).getPrice());
+    }
+
+    @Test
+    public void testAddRatingByBarcodes() {
+        createProducts();
+
+        int affected = productsManagerService.bulkUpdate(request(null, Arrays.asList("102", "104", "999"), "rating", "add", 1f));
+
+        assertEquals(2, affected);
+        assertEquals(4.5f, productsManagerService.getProduct("102").getRating());
+        // A missing value stays missing
+        assertNull(productsManagerService.getProduct("104").getRating());
+        assertEquals(4.5f, productsManagerService.getProduct("101").getRating());
+    }
+
+    @Test
+    public void testSetPriceByRangeAndNeverBelowZero() {
+        createProducts();
+        BulkUpdateRequest byRange = request(null, null, "price", "set", 5f);
+        byRange.setMinPrice(2.5f);
+        byRange.setMaxPrice(20f);
+
+        assertEquals(2, productsManagerService.bulkUpdate(byRange));
+        assertEquals(5f, productsManagerService.getProduct("102").getPrice());
+        assertEquals(5f, productsManagerService.getProduct("103").getPrice());
+        assertEquals(2f, productsManagerService.getProduct("101").getPrice());
+
+        assertEquals(1, productsManagerService.bulkUpdate(request("dairy", null, "price", "add", -7f)));
+        assertEquals(0f, productsManagerService.getProduct("103").getPrice());
+        List<ProductResponse> byPrice = productsManagerService.getAllProducts("price");
+        assertEquals("104", byPrice.get(0).getBarcode());
+        assertEquals("103", byPrice.get(1).getBarcode());
+    }
+
+    @Test
+    public void testNoSelectedProduct() {
+        createProducts();
+
+        assertEquals(0, productsManagerService.bulkUpdate(request("frozen", null, "price", "set", 1f)));
+        assertEquals(0, productChangeRepository.count());
+    }
+
+    /**
+     * Compares a bulk update of 100,000 products to updating them one by one, as a client sending
+     * a PATCH per product would. The catalog snapshot is loaded, as in a running service.
+     * The per-product updates are measured on a sample and extrapolated to the whole catalog.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkBulkUpdate() {
+        int products = 100_000;
+        int sample = 2_000;
+        jdbcTemplate.update("INSERT INTO tags (id, tag_name) VALUES (1, 'catalog')");
+        jdbcTemplate.batchUpdate("INSERT INTO products (id, barcode, name, image, rating, price) VALUES (?, ?, ?, ?, ?, ?)",
+                IntStream.range(1, products + 1).boxed().toList(), 10_000,
+                (statement, id) -> {
+                    statement.setLong(1, id);
+                    statement.setString(2, String.valueOf(10_000_000 + id));
+                    statement.setString(3, "Product " + id);
+                    statement.setString(4, null);
+                    statement.setFloat(5, (id % 50) / 10f);
+                    statement.setFloat(6, (id % 10_000) / 100f + 1);
+                });
+        jdbcTemplate.batchUpdate("INSERT INTO product_tags (product_id, tag_id) VALUES (?, 1)",
+                IntStream.range(1, products + 1).boxed().toList(), 10_000,
+                (statement, id) -> statement.setLong(1, id));
+        catalogSynchronizer.rebuild();
+
+        long start = System.nanoTime();
+        for (int id = 1; id <= sample; id++) {
+            String barcode = String.valueOf(10_000_000 + id);
+            ProductResponse product = productsManagerService.getProduct(barcode);
+            productsManagerService.updateProduct(barcode, new ProductRequest(barcode, product.getName(), null, null,
+                    product.getPrice() * 0.9f, null));
+        }
+        long loopNs = (System.nanoTime() - start) / sample * products;
+
+        start = System.nanoTime();
+        int affected = productsManagerService.bulkUpdate(request("catalog", null, "price", "multiply", 90f));
+        long bulkNs = System.nanoTime() - start;
+
+        System.out.printf("Bulk update of %d products: %d ms, including the reload of the catalog%n", affected, bulkNs / 1_000_000);
+        System.out.printf("Per-product updates: %d ms estimated from %d updates%n", loopNs / 1_000_000, sample);
+        assertEquals(products, affected);
+        assertEquals(products, catalogSnapshotHolder.getSnapshot().size());
+        assertTrue(bulkNs * 10 < loopNs);
+        jdbcTemplate.update("DELETE FROM product_tags");
+        jdbcTemplate.update("DELETE FROM products");
+    }
+
+    private float priceInDatabase(String barcode) {
+        return jdbcTemplate.queryForObject("SELECT price FROM products WHERE barcode = ?", Float.class, barcode);
+    }
+
+    private static BulkUpdateRequest request(String tag, List<String> barcodes, String field, String operation, Float value) {
+        BulkUpdateRequest request = new BulkUpdateRequest();
+        request.setTag(tag);
+        request.setBarcodes(barcodes);
+        request.setField(field);
+        request.setOperation(operation);
+        request.setValue(value);
+        return request;
+    }
+}
@@ -0,0 +1,244 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChange;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.ShardedProductRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.CatalogSnapshot;
+import org.example.products_manager.service.CatalogSnapshotFile;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.example.products_manager.service.ChangeLogPruner;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ProductRangeIndex;
+import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.ReadCoalescer;
+import org.example.products_manager.service.ShardedProductsService;
+import org.example.products_manager.service.SimilarProductsIndex;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writes the catalog file from an embedded database, changes the catalog, and then warms up from the file
+ * as a restart would. The catch-up margin is disabled, so only the products changed after the file was written
+ * are reloaded from the database.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "products.catalog-file.catch-up-margin-ms=0"
+})
+@Import({ProductsManagerService.class, CatalogSynchronizer.class, TagStatsAggregator.class, ProductRangeIndex.class,
+        CatalogSnapshotHolder.class, CatalogSnapshotFile.class, BarcodeLocks.class, NodeIdentity.class,
+        ShardedProductsService.class, ShardedProductRepository.class, SimilarProductsIndex.class,
+        ReadCoalescer.class, PriceHistoryWriter.class, ChangeLogPruner.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CatalogSnapshotFileTests {
+
+    @TempDir
+    static Path directory;
+
+    @DynamicPropertySource
+    static void catalogFileProperties(DynamicPropertyRegistry registry) {
+        registry.add("products.catalog-file.path", () -> directory.resolve("catalog.bin").toString());
+    }
+
+    @Autowired
+    private ProductsManagerService productsManagerService;
+
+    @Autowired
+    private CatalogSynchronizer catalogSynchronizer;
+
+    @Autowired
+    private CatalogSnapshotHolder catalogSnapshotHolder;
+
+    @Autowired
+    private CatalogSnapshotFile catalogSnapshotFile;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @Autowired
+    private ChangeLogPruner changeLogPruner;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        productTagRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        tagRepository.deleteAll();
+        productChangeRepository.deleteAllInBatch();
+        Files.deleteIfExists(directory.resolve("catalog.bin"));
+    }
+
+    @Test
+    public void testWarmRestartCatchesUpOnChanges() throws IOException {
+        catalogSynchronizer.rebuild();
+        productsManagerService.createProduct(new ProductRequest("1001", "Milk", null, 4.5f, 5.5f, Arrays.asList("dairy", "fresh")));
+        productsManagerService.createProduct(new ProductRequest("1002", "Bread", "http://example.com/bread.jpg", null, 8f, Arrays.asList("fresh")));
+        productsManagerService.createProduct(new ProductRequest("1003", "Water", null, null, null, new ArrayList<>()));
+        assertTrue(catalogSnapshotFile.write());
+
+        productsManagerService.updateProduct("1001", new ProductRequest("1001", "Skimmed milk", null, null, null, Arrays.asList("dairy")));
+        productsManagerService.deleteProduct("1002");
+        productsManagerService.createProduct(new ProductRequest("1004", "Juice", null, 3f, 7f, Arrays.asList("fresh")));
+
+        catalogSynchronizer.onApplicationReady();
+
+        assertEquals(describe(catalogSynchronizer.loadEntries()), describe(entriesOf(catalogSnapshotHolder.getSnapshot())));
+        // The file still holds the state from before the changes, so they were caught up on from the database
+        List<String> stored = describe(catalogSnapshotFile.read().getEntries());
+        assertTrue(stored.stream().anyMatch(entry -> entry.contains("Milk")));
+        assertTrue(stored.stream().anyMatch(entry -> entry.contains("Bread")));
+    }
+
+    @Test
+    public void testUnchangedCatalogIsNotRewritten() throws IOException {
+        catalogSynchronizer.rebuild();
+        productsManagerService.createProduct(new ProductRequest("2001", "Milk", null, 4.5f, 5.5f, Arrays.asList("dairy")));
+
+        assertTrue(catalogSnapshotFile.write());
+        assertFalse(catalogSnapshotFile.write());
+
+        productsManagerService.updateProduct("2001", new ProductRequest("2001", "Skimmed milk", null, null, null, null));
+        assertTrue(catalogSnapshotFile.write());
+    }
+
+    @Test
+    public void testCorruptedFileIsIgnored() throws IOException {
+        catalogSynchronizer.rebuild();
+        productsManagerService.createProduct(new ProductRequest("3001", "Milk", null, 4.5f, 5.5f, Arrays.asList("dairy")));
+        assertTrue(catalogSnapshotFile.write());
+
+        Path file = directory.resolve("catalog.bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(raf.length() / 2);
+            int value = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(value ^ 0xFF);
+        }
+
+        assertNull(catalogSnapshotFile.read());
+        catalogSynchronizer.onApplicationReady();
+        assertEquals(1, catalogSnapshotHolder.getSnapshot().size());
+    }
+
+    @Test
+    public void testChangeLogIsPrunedWithoutWritingTheFile() {
+        productChangeRepository.save(new ProductChange(null, 1L, Instant.now().minus(Duration.ofHours(25)), "test"));
+        productChangeRepository.save(new ProductChange(null, 2L, Instant.now(), "test"));
+
+        assertEquals(1, changeLogPruner.prune());
+        assertEquals(1, productChangeRepository.count());
+        assertFalse(Files.exists(directory.resolve("catalog.bin")));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkTimeToWarm() throws IOException {
+        int products = 300_000;
+        int tags = 1000;
+        jdbcTemplate.batchUpdate("INSERT INTO tags (id, tag_name) VALUES (?, ?)",
+                IntStream.range(1, tags + 1).boxed().toList(), 10_000,
+                (statement, id) -> {
+                    statement.setLong(1, id);
+                    statement.setString(2, "tag" + id);
+                });
+        jdbcTemplate.batchUpdate("INSERT INTO products (id, barcode, name, image, rating, price) VALUES (?, ?, ?, ?, ?, ?)",
+                IntStream.range(1, products + 1).boxed().toList(), 10_000,
+                (statement, id) -> {
+                    statement.setLong(1, id);
+                    statement.setString(2, String.valueOf(10_000_000 + id));
+                    statement.setString(3, "Product " + id);
+                    statement.setString(4, "http://example.com/" + id + ".jpg");
+                    statement.setFloat(5, (id % 50) / 10f);
+                    statement.setFloat(6, (id % 10_000) / 100f);
+                });
+        jdbcTemplate.batchUpdate("INSERT INTO product_tags (product_id, tag_id) VALUES (?, ?)",
+                IntStream.range(0, products * 2).boxed().toList(), 10_000,
+                (statement, i) -> {
+                    statement.setLong(1, i / 2 + 1);
+                    statement.setLong(2, i % 2 == 0 ? (i / 2) % tags + 1 : (i / 2) % 7 + 1);
+                });
+
+        long start = System.nanoTime();
+        catalogSynchronizer.rebuild();
+        long fromDatabaseMs = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        assertTrue(catalogSnapshotFile.write());
+        long writeMs = (System.nanoTime() - start) / 1_000_000;
+
+        for (int id = 1; id <= 1000; id++) {
+            String barcode = String.valueOf(10_000_000 + id);
+            productsManagerService.updateProduct(barcode, new ProductRequest(barcode, "Renamed " + id, null, null, null, null));
+        }
+
+        start = System.nanoTime();
+        catalogSynchronizer.onApplicationReady();
+        long fromFileMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("Time to warm with %d products: %d ms from the database, %d ms from the catalog file "
+                        + "(%d KB, written in %d ms) including 1000 changed products%n",
+                products, fromDatabaseMs, fromFileMs, Files.size(directory.resolve("catalog.bin")) / 1024, writeMs);
+        assertEquals(products, catalogSnapshotHolder.getSnapshot().size());
+    }
+
+    private static List<CatalogEntry> entriesOf(CatalogSnapshot snapshot) {
+        List<CatalogEntry> entries = new ArrayList<>();
+        for (int row = 0; row < snapshot.size(); row++) {
+            entries.add(snapshot.toCatalogEntry(row));
+        }
+        return entries;
+    }
+
+    private static List<String> describe(List<CatalogEntry> entries) {
+        List<String> descriptions = new ArrayList<>();
+        for (CatalogEntry entry : entries) {
+            descriptions.add(entry.getId() + "|" + entry.getBarcode() + "|" + entry.getName() + "|" + entry.getImage()
+                    + "|" + entry.getRating() + "|" + entry.getPrice() + "|" + entry.getTags());
+        }
+        descriptions.sort(null);
+        return descriptions;
+    }
+}
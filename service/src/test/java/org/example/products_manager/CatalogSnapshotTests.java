@@ -0,0 +1,217 @@
+package org.example.products_manager;
+
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.Product;
+import org.example.products_manager.model.ProductFields;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.service.CatalogSnapshot;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the reads of the columnar CatalogSnapshot and the application of changes to it.
+ * The benchmark measures the memory used per product by the snapshot and by the entity graph it replaces.
+ */
+public class CatalogSnapshotTests {
+
+    private static final List<String> SORTABLE_FIELDS = List.of("id", "barcode", "name", "image", "rating", "price");
+
+    private final CatalogSnapshot snapshot = CatalogSnapshot.of(Arrays.asList(
+            new CatalogEntry(3L, "333", "cherry", null, null, 12f, Arrays.asList("fruits")),
+            new CatalogEntry(1L, "111", "Banana", "http://example.com/banana.jpg", 4.5f, 19.5f, Arrays.asList("fruits", "sale")),
+            new CatalogEntry(2L, "222", "apple", null, 4.0f, null, new ArrayList<>())
+    ), 1);
+
+    @Test
+    public void testListSortedById() {
+        List<ProductResponse> products = snapshot.list("id");
+
+        assertEquals(Arrays.asList("111", "222", "333"), barcodes(products));
+        assertEquals("http://example.com/banana.jpg", products.get(0).getImage());
+        assertEquals(Arrays.asList("fruits", "sale"), products.get(0).getTags());
+        assertNull(products.get(1).getPrice());
+    }
+
+    @Test
+    public void testListSortedByNameIgnoringCase() {
+        assertEquals(Arrays.asList("222", "111", "333"), barcodes(snapshot.list("name")));
+    }
+
+    @Test
+    public void testListSortedByPriceWithMissingFirst() {
+        assertEquals(Arrays.asList("222", "333", "111"), barcodes(snapshot.list("price")));
+        assertEquals(Arrays.asList("333", "222", "111"), barcodes(snapshot.list("rating")));
+    }
+
+    @Test
+    public void testListInvalidSortBy() {
+        assertThrows(InvalidQueryParameterException.class, () -> snapshot.list("tags"));
+    }
+
+    @Test
+    public void testWithChanges() {
+        TreeMap<Long, CatalogEntry> changes = new TreeMap<>();
+        changes.put(1L, null);
+        changes.put(2L, new CatalogEntry(2L, "222", "apple", null, 4.0f, 5f, Arrays.asList("sale")));
+        changes.put(4L, new CatalogEntry(4L, "444", "date", null, 3.0f, 7f, Arrays.asList("fruits")));
+
+        CatalogSnapshot changed = snapshot.withChanges(changes, 2);
+
+        assertEquals(2, changed.getVersion());
+        assertEquals(Arrays.asList("222", "444", "333"), barcodes(changed.list("price")));
+        assertEquals(Arrays.asList("sale"), changed.list("id").get(0).getTags());
+        assertEquals(3, snapshot.size());
+    }
+
+    @Test
+    public void testWithChangesKeepsCachedOrders() {
+        List<CatalogEntry> entries = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            entries.add(entry(id, "Product " + (id % 17), id % 3 == 0 ? null : (id % 40) / 4f));
+        }
+        CatalogSnapshot cached = CatalogSnapshot.of(entries, 1);
+        for (String field : SORTABLE_FIELDS) {
+            cached.list(field);
+        }
+        TreeMap<Long, CatalogEntry> changes = new TreeMap<>();
+        for (long id = 5; id <= 200; id += 9) {
+            changes.put(id, id % 2 == 0 ? null : entry(id, "renamed " + id, id % 5 == 0 ? null : 100f - id / 4f));
+        }
+        changes.put(250L, entry(250, "product 3", 2.5f));
+        changes.put(0L, entry(0, null, 0f));
+
+        CatalogSnapshot changed = cached.withChanges(changes, 2);
+
+        changes.forEach((id, entry) -> {
+            entries.removeIf(existing -> existing.getId().equals(id));
+            if (entry != null) {
+                entries.add(entry);
+            }
+        });
+        CatalogSnapshot rebuilt = CatalogSnapshot.of(entries, 2);
+        for (String field : SORTABLE_FIELDS) {
+            assertEquals(describe(rebuilt.list(field)), describe(changed.list(field)), "sorted by " + field);
+        }
+    }
+
+    @Test
+    public void testManyChangesCompactTheStrings() {
+        CatalogSnapshot changed = snapshot;
+        for (int version = 2; version < 3000; version++) {
+            TreeMap<Long, CatalogEntry> changes = new TreeMap<>();
+            changes.put(2L, new CatalogEntry(2L, "222", "apple " + version, "http://example.com/" + version + ".jpg",
+                    4.0f, null, Arrays.asList("tag " + version)));
+            changed = changed.withChanges(changes, version);
+            changed.list("name");
+        }
+
+        assertEquals(Arrays.asList("222", "111", "333"), barcodes(changed.list("name")));
+        assertEquals("apple 2999", changed.list("id").get(1).getName());
+        assertEquals(Arrays.asList("tag 2999"), changed.list("id").get(1).getTags());
+        assertTrue(changed.estimateMemoryBytes() < 256 * 1024);
+    }
+
+    @Test
+    public void testFindByIdsKeepsOrder() {
+        assertEquals(Arrays.asList("333", "111"), barcodes(snapshot.findByIds(new long[]{3L, 7L, 1L})));
+    }
+
+    @Test
+    public void testListRequestedFields() {
+        List<Map<String, Object>> products = snapshot.list("price", ProductFields.parse("price,name"));
+
+        assertEquals(3, products.size());
+        assertEquals(Arrays.asList("name", "price"), new ArrayList<>(products.get(2).keySet()));
+        assertEquals("Banana", products.get(2).get("name"));
+        assertEquals(19.5f, products.get(2).get("price"));
+        assertNull(products.get(0).get("price"));
+        assertEquals(Arrays.asList("fruits"), snapshot.findByIds(new long[]{3L}, ProductFields.parse("tags")).get(0).get("tags"));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkMemoryPerProduct() {
+        int count = 200_000;
+        List<CatalogEntry> entries = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            entries.add(new CatalogEntry(id, String.valueOf(7_290_000_000_000L + id), "Product name " + (id % 5_000),
+                    "http://example.com/images/" + id + ".jpg", (id % 50) / 10f, (id % 10_000) / 100f,
+                    Arrays.asList("tag" + (id % 26), "tag" + (id % 7))));
+        }
+
+        long before = usedMemory();
+        List<Object> entityGraph = new ArrayList<>(count * 2);
+        for (CatalogEntry entry : entries) {
+            entityGraph.add(new Product(entry.getId(), new String(entry.getBarcode()), new String(entry.getName()),
+                    new String(entry.getImage()), entry.getRating(), entry.getPrice()));
+            entityGraph.add(new ProductResponse(new String(entry.getBarcode()), new String(entry.getName()),
+                    new String(entry.getImage()), entry.getRating(), entry.getPrice(),
+                    entry.getTags().stream().map(String::new).collect(Collectors.toList())));
+        }
+        long entityBytes = usedMemory() - before;
+        assertEquals(count * 2, entityGraph.size());
+        entityGraph = null;
+
+        // Built from copies of the strings, so that the measure includes the strings kept by the snapshot
+        before = usedMemory();
+        CatalogSnapshot large = CatalogSnapshot.of(copyOf(entries), 1);
+        large.list("price");
+        long snapshotBytes = usedMemory() - before;
+
+        System.out.printf("Entity graph (Product + ProductResponse): ~%d bytes per product%n", entityBytes / count);
+        System.out.printf("Columnar snapshot: ~%d bytes per product (with one cached sort order)%n", snapshotBytes / count);
+        assertEquals(count, large.size());
+        assertTrue(snapshotBytes < entityBytes);
+    }
+
+    /**
+     * Measures the heap in use after a few garbage collections, so that only reachable objects are counted.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static List<CatalogEntry> copyOf(List<CatalogEntry> entries) {
+        List<CatalogEntry> copies = new ArrayList<>(entries.size());
+        for (CatalogEntry entry : entries) {
+            copies.add(new CatalogEntry(entry.getId(), new String(entry.getBarcode()), new String(entry.getName()),
+                    new String(entry.getImage()), entry.getRating(), entry.getPrice(),
+                    entry.getTags().stream().map(String::new).collect(Collectors.toList())));
+        }
+        return copies;
+    }
+
+    private static CatalogEntry entry(long id, String name, Float price) {
+        return new CatalogEntry(id, String.valueOf(1000 - id), name, id % 4 == 0 ? null : "http://example.com/" + (id % 11) + ".jpg",
+                (id % 6) / 2f, price, Arrays.asList("tag" + (id % 5)));
+    }
+
+    private static List<String> describe(List<ProductResponse> products) {
+        return products.stream()
+                .map(product -> String.join("|", product.getBarcode(), String.valueOf(product.getName()),
+                        String.valueOf(product.getImage()), String.valueOf(product.getRating()),
+                        String.valueOf(product.getPrice()), String.valueOf(product.getTags())))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> barcodes(List<ProductResponse> products) {
+        return products.stream().map(ProductResponse::getBarcode).collect(Collectors.toList());
+    }
+}
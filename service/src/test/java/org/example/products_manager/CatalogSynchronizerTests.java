@@ -0,0 +1,103 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.Product;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.service.CatalogListener;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.example.products_manager.service.ShardedProductsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Applies changes read from the database while this instance commits changes of the same products,
+ * with mocked repositories and listener.
+ */
+public class CatalogSynchronizerTests {
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final ProductTagRepository productTagRepository = mock(ProductTagRepository.class);
+    private final CatalogListener listener = mock(CatalogListener.class);
+    private final CatalogSynchronizer catalogSynchronizer = new CatalogSynchronizer();
+
+    @BeforeEach
+    public void setup() {
+        ReflectionTestUtils.setField(catalogSynchronizer, "productRepository", productRepository);
+        ReflectionTestUtils.setField(catalogSynchronizer, "productTagRepository", productTagRepository);
+        ReflectionTestUtils.setField(catalogSynchronizer, "shardedProductsService", mock(ShardedProductsService.class));
+        ReflectionTestUtils.setField(catalogSynchronizer, "listeners", List.of(listener));
+        when(productTagRepository.findProductTagNamesByProductIds(any())).thenReturn(new ArrayList<>());
+    }
+
+    @Test
+    public void testChangeCommittedWhileReadingIsForwardedAndNotOverwritten() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        // The first read returns the state from before the local change, and waits for the change to be forwarded
+        when(productRepository.findAllById(any()))
+                .thenAnswer(invocation -> {
+                    reading.countDown();
+                    assertTrue(committed.await(10, TimeUnit.SECONDS));
+                    return List.of(product(1L, "Milk"), product(2L, "Bread"));
+                })
+                .thenReturn(List.of(product(1L, "Skimmed milk")));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> apply = executor.submit(() -> catalogSynchronizer.applyChanges(List.of(1L, 2L)));
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+        // Not blocked by the read in progress
+        catalogSynchronizer.onProductChanged(new ProductChangedEvent(1L, entry(1L, "Skimmed milk")));
+        committed.countDown();
+        apply.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        ArgumentCaptor<ProductChangedEvent> events = ArgumentCaptor.forClass(ProductChangedEvent.class);
+        verify(listener, times(3)).onProductChanged(events.capture());
+        List<String> forwarded = events.getAllValues().stream()
+                .map(event -> event.getProductId() + ":" + event.getEntry().getName())
+                .toList();
+        // Product 1 was changed while it was read, so it is read again instead of being forwarded with its older state
+        assertEquals(List.of("1:Skimmed milk", "2:Bread", "1:Skimmed milk"), forwarded);
+        verify(productRepository, times(2)).findAllById(any());
+    }
+
+    @Test
+    public void testDeletedProductIsForwardedAsDeleted() {
+        when(productRepository.findAllById(any())).thenReturn(List.of());
+
+        catalogSynchronizer.applyChanges(List.of(1L));
+
+        ArgumentCaptor<ProductChangedEvent> event = ArgumentCaptor.forClass(ProductChangedEvent.class);
+        verify(listener).onProductChanged(event.capture());
+        assertTrue(event.getValue().isDeletion());
+        assertEquals(1L, event.getValue().getProductId());
+    }
+
+    private static Product product(Long id, String name) {
+        Product product = new Product();
+        product.setId(id);
+        product.setBarcode(String.valueOf(id));
+        product.setName(name);
+        return product;
+    }
+
+    private static CatalogEntry entry(Long id, String name) {
+        return new CatalogEntry(id, String.valueOf(id), name, null, null, null, new ArrayList<>());
+    }
+}
@@ -0,0 +1,187 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.ChangeLogStats;
+import org.example.products_manager.model.ProductChange;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.model.TagStatsResponse;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.example.products_manager.service.ChangeLogTailer;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.ProductsManagerService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs two instances of the service, as two application contexts sharing one embedded H2 database,
+ * and checks that the changes made through one instance reach the in-memory catalog of the other.
+ */
+public class ChangeLogTailerTests {
+
+    private static final long POLL_INTERVAL_MS = 50;
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    public static void startNodes() {
+        nodeA = startNode("node-a");
+        nodeB = startNode("node-b");
+    }
+
+    @AfterAll
+    public static void stopNodes() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        JdbcTemplate jdbcTemplate = nodeA.getBean(JdbcTemplate.class);
+        for (String barcode : List.of("1001", "2001", "2002")) {
+            if (jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products WHERE barcode = ?", Integer.class, barcode) > 0) {
+                nodeA.getBean(ProductsManagerService.class).deleteProduct(barcode);
+            }
+        }
+    }
+
+    @Test
+    public void testChangesReachTheOtherNode() {
+        ProductsManagerService serviceA = nodeA.getBean(ProductsManagerService.class);
+        ProductsManagerService serviceB = nodeB.getBean(ProductsManagerService.class);
+
+        serviceA.createProduct(new ProductRequest("1001", "Milk", null, 4.5f, 5.5f, Arrays.asList("dairy")));
+        awaitUntil(() -> findByBarcode(serviceB, "1001") != null);
+        assertEquals("Milk", findByBarcode(serviceB, "1001").getName());
+
+        serviceB.updateProduct("1001", new ProductRequest("1001", "Skimmed milk", null, null, 4f, Arrays.asList("dairy", "light")));
+        awaitUntil(() -> "Skimmed milk".equals(findByBarcode(serviceA, "1001").getName()));
+        assertEquals(Arrays.asList("dairy", "light"), findByBarcode(serviceA, "1001").getTags());
+        List<String> tagsOnA = serviceA.getStatsByTag().stream().map(TagStatsResponse::getTag).toList();
+        assertTrue(tagsOnA.contains("light"));
+
+        serviceA.deleteProduct("1001");
+        awaitUntil(() -> findByBarcode(serviceB, "1001") == null);
+
+        ChangeLogStats stats = nodeB.getBean(ChangeLogTailer.class).getStats();
+        assertEquals("node-b", stats.getNodeId());
+        assertTrue(stats.getAppliedChanges() >= 2);
+        assertTrue(stats.getMaxLagMs() < 5_000, "Lag was " + stats.getMaxLagMs() + " ms");
+    }
+
+    @Test
+    public void testChangeCommittedOutOfOrderIsApplied() throws Exception {
+        ProductsManagerService serviceA = nodeA.getBean(ProductsManagerService.class);
+        ProductsManagerService serviceB = nodeB.getBean(ProductsManagerService.class);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(nodeA.getBean(PlatformTransactionManager.class));
+        CountDownLatch recorded = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        // The first change is recorded, and so gets the lower id, but is committed after the second one
+        Future<?> slowWrite = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+            serviceA.createProduct(new ProductRequest("2001", "Slow", null, null, null, new ArrayList<>()));
+            recorded.countDown();
+            try {
+                commit.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(recorded.await(10, TimeUnit.SECONDS));
+        serviceA.createProduct(new ProductRequest("2002", "Fast", null, null, null, new ArrayList<>()));
+        awaitUntil(() -> findByBarcode(serviceB, "2002") != null);
+        assertTrue(nodeB.getBean(ChangeLogTailer.class).getStats().getPendingGaps() >= 1);
+
+        commit.countDown();
+        slowWrite.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        awaitUntil(() -> findByBarcode(serviceB, "2001") != null);
+    }
+
+    // Passed as arguments rather than default properties, which application.properties would override
+    @Test
+    public void testGapsAreLookedUpLessOftenAsTheyAge() throws InterruptedException {
+        ProductChangeRepository productChangeRepository = mock(ProductChangeRepository.class);
+        CatalogSynchronizer catalogSynchronizer = mock(CatalogSynchronizer.class);
+        when(catalogSynchronizer.getRebuildChangeId()).thenReturn(0L);
+        when(productChangeRepository.findIdsBetween(anyLong(), anyLong())).thenReturn(List.of());
+        // Change 1 was rolled back, so its id never shows up
+        when(productChangeRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any()))
+                .thenReturn(List.of(new ProductChange(2L, 1L, Instant.now(), "node-b")));
+        when(productChangeRepository.findByIdGreaterThanOrderByIdAsc(eq(2L), any())).thenReturn(List.of());
+        ChangeLogTailer tailer = new ChangeLogTailer(productChangeRepository, catalogSynchronizer,
+                new NodeIdentity("node-a"), true, 1000, 60_000, 1000);
+
+        tailer.poll();
+        for (int i = 0; i < 100; i++) {
+            Thread.sleep(2);
+            tailer.poll();
+        }
+
+        assertEquals(1, tailer.getStats().getPendingGaps());
+        // Looked up at ages doubling from about 2 ms, so at most about log2(200) times out of 100 polls
+        verify(productChangeRepository, atMost(10)).findByIdIn(any());
+    }
+
+    private static ConfigurableApplicationContext startNode(String nodeId) {
+        return new SpringApplicationBuilder(ProductsManagerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:cluster;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--products.reactive.r2dbc-url=r2dbc:h2:mem:///cluster?options=DB_CLOSE_DELAY=-1",
+                        "--products.catalog-file.path=",
+                        "--products.cluster.enabled=true",
+                        "--products.cluster.node-id=" + nodeId,
+                        "--products.cluster.poll-interval-ms=" + POLL_INTERVAL_MS);
+    }
+
+    private static ProductResponse findByBarcode(ProductsManagerService service, String barcode) {
+        return service.getAllProducts("id").stream()
+                .filter(product -> product.getBarcode().equals(barcode))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met within 5 seconds");
+            try {
+                Thread.sleep(POLL_INTERVAL_MS / 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted");
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.products_manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.service.CatalogSnapshot;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.ListResponseCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the cache of the serialized product list: its content in each order and encoding, its invalidation
+ * as the catalog changes, and the single build of a list requested concurrently.
+ */
+public class ListResponseCacheTests {
+
+    private CatalogSnapshotHolder catalogSnapshotHolder;
+    private ObjectMapper objectMapper;
+    private ListResponseCache listResponseCache;
+
+    @BeforeEach
+    public void setup() {
+        catalogSnapshotHolder = new CatalogSnapshotHolder(false);
+        catalogSnapshotHolder.rebuild(Arrays.asList(
+                new CatalogEntry(1L, "111", "Banana", null, 4f, 3f, Arrays.asList("fruit")),
+                new CatalogEntry(2L, "222", "Apple", "http://example.com/apple.jpg", 5f, 2f, Arrays.asList("fruit", "fresh")),
+                new CatalogEntry(3L, "333", "Cheese", null, 3f, 10f, new ArrayList<>())
+        ));
+        objectMapper = spy(new ObjectMapper());
+        listResponseCache = new ListResponseCache(catalogSnapshotHolder, objectMapper);
+    }
+
+    @Test
+    public void testListIsSerializedInEachOrderAndEncoding() throws IOException {
+        CatalogSnapshot snapshot = catalogSnapshotHolder.getSnapshot();
+        for (String sortBy : Arrays.asList("id", "name", "price", "rating")) {
+            ListResponseCache.SerializedList list = listResponseCache.get(sortBy);
+            byte[] expected = new ObjectMapper().writeValueAsBytes(snapshot.list(sortBy));
+            assertArrayEquals(expected, list.getJson());
+            assertArrayEquals(expected, gunzip(list.getGzippedJson()));
+            assertNotEquals(list.getETag(), list.getGzipETag());
+        }
+        assertNotEquals(listResponseCache.get("id").getETag(), listResponseCache.get("price").getETag());
+    }
+
+    @Test
+    public void testUnknownOrderAndUnloadedCatalogAreNotCached() {
+        assertNull(listResponseCache.get("image"));
+        assertNull(new ListResponseCache(new CatalogSnapshotHolder(false), objectMapper).get("id"));
+    }
+
+    @Test
+    public void testListIsRebuiltAfterCatalogChanges() throws IOException {
+        ListResponseCache.SerializedList before = listResponseCache.get("price");
+        assertSame(before, listResponseCache.get("price"));
+
+        catalogSnapshotHolder.onProductChanged(new ProductChangedEvent(3L,
+                new CatalogEntry(3L, "333", "Cheese", null, 3f, 1f, new ArrayList<>())));
+        ListResponseCache.SerializedList after = listResponseCache.get("price");
+
+        assertNotSame(before, after);
+        assertNotEquals(before.getETag(), after.getETag());
+        assertArrayEquals(new ObjectMapper().writeValueAsBytes(catalogSnapshotHolder.getSnapshot().list("price")),
+                after.getJson());
+        assertTrue(new String(after.getJson()).startsWith("[{\"barcode\":\"333\""));
+        verify(objectMapper, times(2)).writeValueAsBytes(any());
+    }
+
+    @Test
+    public void testETagMatching() {
+        ListResponseCache.SerializedList list = listResponseCache.get("id");
+        assertTrue(list.matches(list.getETag()));
+        assertTrue(list.matches("\"other\", W/" + list.getGzipETag()));
+        assertTrue(list.matches("*"));
+        assertFalse(list.matches("\"other\""));
+        assertFalse(list.matches(null));
+    }
+
+    @Test
+    public void testConcurrentRequestsBuildTheListOnce() throws Exception {
+        int threads = 32;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<ListResponseCache.SerializedList>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return listResponseCache.get("name");
+            }));
+        }
+        start.countDown();
+        ListResponseCache.SerializedList first = futures.get(0).get();
+        for (Future<ListResponseCache.SerializedList> future : futures) {
+            assertSame(first, future.get());
+        }
+        executor.shutdown();
+        verify(objectMapper, times(1)).writeValueAsBytes(any());
+    }
+
+    /**
+     * Compares the requests per second of the full list of 100,000 products served from the cache
+     * to building the same response for every request: listing the snapshot, serializing it and compressing it.
+     * Both are measured on a single thread, without the network.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkCachedListRequests() throws IOException {
+        Random random = new Random(42);
+        List<CatalogEntry> entries = new ArrayList<>();
+        for (long id = 1; id <= 100_000; id++) {
+            entries.add(new CatalogEntry(id, String.valueOf(1_000_000 + id), "Product " + random.nextInt(1_000_000),
+                    "http://example.com/images/" + id + ".jpg", random.nextInt(50) / 10f, random.nextInt(100_000) / 100f,
+                    Arrays.asList("tag" + random.nextInt(100), "tag" + random.nextInt(100))));
+        }
+        catalogSnapshotHolder.rebuild(entries);
+        ObjectMapper mapper = new ObjectMapper();
+        ListResponseCache cache = new ListResponseCache(catalogSnapshotHolder, mapper);
+        CatalogSnapshot snapshot = catalogSnapshotHolder.getSnapshot();
+
+        long checksum = 0;
+        int freshRequests = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < freshRequests; i++) {
+            byte[] json = mapper.writeValueAsBytes(snapshot.list("price"));
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            }
+            checksum += compressed.size();
+        }
+        double freshPerSecond = freshRequests / ((System.nanoTime() - start) / 1e9);
+
+        long firstNs = System.nanoTime();
+        cache.get("price");
+        firstNs = System.nanoTime() - firstNs;
+        // Copying the bytes stands for writing them to the response
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        int cachedRequests = 5_000;
+        start = System.nanoTime();
+        for (int i = 0; i < cachedRequests; i++) {
+            response.reset();
+            response.write(cache.get("price").getGzippedJson());
+            checksum += response.size();
+        }
+        double cachedPerSecond = cachedRequests / ((System.nanoTime() - start) / 1e9);
+
+        ListResponseCache.SerializedList list = cache.get("price");
+        System.out.printf("List of %d products: %d KB, %d KB gzipped, first build %d ms (checksum %d)%n",
+                snapshot.size(), list.getJson().length / 1024, list.getGzippedJson().length / 1024,
+                firstNs / 1_000_000, checksum);
+        System.out.printf("Fresh build: %.1f requests/sec, cached: %.0f requests/sec%n", freshPerSecond, cachedPerSecond);
+        assertTrue(cachedPerSecond > freshPerSecond * 10);
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return gzip.readAllBytes();
+        }
+    }
+}
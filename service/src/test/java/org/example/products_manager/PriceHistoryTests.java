@@ -0,0 +1,311 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.BulkUpdateRequest;
+import org.example.products_manager.model.PriceHistoryEntry;
+import org.example.products_manager.model.PriceHistoryResponse;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.repository.PriceHistoryRepository;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.ShardedProductRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.CatalogSnapshotFile;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ProductRangeIndex;
+import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.ReadCoalescer;
+import org.example.products_manager.service.ShardedProductsService;
+import org.example.products_manager.service.SimilarProductsIndex;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the service against an embedded database and checks the price history recorded for its changes,
+ * both through the asynchronous writer and in durable mode.
+ * The flush interval of the writer is long, so that entries are only written when a test flushes them.
+ * Test methods are not transactional, so that the service commits and the entries are queued.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "products.price-history.flush-interval-ms=600000",
+        "products.catalog-file.path="
+})
+@Import({ProductsManagerService.class, CatalogSynchronizer.class, TagStatsAggregator.class, ProductRangeIndex.class,
+        CatalogSnapshotHolder.class, CatalogSnapshotFile.class, BarcodeLocks.class, NodeIdentity.class,
+        ShardedProductsService.class, ShardedProductRepository.class, SimilarProductsIndex.class,
+        ReadCoalescer.class, PriceHistoryWriter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class PriceHistoryTests {
+
+    @Autowired
+    private ProductsManagerService productsManagerService;
+
+    @Autowired
+    private PriceHistoryWriter priceHistoryWriter;
+
+    @Autowired
+    private PriceHistoryRepository priceHistoryRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanup() {
+        while (priceHistoryWriter.flushBatch() > 0) {
+            // Write the entries left by a failed test, so that they are deleted
+        }
+        productTagRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        tagRepository.deleteAll();
+        productChangeRepository.deleteAllInBatch();
+        priceHistoryRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testPriceChangesAreWrittenAfterCommit() {
+        productsManagerService.createProduct(new ProductRequest("111", "Lipstick", null, 4.5f, 12.5f, Arrays.asList("beauty")));
+        productsManagerService.updateProduct("111", new ProductRequest(null, "Red lipstick", null, null, null, null));
+        productsManagerService.updateProduct("111", new ProductRequest(null, null, null, null, 10f, null));
+
+        // The change of name is not recorded, and nothing is written until the writer flushes
+        assertEquals(2, priceHistoryWriter.getPendingEntries());
+        assertTrue(history("111").isEmpty());
+
+        assertEquals(2, priceHistoryWriter.flushBatch());
+        List<PriceHistoryResponse> history = history("111");
+        assertEquals(2, history.size());
+        assertEquals(12.5f, history.get(0).getPrice());
+        assertEquals(10f, history.get(1).getPrice());
+        assertEquals(4.5f, history.get(1).getRating());
+    }
+
+    @Test
+    public void testRolledBackChangeIsNotRecorded() {
+        productsManagerService.createProduct(new ProductRequest("111", "Lipstick", null, 4.5f, 12.5f, Arrays.asList("beauty")));
+        priceHistoryWriter.flushBatch();
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            productsManagerService.updateProduct("111", new ProductRequest(null, null, null, null, 1f, null));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertEquals(0, priceHistoryWriter.getPendingEntries());
+        assertEquals(1, history("111").size());
+    }
+
+    @Test
+    public void testBulkUpdateIsWrittenWithTheUpdate() {
+        productsManagerService.createProduct(new ProductRequest("111", "Lipstick", null, 4.5f, 12.5f, Arrays.asList("beauty")));
+        productsManagerService.createProduct(new ProductRequest("222", "Mascara", null, 3f, 30f, Arrays.asList("beauty")));
+        priceHistoryWriter.flushBatch();
+
+        BulkUpdateRequest discount = new BulkUpdateRequest("beauty", null, null, null, null, null, "price", "multiply", 50f);
+        assertEquals(2, productsManagerService.bulkUpdate(discount));
+
+        assertEquals(0, priceHistoryWriter.getPendingEntries());
+        List<PriceHistoryResponse> history = history("111");
+        assertEquals(2, history.size());
+        assertEquals(6.25f, history.get(1).getPrice());
+        assertEquals(4.5f, history.get(1).getRating());
+        assertEquals(15f, history("222").get(1).getPrice());
+    }
+
+    @Test
+    public void testHistoryInTimeRange() throws InterruptedException {
+        productsManagerService.createProduct(new ProductRequest("111", "Lipstick", null, 4.5f, 12.5f, Arrays.asList("beauty")));
+        priceHistoryWriter.flushBatch();
+        Thread.sleep(5);
+        Instant between = Instant.now();
+        Thread.sleep(5);
+        productsManagerService.updateProduct("111", new ProductRequest(null, null, null, 5f, null, null));
+        priceHistoryWriter.flushBatch();
+
+        List<PriceHistoryResponse> before = productsManagerService.getPriceHistory("111", Instant.EPOCH, between);
+        List<PriceHistoryResponse> after = productsManagerService.getPriceHistory("111", between, Instant.now());
+
+        assertEquals(1, before.size());
+        assertEquals(4.5f, before.get(0).getRating());
+        assertEquals(1, after.size());
+        assertEquals(5f, after.get(0).getRating());
+        assertEquals(12.5f, after.get(0).getPrice());
+    }
+
+    @Test
+    public void testMovedHistoryIncludesQueuedEntries() {
+        priceHistoryWriter.record(42L, 10f, 4f);
+        priceHistoryWriter.flushBatch();
+        priceHistoryWriter.record(42L, 12f, 4f);
+
+        priceHistoryWriter.moveHistory(42L, 43L);
+        priceHistoryWriter.record(43L, 15f, 4f);
+        priceHistoryWriter.flushBatch();
+
+        List<PriceHistoryEntry> entries = priceHistoryRepository.findAll();
+        assertEquals(3, entries.size());
+        assertTrue(entries.stream().allMatch(entry -> entry.getProductId() == 43L));
+    }
+
+    @Test
+    public void testDurableEntriesAreWrittenWithTheTransaction() {
+        PriceHistoryWriter durableWriter = new PriceHistoryWriter(jdbcTemplate, true, true, 10, 10, 1_000, 10);
+        durableWriter.start();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.execute(status -> {
+            durableWriter.record(42L, 1f, 2f);
+            status.setRollbackOnly();
+            return null;
+        });
+        assertEquals(0, priceHistoryRepository.count());
+
+        Instant recordedAt = Instant.now();
+        transaction.execute(status -> {
+            durableWriter.record(42L, 3f, 2f);
+            return null;
+        });
+        List<PriceHistoryEntry> entries = priceHistoryRepository.findAll();
+        assertEquals(1, entries.size());
+        assertEquals(3f, entries.get(0).getPrice());
+        // The time is read back as it was written, whatever the time zone
+        assertTrue(Duration.between(recordedAt, entries.get(0).getChangedAt()).abs().toMillis() < 1_000);
+        assertEquals(0, durableWriter.getPendingEntries());
+    }
+
+    @Test
+    public void testFullQueueDropsEntries() {
+        PriceHistoryWriter boundedWriter = new PriceHistoryWriter(jdbcTemplate, true, false, 2, 10, 600_000, 10);
+        boundedWriter.start();
+        try {
+            boundedWriter.record(42L, 1f, null);
+            boundedWriter.record(42L, 2f, null);
+            boundedWriter.record(42L, 3f, null);
+
+            assertEquals(2, boundedWriter.getPendingEntries());
+            assertEquals(1, boundedWriter.getDroppedEntries());
+            assertEquals(2, boundedWriter.flushBatch());
+            assertEquals(2, boundedWriter.getWrittenEntries());
+            assertEquals(2, priceHistoryRepository.count());
+        } finally {
+            boundedWriter.shutdown();
+        }
+    }
+
+    /**
+     * Compares the latency of product updates changing the price without a price history, with the asynchronous
+     * writer and with durable writes. The three modes run in alternating rounds over the same products.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkUpdateLatency() {
+        int products = 1_000;
+        int rounds = 5;
+        int updatesPerRound = 2_000;
+        jdbcTemplate.batchUpdate("INSERT INTO products (barcode, name, image, rating, price) VALUES (?, ?, ?, ?, ?)",
+                IntStream.range(0, products).boxed().toList(), products,
+                (statement, i) -> {
+                    statement.setString(1, String.valueOf(10_000_000 + i));
+                    statement.setString(2, "Product " + i);
+                    statement.setString(3, null);
+                    statement.setFloat(4, 3f);
+                    statement.setFloat(5, 1f);
+                });
+
+        Map<String, PriceHistoryWriter> writers = new LinkedHashMap<>();
+        writers.put("no history", new PriceHistoryWriter(jdbcTemplate, false, false, 100_000, 1_000, 500, 50));
+        writers.put("asynchronous", new PriceHistoryWriter(jdbcTemplate, true, false, 100_000, 1_000, 500, 50));
+        writers.put("durable", new PriceHistoryWriter(jdbcTemplate, true, true, 100_000, 1_000, 500, 50));
+        writers.values().forEach(PriceHistoryWriter::start);
+        Map<String, long[]> latencies = new LinkedHashMap<>();
+        writers.keySet().forEach(mode -> latencies.put(mode, new long[rounds * updatesPerRound]));
+
+        Object service = AopTestUtils.getTargetObject(productsManagerService);
+        Object originalWriter = ReflectionTestUtils.getField(service, "priceHistoryWriter");
+        int price = 1;
+        try {
+            // Warm up
+            ReflectionTestUtils.setField(service, "priceHistoryWriter", writers.get("no history"));
+            for (int i = 0; i < updatesPerRound; i++) {
+                productsManagerService.updateProduct(String.valueOf(10_000_000 + i % products),
+                        new ProductRequest(null, null, null, null, (float) ++price, null));
+            }
+            for (int round = 0; round < rounds; round++) {
+                for (Map.Entry<String, PriceHistoryWriter> writer : writers.entrySet()) {
+                    ReflectionTestUtils.setField(service, "priceHistoryWriter", writer.getValue());
+                    long[] modeLatencies = latencies.get(writer.getKey());
+                    for (int i = 0; i < updatesPerRound; i++) {
+                        ProductRequest request = new ProductRequest(null, null, null, null, (float) ++price, null);
+                        long start = System.nanoTime();
+                        productsManagerService.updateProduct(String.valueOf(10_000_000 + i % products), request);
+                        modeLatencies[round * updatesPerRound + i] = System.nanoTime() - start;
+                    }
+                }
+            }
+        } finally {
+            ReflectionTestUtils.setField(service, "priceHistoryWriter", originalWriter);
+            writers.values().forEach(PriceHistoryWriter::shutdown);
+        }
+
+        Map<String, Long> medians = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> modeLatencies : latencies.entrySet()) {
+            long[] sorted = modeLatencies.getValue().clone();
+            Arrays.sort(sorted);
+            double seconds = Arrays.stream(sorted).sum() / 1e9;
+            medians.put(modeLatencies.getKey(), sorted[sorted.length / 2]);
+            System.out.printf("%s: p50 %d us, p99 %d us, %.0f updates/sec%n", modeLatencies.getKey(),
+                    sorted[sorted.length / 2] / 1_000, sorted[sorted.length * 99 / 100] / 1_000, sorted.length / seconds);
+        }
+        long written = writers.get("asynchronous").getWrittenEntries();
+        System.out.printf("Asynchronous writer: %d entries written, %d dropped%n", written, writers.get("asynchronous").getDroppedEntries());
+
+        assertEquals(rounds * updatesPerRound, written);
+        assertEquals(2L * rounds * updatesPerRound, priceHistoryRepository.count());
+        assertTrue(medians.get("asynchronous") < medians.get("no history") * 1.2);
+    }
+
+    private List<PriceHistoryResponse> history(String barcode) {
+        return productsManagerService.getPriceHistory(barcode, Instant.EPOCH, Instant.now());
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.products_manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.exception.ProductNotFoundException;
+import org.example.products_manager.model.ProductFields;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.ShardedProductRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.CatalogSnapshot;
+import org.example.products_manager.service.CatalogSnapshotFile;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ProductRangeIndex;
+import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.ReadCoalescer;
+import org.example.products_manager.service.ShardedProductsService;
+import org.example.products_manager.service.SimilarProductsIndex;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reads sparse fieldsets of products from an embedded database.
+ * The catalog snapshot is rebuilt before each test, and the products created by a test are read back from it.
+ * The benchmark compares a narrow projection with all the fields, both from the database and from a catalog snapshot.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "products.catalog-file.path="
+})
+@Import({ProductsManagerService.class, CatalogSynchronizer.class, TagStatsAggregator.class, ProductRangeIndex.class,
+        CatalogSnapshotHolder.class, CatalogSnapshotFile.class, BarcodeLocks.class, NodeIdentity.class,
+        ShardedProductsService.class, ShardedProductRepository.class, SimilarProductsIndex.class,
+        ReadCoalescer.class, PriceHistoryWriter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProductFieldsTests {
+
+    @Autowired
+    private ProductsManagerService productsManagerService;
+
+    @Autowired
+    private CatalogSynchronizer catalogSynchronizer;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void rebuildCatalog() {
+        // The context is shared with other test classes, so drop the catalog built from their products
+        catalogSynchronizer.rebuild();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        productTagRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        tagRepository.deleteAll();
+        productChangeRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testGetAllProductsWithRequestedFields() {
+        productsManagerService.createProduct(new ProductRequest("1001", "Milk", null, 4.5f, 5.5f, Arrays.asList("dairy", "fresh")));
+        productsManagerService.createProduct(new ProductRequest("1002", "Bread", "http://example.com/bread.jpg", null, 3f, Arrays.asList("fresh")));
+        productsManagerService.createProduct(new ProductRequest("1003", "Water", null, null, null, new ArrayList<>()));
+
+        List<Map<String, Object>> products = productsManagerService.getAllProducts("name", ProductFields.parse("price,barcode"));
+
+        assertEquals(3, products.size());
+        assertEquals(Arrays.asList("barcode", "price"), new ArrayList<>(products.get(0).keySet()));
+        assertEquals("1002", products.get(0).get("barcode"));
+        assertEquals(3f, products.get(0).get("price"));
+        assertNull(products.get(2).get("price"));
+    }
+
+    @Test
+    public void testGetAllProductsWithTags() {
+        productsManagerService.createProduct(new ProductRequest("2001", "Milk", null, 4.5f, 5.5f, Arrays.asList("dairy", "fresh")));
+        productsManagerService.createProduct(new ProductRequest("2002", "Water", null, null, null, new ArrayList<>()));
+
+        List<Map<String, Object>> products = productsManagerService.getAllProducts(null, ProductFields.parse("tags"));
+
+        assertEquals(Arrays.asList("tags"), new ArrayList<>(products.get(0).keySet()));
+        assertEquals(Arrays.asList("dairy", "fresh"), products.get(0).get("tags"));
+        assertEquals(new ArrayList<>(), products.get(1).get("tags"));
+    }
+
+    @Test
+    public void testGetProductWithRequestedFields() {
+        productsManagerService.createProduct(new ProductRequest("3001", "Milk", null, 4.5f, 5.5f, Arrays.asList("dairy")));
+
+        Map<String, Object> product = productsManagerService.getProduct("3001", ProductFields.parse("name,tags"));
+
+        assertEquals(Arrays.asList("name", "tags"), new ArrayList<>(product.keySet()));
+        assertEquals("Milk", product.get("name"));
+        assertEquals(Arrays.asList("dairy"), product.get("tags"));
+        assertThrows(ProductNotFoundException.class, () -> productsManagerService.getProduct("3999", ProductFields.parse("name")));
+    }
+
+    @Test
+    public void testGetAllProductsInvalidSortBy() {
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerService.getAllProducts("tags", ProductFields.parse("name"));
+        });
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkNarrowProjection() throws IOException {
+        int products = 200_000;
+        int tags = 1000;
+        jdbcTemplate.batchUpdate("INSERT INTO tags (id, tag_name) VALUES (?, ?)",
+                IntStream.range(1, tags + 1).boxed().toList(), 10_000,
+                (statement, id) -> {
+                    statement.setLong(1, id);
+                    statement.setString(2, "tag" + id);
+                });
+        jdbcTemplate.batchUpdate("INSERT INTO products (id, barcode, name, image, rating, price) VALUES (?, ?, ?, ?, ?, ?)",
+                IntStream.range(1, products + 1).boxed().toList(), 10_000,
+                (statement, id) -> {
+                    statement.setLong(1, id);
+                    statement.setString(2, String.valueOf(10_000_000 + id));
+                    statement.setString(3, "Product " + id);
+                    statement.setString(4, "http://example.com/" + id + ".jpg");
+                    statement.setFloat(5, (id % 50) / 10f);
+                    statement.setFloat(6, (id % 10_000) / 100f);
+                });
+        jdbcTemplate.batchUpdate("INSERT INTO product_tags (product_id, tag_id) VALUES (?, ?)",
+                IntStream.range(0, products * 2).boxed().toList(), 10_000,
+                (statement, i) -> {
+                    statement.setLong(1, i / 2 + 1);
+                    statement.setLong(2, i % 2 == 0 ? (i / 2) % tags + 1 : (i / 2) % 7 + 1);
+                });
+        ObjectMapper objectMapper = new ObjectMapper();
+        ProductFields narrow = ProductFields.parse("barcode,price");
+
+        report("database", "all fields", objectMapper, () -> productsManagerService.getAllProducts("price", ProductFields.all()));
+        report("database", "barcode,price", objectMapper, () -> productsManagerService.getAllProducts("price", narrow));
+
+        CatalogSnapshot snapshot = CatalogSnapshot.of(catalogSynchronizer.loadEntries(), 1);
+        report("snapshot", "all fields", objectMapper, () -> snapshot.list("price", ProductFields.all()));
+        report("snapshot", "barcode,price", objectMapper, () -> snapshot.list("price", narrow));
+    }
+
+    private static void report(String source, String fields, ObjectMapper objectMapper,
+                               Supplier<List<Map<String, Object>>> read) throws IOException {
+        // The first round warms up
+        long bestMs = Long.MAX_VALUE;
+        int bytes = 0;
+        for (int round = 0; round < 4; round++) {
+            long start = System.nanoTime();
+            bytes = objectMapper.writeValueAsBytes(read.get()).length;
+            bestMs = round == 0 ? bestMs : Math.min(bestMs, (System.nanoTime() - start) / 1_000_000);
+        }
+        System.out.printf("List from the %s with %s: %d ms, %d KB%n", source, fields, bestMs, bytes / 1024);
+        assertTrue(bytes > 0);
+    }
+}
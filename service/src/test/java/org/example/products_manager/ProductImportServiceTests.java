@@ -0,0 +1,328 @@
+package org.example.products_manager;
+
+import org.example.products_manager.exception.ImportFailedException;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.ImportReport;
+import org.example.products_manager.model.Product;
+import org.example.products_manager.model.Tag;
+import org.example.products_manager.model.TagStatsResponse;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.ShardedProductRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.CatalogSnapshotFile;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ProductImportService;
+import org.example.products_manager.service.ProductRangeIndex;
+import org.example.products_manager.service.ShardedProductsService;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Imports files into an embedded database, with a chunk size of 3 records so that every file spans several chunks.
+ * Test methods are not transactional, so that every chunk is committed as it would be in production.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "products.import.chunk-size=3",
+        "products.catalog-file.path="
+})
+@Import({ProductImportService.class, CatalogSynchronizer.class, TagStatsAggregator.class, ProductRangeIndex.class,
+        CatalogSnapshotHolder.class, CatalogSnapshotFile.class, BarcodeLocks.class, NodeIdentity.class,
+        ShardedProductsService.class, ShardedProductRepository.class, PriceHistoryWriter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProductImportServiceTests {
+
+    @TempDir
+    static Path importDirectory;
+
+    @DynamicPropertySource
+    static void importProperties(DynamicPropertyRegistry registry) {
+        registry.add("products.import.directory", () -> importDirectory.toString());
+    }
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @Autowired
+    private TagStatsAggregator tagStatsAggregator;
+
+    @Autowired
+    private BarcodeLocks barcodeLocks;
+
+    @Autowired
+    private CatalogSynchronizer catalogSynchronizer;
+
+    @Autowired
+    private NodeIdentity nodeIdentity;
+
+    @Autowired
+    private ShardedProductsService shardedProductsService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanup() {
+        productTagRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        tagRepository.deleteAll();
+        productChangeRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testImportNdjson() throws IOException {
+        writeFile("products.ndjson",
+                "{\"barcode\":\"1001\",\"name\":\"Milk\",\"price\":5.5,\"rating\":4,\"tags\":[\"dairy\",\"fresh\"]}",
+                "{\"barcode\":\"1002\",\"name\":\"Bread\",\"price\":8,\"tags\":[\"fresh\"]}",
+                "{\"barcode\":\"10a3\",\"name\":\"Invalid barcode\"}",
+                "",
+                "{\"barcode\":\"1004\",\"name\":",
+                "{\"barcode\":\"1001\",\"name\":\"Duplicate milk\"}",
+                "{\"barcode\":\"1005\",\"name\":\"Water\",\"image\":\"http://example.com/water.jpg\"}");
+
+        ImportReport report = productImportService.importFile("products.ndjson", false);
+
+        assertEquals(6, report.getReadRecords());
+        assertEquals(3, report.getImportedProducts());
+        assertEquals(3, report.getRejectedRecords());
+        assertEquals(2, report.getChunks());
+        assertEquals(3, productRepository.count());
+        assertEquals(2, tagRepository.count());
+        assertEquals(3, productTagRepository.count());
+        assertEquals(3, productChangeRepository.count());
+        assertEquals("Milk", productRepository.findByBarcode("1001").get().getName());
+        assertEquals(List.of("dairy", "fresh"), tagNamesOf("1001"));
+        assertFalse(Files.exists(importDirectory.resolve("products.ndjson.checkpoint")));
+
+        List<String> rejected = Files.readAllLines(importDirectory.resolve(report.getRejectedRecordsFile()));
+        assertEquals(3, rejected.size());
+        assertTrue(rejected.get(0).startsWith("{\"line\":3,\"reason\":\"Barcode can only contain digits\""));
+        assertTrue(rejected.get(1).startsWith("{\"line\":5,\"reason\":\"Malformed JSON"));
+        assertTrue(rejected.get(2).startsWith("{\"line\":6,\"reason\":\"Duplicate barcode 1001"));
+
+        // The in-memory catalog is rebuilt after the import
+        List<TagStatsResponse> stats = tagStatsAggregator.getStatsByTag();
+        assertEquals(2, stats.size());
+        assertEquals("fresh", stats.get(1).getTag());
+        assertEquals(2, stats.get(1).getProductCount());
+    }
+
+    @Test
+    public void testImportCsv() throws IOException {
+        productRepository.save(new Product(null, "2002", "Existing", null, null, null));
+        Tag existingTag = tagRepository.save(new Tag(null, "snacks"));
+        writeFile("products.csv",
+                "name,barcode,price,rating,tags,image",
+                "\"Chips, salted\",2001,3.5,4.5,snacks|salty,",
+                "Other,2002,1,1,,",
+                "Crackers,2003,not-a-price,,snacks,",
+                "\"Cookies \"\"deluxe\"\"\",2004,,,,http://example.com/cookies.jpg");
+
+        ImportReport report = productImportService.importFile("products.csv", false);
+
+        assertEquals(4, report.getReadRecords());
+        assertEquals(2, report.getImportedProducts());
+        assertEquals(2, report.getRejectedRecords());
+        assertEquals("Chips, salted", productRepository.findByBarcode("2001").get().getName());
+        assertEquals(3.5f, productRepository.findByBarcode("2001").get().getPrice());
+        assertEquals("Cookies \"deluxe\"", productRepository.findByBarcode("2004").get().getName());
+        assertNull(productRepository.findByBarcode("2004").get().getPrice());
+        assertEquals(List.of("snacks", "salty"), tagNamesOf("2001"));
+        assertEquals(existingTag.getId(), tagRepository.findByTagName("snacks").getId());
+        assertEquals(2, tagRepository.count());
+
+        List<String> rejected = Files.readAllLines(importDirectory.resolve(report.getRejectedRecordsFile()));
+        assertTrue(rejected.get(0).contains("Product with barcode 2002 already exists"));
+        assertTrue(rejected.get(1).contains("Price must be a number"));
+    }
+
+    @Test
+    public void testResumeAfterLastCommittedChunk() throws IOException {
+        writeFile("resume.ndjson",
+                "{\"barcode\":\"3001\",\"name\":\"First\"}",
+                "{\"barcode\":\"3002\",\"name\":\"Second\"}",
+                "{\"barcode\":\"3003\",\"name\":\"Third\"}",
+                "{\"barcode\":\"3004\",\"name\":\"Fourth\"}",
+                "{\"barcode\":\"3005\",\"name\":\"Fifth\"}");
+        writeFile("resume.ndjson.checkpoint", "3");
+
+        ImportReport report = productImportService.importFile("resume.ndjson", true);
+
+        assertEquals(3, report.getSkippedRecords());
+        assertEquals(2, report.getImportedProducts());
+        assertFalse(productRepository.findByBarcode("3001").isPresent());
+        assertTrue(productRepository.findByBarcode("3005").isPresent());
+        assertFalse(Files.exists(importDirectory.resolve("resume.ndjson.checkpoint")));
+    }
+
+    @Test
+    public void testRecordRejectedByTheDatabaseIsReported() throws IOException {
+        writeFile("too-long.ndjson",
+                "{\"barcode\":\"5001\",\"name\":\"Milk\"}",
+                "{\"barcode\":\"5002\",\"name\":\"" + "x".repeat(300) + "\"}",
+                "{\"barcode\":\"5003\",\"name\":\"Bread\"}",
+                "{\"barcode\":\"5002\",\"name\":\"Short name\"}");
+
+        ImportReport report = productImportService.importFile("too-long.ndjson", false);
+
+        assertEquals(3, report.getImportedProducts());
+        assertEquals(1, report.getRejectedRecords());
+        assertTrue(productRepository.findByBarcode("5001").isPresent());
+        assertTrue(productRepository.findByBarcode("5003").isPresent());
+        // The barcode of the rejected record is still free for a later record of the file
+        assertEquals("Short name", productRepository.findByBarcode("5002").get().getName());
+        List<String> rejected = Files.readAllLines(importDirectory.resolve(report.getRejectedRecordsFile()));
+        assertEquals(1, rejected.size());
+        assertTrue(rejected.get(0).startsWith("{\"line\":2,\"reason\":\"Rejected by the database"));
+        assertFalse(Files.exists(importDirectory.resolve("too-long.ndjson.checkpoint")));
+    }
+
+    @Test
+    public void testFailedImportRebuildsCatalogWithCommittedChunks() throws IOException {
+        catalogSynchronizer.rebuild();
+        writeFile("failing.ndjson",
+                "{\"barcode\":\"6001\",\"name\":\"First\",\"tags\":[\"committed\"]}",
+                "{\"barcode\":\"6002\",\"name\":\"Second\",\"tags\":[\"committed\"]}",
+                "{\"barcode\":\"6003\",\"name\":\"Third\",\"tags\":[\"committed\"]}",
+                "{\"barcode\":\"6004\",\"name\":\"Fourth\"}");
+        // A directory in place of the checkpoint makes the import fail once the first chunk is committed
+        Files.createDirectories(importDirectory.resolve("failing.ndjson.checkpoint"));
+        writeFile("failing.ndjson.checkpoint/keep", "");
+        try {
+            assertThrows(ImportFailedException.class, () -> productImportService.importFile("failing.ndjson", false));
+        } finally {
+            Files.delete(importDirectory.resolve("failing.ndjson.checkpoint/keep"));
+            Files.delete(importDirectory.resolve("failing.ndjson.checkpoint"));
+        }
+
+        assertEquals(3, productRepository.count());
+        List<TagStatsResponse> stats = tagStatsAggregator.getStatsByTag();
+        assertEquals(1, stats.size());
+        assertEquals("committed", stats.get(0).getTag());
+        assertEquals(3, stats.get(0).getProductCount());
+    }
+
+    @Test
+    public void testImportWithoutResumeIgnoresCheckpoint() throws IOException {
+        writeFile("restart.ndjson",
+                "{\"barcode\":\"4001\",\"name\":\"First\"}",
+                "{\"barcode\":\"4002\",\"name\":\"Second\"}");
+        writeFile("restart.ndjson.checkpoint", "1");
+
+        ImportReport report = productImportService.importFile("restart.ndjson", false);
+
+        assertEquals(0, report.getSkippedRecords());
+        assertEquals(2, report.getImportedProducts());
+    }
+
+    @Test
+    public void testImportFileOutsideImportDirectory() {
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productImportService.importFile("../products.csv", false);
+        });
+    }
+
+    @Test
+    public void testImportUnsupportedFormat() throws IOException {
+        writeFile("products.xml", "<products/>");
+
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productImportService.importFile("products.xml", false);
+        });
+    }
+
+    @Test
+    public void testImportCsvWithoutBarcodeColumn() throws IOException {
+        writeFile("no-barcode.csv", "name,price", "Milk,5");
+
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productImportService.importFile("no-barcode.csv", false);
+        });
+    }
+
+    @Test
+    public void testImportIsRejectedWhenSharded() throws IOException {
+        writeFile("sharded.ndjson", "{\"barcode\":\"1001\",\"name\":\"Milk\",\"tags\":[]}");
+        ShardedProductsService sharded = mock(ShardedProductsService.class);
+        when(sharded.isEnabled()).thenReturn(true);
+        ProductImportService importService = new ProductImportService(productRepository, tagRepository, productChangeRepository, barcodeLocks,
+                catalogSynchronizer, nodeIdentity, sharded, jdbcTemplate, transactionManager, importDirectory.toString(), 3, 0);
+
+        assertThrows(InvalidQueryParameterException.class, () -> importService.importFile("sharded.ndjson", false));
+        assertEquals(0, productRepository.count());
+    }
+
+    @Test
+    @org.junit.jupiter.api.Tag("benchmark")
+    public void benchmarkImport() throws IOException {
+        int products = 500_000;
+        Path file = importDirectory.resolve("benchmark.ndjson");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < products; i++) {
+                writer.write("{\"barcode\":\"" + (10_000_000 + i) + "\",\"name\":\"Product " + i
+                        + "\",\"image\":\"http://example.com/" + i + ".jpg\",\"rating\":" + (i % 50) / 10f
+                        + ",\"price\":" + (i % 10_000) / 100f
+                        + ",\"tags\":[\"tag" + (i % 1000) + "\",\"tag" + (i % 7) + "\"]}");
+                writer.newLine();
+            }
+        }
+        ProductImportService importService = new ProductImportService(productRepository, tagRepository, productChangeRepository, barcodeLocks,
+                catalogSynchronizer, nodeIdentity, shardedProductsService, jdbcTemplate, transactionManager, importDirectory.toString(), 5000, 0);
+
+        ImportReport report = importService.importFile("benchmark.ndjson", false);
+
+        System.out.printf("Imported %d products in %d chunks in %d ms: %d products/sec%n",
+                report.getImportedProducts(), report.getChunks(), report.getDurationMs(), report.getProductsPerSecond());
+        assertEquals(products, report.getImportedProducts());
+    }
+
+    private List<String> tagNamesOf(String barcode) {
+        Long productId = productRepository.findByBarcode(barcode).get().getId();
+        return productRepository.findTagsByProductId(productId).stream().map(Tag::getTagName).toList();
+    }
+
+    private static void writeFile(String name, String... lines) throws IOException {
+        Files.write(importDirectory.resolve(name), List.of(lines));
+    }
+}
@@ -0,0 +1,122 @@
+package org.example.products_manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Lists the products over HTTP right after each kind of write, against an embedded H2 database, with the default
+ * configuration. The list served from the cached bytes must already include the write, under a new ETag, so a client
+ * that sends the ETag of the list it had never gets a 304 for stale content.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.datasource.url=jdbc:h2:mem:product-list-etag;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "products.catalog-file.path=",
+        "products.price-history.enabled=false"
+})
+@AutoConfigureMockMvc
+public class ProductListETagTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CatalogSynchronizer catalogSynchronizer;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @BeforeEach
+    public void setup() {
+        catalogSynchronizer.rebuild();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        productTagRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        tagRepository.deleteAll();
+        productChangeRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testListAfterEachWriteHasANewETag() throws Exception {
+        String eTag = list(null).getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(post("/api/products")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                new ProductRequest("301", "Milk", null, 4f, 5.5f, new ArrayList<>()))))
+                .andExpect(status().isOk());
+        MvcResult afterCreate = list(eTag);
+        assertTrue(afterCreate.getResponse().getContentAsString().contains("\"barcode\":\"301\""));
+        eTag = assertNewETag(eTag, afterCreate);
+
+        mockMvc.perform(patch("/api/products/301")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ProductRequest("301", "Milk", null, 4f, 7.25f, new ArrayList<>()))))
+                .andExpect(status().isOk());
+        MvcResult afterUpdate = list(eTag);
+        assertTrue(afterUpdate.getResponse().getContentAsString().contains("\"price\":7.25"));
+        eTag = assertNewETag(eTag, afterUpdate);
+
+        mockMvc.perform(delete("/api/products/301")).andExpect(status().isOk());
+        MvcResult afterDelete = list(eTag);
+        assertFalse(afterDelete.getResponse().getContentAsString().contains("\"barcode\":\"301\""));
+        assertNewETag(eTag, afterDelete);
+    }
+
+    private MvcResult list(String ifNoneMatch) throws Exception {
+        return mockMvc.perform(ifNoneMatch == null ? get("/api/products") : get("/api/products").header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn();
+    }
+
+    private static String assertNewETag(String previous, MvcResult result) {
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(previous, eTag);
+        return eTag;
+    }
+}
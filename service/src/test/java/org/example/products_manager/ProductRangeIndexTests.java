@@ -0,0 +1,212 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.service.ProductRangeIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the range lookups of the ProductRangeIndex, before and after incremental changes.
+ * Writes are not batched unless a test enables it, so that changes are merged as they are received.
+ * The benchmark measures the lookup latency on a catalog of one million products, and the cost of writes.
+ */
+public class ProductRangeIndexTests {
+
+    private ProductRangeIndex productRangeIndex;
+
+    @BeforeEach
+    public void setup() {
+        productRangeIndex = new ProductRangeIndex(false);
+        productRangeIndex.rebuild(Arrays.asList(
+                entry(1L, 4.5f, 12f),
+                entry(2L, 3.5f, 25f),
+                entry(3L, null, 15f),
+                entry(4L, 4.8f, null),
+                entry(5L, 4.1f, 10f)
+        ));
+    }
+
+    @Test
+    public void testPriceRangeSortedByPrice() {
+        assertArrayEquals(new long[]{5L, 1L, 3L}, productRangeIndex.findIds(10f, 20f, null, false, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testPriceRangeWithMinRating() {
+        assertArrayEquals(new long[]{5L, 1L}, productRangeIndex.findIds(10f, 20f, 4f, false, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testTopK() {
+        // Product 4 has no price, so it comes first when sorted by price
+        assertArrayEquals(new long[]{4L}, productRangeIndex.findIds(null, null, 4f, false, 1));
+        assertArrayEquals(new long[]{5L}, productRangeIndex.findIds(0f, null, 4f, false, 1));
+    }
+
+    @Test
+    public void testMinRatingSortedByRating() {
+        assertArrayEquals(new long[]{5L, 1L, 4L}, productRangeIndex.findIds(null, null, 4f, true, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testUnboundedIncludesMissingValuesFirst() {
+        assertArrayEquals(new long[]{4L, 5L, 1L, 3L, 2L}, productRangeIndex.findIds(null, null, null, false, Integer.MAX_VALUE));
+        assertArrayEquals(new long[]{3L, 2L, 5L, 1L, 4L}, productRangeIndex.findIds(null, null, null, true, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testBatchedChangesAreMergedOnRefresh() {
+        ProductRangeIndex batched = new ProductRangeIndex(true);
+        batched.rebuild(Arrays.asList(entry(1L, 4.5f, 12f), entry(2L, 3.5f, 25f), entry(3L, null, 15f)));
+
+        batched.onProductChanged(new ProductChangedEvent(2L, entry(2L, 3.5f, 12f)));
+        batched.onProductChanged(new ProductChangedEvent(3L, null));
+        batched.onProductChanged(new ProductChangedEvent(4L, entry(4L, 4f, null)));
+        assertArrayEquals(new long[]{1L, 3L, 2L}, batched.findIds(null, null, null, false, Integer.MAX_VALUE));
+
+        batched.refresh();
+        assertArrayEquals(new long[]{4L, 1L, 2L}, batched.findIds(null, null, null, false, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testUpdateAndDelete() {
+        productRangeIndex.onProductChanged(new ProductChangedEvent(2L, entry(2L, 4.9f, 11f)));
+        productRangeIndex.onProductChanged(new ProductChangedEvent(5L, null));
+
+        assertArrayEquals(new long[]{2L, 1L}, productRangeIndex.findIds(10f, 20f, 4f, false, Integer.MAX_VALUE));
+        assertEquals(4, productRangeIndex.size());
+    }
+
+    @Test
+    public void testIncrementalChangesMatchBruteForce() {
+        Random random = new Random(7);
+        List<CatalogEntry> catalog = new ArrayList<>();
+        for (long id = 1; id <= 2_000; id++) {
+            catalog.add(randomEntry(random, id));
+        }
+        productRangeIndex.rebuild(catalog);
+        for (int i = 0; i < 500; i++) {
+            int position = random.nextInt(catalog.size());
+            CatalogEntry updated = randomEntry(random, catalog.get(position).getId());
+            catalog.set(position, updated);
+            productRangeIndex.onProductChanged(new ProductChangedEvent(updated.getId(), updated));
+        }
+        ProductRangeIndex batched = new ProductRangeIndex(true);
+        batched.rebuild(catalog);
+        for (int i = 0; i < 500; i++) {
+            int position = random.nextInt(catalog.size());
+            long id = catalog.get(position).getId();
+            if (i % 10 == 0) {
+                catalog.remove(position);
+                batched.onProductChanged(new ProductChangedEvent(id, null));
+                productRangeIndex.onProductChanged(new ProductChangedEvent(id, null));
+            } else {
+                CatalogEntry updated = randomEntry(random, i % 10 == 1 ? 10_000 + i : id);
+                if (updated.getId() == id) {
+                    catalog.set(position, updated);
+                } else {
+                    catalog.add(updated);
+                }
+                batched.onProductChanged(new ProductChangedEvent(updated.getId(), updated));
+                productRangeIndex.onProductChanged(new ProductChangedEvent(updated.getId(), updated));
+            }
+        }
+        batched.refresh();
+        assertArrayEquals(productRangeIndex.findIds(null, null, null, false, Integer.MAX_VALUE),
+                batched.findIds(null, null, null, false, Integer.MAX_VALUE));
+        assertArrayEquals(productRangeIndex.findIds(null, null, null, true, Integer.MAX_VALUE),
+                batched.findIds(null, null, null, true, Integer.MAX_VALUE));
+        assertEquals(catalog.size(), batched.size());
+
+        long[] ids = productRangeIndex.findIds(20f, 60f, 2.5f, false, Integer.MAX_VALUE);
+
+        long expectedCount = catalog.stream()
+                .filter(e -> e.getPrice() != null && e.getPrice() >= 20f && e.getPrice() <= 60f)
+                .filter(e -> e.getRating() != null && e.getRating() >= 2.5f)
+                .count();
+        assertEquals(expectedCount, ids.length);
+        float previousPrice = Float.NEGATIVE_INFINITY;
+        for (long id : ids) {
+            float price = catalog.stream().filter(e -> e.getId() == id).findFirst().get().getPrice();
+            assertTrue(price >= previousPrice);
+            previousPrice = price;
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkRangeLookupOnMillionProducts() {
+        Random random = new Random(1);
+        List<CatalogEntry> catalog = new ArrayList<>(1_000_000);
+        for (long id = 1; id <= 1_000_000; id++) {
+            catalog.add(randomEntry(random, id));
+        }
+        long start = System.nanoTime();
+        productRangeIndex.rebuild(catalog);
+        System.out.printf("Built index of %d products in %d ms%n", catalog.size(), (System.nanoTime() - start) / 1_000_000);
+
+        int iterations = 10_000;
+        long checksum = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            float minPrice = random.nextInt(90);
+            checksum += productRangeIndex.findIds(minPrice, minPrice + 10, 4f, false, 50).length;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Price range + min rating, top 50: %.1f us per lookup (checksum %d)%n",
+                elapsed / 1_000.0 / iterations, checksum);
+
+        int writes = 1_000;
+        start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            CatalogEntry updated = randomEntry(random, 1 + random.nextInt(1_000_000));
+            productRangeIndex.onProductChanged(new ProductChangedEvent(updated.getId(), updated));
+        }
+        System.out.printf("Unbatched update: %.2f ms per write%n", (System.nanoTime() - start) / 1_000_000.0 / writes);
+
+        ProductRangeIndex batched = new ProductRangeIndex(true);
+        batched.rebuild(catalog);
+        start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            CatalogEntry updated = randomEntry(random, 1 + random.nextInt(1_000_000));
+            batched.onProductChanged(new ProductChangedEvent(updated.getId(), updated));
+        }
+        batched.refresh();
+        System.out.printf("Batched update: %.2f ms per write (%d writes per refresh)%n",
+                (System.nanoTime() - start) / 1_000_000.0 / writes, writes);
+
+        List<CatalogEntry> filtered = new ArrayList<>();
+        start = System.nanoTime();
+        for (CatalogEntry entry : catalog) {
+            if (entry.getPrice() != null && entry.getPrice() >= 10f && entry.getPrice() <= 20f
+                    && entry.getRating() != null && entry.getRating() >= 4f) {
+                filtered.add(entry);
+            }
+        }
+        filtered.sort((a, b) -> Float.compare(a.getPrice(), b.getPrice()));
+        List<CatalogEntry> top = filtered.subList(0, Math.min(50, filtered.size()));
+        System.out.printf("Filtering the full list instead: %.1f ms (%d results)%n",
+                (System.nanoTime() - start) / 1_000_000.0, top.size());
+    }
+
+    private static CatalogEntry entry(Long id, Float rating, Float price) {
+        return new CatalogEntry(id, String.valueOf(id), "Product " + id, null, rating, price, new ArrayList<>());
+    }
+
+    private static CatalogEntry randomEntry(Random random, long id) {
+        Float price = random.nextInt(20) == 0 ? null : random.nextInt(10_000) / 100f;
+        Float rating = random.nextInt(20) == 0 ? null : random.nextInt(51) / 10f;
+        return entry(id, rating, price);
+    }
+}
@@ -1,26 +1,49 @@
 package org.example.products_manager;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.products_manager.controller.ProductsManagerController;
 import org.example.products_manager.exception.InvalidBarcodeException;
 import org.example.products_manager.exception.InvalidProductRequestException;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.BulkUpdateRequest;
+import org.example.products_manager.model.BulkUpdateResponse;
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ImportReport;
+import org.example.products_manager.model.MetricStatsResponse;
+import org.example.products_manager.model.PriceHistoryResponse;
 import org.example.products_manager.model.Product;
+import org.example.products_manager.model.ProductFields;
+import org.example.products_manager.model.ProductQuery;
 import org.example.products_manager.model.ProductRequest;
 import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.model.SimilarProductResponse;
+import org.example.products_manager.model.TagStatsResponse;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.ListResponseCache;
+import org.example.products_manager.service.ProductImportService;
 import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.WriteBehindUpdateQueue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 /**
  * Each test method in this class corresponds to a method in the ProductsManagerController.
@@ -35,6 +58,15 @@ public class ProductsManagerControllerTests {
     @Mock
     private ProductsManagerService productsManagerService;
 
+    @Mock
+    private WriteBehindUpdateQueue writeBehindUpdateQueue;
+
+    @Mock
+    private ProductImportService productImportService;
+
+    @Mock
+    private ListResponseCache listResponseCache;
+
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
@@ -53,6 +85,19 @@ public class ProductsManagerControllerTests {
         assertEquals(productResponse, response.getBody());
     }
 
+    @Test
+    public void testCreateProductWithoutTags() {
+        ProductRequest productRequest = new ProductRequest("123456", "Test Product", null, 4.5f, 19.99f, null);
+        ProductResponse productResponse = new ProductResponse("123456", "Test Product", null, 4.5f, 19.99f, new ArrayList<>());
+
+        when(productsManagerService.createProduct(productRequest)).thenReturn(productResponse);
+
+        ResponseEntity<ProductResponse> response = productsManagerController.createProduct(productRequest);
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(productResponse, response.getBody());
+    }
+
     @Test
     public void testGetProduct() {
         String barcode = "123456";
@@ -78,12 +123,161 @@ public class ProductsManagerControllerTests {
         productResponses.add(product2);
 
         when(productsManagerService.getAllProducts("id")).thenReturn(productResponses);
-        ResponseEntity<List<ProductResponse>> response = productsManagerController.getAllProducts("id");
+        ProductQuery query = new ProductQuery();
+        query.setSortBy("id");
+        ResponseEntity<List<ProductResponse>> response = productsManagerController.getAllProducts(query);
 
         assertEquals(200, response.getStatusCodeValue());
         assertEquals(productResponses, response.getBody());
     }
 
+    @Test
+    public void testGetAllProductsFromCache() {
+        ListResponseCache.SerializedList list = serializedList("price");
+        when(listResponseCache.get("price")).thenReturn(list);
+        ProductQuery query = new ProductQuery();
+        query.setSortBy("price");
+
+        ResponseEntity<?> response = productsManagerController.getAllProducts(query, "deflate, gzip;q=0.8", null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(list.getGzippedJson(), (byte[]) response.getBody());
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(list.getGzipETag(), response.getHeaders().getETag());
+
+        response = productsManagerController.getAllProducts(query, "gzip;q=0, deflate", null);
+        assertArrayEquals(list.getJson(), (byte[]) response.getBody());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(list.getETag(), response.getHeaders().getETag());
+        verify(productsManagerService, never()).getAllProducts(anyString());
+    }
+
+    @Test
+    public void testGetAllProductsFromCacheNotModified() {
+        ListResponseCache.SerializedList list = serializedList("id");
+        when(listResponseCache.get("id")).thenReturn(list);
+
+        ResponseEntity<?> response = productsManagerController.getAllProducts(new ProductQuery(), "gzip", list.getGzipETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(list.getGzipETag(), response.getHeaders().getETag());
+    }
+
+    @Test
+    public void testGetAllProductsNotCached() {
+        List<ProductResponse> productResponses = new ArrayList<>();
+        when(productsManagerService.getAllProducts("id")).thenReturn(productResponses);
+
+        ResponseEntity<?> response = productsManagerController.getAllProducts(new ProductQuery(), "gzip", null);
+        assertEquals(productResponses, response.getBody());
+        verify(listResponseCache).get("id");
+    }
+
+    @Test
+    public void testGetProductsInRange() {
+        List<ProductResponse> productResponses = Arrays.asList(
+                new ProductResponse("123456", "Test Product 1", "http://example.com/image1.jpg", 4.5f, 12.99f, Arrays.asList("tag1")));
+        ProductQuery query = new ProductQuery();
+        query.setMinPrice(10f);
+        query.setMaxPrice(20f);
+        query.setMinRating(4f);
+        query.setTop(50);
+
+        when(productsManagerService.findProducts(query)).thenReturn(productResponses);
+        ResponseEntity<List<ProductResponse>> response = productsManagerController.getAllProducts(query);
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(productResponses, response.getBody());
+        assertEquals("price", query.getSortBy());
+    }
+
+    @Test
+    public void testGetProductsInRangeInvalidSortBy() {
+        ProductQuery query = new ProductQuery();
+        query.setSortBy("name");
+        query.setMinPrice(10f);
+
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.getAllProducts(query);
+        });
+    }
+
+    @Test
+    public void testGetProductsInRangeInvalidBounds() {
+        ProductQuery query = new ProductQuery();
+        query.setMinPrice(20f);
+        query.setMaxPrice(10f);
+
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.getAllProducts(query);
+        });
+    }
+
+    @Test
+    public void testGetAllProductFields() {
+        List<Map<String, Object>> products = Arrays.asList(Map.<String, Object>of("barcode", "123456", "price", 19.99f));
+        when(productsManagerService.getAllProducts(eq("name"), argThat(fields -> fields.getNames().equals(Arrays.asList("barcode", "price")))))
+                .thenReturn(products);
+        ProductQuery query = new ProductQuery();
+        query.setSortBy("name");
+
+        ResponseEntity<List<Map<String, Object>>> response = productsManagerController.getAllProductFields(query, "price, barcode");
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(products, response.getBody());
+    }
+
+    @Test
+    public void testGetProductFields() {
+        Map<String, Object> product = Map.of("name", "Test Product");
+        when(productsManagerService.getProduct(eq("123456"), any(ProductFields.class))).thenReturn(product);
+
+        ResponseEntity<Map<String, Object>> response = productsManagerController.getProductFields("123456", "name");
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(product, response.getBody());
+    }
+
+    @Test
+    public void testGetProductFieldsUnknownField() {
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.getProductFields("123456", "name,weight");
+        });
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.getAllProductFields(new ProductQuery(), " , ");
+        });
+    }
+
+    @Test
+    public void testGetProductStats() {
+        MetricStatsResponse price = new MetricStatsResponse(1, 19.99f, 19.99f, 19.99, 10f, new LinkedHashMap<>());
+        MetricStatsResponse rating = new MetricStatsResponse(1, 4.5f, 4.5f, 4.5, 1f, new LinkedHashMap<>());
+        List<TagStatsResponse> stats = Arrays.asList(new TagStatsResponse("tag1", 1, price, rating));
+
+        when(productsManagerService.getStatsByTag()).thenReturn(stats);
+        ResponseEntity<List<TagStatsResponse>> response = productsManagerController.getProductStats("tag");
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(stats, response.getBody());
+    }
+
+    @Test
+    public void testGetProductStatsInvalidGroupBy() {
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.getProductStats("name");
+        });
+    }
+
+    @Test
+    public void testImportProducts() {
+        ImportReport report = new ImportReport("products.ndjson", 3, 2, 1, 0, 1, 10, 200, "products.ndjson.rejected");
+
+        when(productImportService.importFile("products.ndjson", true)).thenReturn(report);
+        ResponseEntity<ImportReport> response = productsManagerController.importProducts("products.ndjson", true);
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(report, response.getBody());
+    }
+
     @Test
     public void testUpdateProduct() {
         String barcode = "123456";
@@ -99,6 +293,70 @@ public class ProductsManagerControllerTests {
         assertEquals(productResponse, response.getBody());
     }
 
+    @Test
+    public void testUpdateProductAsync() {
+        String barcode = "123456";
+        ProductRequest productRequest = new ProductRequest("123456", "Updated Product", null, null, 15.99f, null);
+
+        when(writeBehindUpdateQueue.isEnabled()).thenReturn(true);
+
+        ResponseEntity<String> response = productsManagerController.updateProductAsync(barcode, productRequest);
+
+        assertEquals(202, response.getStatusCodeValue());
+        verify(writeBehindUpdateQueue, times(1)).submit(barcode, productRequest);
+        verify(productsManagerService, never()).updateProduct(anyString(), any(ProductRequest.class));
+    }
+
+    @Test
+    public void testUpdateProductAsyncDisabled() {
+        ProductRequest productRequest = new ProductRequest("123456", "Updated Product", null, null, 15.99f, new ArrayList<>());
+
+        when(writeBehindUpdateQueue.isEnabled()).thenReturn(false);
+
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.updateProductAsync("123456", productRequest);
+        });
+    }
+
+    @Test
+    public void testUpdateProductAsyncBarcodeChange() {
+        ProductRequest productRequest = new ProductRequest("654321", "Updated Product", null, null, 15.99f, new ArrayList<>());
+
+        when(writeBehindUpdateQueue.isEnabled()).thenReturn(true);
+
+        assertThrows(InvalidProductRequestException.class, () -> {
+            productsManagerController.updateProductAsync("123456", productRequest);
+        });
+        verify(writeBehindUpdateQueue, never()).submit(anyString(), any(ProductRequest.class));
+    }
+
+    @Test
+    public void testBulkUpdate() {
+        BulkUpdateRequest request = new BulkUpdateRequest("tag1", null, null, null, null, null, "price", "multiply", 90f);
+
+        when(productsManagerService.bulkUpdate(request)).thenReturn(42);
+
+        ResponseEntity<BulkUpdateResponse> response = productsManagerController.bulkUpdate(request);
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(42, response.getBody().getAffectedProducts());
+    }
+
+    @Test
+    public void testBulkUpdateInvalidRequest() {
+        BulkUpdateRequest noSelector = new BulkUpdateRequest(null, null, null, null, null, null, "price", "set", 10f);
+        BulkUpdateRequest twoSelectors = new BulkUpdateRequest("tag1", Arrays.asList("123456"), null, null, null, null, "price", "set", 10f);
+        BulkUpdateRequest unknownField = new BulkUpdateRequest("tag1", null, null, null, null, null, "name", "set", 10f);
+        BulkUpdateRequest negativeFactor = new BulkUpdateRequest(null, null, 10f, 20f, null, null, "price", "multiply", -10f);
+
+        for (BulkUpdateRequest request : Arrays.asList(noSelector, twoSelectors, unknownField, negativeFactor)) {
+            assertThrows(InvalidProductRequestException.class, () -> {
+                productsManagerController.bulkUpdate(request);
+            });
+        }
+        verifyNoInteractions(productsManagerService);
+    }
+
     @Test
     public void testDeleteProduct() {
         String barcode = "123456";
@@ -109,6 +367,58 @@ public class ProductsManagerControllerTests {
         assertEquals("Product with barcode " + barcode + " was deleted", response.getBody());
     }
 
+    @Test
+    public void testGetPriceHistory() {
+        Instant from = Instant.parse("2024-01-01T00:00:00Z");
+        Instant to = Instant.parse("2024-02-01T00:00:00Z");
+        List<PriceHistoryResponse> history = Arrays.asList(
+                new PriceHistoryResponse(Instant.parse("2024-01-05T10:00:00Z"), 19.99f, 4.5f),
+                new PriceHistoryResponse(Instant.parse("2024-01-20T10:00:00Z"), 17.99f, 4.5f));
+
+        when(productsManagerService.getPriceHistory("123456", from, to)).thenReturn(history);
+
+        ResponseEntity<List<PriceHistoryResponse>> response =
+                productsManagerController.getPriceHistory("123456", "2024-01-01T00:00:00Z", "2024-02-01T00:00:00Z");
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(history, response.getBody());
+    }
+
+    @Test
+    public void testGetPriceHistoryInvalidRange() {
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.getPriceHistory("123456", "yesterday", null);
+        });
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.getPriceHistory("123456", "2024-02-01T00:00:00Z", "2024-01-01T00:00:00Z");
+        });
+        verifyNoInteractions(productsManagerService);
+    }
+
+    @Test
+    public void testGetSimilarProducts() {
+        ProductResponse similar = new ProductResponse("789012", "Similar Product", null, 4.0f, 15.99f, Arrays.asList("tag1", "tag2"));
+        List<SimilarProductResponse> similarProducts = Arrays.asList(new SimilarProductResponse(similar, 0.5));
+
+        when(productsManagerService.findSimilarProducts("123456", 5)).thenReturn(similarProducts);
+
+        ResponseEntity<List<SimilarProductResponse>> response = productsManagerController.getSimilarProducts("123456", 5);
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(similarProducts, response.getBody());
+    }
+
+    @Test
+    public void testGetSimilarProductsInvalidLimit() {
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.getSimilarProducts("123456", 0);
+        });
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            productsManagerController.getSimilarProducts("123456", 101);
+        });
+        verifyNoInteractions(productsManagerService);
+    }
+
     @Test
     public void testCreateProductInvalidBarcode() {
         ProductRequest productRequest = new ProductRequest("abc", "Test Product", "http://example.com/image.jpg", 4.5f, 19.99f, Arrays.asList("tag1", "tag2"));
@@ -207,4 +517,12 @@ public class ProductsManagerControllerTests {
             productsManagerController.updateProduct(validBarcode, productRequest);
         });
     }
+
+    private static ListResponseCache.SerializedList serializedList(String sortBy) {
+        CatalogSnapshotHolder catalogSnapshotHolder = new CatalogSnapshotHolder(false);
+        catalogSnapshotHolder.rebuild(Arrays.asList(
+                new CatalogEntry(1L, "123456", "Test Product 1", null, 4.5f, 19.99f, Arrays.asList("tag1", "tag2")),
+                new CatalogEntry(2L, "789012", "Test Product 2", null, 4.0f, 15.99f, Arrays.asList("tag3"))));
+        return new ListResponseCache(catalogSnapshotHolder, new ObjectMapper()).get(sortBy);
+    }
 }
\ No newline at end of file
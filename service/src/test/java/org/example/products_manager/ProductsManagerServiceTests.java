@@ -2,30 +2,56 @@ package org.example.products_manager;
 
 import org.example.products_manager.exception.BarcodeAlreadyExistsException;
 import org.example.products_manager.exception.DatabaseAccessException;
+import org.example.products_manager.exception.InvalidProductRequestException;
 import org.example.products_manager.exception.ProductNotFoundException;
+import org.example.products_manager.model.CatalogEntry;
 import org.example.products_manager.model.Product;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.model.ProductQuery;
 import org.example.products_manager.model.ProductRequest;
 import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.model.SimilarProductResponse;
 import org.example.products_manager.model.Tag;
+import org.example.products_manager.repository.PriceHistoryRepository;
+import org.example.products_manager.repository.ProductChangeRepository;
 import org.example.products_manager.repository.ProductRepository;
 import org.example.products_manager.repository.ProductTagRepository;
 import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.CatalogSnapshot;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ProductRangeIndex;
 import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.ReadCoalescer;
+import org.example.products_manager.service.ShardedProductsService;
+import org.example.products_manager.service.SimilarProductsIndex;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Sort;
 import org.springframework.orm.jpa.JpaSystemException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 /**
@@ -48,6 +74,42 @@ public class ProductsManagerServiceTests {
     @Mock
     private TagRepository tagRepository;
 
+    @Mock
+    private ProductChangeRepository productChangeRepository;
+
+    @Mock
+    private TagStatsAggregator tagStatsAggregator;
+
+    @Mock
+    private ProductRangeIndex productRangeIndex;
+
+    @Mock
+    private CatalogSnapshotHolder catalogSnapshotHolder;
+
+    @Mock
+    private NodeIdentity nodeIdentity;
+
+    @Mock
+    private ShardedProductsService shardedProductsService;
+
+    @Mock
+    private SimilarProductsIndex similarProductsIndex;
+
+    @Mock
+    private BarcodeLocks barcodeLocks;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PriceHistoryWriter priceHistoryWriter;
+
+    @Mock
+    private PriceHistoryRepository priceHistoryRepository;
+
+    @Spy
+    private ReadCoalescer readCoalescer = new ReadCoalescer(true, 5_000);
+
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
@@ -68,6 +130,22 @@ public class ProductsManagerServiceTests {
         assertEquals("Test Product", response.getName());
         verify(productRepository, times(1)).save(any(Product.class));
         verify(tagRepository, times(2)).save(any(Tag.class));
+        verify(eventPublisher, times(1)).publishEvent(any(ProductChangedEvent.class));
+    }
+
+    @Test
+    public void testCreateProduct_WithoutTags() {
+        ProductRequest productRequest = new ProductRequest("123456", "Test Product", null, 4.5f, 19.99f, null);
+        Product product = new Product(1L, "123456", "Test Product", null, 4.5f, 19.99f);
+
+        when(productRepository.save(any(Product.class))).thenReturn(product);
+
+        ProductResponse response = productsManagerService.createProduct(productRequest);
+
+        assertEquals("123456", response.getBarcode());
+        assertTrue(response.getTags().isEmpty());
+        verify(productRepository, never()).saveTag(anyLong(), any());
+        verify(eventPublisher, times(1)).publishEvent(any(ProductChangedEvent.class));
     }
 
     @Test
@@ -82,6 +160,32 @@ public class ProductsManagerServiceTests {
         });
     }
 
+    @Test
+    public void testCreateProduct_ConcurrentDuplicateBarcode() {
+        ProductRequest productRequest = new ProductRequest("123456", "Test Product", "http://example.com/image.jpg", 4.5f, 19.99f, Arrays.asList("tag1", "tag2"));
+
+        when(productRepository.save(any(Product.class))).thenThrow(new DataIntegrityViolationException("Duplicate entry '123456' for key 'barcode'",
+                new ConstraintViolationException("Duplicate entry '123456' for key 'barcode'", null,
+                        ConstraintViolationException.ConstraintKind.UNIQUE, "barcode")));
+
+        assertThrows(BarcodeAlreadyExistsException.class, () -> {
+            productsManagerService.createProduct(productRequest);
+        });
+        verify(barcodeLocks, times(1)).lockUntilCompletion("123456");
+    }
+
+    @Test
+    public void testCreateProduct_OtherConstraintViolation() {
+        ProductRequest productRequest = new ProductRequest("123456", "Test Product", "http://example.com/image.jpg", 4.5f, 19.99f, Arrays.asList("tag1", "tag2"));
+
+        when(productRepository.save(any(Product.class))).thenThrow(new DataIntegrityViolationException("Value too long for column NAME",
+                new ConstraintViolationException("Value too long for column NAME", null, null)));
+
+        assertThrows(DatabaseAccessException.class, () -> {
+            productsManagerService.createProduct(productRequest);
+        });
+    }
+
     @Test
     public void testCreateProduct_DatabaseError() {
         ProductRequest productRequest = new ProductRequest("123456", "Test Product", "http://example.com/image.jpg", 4.5f, 19.99f, Arrays.asList("tag1", "tag2"));
@@ -140,6 +244,100 @@ public class ProductsManagerServiceTests {
         });
     }
 
+    @Test
+    public void testGetAllProducts_FromSnapshot() {
+        CatalogSnapshot snapshot = CatalogSnapshot.of(Arrays.asList(
+                new CatalogEntry(1L, "111", "Banana", null, 4.5f, 19.5f, Arrays.asList("fruits")),
+                new CatalogEntry(2L, "222", "apple", null, 4.0f, 10.5f, Arrays.asList("fruits", "sale"))
+        ), 1);
+        when(catalogSnapshotHolder.getSnapshot()).thenReturn(snapshot);
+
+        List<ProductResponse> response = productsManagerService.getAllProducts("name");
+
+        assertEquals(2, response.size());
+        assertEquals("222", response.get(0).getBarcode());
+        assertEquals(Arrays.asList("fruits", "sale"), response.get(0).getTags());
+        assertEquals("111", response.get(1).getBarcode());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testFindSimilarProducts_UsesSimilarityIndex() {
+        CatalogSnapshot snapshot = CatalogSnapshot.of(Arrays.asList(
+                new CatalogEntry(1L, "111", "Banana", null, 4.5f, 19.5f, Arrays.asList("fruits")),
+                new CatalogEntry(2L, "222", "apple", null, 4.0f, 10.5f, Arrays.asList("fruits", "sale"))
+        ), 1);
+        when(catalogSnapshotHolder.getSnapshot()).thenReturn(snapshot);
+        when(similarProductsIndex.isReady()).thenReturn(true);
+        when(similarProductsIndex.findSimilar("111", 10)).thenReturn(Arrays.asList(new SimilarProductsIndex.Match(2L, 0.5)));
+
+        List<SimilarProductResponse> response = productsManagerService.findSimilarProducts("111", 10);
+
+        assertEquals(1, response.size());
+        assertEquals("222", response.get(0).getProduct().getBarcode());
+        assertEquals(0.5, response.get(0).getSimilarity());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testFindSimilarProducts_ProductNotFound() {
+        when(similarProductsIndex.isReady()).thenReturn(true);
+        when(similarProductsIndex.findSimilar("111", 10)).thenReturn(null);
+
+        assertThrows(ProductNotFoundException.class, () -> productsManagerService.findSimilarProducts("111", 10));
+    }
+
+    @Test
+    public void testFindSimilarProducts_ScansCatalogUntilIndexIsBuilt() {
+        CatalogSnapshot snapshot = CatalogSnapshot.of(Arrays.asList(
+                new CatalogEntry(1L, "111", "Banana", null, 4.5f, 19.5f, Arrays.asList("fruits", "yellow")),
+                new CatalogEntry(2L, "222", "apple", null, 4.0f, 10.5f, Arrays.asList("fruits", "sale")),
+                new CatalogEntry(3L, "333", "Lemon", null, 4.0f, 3.5f, Arrays.asList("fruits", "yellow")),
+                new CatalogEntry(4L, "444", "Milk", null, 4.0f, 5.5f, Arrays.asList("dairy"))
+        ), 1);
+        when(catalogSnapshotHolder.getSnapshot()).thenReturn(snapshot);
+
+        List<SimilarProductResponse> response = productsManagerService.findSimilarProducts("111", 10);
+
+        assertEquals(Arrays.asList("333", "222"), response.stream().map(similar -> similar.getProduct().getBarcode()).toList());
+        assertEquals(1.0, response.get(0).getSimilarity());
+        assertEquals(1.0 / 3, response.get(1).getSimilarity());
+    }
+
+    @Test
+    public void testFindProducts_UsesRangeIndex() {
+        Product cheap = new Product(1L, "111", "Cheap Product", null, 4.5f, 10.5f);
+        Product expensive = new Product(2L, "222", "Expensive Product", null, 4.0f, 19.5f);
+        ProductQuery query = new ProductQuery("price", 10f, 20f, 4f, 50);
+
+        when(productRangeIndex.isReady()).thenReturn(true);
+        when(productRangeIndex.findIds(10f, 20f, 4f, false, 50)).thenReturn(new long[]{1L, 2L});
+        when(productRepository.findAllById(Arrays.asList(1L, 2L))).thenReturn(Arrays.asList(expensive, cheap));
+
+        List<ProductResponse> response = productsManagerService.findProducts(query);
+
+        assertEquals(2, response.size());
+        assertEquals("111", response.get(0).getBarcode());
+        assertEquals("222", response.get(1).getBarcode());
+        verify(productRepository, never()).findAll(any(Sort.class));
+    }
+
+    @Test
+    public void testFindProducts_IndexNotReady() {
+        Product cheap = new Product(1L, "111", "Cheap Product", null, 4.5f, 10.5f);
+        Product lowRated = new Product(2L, "222", "Low Rated Product", null, 2.0f, 12.5f);
+        Product expensive = new Product(3L, "333", "Expensive Product", null, 4.0f, 29.5f);
+        ProductQuery query = new ProductQuery("price", 10f, 20f, 4f, null);
+
+        when(productRangeIndex.isReady()).thenReturn(false);
+        when(productRepository.findAll(Sort.by(Sort.Direction.ASC, "price"))).thenReturn(Arrays.asList(cheap, lowRated, expensive));
+
+        List<ProductResponse> response = productsManagerService.findProducts(query);
+
+        assertEquals(1, response.size());
+        assertEquals("111", response.get(0).getBarcode());
+    }
+
     @Test
     public void testUpdateProduct_Success() {
         String oldBarcode = "123456";
@@ -163,8 +361,71 @@ public class ProductsManagerServiceTests {
         assertEquals(Arrays.asList("tag3", "tag4"), response.getTags());
         verify(productRepository, times(1)).save(any(Product.class));
         verify(tagRepository, times(2)).save(any(Tag.class));
+        verify(priceHistoryWriter, times(1)).record(1L, 15.99f, 4.0f);
     }
 
+    @Test
+    public void testUpdateProduct_UnchangedPriceIsNotRecorded() {
+        ProductRequest productRequest = new ProductRequest(null, "Renamed Product", null, 4.5f, 19.99f, null);
+        Product product = new Product(1L, "123456", "Test Product", null, 4.5f, 19.99f);
+
+        when(productRepository.findByBarcode("123456")).thenReturn(Optional.of(product));
+        when(productRepository.save(any(Product.class))).thenReturn(product);
+        when(productRepository.findTagsByProductId(product.getId())).thenReturn(new ArrayList<>());
+
+        ProductResponse response = productsManagerService.updateProduct("123456", productRequest);
+
+        assertEquals("Renamed Product", response.getName());
+        verifyNoInteractions(priceHistoryWriter);
+    }
+
+
+    @Test
+    public void testApplyUpdates_SkipsMissingProducts() {
+        Product product = new Product(1L, "111", "Test Product", null, 4.5f, 19.99f);
+        Map<String, ProductRequest> productRequests = new LinkedHashMap<>();
+        productRequests.put("111", new ProductRequest("111", "Test Product", null, null, 17.99f, null));
+        productRequests.put("222", new ProductRequest("222", "Missing Product", null, null, 9.99f, null));
+
+        when(productRepository.findByBarcode("111")).thenReturn(Optional.of(product));
+        when(productRepository.findByBarcode("222")).thenReturn(Optional.empty());
+        when(productRepository.save(any(Product.class))).thenReturn(product);
+
+        int updated = productsManagerService.applyUpdates(productRequests);
+
+        assertEquals(1, updated);
+        assertEquals(17.99f, product.getPrice());
+        verify(productRepository, times(1)).save(product);
+        verify(eventPublisher, times(1)).publishEvent(any(ProductChangedEvent.class));
+    }
+
+    @Test
+    public void testApplyUpdates_RejectedByDatabase() {
+        Product product = new Product(1L, "111", "Test Product", null, 4.5f, 19.99f);
+        Map<String, ProductRequest> productRequests = Map.of("111", new ProductRequest("111", "x".repeat(300), null, null, null, null));
+
+        when(productRepository.findByBarcode("111")).thenReturn(Optional.of(product));
+        when(productRepository.save(any(Product.class))).thenReturn(product);
+        doThrow(new DataIntegrityViolationException("Value too long for column NAME")).when(productRepository).flush();
+
+        assertThrows(InvalidProductRequestException.class, () -> {
+            productsManagerService.applyUpdates(productRequests);
+        });
+    }
+
+    @Test
+    public void testUpdateProduct_BarcodeAlreadyExists() {
+        ProductRequest productRequest = new ProductRequest("654321", "Updated Product", null, 4.0f, 15.99f, null);
+        Product other = new Product(2L, "654321", "Other Product", null, 4.5f, 19.99f);
+
+        when(productRepository.findByBarcode("654321")).thenReturn(Optional.of(other));
+
+        assertThrows(BarcodeAlreadyExistsException.class, () -> {
+            productsManagerService.updateProduct("123456", productRequest);
+        });
+        verify(barcodeLocks, times(1)).lockUntilCompletion("123456", "654321");
+        verify(productRepository, never()).save(any(Product.class));
+    }
 
     @Test
     public void testUpdateProduct_NotFound() {
@@ -204,6 +465,7 @@ public class ProductsManagerServiceTests {
 
         verify(productTagRepository, times(1)).deleteAll(anyList());
         verify(productRepository, times(1)).delete(product);
+        verify(eventPublisher, times(1)).publishEvent(argThat((ProductChangedEvent event) -> event.isDeletion() && event.getProductId() == 1L));
     }
 
     @Test
@@ -0,0 +1,106 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.Product;
+import org.example.products_manager.model.ProductQuery;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.ShardedProductRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.CatalogSnapshotFile;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ProductRangeIndex;
+import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.ReadCoalescer;
+import org.example.products_manager.service.ShardedProductsService;
+import org.example.products_manager.service.SimilarProductsIndex;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs range queries against an embedded database and checks that the range index orders the products as the
+ * database does: missing prices and ratings first, and ties by id. Changes are read back right after they return.
+ * Test methods are not transactional, so that the service commits and the change events are delivered.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "products.catalog-file.path="
+})
+@Import({ProductsManagerService.class, CatalogSynchronizer.class, TagStatsAggregator.class, ProductRangeIndex.class,
+        CatalogSnapshotHolder.class, CatalogSnapshotFile.class, BarcodeLocks.class, NodeIdentity.class,
+        ShardedProductsService.class, ShardedProductRepository.class, SimilarProductsIndex.class,
+        ReadCoalescer.class, PriceHistoryWriter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class RangeQueryOrderTests {
+
+    @Autowired
+    private ProductsManagerService productsManagerService;
+
+    @Autowired
+    private CatalogSynchronizer catalogSynchronizer;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private ProductChangeRepository productChangeRepository;
+
+    @AfterEach
+    public void cleanup() {
+        productTagRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        tagRepository.deleteAll();
+        productChangeRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testMissingValuesComeFirstInTheDatabaseAndInTheIndex() {
+        productsManagerService.createProduct(new ProductRequest("101", "Milk", null, 4.5f, 5.5f, new ArrayList<>()));
+        productsManagerService.createProduct(new ProductRequest("102", "Bread", null, null, 3f, new ArrayList<>()));
+        productsManagerService.createProduct(new ProductRequest("103", "Water", null, 2f, null, new ArrayList<>()));
+        productsManagerService.createProduct(new ProductRequest("104", "Juice", null, 4.5f, 3f, new ArrayList<>()));
+        catalogSynchronizer.rebuild();
+        assertIndexOrderMatchesDatabase();
+
+        productsManagerService.updateProduct("101", new ProductRequest(null, null, null, null, 3f, null));
+        productsManagerService.createProduct(new ProductRequest("105", "Tea", null, null, null, new ArrayList<>()));
+        assertIndexOrderMatchesDatabase();
+    }
+
+    private void assertIndexOrderMatchesDatabase() {
+        for (String sortBy : List.of("price", "rating")) {
+            List<String> expected = productRepository.findAll(Sort.by(sortBy, "id")).stream()
+                    .map(Product::getBarcode)
+                    .collect(Collectors.toList());
+            List<String> actual = productsManagerService.findProducts(new ProductQuery(sortBy, null, null, null, null)).stream()
+                    .map(ProductResponse::getBarcode)
+                    .collect(Collectors.toList());
+            assertEquals(expected, actual, "sorted by " + sortBy);
+        }
+    }
+}
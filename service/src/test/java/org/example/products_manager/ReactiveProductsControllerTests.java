@@ -0,0 +1,85 @@
+package org.example.products_manager;
+
+import org.example.products_manager.controller.ReactiveProductsController;
+import org.example.products_manager.exception.InvalidBarcodeException;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.service.ReactiveProductsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+/**
+ * Each test method in this class corresponds to a method in the ReactiveProductsController.
+ * reactiveProductsService is mocked to isolate the testing to the controller only.
+ */
+public class ReactiveProductsControllerTests {
+
+    @InjectMocks
+    private ReactiveProductsController reactiveProductsController;
+
+    @Mock
+    private ReactiveProductsService reactiveProductsService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testGetProduct() {
+        ProductResponse productResponse = new ProductResponse("123456", "Test Product", null, 4.5f, 19.99f, Arrays.asList("tag1"));
+
+        when(reactiveProductsService.getProduct("123456")).thenReturn(Mono.just(productResponse));
+
+        StepVerifier.create(reactiveProductsController.getProduct("123456"))
+                .expectNext(productResponse)
+                .verifyComplete();
+    }
+
+    @Test
+    public void testGetAllProductsSortedByIdByDefault() {
+        ProductResponse product1 = new ProductResponse("123456", "Test Product 1", null, 4.5f, 19.99f, Arrays.asList("tag1"));
+        ProductResponse product2 = new ProductResponse("789012", "Test Product 2", null, 4.0f, 15.99f, Arrays.asList("tag2"));
+
+        when(reactiveProductsService.getAllProducts("id")).thenReturn(Flux.just(product1, product2));
+
+        StepVerifier.create(reactiveProductsController.getAllProducts(""))
+                .expectNext(product1, product2)
+                .verifyComplete();
+    }
+
+    @Test
+    public void testGetAllProductsFailsWhenTheStreamIsIdle() {
+        ProductResponse product = new ProductResponse("123456", "Test Product", null, 4.5f, 19.99f, Arrays.asList("tag1"));
+        ReflectionTestUtils.setField(reactiveProductsController, "streamIdleTimeoutMs", 1000L);
+
+        when(reactiveProductsService.getAllProducts("id")).thenReturn(Flux.concat(Flux.just(product), Flux.never()));
+
+        StepVerifier.withVirtualTime(() -> reactiveProductsController.getAllProducts(null))
+                .expectNext(product)
+                .thenAwait(Duration.ofMillis(1000))
+                .expectError(TimeoutException.class)
+                .verify();
+    }
+
+    @Test
+    public void testGetProductInvalidBarcode() {
+        assertThrows(InvalidBarcodeException.class, () -> {
+            reactiveProductsController.getProduct("abc");
+        });
+        verifyNoInteractions(reactiveProductsService);
+    }
+}
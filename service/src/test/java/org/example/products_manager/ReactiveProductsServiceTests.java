@@ -0,0 +1,141 @@
+package org.example.products_manager;
+
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.exception.ProductNotFoundException;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.repository.ReactiveProductRepository;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.ReactiveProductsService;
+import org.example.products_manager.service.ShardedProductsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Reads products over R2DBC from an embedded H2 database, which the JPA schema and the test data are written to
+ * over JDBC. The catalog is never loaded in memory by these tests, so the products are read from the database.
+ * The sharded service is a mock, and sharding is disabled unless a test enables it.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.datasource.url=jdbc:h2:mem:reactive;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "products.reactive.r2dbc-url=r2dbc:h2:mem:///reactive?options=DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ReactiveProductsService.class, ReactiveProductRepository.class, CatalogSnapshotHolder.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ReactiveProductsServiceTests {
+
+    @Autowired
+    private ReactiveProductsService reactiveProductsService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private ShardedProductsService shardedProductsService;
+
+    @BeforeEach
+    public void setup() {
+        jdbcTemplate.update("INSERT INTO tags (id, tag_name) VALUES (1, 'dairy'), (2, 'fresh')");
+        jdbcTemplate.update("INSERT INTO products (id, barcode, name, image, rating, price) VALUES "
+                + "(1, '1001', 'Milk', NULL, 4.5, 5.5), "
+                + "(2, '1002', 'Bread', 'http://example.com/bread.jpg', NULL, 3), "
+                + "(3, '1003', 'Water', NULL, NULL, NULL)");
+        jdbcTemplate.update("INSERT INTO product_tags (id, product_id, tag_id) VALUES (1, 1, 2), (2, 1, 1), (3, 2, 2)");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        jdbcTemplate.update("DELETE FROM product_tags");
+        jdbcTemplate.update("DELETE FROM products");
+        jdbcTemplate.update("DELETE FROM tags");
+    }
+
+    @Test
+    public void testGetAllProductsSortedByPrice() {
+        StepVerifier.create(reactiveProductsService.getAllProducts("price"))
+                .assertNext(product -> {
+                    assertEquals("1003", product.getBarcode());
+                    assertNull(product.getPrice());
+                    assertEquals(List.of(), product.getTags());
+                })
+                .assertNext(product -> {
+                    assertEquals("1002", product.getBarcode());
+                    assertEquals("http://example.com/bread.jpg", product.getImage());
+                    assertEquals(Arrays.asList("fresh"), product.getTags());
+                })
+                .assertNext(product -> {
+                    assertEquals("1001", product.getBarcode());
+                    assertEquals(4.5f, product.getRating());
+                    assertEquals(Arrays.asList("fresh", "dairy"), product.getTags());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void testGetAllProductsHonorsDemand() {
+        StepVerifier.create(reactiveProductsService.getAllProducts(null), 1)
+                .assertNext(product -> assertEquals("1001", product.getBarcode()))
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenRequest(2)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    public void testGetAllProductsInvalidSortBy() {
+        assertThrows(InvalidQueryParameterException.class, () -> reactiveProductsService.getAllProducts("tags"));
+    }
+
+    @Test
+    public void testGetProduct() {
+        StepVerifier.create(reactiveProductsService.getProduct("1001"))
+                .assertNext(product -> {
+                    assertEquals("Milk", product.getName());
+                    assertEquals(5.5f, product.getPrice());
+                    assertEquals(Arrays.asList("fresh", "dairy"), product.getTags());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    public void testShardedProductsAreReadFromTheShards() {
+        ProductResponse sharded = new ProductResponse("2001", "Tea", null, 4f, 2f, List.of("drinks"));
+        when(shardedProductsService.isEnabled()).thenReturn(true);
+        when(shardedProductsService.getProduct("2001")).thenReturn(sharded);
+        when(shardedProductsService.getAllProducts("price")).thenReturn(List.of(sharded));
+
+        StepVerifier.create(reactiveProductsService.getProduct("2001"))
+                .expectNext(sharded)
+                .verifyComplete();
+        StepVerifier.create(reactiveProductsService.getAllProducts("price"))
+                .expectNext(sharded)
+                .verifyComplete();
+    }
+
+    @Test
+    public void testGetProductNotFound() {
+        StepVerifier.create(reactiveProductsService.getProduct("9999"))
+                .expectError(ProductNotFoundException.class)
+                .verify();
+    }
+}
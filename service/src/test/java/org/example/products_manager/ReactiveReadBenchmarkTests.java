@@ -0,0 +1,130 @@
+package org.example.products_manager;
+
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the blocking endpoints of the ProductsManagerController with their reactive variants under many
+ * concurrent clients, over HTTP against an embedded H2 database.
+ * Single products are read from the database by both variants. Lists are read from the catalog snapshot by both,
+ * and served as one JSON array by the blocking variant, from the cached serialized list, and streamed as NDJSON
+ * by the reactive one.
+ * Peak thread counts include the threads of the HTTP client, which are the same for both variants; the reactive
+ * variants run first, before the request thread pool of the server has grown.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.datasource.url=jdbc:h2:mem:reactive-benchmark;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "products.reactive.r2dbc-url=r2dbc:h2:mem:///reactive-benchmark?options=DB_CLOSE_DELAY=-1",
+        "products.catalog-file.path="
+})
+@Tag("benchmark")
+public class ReactiveReadBenchmarkTests {
+
+    private static final int PRODUCTS = 20_000;
+    private static final int CONCURRENCY = 1000;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CatalogSynchronizer catalogSynchronizer;
+
+    @Test
+    public void benchmarkConcurrentReads() throws Exception {
+        jdbcTemplate.batchUpdate("INSERT INTO tags (id, tag_name) VALUES (?, ?)",
+                IntStream.range(1, 101).boxed().toList(), 100,
+                (statement, id) -> {
+                    statement.setLong(1, id);
+                    statement.setString(2, "tag" + id);
+                });
+        jdbcTemplate.batchUpdate("INSERT INTO products (id, barcode, name, image, rating, price) VALUES (?, ?, ?, ?, ?, ?)",
+                IntStream.range(1, PRODUCTS + 1).boxed().toList(), 10_000,
+                (statement, id) -> {
+                    statement.setLong(1, id);
+                    statement.setString(2, String.valueOf(10_000_000 + id));
+                    statement.setString(3, "Product " + id);
+                    statement.setString(4, "http://example.com/" + id + ".jpg");
+                    statement.setFloat(5, (id % 50) / 10f);
+                    statement.setFloat(6, (id % 10_000) / 100f);
+                });
+        jdbcTemplate.batchUpdate("INSERT INTO product_tags (product_id, tag_id) VALUES (?, ?)",
+                IntStream.range(1, PRODUCTS + 1).boxed().toList(), 10_000,
+                (statement, id) -> {
+                    statement.setLong(1, id);
+                    statement.setLong(2, id % 100 + 1);
+                });
+        catalogSynchronizer.rebuild();
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        IntFunction<String> product = i -> "/" + (10_000_000 + i % PRODUCTS + 1);
+
+        run(client, "reactive product lookup", "/api/reactive/products", product, 20_000);
+        run(client, "blocking product lookup", "/api/products", product, 20_000);
+        run(client, "reactive list", "/api/reactive/products", i -> "?sortBy=price", 200);
+        run(client, "blocking list", "/api/products", i -> "?sortBy=price", 200);
+    }
+
+    private void run(HttpClient client, String scenario, String basePath, IntFunction<String> path, int requests)
+            throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        AtomicInteger failures = new AtomicInteger();
+        long[] latenciesNs = new long[requests];
+        List<CompletableFuture<?>> futures = new ArrayList<>(requests);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            int request = i;
+            long sentAt = System.nanoTime();
+            HttpRequest httpRequest = HttpRequest.newBuilder(URI.create("http://localhost:" + port + basePath + path.apply(i))).build();
+            futures.add(client.sendAsync(httpRequest, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        latenciesNs[request] = System.nanoTime() - sentAt;
+                        if (error != null || response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                        inFlight.release();
+                    }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        Arrays.sort(latenciesNs);
+        System.out.printf("%s: %d requests with %d concurrent clients in %d ms (%d requests/sec), "
+                        + "p50 %d ms, p99 %d ms, peak %d threads, %d failures%n",
+                scenario, requests, CONCURRENCY, elapsedMs, requests * 1000L / elapsedMs,
+                latenciesNs[requests / 2] / 1_000_000, latenciesNs[requests * 99 / 100] / 1_000_000,
+                threads.getPeakThreadCount(), failures.get());
+        assertEquals(0, failures.get());
+    }
+}
@@ -0,0 +1,296 @@
+package org.example.products_manager;
+
+import org.example.products_manager.exception.DatabaseAccessException;
+import org.example.products_manager.model.Product;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.repository.PriceHistoryRepository;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ProductRangeIndex;
+import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.ReadCoalescer;
+import org.example.products_manager.service.ShardedProductsService;
+import org.example.products_manager.service.SimilarProductsIndex;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the coalescing of concurrent identical reads: sharing of results and failures, timeouts of waiting callers,
+ * and the number of database reads of the service as the number of concurrent identical requests grows.
+ * The repository is mocked, and its reads wait for every request of a wave to reach the coalescer, so that
+ * concurrent requests overlap however slowly their threads are scheduled.
+ */
+public class ReadCoalescerTests {
+
+    private static final long READ_DELAY_MS = 50;
+
+    @InjectMocks
+    private ProductsManagerService productsManagerService;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductTagRepository productTagRepository;
+
+    @Mock
+    private TagRepository tagRepository;
+
+    @Mock
+    private ProductChangeRepository productChangeRepository;
+
+    @Mock
+    private TagStatsAggregator tagStatsAggregator;
+
+    @Mock
+    private ProductRangeIndex productRangeIndex;
+
+    @Mock
+    private CatalogSnapshotHolder catalogSnapshotHolder;
+
+    @Mock
+    private NodeIdentity nodeIdentity;
+
+    @Mock
+    private ShardedProductsService shardedProductsService;
+
+    @Mock
+    private SimilarProductsIndex similarProductsIndex;
+
+    @Mock
+    private BarcodeLocks barcodeLocks;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PriceHistoryWriter priceHistoryWriter;
+
+    @Mock
+    private PriceHistoryRepository priceHistoryRepository;
+
+    @Spy
+    private ReadCoalescer readCoalescer = new ReadCoalescer(true, 5_000);
+
+    private final AtomicInteger databaseReads = new AtomicInteger();
+
+    private volatile CountDownLatch requestsStarted = new CountDownLatch(0);
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(invocation -> {
+            requestsStarted.countDown();
+            return invocation.callRealMethod();
+        }).when(readCoalescer).execute(anyString(), any());
+        Product product = new Product(1L, "123456", "Promoted Product", null, 4.5f, 19.99f);
+        when(productRepository.findByBarcode("123456")).thenAnswer(invocation -> {
+            databaseReads.incrementAndGet();
+            awaitRequests();
+            return Optional.of(product);
+        });
+        when(productRepository.findAll(any(Sort.class))).thenAnswer(invocation -> {
+            databaseReads.incrementAndGet();
+            awaitRequests();
+            return List.of(product);
+        });
+        when(productRepository.findTagsByProductId(1L)).thenAnswer(invocation -> {
+            databaseReads.incrementAndGet();
+            return List.of();
+        });
+    }
+
+    @Test
+    public void testConcurrentReadsShareOneExecution() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        Supplier<String> read = () -> {
+            executions.incrementAndGet();
+            await(release);
+            return "result";
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> futures = new ArrayList<>();
+        futures.add(executor.submit(() -> readCoalescer.execute("key", read)));
+        waitUntilInFlight(1);
+        for (int i = 0; i < 7; i++) {
+            futures.add(executor.submit(() -> readCoalescer.execute("key", read)));
+        }
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("result", future.get());
+        }
+        executor.shutdown();
+
+        assertEquals(1, executions.get());
+        assertEquals(0, readCoalescer.inFlightCount());
+        // Nothing is kept once the read completes
+        assertEquals("result", readCoalescer.execute("key", read));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void testFailureIsSharedAndNotRemembered() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        QueryTimeoutException failure = new QueryTimeoutException("Query timed out");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<String> leader = executor.submit(() -> readCoalescer.<String>execute("key", () -> {
+            await(release);
+            throw failure;
+        }));
+        waitUntilInFlight(1);
+        Future<String> follower = executor.submit(() -> readCoalescer.execute("key", () -> "not run"));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, leader::get).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, follower::get).getCause());
+        executor.shutdown();
+        assertEquals("retried", readCoalescer.execute("key", () -> "retried"));
+    }
+
+    @Test
+    public void testWaitingCallerTimesOut() throws Exception {
+        ReadCoalescer coalescer = new ReadCoalescer(true, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> leader = executor.submit(() -> coalescer.execute("key", () -> {
+            await(release);
+            return "result";
+        }));
+        while (coalescer.inFlightCount() == 0) {
+            Thread.sleep(1);
+        }
+
+        assertThrows(DatabaseAccessException.class, () -> coalescer.execute("key", () -> "not run"));
+        // The read that was waited for is not affected
+        release.countDown();
+        assertEquals("result", leader.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testWriteStopsSharingReadsInProgress() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> beforeWrite = executor.submit(() -> readCoalescer.execute("key", () -> {
+            await(release);
+            return "before write";
+        }));
+        waitUntilInFlight(1);
+
+        readCoalescer.onProductChanged(new ProductChangedEvent(1L, null));
+
+        assertEquals("after write", readCoalescer.execute("key", () -> "after write"));
+        release.countDown();
+        assertEquals("before write", beforeWrite.get());
+        executor.shutdown();
+    }
+
+    /**
+     * Sends waves of concurrent requests for the same product, and for the same product list, with and without
+     * coalescing. Without it, every request reads the database; with it, a wave only takes a few reads,
+     * however many requests it has.
+     */
+    @Test
+    public void testDatabaseReadsStayConstantAsConcurrentRequestsGrow() throws Exception {
+        int[] concurrencies = {1, 10, 100, 1000};
+        for (int concurrency : concurrencies) {
+            int productReads = runWave(concurrency, () -> productsManagerService.getProduct("123456"));
+            int listReads = runWave(concurrency, () -> productsManagerService.getAllProducts("price"));
+            // A read of the product and a read of its tags per execution, and a few executions at most
+            assertTrue(productReads <= 2 * 3, productReads + " reads for a product with " + concurrency + " concurrent requests");
+            assertTrue(listReads <= 2 * 3, listReads + " reads for the list with " + concurrency + " concurrent requests");
+        }
+
+        doAnswer(invocation -> {
+            requestsStarted.countDown();
+            return invocation.<Supplier<?>>getArgument(1).get();
+        }).when(readCoalescer).execute(anyString(), any());
+        int uncoalescedReads = runWave(100, () -> productsManagerService.getProduct("123456"));
+        assertEquals(2 * 100, uncoalescedReads);
+    }
+
+    /**
+     * Runs the request from the given number of threads at once, once they are all started.
+     *
+     * @return the number of database reads of the requests
+     */
+    private int runWave(int concurrency, Supplier<Object> request) throws Exception {
+        databaseReads.set(0);
+        requestsStarted = new CountDownLatch(concurrency);
+        CountDownLatch ready = new CountDownLatch(concurrency);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(executor.submit(() -> {
+                ready.countDown();
+                start.await();
+                return request.get();
+            }));
+        }
+        ready.await();
+        start.countDown();
+        for (Future<Object> future : futures) {
+            assertNotNull(future.get());
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        return databaseReads.get();
+    }
+
+    /**
+     * Holds a database read until every request of the wave has reached the coalescer, and then a while longer,
+     * so that the requests which just reached it join the read in progress.
+     */
+    private void awaitRequests() throws InterruptedException {
+        assertTrue(requestsStarted.await(10, TimeUnit.SECONDS));
+        Thread.sleep(READ_DELAY_MS);
+    }
+
+    private void waitUntilInFlight(int count) throws InterruptedException {
+        while (readCoalescer.inFlightCount() < count) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
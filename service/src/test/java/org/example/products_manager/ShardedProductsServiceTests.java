@@ -0,0 +1,341 @@
+package org.example.products_manager;
+
+import org.example.products_manager.exception.BarcodeAlreadyExistsException;
+import org.example.products_manager.exception.DatabaseAccessException;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.exception.ProductNotFoundException;
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChange;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.model.ProductMove;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.model.ProductResponse;
+import org.example.products_manager.repository.ProductChangeRepository;
+import org.example.products_manager.repository.ProductMoveRepository;
+import org.example.products_manager.repository.ShardedProductRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ShardedProductsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the sharding of the catalog over three embedded H2 databases.
+ * The contents of each shard are checked directly in its database; the repositories of the main datasource are mocks.
+ */
+@SpringJUnitConfig({ShardedProductsService.class, ShardedProductRepository.class, BarcodeLocks.class, NodeIdentity.class})
+@TestPropertySource(properties = {
+        "products.sharding.enabled=true",
+        "products.sharding.urls=" + ShardedProductsServiceTests.SHARD_0 + "," + ShardedProductsServiceTests.SHARD_1
+                + "," + ShardedProductsServiceTests.SHARD_2,
+        "spring.datasource.username=sa",
+        "spring.datasource.password="
+})
+@RecordApplicationEvents
+public class ShardedProductsServiceTests {
+
+    static final String SHARD_0 = "jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1";
+    static final String SHARD_1 = "jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1";
+    static final String SHARD_2 = "jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1";
+
+    private static final List<JdbcTemplate> SHARDS = List.of(connect(SHARD_0), connect(SHARD_1), connect(SHARD_2));
+
+    @Autowired
+    private ShardedProductsService shardedProductsService;
+
+    @Autowired
+    private ShardedProductRepository shardedProductRepository;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    @MockBean
+    private ProductChangeRepository productChangeRepository;
+
+    @MockBean
+    private ProductMoveRepository productMoveRepository;
+
+    @MockBean
+    private PriceHistoryWriter priceHistoryWriter;
+
+    @BeforeEach
+    public void setUp() {
+        when(productMoveRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        for (JdbcTemplate shard : SHARDS) {
+            shard.update("DELETE FROM product_tags");
+            shard.update("DELETE FROM products");
+        }
+    }
+
+    @Test
+    public void testProductsAreRoutedByBarcode() {
+        for (int i = 0; i < 30; i++) {
+            shardedProductsService.createProduct(new ProductRequest(String.valueOf(1000 + i), "Product " + i, null,
+                    null, (float) i, Arrays.asList("tag" + i % 3)));
+        }
+
+        boolean[] used = new boolean[SHARDS.size()];
+        for (int i = 0; i < 30; i++) {
+            String barcode = String.valueOf(1000 + i);
+            int shard = shardedProductRepository.shardOf(barcode);
+            used[shard] = true;
+            for (int other = 0; other < SHARDS.size(); other++) {
+                assertEquals(other == shard ? 1 : 0, countProducts(other, barcode));
+            }
+            assertEquals(Arrays.asList("tag" + i % 3), shardedProductsService.getProduct(barcode).getTags());
+        }
+        for (int shard = 0; shard < SHARDS.size(); shard++) {
+            assertTrue(used[shard], "No product was routed to shard " + shard);
+            List<String> tagNames = SHARDS.get(shard).queryForList("SELECT tag_name FROM tags", String.class);
+            assertTrue(tagNames.containsAll(Arrays.asList("tag0", "tag1", "tag2")), "Tags are missing from shard " + shard);
+        }
+    }
+
+    @Test
+    public void testGetAllProductsMergesShardsInOrder() {
+        List<String> names = Arrays.asList("banana", "Apple", null, "cherry", "apple", "Date", "elderberry", null);
+        List<Float> prices = Arrays.asList(3f, null, 1.5f, 3f, 7f, null, 0.5f, 2f);
+        for (int i = 0; i < 40; i++) {
+            shardedProductsService.createProduct(new ProductRequest(String.valueOf(5000 + i * 7), names.get(i % names.size()),
+                    "img" + (39 - i), i % 5 == 0 ? null : (float) (i % 4), prices.get(i % prices.size()), new ArrayList<>()));
+        }
+
+        List<CatalogEntry> entries = shardedProductsService.loadEntries();
+        assertEquals(40, entries.size());
+        for (int i = 1; i < entries.size(); i++) {
+            assertTrue(entries.get(i - 1).getId() < entries.get(i).getId());
+        }
+
+        assertOrder(entries, "id", Comparator.comparing(CatalogEntry::getId));
+        assertOrder(entries, "barcode", Comparator.comparing(CatalogEntry::getBarcode));
+        assertOrder(entries, "name", nullsFirst(CatalogEntry::getName, String.CASE_INSENSITIVE_ORDER));
+        assertOrder(entries, "image", nullsFirst(CatalogEntry::getImage, String.CASE_INSENSITIVE_ORDER));
+        assertOrder(entries, "rating", nullsFirst(CatalogEntry::getRating, Comparator.naturalOrder()));
+        assertOrder(entries, "price", nullsFirst(CatalogEntry::getPrice, Comparator.naturalOrder()));
+        assertThrows(InvalidQueryParameterException.class, () -> shardedProductsService.getAllProducts("tags"));
+    }
+
+    @Test
+    public void testUpdateAndDeleteWithinShard() {
+        shardedProductsService.createProduct(new ProductRequest("123456", "Milk", null, 4f, 5f, Arrays.asList("dairy")));
+
+        ProductResponse updated = shardedProductsService.updateProduct("123456",
+                new ProductRequest(null, "Skimmed milk", null, null, 4.5f, Arrays.asList("dairy", "light")));
+        assertEquals("Skimmed milk", updated.getName());
+        assertEquals(4f, updated.getRating());
+        assertEquals(Arrays.asList("dairy", "light"), shardedProductsService.getProduct("123456").getTags());
+
+        shardedProductsService.deleteProduct("123456");
+        assertThrows(ProductNotFoundException.class, () -> shardedProductsService.getProduct("123456"));
+        assertThrows(ProductNotFoundException.class, () -> shardedProductsService.deleteProduct("123456"));
+        int shard = shardedProductRepository.shardOf("123456");
+        assertEquals(0, SHARDS.get(shard).queryForObject("SELECT COUNT(*) FROM product_tags", Integer.class));
+    }
+
+    @Test
+    public void testCreateExistingBarcodeFails() {
+        shardedProductsService.createProduct(new ProductRequest("123456", "Milk", null, null, null, new ArrayList<>()));
+
+        assertThrows(BarcodeAlreadyExistsException.class, () -> shardedProductsService.createProduct(
+                new ProductRequest("123456", "Other milk", null, null, null, new ArrayList<>())));
+    }
+
+    @Test
+    public void testBarcodeChangeMovesProductToOtherShard() {
+        String[] barcodes = barcodesOnDifferentShards();
+        String barcode = barcodes[0];
+        String newBarcode = barcodes[1];
+        shardedProductsService.createProduct(new ProductRequest(barcode, "Milk", "milk.jpg", 4f, 5f, Arrays.asList("dairy", "fresh")));
+        Long oldId = lastEvent().getProductId();
+
+        ProductResponse moved = shardedProductsService.updateProduct(barcode,
+                new ProductRequest(newBarcode, "Skimmed milk", null, null, null, null));
+
+        assertEquals(newBarcode, moved.getBarcode());
+        ProductResponse stored = shardedProductsService.getProduct(newBarcode);
+        assertEquals("Skimmed milk", stored.getName());
+        assertEquals("milk.jpg", stored.getImage());
+        assertEquals(4f, stored.getRating());
+        assertEquals(5f, stored.getPrice());
+        assertEquals(Arrays.asList("dairy", "fresh"), stored.getTags());
+        assertThrows(ProductNotFoundException.class, () -> shardedProductsService.getProduct(barcode));
+        assertEquals(0, countProducts(shardedProductRepository.shardOf(barcode), barcode));
+        assertEquals(1, countProducts(shardedProductRepository.shardOf(newBarcode), newBarcode));
+
+        List<ProductChangedEvent> events = applicationEvents.stream(ProductChangedEvent.class).toList();
+        ProductChangedEvent created = events.get(events.size() - 2);
+        ProductChangedEvent deleted = events.get(events.size() - 1);
+        assertEquals(newBarcode, created.getEntry().getBarcode());
+        assertEquals(shardedProductRepository.shardOf(newBarcode), ShardedProductRepository.shardOfId(created.getProductId()));
+        assertTrue(deleted.isDeletion());
+        assertEquals(oldId, deleted.getProductId());
+
+        ArgumentCaptor<ProductMove> move = ArgumentCaptor.forClass(ProductMove.class);
+        verify(productMoveRepository).save(move.capture());
+        verify(productMoveRepository).delete(move.getValue());
+        assertEquals(oldId, move.getValue().getProductId());
+        assertEquals(created.getProductId(), move.getValue().getCopyId());
+        assertEquals(Arrays.asList(oldId, created.getProductId()), lastRecordedChanges());
+        verify(priceHistoryWriter).moveHistory(oldId, created.getProductId());
+    }
+
+    @Test
+    public void testFailedMoveLeavesProductInPlace() {
+        String[] barcodes = barcodesOnDifferentShards();
+        String barcode = barcodes[0];
+        String newBarcode = barcodes[1];
+        shardedProductsService.createProduct(new ProductRequest(barcode, "Milk", null, null, null, Arrays.asList("dairy")));
+        clearInvocations(productChangeRepository);
+        // A row referencing the product prevents its deletion from its current shard, after it was copied to the other one
+        JdbcTemplate shard = SHARDS.get(shardedProductRepository.shardOf(barcode));
+        shard.update("CREATE TABLE product_holds (product_id BIGINT REFERENCES products(id))");
+        try {
+            shard.update("INSERT INTO product_holds SELECT id FROM products WHERE barcode = ?", barcode);
+
+            assertThrows(DatabaseAccessException.class, () -> shardedProductsService.updateProduct(barcode,
+                    new ProductRequest(newBarcode, null, null, null, null, Arrays.asList("dairy", "moved"))));
+        } finally {
+            shard.update("DROP TABLE product_holds");
+        }
+
+        // Neither shard committed, so nothing is left to undo
+        assertEquals(Arrays.asList("dairy"), shardedProductsService.getProduct(barcode).getTags());
+        assertThrows(ProductNotFoundException.class, () -> shardedProductsService.getProduct(newBarcode));
+        assertEquals(0, countProducts(shardedProductRepository.shardOf(newBarcode), newBarcode));
+        verify(productMoveRepository).delete(any());
+        verify(productChangeRepository, never()).saveAll(any());
+        // The new tag was created in the current shard in a transaction of its own, which was not rolled back
+        assertEquals(1, shard.queryForObject("SELECT COUNT(*) FROM tags WHERE tag_name = 'moved'", Integer.class));
+    }
+
+    @Test
+    public void testUnfinishedMoveIsUndoneOnStartup() {
+        String[] barcodes = barcodesOnDifferentShards();
+        shardedProductsService.createProduct(new ProductRequest(barcodes[0], "Milk", null, null, null, Arrays.asList("dairy")));
+        long productId = lastEvent().getProductId();
+        // The state left when the shard of the copy committed, but not the shard of the product
+        int newShard = shardedProductRepository.shardOf(barcodes[1]);
+        long copyId = shardedProductRepository.inTransaction(newShard, status -> shardedProductRepository.insert(newShard,
+                new CatalogEntry(null, barcodes[1], "Milk", null, null, null, Arrays.asList("dairy"))));
+        ProductMove move = new ProductMove(1L, productId, copyId, Instant.now());
+        when(productMoveRepository.findAll()).thenReturn(List.of(move));
+
+        shardedProductsService.reconcileMoves();
+
+        assertEquals("Milk", shardedProductsService.getProduct(barcodes[0]).getName());
+        assertThrows(ProductNotFoundException.class, () -> shardedProductsService.getProduct(barcodes[1]));
+        assertTrue(lastEvent().isDeletion());
+        assertEquals(copyId, lastEvent().getProductId());
+        verify(productMoveRepository).delete(move);
+    }
+
+    @Test
+    public void testChangesAreRecordedInTheMainDatasource() {
+        shardedProductsService.createProduct(new ProductRequest("123456", "Milk", null, 4f, 5f, Arrays.asList("dairy")));
+        long productId = lastEvent().getProductId();
+        assertEquals(List.of(productId), lastRecordedChanges());
+        verify(priceHistoryWriter).record(productId, 5f, 4f);
+
+        shardedProductsService.updateProduct("123456", new ProductRequest(null, "Skimmed milk", null, null, null, null));
+        verify(productChangeRepository, times(2)).saveAll(any());
+        verify(priceHistoryWriter, times(1)).record(any(), any(), any());
+
+        shardedProductsService.updateProduct("123456", new ProductRequest(null, null, null, null, 4.5f, null));
+        verify(priceHistoryWriter).record(productId, 4.5f, 4f);
+        assertEquals(productId, shardedProductsService.getProductId("123456"));
+
+        shardedProductsService.deleteProduct("123456");
+        assertEquals(List.of(productId), lastRecordedChanges());
+        assertThrows(ProductNotFoundException.class, () -> shardedProductsService.getProductId("123456"));
+    }
+
+    @Test
+    public void testCreateWithoutPriceOrRatingRecordsNoHistory() {
+        shardedProductsService.createProduct(new ProductRequest("123456", "Milk", null, null, null, new ArrayList<>()));
+
+        verify(priceHistoryWriter, never()).record(any(), any(), any());
+    }
+
+    @Test
+    public void testMoveToExistingBarcodeFails() {
+        String[] barcodes = barcodesOnDifferentShards();
+        shardedProductsService.createProduct(new ProductRequest(barcodes[0], "Milk", null, null, null, new ArrayList<>()));
+        shardedProductsService.createProduct(new ProductRequest(barcodes[1], "Bread", null, null, null, new ArrayList<>()));
+
+        assertThrows(BarcodeAlreadyExistsException.class, () -> shardedProductsService.updateProduct(barcodes[0],
+                new ProductRequest(barcodes[1], null, null, null, null, null)));
+        assertEquals("Milk", shardedProductsService.getProduct(barcodes[0]).getName());
+        assertEquals("Bread", shardedProductsService.getProduct(barcodes[1]).getName());
+    }
+
+    private void assertOrder(List<CatalogEntry> entries, String sortBy, Comparator<CatalogEntry> comparator) {
+        List<String> expected = entries.stream()
+                .sorted(comparator.thenComparing(CatalogEntry::getId))
+                .map(CatalogEntry::getBarcode)
+                .collect(Collectors.toList());
+        List<String> actual = shardedProductsService.getAllProducts(sortBy).stream()
+                .map(ProductResponse::getBarcode)
+                .collect(Collectors.toList());
+        assertEquals(expected, actual, "Products sorted by " + sortBy);
+    }
+
+    private static <T> Comparator<CatalogEntry> nullsFirst(Function<CatalogEntry, T> field, Comparator<T> comparator) {
+        return Comparator.comparing(field, Comparator.nullsFirst(comparator));
+    }
+
+    private String[] barcodesOnDifferentShards() {
+        String barcode = "700001";
+        for (int i = 700002; ; i++) {
+            if (shardedProductRepository.shardOf(String.valueOf(i)) != shardedProductRepository.shardOf(barcode)) {
+                return new String[]{barcode, String.valueOf(i)};
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> lastRecordedChanges() {
+        ArgumentCaptor<List<ProductChange>> changes = ArgumentCaptor.forClass(List.class);
+        verify(productChangeRepository, atLeastOnce()).saveAll(changes.capture());
+        return changes.getValue().stream().map(ProductChange::getProductId).collect(Collectors.toList());
+    }
+
+    private ProductChangedEvent lastEvent() {
+        List<ProductChangedEvent> events = applicationEvents.stream(ProductChangedEvent.class).toList();
+        return events.get(events.size() - 1);
+    }
+
+    private static int countProducts(int shard, String barcode) {
+        return SHARDS.get(shard).queryForObject("SELECT COUNT(*) FROM products WHERE barcode = ?", Integer.class, barcode);
+    }
+
+    private static JdbcTemplate connect(String url) {
+        return new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+    }
+}
@@ -0,0 +1,249 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.service.SimilarProductsIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the lookup of similar products: ranking by similarity of tags, and maintenance as products change.
+ * Unless stated otherwise, the index uses 64 bands of a single row, so that every product sharing a tag with
+ * another one is almost certainly one of its candidates, and the results are exact.
+ */
+public class SimilarProductsIndexTests {
+
+    private SimilarProductsIndex similarProductsIndex;
+
+    @BeforeEach
+    public void setup() {
+        similarProductsIndex = new SimilarProductsIndex(64, 1, 1000);
+        similarProductsIndex.rebuild(Arrays.asList(
+                entry(1L, "fruit", "fresh", "organic"),
+                entry(2L, "fruit", "fresh", "organic"),
+                entry(3L, "fruit", "fresh", "frozen"),
+                entry(4L, "fruit", "dairy"),
+                entry(5L, "bakery", "bread"),
+                entry(6L)
+        ));
+    }
+
+    @Test
+    public void testFindSimilarRanksBySimilarity() {
+        assertEquals(List.of("2:1.0", "3:0.5", "4:0.25"), describe(similarProductsIndex.findSimilar("1", 10)));
+        assertEquals(List.of("2:1.0"), describe(similarProductsIndex.findSimilar("1", 1)));
+    }
+
+    @Test
+    public void testProductWithoutSharedTagsHasNoSimilarProducts() {
+        assertEquals(List.of(), describe(similarProductsIndex.findSimilar("5", 10)));
+        assertEquals(List.of(), describe(similarProductsIndex.findSimilar("6", 10)));
+        assertNull(similarProductsIndex.findSimilar("7", 10));
+    }
+
+    @Test
+    public void testTagsWithTheSameHashAreNotShared() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        similarProductsIndex.rebuild(Arrays.asList(
+                entry(1L, "Aa", "fruit"),
+                entry(2L, "BB", "fruit"),
+                entry(3L, "BB")
+        ));
+
+        assertEquals(List.of("2:0.3333333333333333"), describe(similarProductsIndex.findSimilar("1", 10)));
+        assertEquals(List.of("2:0.5"), describe(similarProductsIndex.findSimilar("3", 10)));
+    }
+
+    @Test
+    public void testSimilarProductsFollowProductChanges() {
+        similarProductsIndex.onProductChanged(new ProductChangedEvent(5L, entry(5L, "fruit", "fresh", "organic")));
+        similarProductsIndex.onProductChanged(new ProductChangedEvent(2L, null));
+        similarProductsIndex.onProductChanged(new ProductChangedEvent(3L,
+                new CatalogEntry(3L, "30", "Product 3", null, null, null, Arrays.asList("fruit", "fresh", "frozen"))));
+
+        assertEquals(List.of("5:1.0", "3:0.5", "4:0.25"), describe(similarProductsIndex.findSimilar("1", 10)));
+        assertNull(similarProductsIndex.findSimilar("2", 10));
+        assertNull(similarProductsIndex.findSimilar("3", 10));
+        assertEquals(List.of("1:0.5", "5:0.5", "4:0.25"), describe(similarProductsIndex.findSimilar("30", 10)));
+    }
+
+    @Test
+    public void testRandomChangesMatchRebuild() {
+        similarProductsIndex = new SimilarProductsIndex(20, 3, 1000);
+        Random random = new Random(42);
+        List<CatalogEntry> catalog = new ArrayList<>();
+        for (long id = 1; id <= 300; id++) {
+            catalog.add(randomEntry(random, id));
+        }
+        long nextId = 301;
+        similarProductsIndex.rebuild(catalog);
+        for (int i = 0; i < 3000; i++) {
+            int position = random.nextInt(catalog.size());
+            long id = catalog.get(position).getId();
+            if (random.nextInt(5) == 0) {
+                // Deleted products are replaced by new ones, so that the catalog does not run out of products
+                catalog.remove(position);
+                similarProductsIndex.onProductChanged(new ProductChangedEvent(id, null));
+                CatalogEntry created = randomEntry(random, nextId++);
+                catalog.add(created);
+                similarProductsIndex.onProductChanged(new ProductChangedEvent(created.getId(), created));
+            } else {
+                CatalogEntry changed = randomEntry(random, id);
+                catalog.set(position, changed);
+                similarProductsIndex.onProductChanged(new ProductChangedEvent(id, changed));
+            }
+        }
+
+        SimilarProductsIndex rebuilt = new SimilarProductsIndex(20, 3, 1000);
+        rebuilt.rebuild(catalog);
+        assertEquals(rebuilt.size(), similarProductsIndex.size());
+        for (CatalogEntry entry : catalog) {
+            assertEquals(describe(rebuilt.findSimilar(entry.getBarcode(), 20)),
+                    describe(similarProductsIndex.findSimilar(entry.getBarcode(), 20)));
+        }
+    }
+
+    /**
+     * Compares the lookups of the index, with its default configuration, to an exact computation of the similarity
+     * of every product, on a catalog of a million products. Products are grouped by themes, sharing most of their tags
+     * with the other products of their theme, plus an occasional unrelated tag.
+     * Accuracy is the total similarity of the products found by the index over the total similarity of the actual
+     * most similar products, by rank.
+     */
+    @Test
+    @Tag("benchmark")
+    public void benchmarkFindSimilar() {
+        int products = 1_000_000;
+        int themes = 20_000;
+        int tagsPerTheme = 6;
+        Random random = new Random(42);
+        String[] tagNames = new String[5_000];
+        for (int i = 0; i < tagNames.length; i++) {
+            tagNames[i] = "tag" + i;
+        }
+        int[][] themeTags = new int[themes][tagsPerTheme];
+        for (int[] tags : themeTags) {
+            for (int i = 0; i < tagsPerTheme; i++) {
+                tags[i] = random.nextInt(tagNames.length);
+            }
+        }
+        List<CatalogEntry> catalog = new ArrayList<>(products);
+        int[][] tagHashes = new int[products][];
+        for (int id = 0; id < products; id++) {
+            int[] theme = themeTags[random.nextInt(themes)];
+            List<String> tags = new ArrayList<>();
+            for (int tag : theme) {
+                if (random.nextInt(4) != 0) {
+                    tags.add(tagNames[tag]);
+                }
+            }
+            if (random.nextInt(3) == 0) {
+                tags.add(tagNames[random.nextInt(tagNames.length)]);
+            }
+            catalog.add(new CatalogEntry((long) id, String.valueOf(id), null, null, null, null, tags));
+            tagHashes[id] = tags.stream().mapToInt(String::hashCode).distinct().sorted().toArray();
+        }
+
+        SimilarProductsIndex index = new SimilarProductsIndex(20, 3, 2000);
+        long start = System.nanoTime();
+        index.rebuild(catalog);
+        System.out.printf("Indexed %d products in %d ms%n", index.size(), (System.nanoTime() - start) / 1_000_000);
+
+        int queries = 2_000;
+        int limit = 10;
+        long[] latenciesNs = new long[queries];
+        int[] queriedIds = new int[queries];
+        List<List<SimilarProductsIndex.Match>> results = new ArrayList<>(queries);
+        for (int i = 0; i < queries; i++) {
+            queriedIds[i] = random.nextInt(products);
+            start = System.nanoTime();
+            results.add(index.findSimilar(String.valueOf(queriedIds[i]), limit));
+            latenciesNs[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latenciesNs);
+
+        int exactQueries = 50;
+        double foundSimilarity = 0;
+        double bestSimilarity = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < exactQueries; i++) {
+            List<SimilarProductsIndex.Match> found = results.get(i);
+            double[] best = exactTopSimilarities(tagHashes, queriedIds[i], limit);
+            for (int rank = 0; rank < limit; rank++) {
+                bestSimilarity += best[rank];
+                foundSimilarity += rank < found.size() ? found.get(rank).getSimilarity() : 0;
+            }
+        }
+        long exactNs = (System.nanoTime() - start) / exactQueries;
+
+        System.out.printf("Index: p50 %.3f ms, p99 %.3f ms, max %.3f ms per lookup%n",
+                latenciesNs[queries / 2] / 1e6, latenciesNs[queries * 99 / 100] / 1e6, latenciesNs[queries - 1] / 1e6);
+        System.out.printf("Exact: %.1f ms per lookup%n", exactNs / 1e6);
+        System.out.printf("Accuracy: %.3f of the similarity of the exact top %d%n", foundSimilarity / bestSimilarity, limit);
+        assertTrue(foundSimilarity / bestSimilarity > 0.9);
+        assertTrue(latenciesNs[queries / 2] < exactNs);
+    }
+
+    /**
+     * @return the similarities of the most similar products to the given one, in descending order
+     */
+    private static double[] exactTopSimilarities(int[][] tagHashes, int id, int limit) {
+        double[] best = new double[limit];
+        for (int other = 0; other < tagHashes.length; other++) {
+            if (other == id) {
+                continue;
+            }
+            double similarity = jaccard(tagHashes[id], tagHashes[other]);
+            if (similarity > best[limit - 1]) {
+                int position = limit - 1;
+                while (position > 0 && best[position - 1] < similarity) {
+                    best[position] = best[position - 1];
+                    position--;
+                }
+                best[position] = similarity;
+            }
+        }
+        return best;
+    }
+
+    private static double jaccard(int[] a, int[] b) {
+        int shared = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared == 0 ? 0 : (double) shared / (a.length + b.length - shared);
+    }
+
+    private static CatalogEntry entry(long id, String... tags) {
+        return new CatalogEntry(id, String.valueOf(id), "Product " + id, null, null, null, Arrays.asList(tags));
+    }
+
+    private static CatalogEntry randomEntry(Random random, long id) {
+        List<String> tags = new ArrayList<>();
+        int count = random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            tags.add("tag" + random.nextInt(30));
+        }
+        return new CatalogEntry(id, String.valueOf(id), "Product " + id, null, null, null, tags);
+    }
+
+    private static List<String> describe(List<SimilarProductsIndex.Match> matches) {
+        return matches.stream().map(match -> match.getProductId() + ":" + match.getSimilarity()).toList();
+    }
+}
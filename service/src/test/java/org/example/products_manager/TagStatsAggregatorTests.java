@@ -0,0 +1,150 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.MetricStatsResponse;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.model.TagStatsResponse;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the incremental maintenance of the tag statistics.
+ * After any sequence of changes, the incrementally maintained statistics must be equal to the ones
+ * computed by a full rebuild from the resulting catalog.
+ */
+public class TagStatsAggregatorTests {
+
+    private TagStatsAggregator tagStatsAggregator;
+
+    @BeforeEach
+    public void setup() {
+        tagStatsAggregator = new TagStatsAggregator(10, 1);
+    }
+
+    @Test
+    public void testRebuild() {
+        tagStatsAggregator.rebuild(Arrays.asList(
+                new CatalogEntry(1L, "1", "A", null, 4.5f, 12f, Arrays.asList("tag1", "tag2")),
+                new CatalogEntry(2L, "2", "B", null, 3.5f, 25f, Arrays.asList("tag1")),
+                new CatalogEntry(3L, "3", "C", null, null, null, Arrays.asList("tag1"))
+        ));
+
+        List<TagStatsResponse> stats = tagStatsAggregator.getStatsByTag();
+
+        assertEquals(2, stats.size());
+        TagStatsResponse tag1 = stats.get(0);
+        assertEquals("tag1", tag1.getTag());
+        assertEquals(3, tag1.getProductCount());
+        assertEquals(2, tag1.getPrice().getCount());
+        assertEquals(12f, tag1.getPrice().getMin());
+        assertEquals(25f, tag1.getPrice().getMax());
+        assertEquals(18.5, tag1.getPrice().getAvg(), 1e-6);
+        assertEquals(Map.of(10.0, 1L, 20.0, 1L), tag1.getPrice().getHistogram());
+        assertEquals(Map.of(3.0, 1L, 4.0, 1L), tag1.getRating().getHistogram());
+    }
+
+    @Test
+    public void testRepeatedTagCountsTheProductOnce() {
+        tagStatsAggregator.rebuild(Arrays.asList(
+                new CatalogEntry(1L, "1", "A", null, 4.5f, 12f, Arrays.asList("tag1", "tag1")),
+                new CatalogEntry(2L, "2", "B", null, 3.5f, 25f, Arrays.asList("tag1"))
+        ));
+        assertEquals(2, tagStatsAggregator.getStatsByTag().get(0).getProductCount());
+        assertEquals(2, tagStatsAggregator.getStatsByTag().get(0).getPrice().getCount());
+
+        tagStatsAggregator.onProductChanged(new ProductChangedEvent(1L, null));
+
+        TagStatsResponse tag1 = tagStatsAggregator.getStatsByTag().get(0);
+        assertEquals(1, tag1.getProductCount());
+        assertEquals(25f, tag1.getPrice().getMin());
+        assertEquals(Map.of(20.0, 1L), tag1.getPrice().getHistogram());
+    }
+
+    @Test
+    public void testDeleteRetractsMinAndMax() {
+        tagStatsAggregator.rebuild(Arrays.asList(
+                new CatalogEntry(1L, "1", "A", null, 4.5f, 12f, Arrays.asList("tag1")),
+                new CatalogEntry(2L, "2", "B", null, 3.5f, 25f, Arrays.asList("tag1"))
+        ));
+
+        tagStatsAggregator.onProductChanged(new ProductChangedEvent(2L, null));
+
+        MetricStatsResponse price = tagStatsAggregator.getStatsByTag().get(0).getPrice();
+        assertEquals(12f, price.getMax());
+        assertEquals(1, price.getCount());
+
+        tagStatsAggregator.onProductChanged(new ProductChangedEvent(1L, null));
+        assertTrue(tagStatsAggregator.getStatsByTag().isEmpty());
+    }
+
+    @Test
+    public void testTagWithoutPrices() {
+        tagStatsAggregator.rebuild(Arrays.asList(new CatalogEntry(1L, "1", "A", null, null, null, Arrays.asList("tag1"))));
+
+        MetricStatsResponse price = tagStatsAggregator.getStatsByTag().get(0).getPrice();
+        assertEquals(0, price.getCount());
+        assertNull(price.getMin());
+        assertNull(price.getAvg());
+    }
+
+    @Test
+    public void testIncrementalChangesMatchRebuild() {
+        Random random = new Random(42);
+        Map<Long, CatalogEntry> catalog = new HashMap<>();
+
+        for (int i = 0; i < 5_000; i++) {
+            long id = 1 + random.nextInt(300);
+            if (random.nextInt(5) == 0) {
+                catalog.remove(id);
+                tagStatsAggregator.onProductChanged(new ProductChangedEvent(id, null));
+            } else {
+                List<String> tags = new ArrayList<>();
+                for (int t = random.nextInt(4); t > 0; t--) {
+                    tags.add("tag" + random.nextInt(12));
+                }
+                Float price = random.nextInt(10) == 0 ? null : random.nextInt(10_000) / 100f;
+                Float rating = random.nextInt(10) == 0 ? null : random.nextInt(50) / 10f;
+                CatalogEntry entry = new CatalogEntry(id, String.valueOf(id), "Product " + id, null, rating, price, tags);
+                catalog.put(id, entry);
+                tagStatsAggregator.onProductChanged(new ProductChangedEvent(id, entry));
+            }
+        }
+
+        TagStatsAggregator rebuilt = new TagStatsAggregator(10, 1);
+        rebuilt.rebuild(new ArrayList<>(catalog.values()));
+
+        List<TagStatsResponse> expected = rebuilt.getStatsByTag();
+        List<TagStatsResponse> actual = tagStatsAggregator.getStatsByTag();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTag(), actual.get(i).getTag());
+            assertEquals(expected.get(i).getProductCount(), actual.get(i).getProductCount());
+            assertMetricEquals(expected.get(i).getPrice(), actual.get(i).getPrice());
+            assertMetricEquals(expected.get(i).getRating(), actual.get(i).getRating());
+        }
+    }
+
+    private static void assertMetricEquals(MetricStatsResponse expected, MetricStatsResponse actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getMin(), actual.getMin());
+        assertEquals(expected.getMax(), actual.getMax());
+        if (expected.getAvg() == null) {
+            assertNull(actual.getAvg());
+        } else {
+            assertEquals(expected.getAvg(), actual.getAvg(), 1e-3);
+        }
+        assertEquals(expected.getHistogram(), actual.getHistogram());
+    }
+}
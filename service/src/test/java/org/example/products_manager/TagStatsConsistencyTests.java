@@ -0,0 +1,160 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.BulkUpdateRequest;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.model.TagStatsResponse;
+import org.example.products_manager.repository.ProductRepository;
+import org.example.products_manager.repository.ProductTagRepository;
+import org.example.products_manager.repository.ShardedProductRepository;
+import org.example.products_manager.repository.TagRepository;
+import org.example.products_manager.service.BarcodeLocks;
+import org.example.products_manager.service.CatalogSnapshotFile;
+import org.example.products_manager.service.CatalogSnapshotHolder;
+import org.example.products_manager.service.CatalogSynchronizer;
+import org.example.products_manager.service.NodeIdentity;
+import org.example.products_manager.service.PriceHistoryWriter;
+import org.example.products_manager.service.ProductRangeIndex;
+import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.ReadCoalescer;
+import org.example.products_manager.service.ShardedProductsService;
+import org.example.products_manager.service.SimilarProductsIndex;
+import org.example.products_manager.service.TagStatsAggregator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the service against an embedded database and checks, after every write, that the incrementally maintained
+ * tag statistics are equal to the ones recomputed by SQL over the products and product_tags tables.
+ * Test methods are not transactional, so that the service commits and the change events are delivered.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "products.catalog-file.path="
+})
+@Import({ProductsManagerService.class, CatalogSynchronizer.class, TagStatsAggregator.class, ProductRangeIndex.class,
+        CatalogSnapshotHolder.class, CatalogSnapshotFile.class, BarcodeLocks.class, NodeIdentity.class,
+        ShardedProductsService.class, ShardedProductRepository.class, SimilarProductsIndex.class,
+        ReadCoalescer.class, PriceHistoryWriter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class TagStatsConsistencyTests {
+
+    // The statistics of each tag over the distinct products associated with it
+    private static final String TAG_STATISTICS_SQL =
+            "SELECT t.tag_name, COUNT(p.id), COUNT(p.price), MIN(p.price), MAX(p.price), AVG(p.price), "
+                    + "COUNT(p.rating), MIN(p.rating), MAX(p.rating), AVG(p.rating) "
+                    + "FROM (SELECT DISTINCT product_id, tag_id FROM product_tags) pt "
+                    + "JOIN tags t ON t.id = pt.tag_id JOIN products p ON p.id = pt.product_id "
+                    + "GROUP BY t.tag_name ORDER BY t.tag_name";
+
+    @Autowired
+    private ProductsManagerService productsManagerService;
+
+    @Autowired
+    private CatalogSynchronizer catalogSynchronizer;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductTagRepository productTagRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void cleanup() {
+        productTagRepository.deleteAll();
+        productRepository.deleteAll();
+        tagRepository.deleteAll();
+    }
+
+    @Test
+    public void testStatsMatchSqlAfterEveryWrite() {
+        productsManagerService.createProduct(new ProductRequest("111", "Lipstick", null, 4.5f, 12.5f, Arrays.asList("beauty", "lipstick")));
+        productsManagerService.createProduct(new ProductRequest("222", "Mascara", null, 3.0f, 30f, Arrays.asList("beauty", "mascara")));
+        catalogSynchronizer.rebuild();
+        assertStatsMatchSql();
+
+        productsManagerService.createProduct(new ProductRequest("333", "Perfume", null, null, 99.9f, Arrays.asList("beauty", "perfumes")));
+        assertStatsMatchSql();
+
+        productsManagerService.updateProduct("222", new ProductRequest("222", "Mascara", null, 4.0f, 8f, Arrays.asList("mascara", "sale")));
+        assertStatsMatchSql();
+
+        productsManagerService.updateProduct("111", new ProductRequest("111", "Lipstick", null, null, 14f, null));
+        assertStatsMatchSql();
+
+        BulkUpdateRequest discount = new BulkUpdateRequest("beauty", null, null, null, null, null, "price", "multiply", 80f);
+        productsManagerService.bulkUpdate(discount);
+        assertStatsMatchSql();
+
+        productsManagerService.deleteProduct("333");
+        assertStatsMatchSql();
+    }
+
+    @Test
+    public void testRepeatedTagCountsTheProductOnce() {
+        productsManagerService.createProduct(new ProductRequest("111", "Lipstick", null, 4.5f, 12.5f, Arrays.asList("beauty", "beauty")));
+        catalogSynchronizer.rebuild();
+        assertStatsMatchSql();
+        assertEquals(1, productsManagerService.getStatsByTag().get(0).getProductCount());
+
+        productsManagerService.createProduct(new ProductRequest("222", "Mascara", null, 3.0f, 30f, Arrays.asList("beauty")));
+        productsManagerService.updateProduct("111", new ProductRequest("111", "Lipstick", null, 4.5f, 10f, Arrays.asList("sale", "beauty", "sale")));
+        assertStatsMatchSql();
+        assertEquals(2, productsManagerService.getStatsByTag().get(0).getProductCount());
+    }
+
+    private void assertStatsMatchSql() {
+        List<Object[]> expected = jdbcTemplate.query(TAG_STATISTICS_SQL, (rs, rowNum) -> {
+            Object[] row = new Object[10];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = rs.getObject(i + 1);
+            }
+            return row;
+        });
+        List<TagStatsResponse> actual = productsManagerService.getStatsByTag();
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Object[] row = expected.get(i);
+            TagStatsResponse stats = actual.get(i);
+            assertEquals(row[0], stats.getTag());
+            assertEquals(((Number) row[1]).longValue(), stats.getProductCount());
+            assertEquals(((Number) row[2]).longValue(), stats.getPrice().getCount());
+            assertEquals(asFloat(row[3]), stats.getPrice().getMin());
+            assertEquals(asFloat(row[4]), stats.getPrice().getMax());
+            assertAverageEquals(row[5], stats.getPrice().getAvg());
+            assertEquals(((Number) row[6]).longValue(), stats.getRating().getCount());
+            assertEquals(asFloat(row[7]), stats.getRating().getMin());
+            assertEquals(asFloat(row[8]), stats.getRating().getMax());
+            assertAverageEquals(row[9], stats.getRating().getAvg());
+        }
+    }
+
+    private static Float asFloat(Object value) {
+        return value == null ? null : ((Number) value).floatValue();
+    }
+
+    private static void assertAverageEquals(Object expected, Double actual) {
+        if (expected == null) {
+            assertEquals(null, actual);
+        } else {
+            assertEquals(((Number) expected).doubleValue(), actual, 1e-3);
+        }
+    }
+}
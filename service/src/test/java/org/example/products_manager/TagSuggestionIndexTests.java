@@ -0,0 +1,165 @@
+package org.example.products_manager;
+
+import org.example.products_manager.model.CatalogEntry;
+import org.example.products_manager.model.ProductChangedEvent;
+import org.example.products_manager.model.TagSuggestion;
+import org.example.products_manager.service.TagSuggestionIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the tag suggestions: prefix matching, ranking by product count, and maintenance as products change.
+ */
+public class TagSuggestionIndexTests {
+
+    private TagSuggestionIndex tagSuggestionIndex;
+
+    @BeforeEach
+    public void setup() {
+        tagSuggestionIndex = new TagSuggestionIndex();
+        tagSuggestionIndex.rebuild(Arrays.asList(
+                entry(1L, "fruit", "fresh", "Frozen"),
+                entry(2L, "fruit", "fresh"),
+                entry(3L, "fruit", "dairy"),
+                entry(4L, "fries")
+        ));
+    }
+
+    @Test
+    public void testSuggestRanksByProductCount() {
+        assertEquals(List.of("fruit:3", "fresh:2", "fries:1", "Frozen:1"), describe(tagSuggestionIndex.suggest("fr", 10)));
+    }
+
+    @Test
+    public void testSuggestIgnoresCase() {
+        assertEquals(List.of("Frozen:1"), describe(tagSuggestionIndex.suggest("FRO", 10)));
+    }
+
+    @Test
+    public void testSuggestWithLimitAndEmptyPrefix() {
+        assertEquals(List.of("fruit:3", "fresh:2"), describe(tagSuggestionIndex.suggest("", 2)));
+        assertEquals(List.of(), describe(tagSuggestionIndex.suggest("x", 10)));
+    }
+
+    @Test
+    public void testSuggestionsFollowProductChanges() {
+        tagSuggestionIndex.onProductChanged(new ProductChangedEvent(4L, entry(4L, "fries", "frozen food")));
+        tagSuggestionIndex.onProductChanged(new ProductChangedEvent(5L, entry(5L, "fries")));
+        tagSuggestionIndex.onProductChanged(new ProductChangedEvent(1L, null));
+
+        assertEquals(List.of("fries:2", "fruit:2", "fresh:1", "frozen food:1"), describe(tagSuggestionIndex.suggest("fr", 10)));
+    }
+
+    @Test
+    public void testNewTagsAreMergedInOrder() {
+        tagSuggestionIndex.onProductChanged(new ProductChangedEvent(5L, entry(5L, "zucchini", "FRIED", "Apple", "frappe")));
+
+        assertEquals(List.of("fruit:3", "fresh:2", "Apple:1", "dairy:1", "frappe:1", "FRIED:1", "fries:1", "Frozen:1", "zucchini:1"),
+                describe(tagSuggestionIndex.suggest("", 100)));
+        assertEquals(List.of("fruit:3", "fresh:2", "frappe:1", "FRIED:1", "fries:1", "Frozen:1"),
+                describe(tagSuggestionIndex.suggest("FR", 100)));
+    }
+
+    @Test
+    public void testRepeatedChangeIsIdempotent() {
+        ProductChangedEvent event = new ProductChangedEvent(3L, entry(3L, "dairy"));
+        tagSuggestionIndex.onProductChanged(event);
+        tagSuggestionIndex.onProductChanged(event);
+
+        assertEquals(List.of("fruit:2"), describe(tagSuggestionIndex.suggest("fru", 10)));
+        assertEquals(List.of("dairy:1"), describe(tagSuggestionIndex.suggest("d", 10)));
+    }
+
+    @Test
+    public void testRandomChangesMatchRebuild() {
+        Random random = new Random(42);
+        List<CatalogEntry> catalog = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            catalog.add(randomEntry(random, id));
+        }
+        long nextId = 201;
+        tagSuggestionIndex.rebuild(catalog);
+        for (int i = 0; i < 2000; i++) {
+            int position = random.nextInt(catalog.size());
+            long id = catalog.get(position).getId();
+            if (random.nextInt(5) == 0) {
+                // Deleted products are replaced by new ones, so that the catalog does not run out of products
+                catalog.remove(position);
+                tagSuggestionIndex.onProductChanged(new ProductChangedEvent(id, null));
+                CatalogEntry created = randomEntry(random, nextId++);
+                catalog.add(created);
+                tagSuggestionIndex.onProductChanged(new ProductChangedEvent(created.getId(), created));
+            } else {
+                CatalogEntry changed = randomEntry(random, id);
+                catalog.set(position, changed);
+                tagSuggestionIndex.onProductChanged(new ProductChangedEvent(id, changed));
+            }
+        }
+
+        TagSuggestionIndex rebuilt = new TagSuggestionIndex();
+        rebuilt.rebuild(catalog);
+        for (String prefix : List.of("", "t", "tag1", "tag2", "tag35")) {
+            assertEquals(describe(rebuilt.suggest(prefix, 100)), describe(tagSuggestionIndex.suggest(prefix, 100)));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkSuggest() {
+        int tags = 100_000;
+        Random random = new Random(42);
+        List<CatalogEntry> catalog = new ArrayList<>();
+        for (long id = 0; id < 500_000; id++) {
+            // Skewed usage, so that a few tags are used by many products
+            int tag = (int) (tags * Math.pow(random.nextDouble(), 3));
+            catalog.add(entry(id, "tag" + tag, "tag" + random.nextInt(tags)));
+        }
+        tagSuggestionIndex.rebuild(catalog);
+        String[] prefixes = {"", "t", "tag", "tag1", "tag12", "tag123", "tag9999", "x"};
+
+        int queries = 200_000;
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            checksum += tagSuggestionIndex.suggest(prefixes[i % prefixes.length], 10).size();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%d tags, %d suggestions: %.1f us per query on average%n",
+                tagSuggestionIndex.size(), queries, elapsed / 1000.0 / queries);
+        for (String prefix : prefixes) {
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                checksum += tagSuggestionIndex.suggest(prefix, 10).size();
+            }
+            System.out.printf("  prefix '%s': %.1f us per query%n", prefix, (System.nanoTime() - start) / 1000.0 / 1000);
+        }
+        assertTrue(checksum > 0);
+    }
+
+    private static CatalogEntry entry(long id, String... tags) {
+        return new CatalogEntry(id, String.valueOf(id), "Product " + id, null, null, null, Arrays.asList(tags));
+    }
+
+    private static CatalogEntry randomEntry(Random random, long id) {
+        List<String> tags = new ArrayList<>();
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            tags.add("tag" + random.nextInt(50));
+        }
+        return new CatalogEntry(id, String.valueOf(id), "Product " + id, null, null, null, tags);
+    }
+
+    private static List<String> describe(List<TagSuggestion> suggestions) {
+        return suggestions.stream().map(s -> s.getTagName() + ":" + s.getProductCount()).toList();
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.products_manager;
+
+import org.example.products_manager.controller.TagsController;
+import org.example.products_manager.exception.InvalidQueryParameterException;
+import org.example.products_manager.model.TagSuggestion;
+import org.example.products_manager.service.TagSuggestionIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+/**
+ * Each test method in this class corresponds to a method in the TagsController.
+ * tagSuggestionIndex is mocked to isolate the testing to the controller only.
+ */
+public class TagsControllerTests {
+
+    @InjectMocks
+    private TagsController tagsController;
+
+    @Mock
+    private TagSuggestionIndex tagSuggestionIndex;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testSuggestTags() {
+        List<TagSuggestion> suggestions = Arrays.asList(new TagSuggestion("fruit", 3), new TagSuggestion("fresh", 2));
+
+        when(tagSuggestionIndex.suggest("fr", 5)).thenReturn(suggestions);
+        ResponseEntity<List<TagSuggestion>> response = tagsController.suggestTags(" fr ", 5);
+
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(suggestions, response.getBody());
+    }
+
+    @Test
+    public void testSuggestTagsInvalidLimit() {
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            tagsController.suggestTags("fr", 0);
+        });
+        assertThrows(InvalidQueryParameterException.class, () -> {
+            tagsController.suggestTags("fr", 1000);
+        });
+        verifyNoInteractions(tagSuggestionIndex);
+    }
+}
@@ -0,0 +1,165 @@
+package org.example.products_manager;
+
+import org.example.products_manager.exception.DatabaseAccessException;
+import org.example.products_manager.exception.IngestionQueueFullException;
+import org.example.products_manager.exception.InvalidProductRequestException;
+import org.example.products_manager.model.ProductRequest;
+import org.example.products_manager.model.WriteBehindStats;
+import org.example.products_manager.service.ProductsManagerService;
+import org.example.products_manager.service.WriteBehindUpdateQueue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the coalescing, bounding, batching and draining of the write-behind update queue.
+ * The flush interval is long, so batches are only written when the tests flush them explicitly.
+ * productsManagerService is mocked to isolate the testing to the queue only.
+ */
+public class WriteBehindUpdateQueueTests {
+
+    @Mock
+    private ProductsManagerService productsManagerService;
+
+    private WriteBehindUpdateQueue writeBehindUpdateQueue;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        writeBehindUpdateQueue = new WriteBehindUpdateQueue(productsManagerService, true, 3, 100, 60_000, 10);
+        writeBehindUpdateQueue.start();
+    }
+
+    @AfterEach
+    public void teardown() {
+        writeBehindUpdateQueue.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUpdatesOfSameProductAreCoalesced() {
+        writeBehindUpdateQueue.submit("111", new ProductRequest("111", "Product", null, null, 10f, null));
+        writeBehindUpdateQueue.submit("111", new ProductRequest("111", "Product", null, 4.5f, null, null));
+        writeBehindUpdateQueue.submit("111", new ProductRequest("111", "Product", null, null, 12f, Arrays.asList("sale")));
+
+        WriteBehindStats stats = writeBehindUpdateQueue.getStats();
+        assertEquals(1, stats.getPendingProducts());
+        assertEquals(3, stats.getAcceptedUpdates());
+        assertEquals(2, stats.getCoalescedUpdates());
+
+        assertEquals(1, writeBehindUpdateQueue.flushBatch());
+
+        ArgumentCaptor<Map<String, ProductRequest>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(productsManagerService, times(1)).applyUpdates(captor.capture());
+        ProductRequest merged = captor.getValue().get("111");
+        assertEquals(12f, merged.getPrice());
+        assertEquals(4.5f, merged.getRating());
+        assertEquals(Arrays.asList("sale"), merged.getTags());
+        assertEquals(0, writeBehindUpdateQueue.getStats().getPendingProducts());
+    }
+
+    @Test
+    public void testFullQueueRejectsNewProducts() {
+        writeBehindUpdateQueue.submit("1", new ProductRequest("1", "Product 1", null, null, 1f, null));
+        writeBehindUpdateQueue.submit("2", new ProductRequest("2", "Product 2", null, null, 2f, null));
+        writeBehindUpdateQueue.submit("3", new ProductRequest("3", "Product 3", null, null, 3f, null));
+
+        assertThrows(IngestionQueueFullException.class, () -> {
+            writeBehindUpdateQueue.submit("4", new ProductRequest("4", "Product 4", null, null, 4f, null));
+        });
+        writeBehindUpdateQueue.submit("1", new ProductRequest("1", "Product 1", null, null, 5f, null));
+
+        assertEquals(1, writeBehindUpdateQueue.getStats().getRejectedUpdates());
+        assertEquals(3, writeBehindUpdateQueue.getStats().getPendingProducts());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedBatchIsRequeuedUnderNewerUpdates() {
+        when(productsManagerService.applyUpdates(anyMap())).thenThrow(new DatabaseAccessException("Error accessing the database"));
+        writeBehindUpdateQueue.submit("111", new ProductRequest("111", "Product", null, 3f, 10f, null));
+
+        assertEquals(0, writeBehindUpdateQueue.flushBatch());
+        writeBehindUpdateQueue.submit("111", new ProductRequest("111", "Product", null, null, 11f, null));
+
+        WriteBehindStats stats = writeBehindUpdateQueue.getStats();
+        assertEquals(1, stats.getFailedFlushes());
+        assertEquals(1, stats.getPendingProducts());
+
+        reset(productsManagerService);
+        assertEquals(1, writeBehindUpdateQueue.flushBatch());
+        ArgumentCaptor<Map<String, ProductRequest>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(productsManagerService).applyUpdates(captor.capture());
+        assertEquals(11f, captor.getValue().get("111").getPrice());
+        assertEquals(3f, captor.getValue().get("111").getRating());
+    }
+
+    @Test
+    public void testRejectedUpdateIsDroppedAndTheRestOfTheBatchIsWritten() {
+        when(productsManagerService.applyUpdates(anyMap())).thenAnswer(invocation -> {
+            if (invocation.<Map<String, ProductRequest>>getArgument(0).containsKey("2")) {
+                throw new InvalidProductRequestException("Update was rejected by the database");
+            }
+            return 1;
+        });
+        writeBehindUpdateQueue.submit("1", new ProductRequest(null, "Product 1", null, null, 1f, null));
+        writeBehindUpdateQueue.submit("2", new ProductRequest(null, "x".repeat(300), null, null, 2f, null));
+        writeBehindUpdateQueue.submit("3", new ProductRequest(null, "Product 3", null, null, 3f, null));
+
+        assertEquals(2, writeBehindUpdateQueue.flushBatch());
+
+        WriteBehindStats stats = writeBehindUpdateQueue.getStats();
+        assertEquals(0, stats.getPendingProducts());
+        assertEquals(2, stats.getFlushedProducts());
+        assertEquals(1, stats.getDroppedUpdates());
+        assertEquals(0, stats.getFailedFlushes());
+    }
+
+    @Test
+    public void testUnreachableDatabaseRequeuesTheRestOfTheBatch() {
+        when(productsManagerService.applyUpdates(anyMap())).thenAnswer(invocation -> {
+            Map<String, ProductRequest> requests = invocation.getArgument(0);
+            if (requests.size() > 1 || !requests.containsKey("1")) {
+                throw new DatabaseAccessException("Error accessing the database");
+            }
+            return 1;
+        });
+        writeBehindUpdateQueue.submit("1", new ProductRequest(null, "Product 1", null, null, 1f, null));
+        writeBehindUpdateQueue.submit("2", new ProductRequest(null, "Product 2", null, null, 2f, null));
+        writeBehindUpdateQueue.submit("3", new ProductRequest(null, "Product 3", null, null, 3f, null));
+
+        assertEquals(1, writeBehindUpdateQueue.flushBatch());
+
+        WriteBehindStats stats = writeBehindUpdateQueue.getStats();
+        assertEquals(2, stats.getPendingProducts());
+        assertEquals(1, stats.getFlushedProducts());
+        assertEquals(0, stats.getDroppedUpdates());
+        assertEquals(1, stats.getFailedFlushes());
+        // The batch, then products 1 and 2 alone; product 3 is not attempted once product 2 failed
+        verify(productsManagerService, times(3)).applyUpdates(anyMap());
+    }
+
+    @Test
+    public void testShutdownDrainsQueue() {
+        writeBehindUpdateQueue.submit("1", new ProductRequest("1", "Product 1", null, null, 1f, null));
+        writeBehindUpdateQueue.submit("2", new ProductRequest("2", "Product 2", null, null, 2f, null));
+
+        writeBehindUpdateQueue.shutdown();
+
+        verify(productsManagerService, times(1)).applyUpdates(anyMap());
+        assertEquals(2, writeBehindUpdateQueue.getStats().getFlushedProducts());
+        assertThrows(IngestionQueueFullException.class, () -> {
+            writeBehindUpdateQueue.submit("3", new ProductRequest("3", "Product 3", null, null, 3f, null));
+        });
+    }
+}